@@ -0,0 +1,60 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import com.deepdownstudios.util.Util;
+
+/**
+ * Animation level of detail: how often to re-pose an instance, by how big it is on screen.
+ * Small instances are updated every 2nd, 4th, 8th... frame instead of every frame.  Nobody
+ * can tell that a character the size of a thumbnail is animating at 8 fps.
+ * Used by Scene, which spreads the updates of each rate over the frames so that every
+ * frame poses about the same number of instances.
+ */
+public class AnimationLod {
+    /// Projected radii (see Bounds.projectedRadius) below which instances are updated every
+    /// 2nd, 4th and 8th frame.  0.05 is about 1/40th of the screen height across.
+    public static final float[] DEFAULT_THRESHOLDS = { 0.1f, 0.05f, 0.025f };
+
+    /**
+     * The default thresholds, with interpolation.
+     */
+    public AnimationLod() {
+        this(DEFAULT_THRESHOLDS, true);
+    }
+
+    /**
+     * @param thresholds    Decreasing projected radii.  Instances smaller than thresholds[i]
+     *                      are updated every 2^(i+1) frames.
+     * @param interpolate   If true, frames between updates blend the last two poses instead of
+     *                      holding the last one.  Smoother, but the animation lags by one update
+     *                      interval and it costs a blend of the bones per frame.
+     */
+    public AnimationLod(float[] thresholds, boolean interpolate) {
+        for (int i=1; i<thresholds.length; i++) {
+            Util.Assert(thresholds[i] < thresholds[i-1]);
+        }
+        mThresholds = thresholds.clone();
+        mInterpolate = interpolate;
+    }
+
+    /**
+     * @param projectedRadius   Size of the instance on screen.  See Bounds.projectedRadius.
+     * @return  Pose the instance every this many frames.  A power of two.
+     */
+    public int getUpdateInterval(float projectedRadius) {
+        int interval = 1;
+        for (float threshold : mThresholds) {
+            if (projectedRadius >= threshold) {
+                break;
+            }
+            interval *= 2;
+        }
+        return interval;
+    }
+
+    public boolean isInterpolating() {
+        return mInterpolate;
+    }
+
+    private final float[] mThresholds;
+    private final boolean mInterpolate;
+}
@@ -29,27 +29,86 @@ public class AnimationRenderer {
 
     @SuppressWarnings("UnusedParameters")
     public void onInit(float[] vMatrix) {
-        mModel = mModelCache.fetch(mModelName);
-        long animStartTime = SystemClock.uptimeMillis();
+        mModelHandle = mModelCache.acquire(mModelName);
+        mModel = mModelHandle.get();
+        long animStartTime = getAnimationTimeMillis();
         mAnimModel =
                 mModel.createAnimModel(mAnimName, mAnimIndex, animStartTime/1000.0, mAnimator);
         Util.Assert(mAnimModel != null);
     }
 
+    /**
+     * Get ready to draw without drawing: load the model into its cache and compile the
+     * programs that this animation draws it with.  The model isn't kept pinned, so it is
+     * budgeted like any other, and onInit() finds it if it is still there.  GLES thread.
+     * @param modelSource   Loads the model if it isn't cached.  See ModelPrefetcher.
+     */
+    public void prepare(Source<Model> modelSource) {
+        Cache.Handle<Model> handle = mModelCache.acquire(mModelName, modelSource);
+        try {
+            handle.get().createAnimModel(mAnimName, mAnimIndex, 0.0, mAnimator);
+        } finally {
+            handle.release();
+        }
+    }
+
+    /// @return True if this draws the same model as other.
+    public boolean isSameModel(AnimationRenderer other) {
+        return other.mModelCache == mModelCache && other.mModelName.equals(mModelName);
+    }
+
     public void onRelease() {
-        // TODO: Dump shaders and program and VBOs/IBOs/ByteBuffers/Textures
+        // The GL objects aren't ours to delete.  The model (with its buffers) and its
+        // textures belong to their caches, which release them when they drop them, and the
+        // programs are shared by everything and belong to the ShaderProgramRegistry.  Just
+        // let the cache know we are done drawing the model.
+        if (mModelHandle != null) {
+            mModelHandle.release();
+            mModelHandle = null;
+        }
         mModel = null;
         mAnimModel = null;
     }
 
     public void onDrawFrame(float[] projMatrix, float[] vMatrix, float[] eyeLightPos) {
         Matrix.setIdentityM(mMMatrix, 0);          // model
-        long time = SystemClock.uptimeMillis();
-        mAnimModel.jumpTo(time/1000.0);
+        mAnimModel.jumpTo(getAnimationTimeMillis()/1000.0);
         mAnimModel.draw(mMMatrix, vMatrix, projMatrix, eyeLightPos);
     }
 
+    /**
+     * Freeze or unfreeze the animation.  Paused, every frame shows the same pose.  Can be
+     * called from any thread.
+     */
+    public synchronized void setPaused(boolean paused) {
+        if (paused == isPaused()) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (paused) {
+            mPausedAtMillis = now;
+        } else {
+            // Skip the time we were paused for so that the animation carries on where it stopped.
+            mPausedMillis += now - mPausedAtMillis;
+            mPausedAtMillis = -1;
+        }
+    }
+
+    public synchronized boolean isPaused() {
+        return mPausedAtMillis != -1;
+    }
+
+    /// @return The uptime the animation is at.  Stands still while paused.
+    private synchronized long getAnimationTimeMillis() {
+        long now = isPaused() ? mPausedAtMillis : SystemClock.uptimeMillis();
+        return now - mPausedMillis;
+    }
+
     private float[] mMMatrix = new float[16];
+    /// Uptime when setPaused(true) was called, or -1 if not paused
+    private long mPausedAtMillis = -1;
+    /// Total time spent paused before mPausedAtMillis
+    private long mPausedMillis = 0;
 
     public final String mModelName;
     public final String mAnimName;
@@ -57,6 +116,8 @@ public class AnimationRenderer {
     public final CachedSource<Model> mModelCache;
     public final Animator mAnimator;
 
+    /// Pins mModel in its cache while we draw it
+    private Cache.Handle<Model> mModelHandle;
     private Model mModel;
     private AnimModel mAnimModel;
 }
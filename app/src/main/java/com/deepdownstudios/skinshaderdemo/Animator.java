@@ -30,15 +30,37 @@ public enum Animator {
         }
     };
 
+    /**
+     * @return  The raw resource ID of the vertex shader that blends this Animator's bones.
+     */
+    public int getVertexShaderResource() {
+        switch (this) {
+            case NORMAL:
+                return R.raw.vert_shader_matrix;
+            case QUAT:
+                return R.raw.vert_shader_quat;
+        }
+        Util.Assert(this.equals(DUAL_QUAT));
+        return R.raw.vert_shader_dualquat;
+    }
+
     public GLSLBones getBonesAtTime(Animation animation,
                                           Skeleton skeleton, double delta) {
+        return getBonesAtTime(animation, skeleton, delta, null);
+    }
+
+    /**
+     * @param boneSubset    The bones to pose (eg SkeletonLod.mBones), or null for all.
+     */
+    public GLSLBones getBonesAtTime(Animation animation, Skeleton skeleton, double delta,
+                                    int[] boneSubset) {
         switch (this) {
             case NORMAL:
-                return new MatrixBones(animation, skeleton, delta);
+                return new MatrixBones(animation, skeleton, delta, boneSubset);
             case QUAT:
-                return new QuatBones(animation, skeleton, delta);
+                return new QuatBones(animation, skeleton, delta, boneSubset);
         }
         Util.Assert(this.equals(DUAL_QUAT));
-        return new DualQuatBones(animation, skeleton, delta);
+        return new DualQuatBones(animation, skeleton, delta, boneSubset);
     }
 }
@@ -46,6 +46,16 @@ public class BasicModel {
             return ret;
         }
 
+        /**
+         * Write the transform as a row-major 3x4 matrix (three rows of (r0, r1, r2, t)).
+         * The missing fourth row is always (0,0,0,1).  12 floats are written.
+         */
+        public void storeAffineRows(float[] dst, int offset) {
+            quat.storeRotationRows(dst, offset);
+            for (int i=0; i<3; i++)
+                dst[offset + 4*i + 3] = (float)pos[i];       // set translation
+        }
+
         public RigidTransform copy() {
             RigidTransform ret = new RigidTransform();
             System.arraycopy(pos, 0, ret.pos, 0, 3);
@@ -98,14 +108,134 @@ public class BasicModel {
         // Some entries may be null meaning no frames.
         // This ArrayList must be sorted by time.
         ArrayList<Pair<Double, RigidTransform>> keyframes[];     // nKeyFrames
+        // The same, packed by compact().  Only one of keyframes and tracks is set.
+        KeyframeTrack tracks[];                                 // nJoints
+
+        /**
+         * @return  A copy of the animation with its keyframes packed into KeyframeTracks, for
+         *          keeping around after the model is uploaded.  Itself if it already is.
+         */
+        public Animation compact() {
+            if (keyframes == null) {
+                return this;
+            }
+            Animation ret = new Animation();
+            ret.name = name;
+            ret.duration = duration;
+            ret.tracks = new KeyframeTrack[keyframes.length];
+            for (int i=0; i<keyframes.length; i++) {
+                ret.tracks[i] = (keyframes[i] != null) ? new KeyframeTrack(keyframes[i]) : null;
+            }
+            return ret;
+        }
+
+        /// @return About how much heap the keyframes take.  See getHeapBytes.
+        public long getHeapBytes() {
+            long bytes = 0;
+            if (keyframes != null) {
+                for (List<Pair<Double, RigidTransform>> channel : keyframes) {
+                    bytes += (channel != null) ? channel.size() * KEYFRAME_BYTES : 0;
+                }
+            } else {
+                for (KeyframeTrack track : tracks) {
+                    bytes += (track != null) ? track.getHeapBytes() : 0;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * One joint's keyframes, packed into two arrays.  An imported keyframe is a Pair, a boxed
+     * Double and a RigidTransform with its own arrays and Quaternion -- around 150 bytes for
+     * 7 numbers.  This is 36.
+     * Times stay doubles since delta is computed from them (see Bones.getTransformAtTime).
+     * The transforms are floats, which is what they end up as in the shader anyway.
+     */
+    public static class KeyframeTrack {
+        public KeyframeTrack(List<Pair<Double, RigidTransform>> keyframes) {
+            times = new double[keyframes.size()];
+            transforms = new float[keyframes.size() * FLOATS_PER_KEYFRAME];
+            for (int i=0; i<keyframes.size(); i++) {
+                times[i] = keyframes.get(i).first;
+                RigidTransform transform = keyframes.get(i).second;
+                int offset = i * FLOATS_PER_KEYFRAME;
+                for (int j=0; j<3; j++) {
+                    transforms[offset + j] = (float)transform.pos[j];
+                }
+                for (int j=0; j<4; j++) {
+                    transforms[offset + 3 + j] = (float)transform.quat.values[j];
+                }
+            }
+        }
+
+        public int size() {
+            return times.length;
+        }
+
+        /// @return A new RigidTransform with keyframe i's transform.
+        public RigidTransform getTransform(int i) {
+            int offset = i * FLOATS_PER_KEYFRAME;
+            RigidTransform ret = new RigidTransform();
+            for (int j=0; j<3; j++) {
+                ret.pos[j] = transforms[offset + j];
+            }
+            ret.quat.set(transforms[offset + 3], transforms[offset + 4], transforms[offset + 5],
+                    transforms[offset + 6]);
+            return ret;
+        }
+
+        public long getHeapBytes() {
+            return 16 + (16 + times.length * 8) + (16 + transforms.length * 4);
+        }
+
+        /// Position (3) then rotation (w, x, y, z)
+        private static final int FLOATS_PER_KEYFRAME = 7;
+
+        public final double times[];          // sorted
+        final float transforms[];             // FLOATS_PER_KEYFRAME per keyframe
     }
 
     public static class Skeleton {
         public List<Bone> bones = new ArrayList<>();                // nBones
         public List<Animation> animations = new ArrayList<>();      // nAnimations
         public List<Bone> invBindPose;                              // nBones
+
+        /**
+         * @return  A copy of the skeleton with its animations compacted (see Animation.compact).
+         *          The bones are shared.
+         */
+        public Skeleton compact() {
+            Skeleton ret = new Skeleton();
+            ret.bones = bones;
+            ret.invBindPose = invBindPose;
+            for (Animation animation : animations) {
+                ret.animations.add(animation.compact());
+            }
+            return ret;
+        }
+
+        /**
+         * MATH ALERT: these are guesses at the object layout of a 32-bit VM (8 byte headers,
+         * 4 byte references).  Close enough for a budget.
+         * @return  About how much heap the bones, inverse bind pose and animations take.
+         */
+        public long getHeapBytes() {
+            long bytes = bones.size() * 2 * BONE_BYTES;
+            for (Animation animation : animations) {
+                bytes += animation.getHeapBytes();
+            }
+            return bytes;
+        }
     }
 
+    /// A RigidTransform with its pos array and Quaternion
+    private static final long TRANSFORM_BYTES = 16 + (16 + 3 * 8) + (8 + 4 * 8);
+    /// A Pair, a boxed Double and a RigidTransform
+    private static final long KEYFRAME_BYTES = 16 + 16 + TRANSFORM_BYTES;
+    /// A Bone (its name is shared with the file it came from, mostly) and its RigidTransform
+    private static final long BONE_BYTES = 24 + TRANSFORM_BYTES;
+
     public static class RenderPass {
         public Material material;
     }
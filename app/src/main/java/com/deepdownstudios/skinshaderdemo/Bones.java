@@ -4,11 +4,13 @@ import android.util.Pair;
 
 import com.deepdownstudios.skinshaderdemo.BasicModel.Animation;
 import com.deepdownstudios.skinshaderdemo.BasicModel.Bone;
+import com.deepdownstudios.skinshaderdemo.BasicModel.KeyframeTrack;
 import com.deepdownstudios.skinshaderdemo.BasicModel.RigidTransform;
 import com.deepdownstudios.skinshaderdemo.BasicModel.Skeleton;
 import com.deepdownstudios.util.Util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -25,6 +27,47 @@ public final class Bones {
          *                      an array of bone transformations.
          */
         void postToGLSLUniform(int boneArrayId);
+
+        /**
+         * Get one bone's (unitless) skinning transformation as a column-major 4x4 matrix,
+         * the layout android.opengl.Matrix uses.  This is for meshes that are bound rigidly
+         * to one bone -- they are drawn without skinning, using this matrix instead.
+         * @param boneIdx   Index of the bone
+         * @param result    Array to write the matrix to
+         * @param offset    Index in result of the first element of the matrix
+         */
+        void getBoneMatrix(int boneIdx, float[] result, int offset);
+
+        /**
+         * Set these bones to (1-t)*a + t*b.  a and b must be poses of the same skeleton made
+         * by the same Animator as these.  The blend is component-wise so it is only good
+         * for nearby poses -- it fills in frames between poses, it doesn't blend animations.
+         */
+        void lerp(GLSLBones a, GLSLBones b, float t);
+    }
+
+    /**
+     * Write a rotation (given as a unit quaternion) followed by a translation as a
+     * column-major 4x4 matrix.
+     */
+    static void storeRigidMatrix(double w, double x, double y, double z,
+                                 double tx, double ty, double tz, float[] result, int offset) {
+        result[offset]    = (float)(1.0 - 2.0*(y*y + z*z));
+        result[offset+1]  = (float)(2.0*(x*y + w*z));
+        result[offset+2]  = (float)(2.0*(x*z - w*y));
+        result[offset+3]  = 0.0f;
+        result[offset+4]  = (float)(2.0*(x*y - w*z));
+        result[offset+5]  = (float)(1.0 - 2.0*(x*x + z*z));
+        result[offset+6]  = (float)(2.0*(y*z + w*x));
+        result[offset+7]  = 0.0f;
+        result[offset+8]  = (float)(2.0*(x*z + w*y));
+        result[offset+9]  = (float)(2.0*(y*z - w*x));
+        result[offset+10] = (float)(1.0 - 2.0*(x*x + y*y));
+        result[offset+11] = 0.0f;
+        result[offset+12] = (float)tx;
+        result[offset+13] = (float)ty;
+        result[offset+14] = (float)tz;
+        result[offset+15] = 1.0f;
     }
 
     /**
@@ -84,10 +127,9 @@ public final class Bones {
             Bone bone = bones.get(i);
 
             // Joints with null keyframes are not individually animated.
-            if (animation != null && animation.keyframes[i] != null) {
+            RigidTransform animTform = getTransformAtTime(animation, i, delta);
+            if (animTform != null) {
                 // Compose the animation transformation on top of the bind pose transform.
-                RigidTransform animTform = getTransformAtTime(animation.keyframes[i], delta);
-
                 // Keyframes are a "unitless" transform -- the keyframe transformations define a
                 // delta for the bone transformation -- they do not introduce a new coordinate
                 // space.  So the bone.transform is still in parent/local-bone units.
@@ -133,30 +175,106 @@ public final class Bones {
      * @param ts        Abstract storage for transforms.  Can be used to store matrices, quats, ...
      */
     static public void storeBoneTransforms(Animation animation, Skeleton skeleton, double delta, TransformStorage ts) {
+        storeBoneTransforms(animation, skeleton, delta, null, ts);
+    }
+
+    /**
+     * Calculate the transformations of some of the bones and store them in a TransformStorage.
+     * Only those bones are posed, so this is cheaper for smaller subsets.
+     * @param boneSubset    Indices of the bones to calculate, in skeleton order, or null for all
+     *                      of them.  Must include the parents of every bone in it (eg
+     *                      SkeletonLod.mBones).  Transform i is boneSubset[i]'s.
+     */
+    static public void storeBoneTransforms(Animation animation, Skeleton skeleton, double delta,
+                                           int[] boneSubset, TransformStorage ts) {
         List<Bone> bones = skeleton.bones;
-        ts.allocateStorage(bones.size());
-
-        List<Bone> bonesCopy = new ArrayList<>();
-        for (Bone bone: bones)
-            bonesCopy.add(bone.copy());
-
-        // Calculate the (potentially animated) bone-to-model matrices.
-        calculatePose(bonesCopy, animation, delta);
-
-        // MATH ALERT: Multiply the invBindPose transformations (which map model-to-bone-space, or bone/model)
-        // by mTforms (bone-to-model or model/bone).  So
-        // mTforms * invBindPose = model/bone * bone/model = a "unitless"
-        // transformation that has no inherent coordinate system.  Which is good because
-        // the skeletal transformation maps from a model space back into itself.
-        // In the shader, you then also apply MVP as you do to position any object.
-        for (int i=0; i<bonesCopy.size(); i++) {
-            Bone bone = bonesCopy.get(i);
-            Bone invBone = skeleton.invBindPose.get(i);
-            RigidTransform product = bone.transform.multiply(invBone.transform);
-            ts.storeTransform(i, product);
+        int nTransforms = (boneSubset == null) ? bones.size() : boneSubset.length;
+        ts.allocateStorage(nTransforms);
+
+        // The (potentially animated) bone-to-model transforms, by bone index.  Same as
+        // calculatePose but only for the bones in the subset.
+        RigidTransform[] pose = new RigidTransform[bones.size()];
+        for (int i=0; i<nTransforms; i++) {
+            int boneIdx = (boneSubset == null) ? i : boneSubset[i];
+            Bone bone = bones.get(boneIdx);
+            RigidTransform transform = bone.transform;
+            RigidTransform animTform = getTransformAtTime(animation, boneIdx, delta);
+            if (animTform != null) {
+                transform = transform.multiply(animTform);
+            }
+            if (bone.parentIdx != -1) {
+                // Parents come first so the parent is already model/parent.
+                transform = pose[bone.parentIdx].multiply(transform);
+            }
+            pose[boneIdx] = transform;
+
+            // MATH ALERT: Multiply the invBindPose transformations (which map model-to-bone-space, or bone/model)
+            // by mTforms (bone-to-model or model/bone).  So
+            // mTforms * invBindPose = model/bone * bone/model = a "unitless"
+            // transformation that has no inherent coordinate system.  Which is good because
+            // the skeletal transformation maps from a model space back into itself.
+            // In the shader, you then also apply MVP as you do to position any object.
+            Bone invBone = skeleton.invBindPose.get(boneIdx);
+            ts.storeTransform(i, transform.multiply(invBone.transform));
         }
     }
 
+    /**
+     * Component-wise (1-t)*a + t*b of two transform arrays of the same size.
+     * @param result    Where to put the blend.  Reallocated if it isn't the right size.
+     * @return          result, or the new array.
+     */
+    static float[] lerpTransforms(float[] result, float[] a, float[] b, float t) {
+        if (result == null || result.length != a.length) {
+            result = new float[a.length];
+        }
+        for (int i=0; i<a.length; i++) {
+            result[i] = a[i] + t*(b[i] - a[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return  The joint's animated transform at delta, from whichever of keyframes and
+     *          tracks the animation has.  Null if the joint isn't animated (or there is no
+     *          animation).
+     */
+    static private RigidTransform getTransformAtTime(Animation animation, int joint, double delta) {
+        if (animation == null) {
+            return null;
+        }
+        if (animation.tracks != null) {
+            KeyframeTrack track = animation.tracks[joint];
+            return (track != null) ? getTransformAtTime(track, delta) : null;
+        }
+        ArrayList<Pair<Double, RigidTransform>> keyframe = animation.keyframes[joint];
+        return (keyframe != null) ? getTransformAtTime(keyframe, delta) : null;
+    }
+
+    /// The same as below, for a packed track.
+    static private RigidTransform getTransformAtTime(KeyframeTrack track, double delta) {
+        delta += track.times[0];
+        Util.Assert(delta <= track.times[track.size()-1]);      // Must not exceed animation length!
+
+        int afterFrame = Arrays.binarySearch(track.times, delta);
+        if (afterFrame >= 0) {
+            return track.getTransform(afterFrame);
+        }
+        afterFrame = -(afterFrame + 1);
+        Util.Assert(afterFrame < track.size());
+
+        RigidTransform e1 = track.getTransform(afterFrame-1);
+        RigidTransform e2 = track.getTransform(afterFrame);
+        double weight = (delta - track.times[afterFrame-1])/(track.times[afterFrame] - track.times[afterFrame-1]);
+        Util.Assert(weight <= 1.0 && weight >= 0.0);
+        RigidTransform eNew = new RigidTransform();
+        eNew.quat = e1.quat.slerp(e2.quat, weight);
+        for(int i=0; i<3; i++) {
+            eNew.pos[i] = (1.0-weight) * e1.pos[i] + weight * e2.pos[i];
+        }
+        return eNew;
+    }
+
     static private RigidTransform getTransformAtTime(
             ArrayList<Pair<Double, RigidTransform>> keyframe, double delta) {
 
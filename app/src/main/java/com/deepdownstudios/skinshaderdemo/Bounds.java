@@ -0,0 +1,130 @@
+package com.deepdownstudios.skinshaderdemo;
+
+/**
+ * Axis-aligned bounding boxes, stored as 6 floats (minX, minY, minZ, maxX, maxY, maxZ) at
+ * some offset in a float array so that many of them can be packed together without
+ * allocating an object each.  A box with min > max is empty.
+ */
+public final class Bounds {
+    /// Floats per box
+    public static final int SIZE = 6;
+
+    /// Make the box at `offset` empty.
+    public static void setEmpty(float[] box, int offset) {
+        for (int i=0; i<3; i++) {
+            box[offset + i] = Float.POSITIVE_INFINITY;
+            box[offset + 3 + i] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    public static boolean isEmpty(float[] box, int offset) {
+        return box[offset] > box[offset + 3];
+    }
+
+    /// Grow the box at `offset` to hold the point (x, y, z).
+    public static void addPoint(float[] box, int offset, float x, float y, float z) {
+        box[offset] = Math.min(box[offset], x);
+        box[offset + 1] = Math.min(box[offset + 1], y);
+        box[offset + 2] = Math.min(box[offset + 2], z);
+        box[offset + 3] = Math.max(box[offset + 3], x);
+        box[offset + 4] = Math.max(box[offset + 4], y);
+        box[offset + 5] = Math.max(box[offset + 5], z);
+    }
+
+    /// Grow the box at `offset` to hold the box src at `srcOffset`.
+    public static void addBox(float[] box, int offset, float[] src, int srcOffset) {
+        if (isEmpty(src, srcOffset)) {
+            return;
+        }
+        addPoint(box, offset, src[srcOffset], src[srcOffset + 1], src[srcOffset + 2]);
+        addPoint(box, offset, src[srcOffset + 3], src[srcOffset + 4], src[srcOffset + 5]);
+    }
+
+    /**
+     * Grow the box at `offset` to hold the box src, transformed by the affine (column-major)
+     * matrix m.  The result holds every point of src transformed by m.
+     * MATH ALERT: This is Arvo's method.  The transformed center is the center of the result
+     * and each of its half-extents is the sum of the source half-extents weighted by the
+     * absolute values of the matching row of m's 3x3 part.  That is exactly the box around
+     * the 8 transformed corners without transforming 8 corners.
+     */
+    public static void addTransformedBox(float[] box, int offset, float[] m,
+                                         float[] src, int srcOffset) {
+        if (isEmpty(src, srcOffset)) {
+            return;
+        }
+        float cx = 0.5f * (src[srcOffset] + src[srcOffset + 3]);
+        float cy = 0.5f * (src[srcOffset + 1] + src[srcOffset + 4]);
+        float cz = 0.5f * (src[srcOffset + 2] + src[srcOffset + 5]);
+        float ex = 0.5f * (src[srcOffset + 3] - src[srcOffset]);
+        float ey = 0.5f * (src[srcOffset + 4] - src[srcOffset + 1]);
+        float ez = 0.5f * (src[srcOffset + 5] - src[srcOffset + 2]);
+        for (int row=0; row<3; row++) {
+            float center = m[row]*cx + m[4 + row]*cy + m[8 + row]*cz + m[12 + row];
+            float extent = Math.abs(m[row])*ex + Math.abs(m[4 + row])*ey + Math.abs(m[8 + row])*ez;
+            box[offset + row] = Math.min(box[offset + row], center - extent);
+            box[offset + 3 + row] = Math.max(box[offset + 3 + row], center + extent);
+        }
+    }
+
+    /**
+     * @param mvp   Column-major model-view-projection matrix.  The box is in its model space.
+     * @return  True if the box is certainly outside the view frustum.  May return false for
+     *          some boxes that are just outside a frustum corner.  Empty boxes are outside.
+     */
+    public static boolean isOutsideFrustum(float[] mvp, float[] box, int offset) {
+        if (isEmpty(box, offset)) {
+            return true;
+        }
+        // MATH ALERT: A point p is inside the frustum if -w <= x,y,z <= w in clip space,
+        // (x, y, z, w) = mvp * p.  So each frustum plane is row3 +/- row(0,1,2) of mvp and p
+        // is inside it if (row3 +/- row_i) . p >= 0.  The box is outside if its corner that
+        // is farthest along a plane's normal is still outside that plane.
+        for (int i=0; i<3; i++) {
+            for (int sign=-1; sign<=1; sign+=2) {
+                float a = mvp[3] + sign*mvp[i];
+                float b = mvp[7] + sign*mvp[4 + i];
+                float c = mvp[11] + sign*mvp[8 + i];
+                float d = mvp[15] + sign*mvp[12 + i];
+                float x = (a > 0) ? box[offset + 3] : box[offset];
+                float y = (b > 0) ? box[offset + 4] : box[offset + 1];
+                float z = (c > 0) ? box[offset + 5] : box[offset + 2];
+                if (a*x + b*y + c*z + d < 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * How big a box looks on screen: the radius of its bounding sphere after projection, as a
+     * fraction of half the screen height.  So 1 is a sphere that (just) fills the screen
+     * top to bottom.  Assumes a perspective projection and a model-view matrix with uniform scale.
+     * @param mvMatrix      Column-major model-view matrix.  The box is in its model space.
+     * @param projMatrix    Column-major projection matrix.
+     * @return  The projected radius, or Float.POSITIVE_INFINITY if the camera is in the sphere.
+     *          0 for empty boxes.
+     */
+    public static float projectedRadius(float[] mvMatrix, float[] projMatrix, float[] box, int offset) {
+        if (isEmpty(box, offset)) {
+            return 0.0f;
+        }
+        float cx = 0.5f * (box[offset] + box[offset + 3]);
+        float cy = 0.5f * (box[offset + 1] + box[offset + 4]);
+        float cz = 0.5f * (box[offset + 2] + box[offset + 5]);
+        float dx = box[offset + 3] - box[offset];
+        float dy = box[offset + 4] - box[offset + 1];
+        float dz = box[offset + 5] - box[offset + 2];
+        float scale = (float)Math.sqrt(mvMatrix[0]*mvMatrix[0] + mvMatrix[1]*mvMatrix[1] + mvMatrix[2]*mvMatrix[2]);
+        float radius = 0.5f * scale * (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+        // The camera looks down -z in view space.
+        float depth = -(mvMatrix[2]*cx + mvMatrix[6]*cy + mvMatrix[10]*cz + mvMatrix[14]);
+        if (depth <= radius) {
+            return Float.POSITIVE_INFINITY;
+        }
+        // MATH ALERT: projMatrix[5] is cot(fovy/2), which maps a view-space height at
+        // depth 1 to NDC, where the screen is 2 high.
+        return radius * projMatrix[5] / depth;
+    }
+}
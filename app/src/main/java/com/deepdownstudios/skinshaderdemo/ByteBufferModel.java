@@ -1,7 +1,5 @@
 package com.deepdownstudios.skinshaderdemo;
 
-import android.util.Pair;
-
 import com.deepdownstudios.util.Util;
 
 import java.nio.ByteBuffer;
@@ -28,6 +26,17 @@ public class ByteBufferModel {
         // should be (position3, texCoords2, normal3) because I wrote it
         // that way to correspond with VBOMode.SHADER_ATTRIB_NAMES.
         // A good shader library would do better.
+        // Nothing of the meshes is kept but their materials, so their vertex graph goes as
+        // soon as the importer lets go of it.
+
+        mBoneBounds = new float[skeleton.bones.size() * Bounds.SIZE];
+        for (int i=0; i<skeleton.bones.size(); i++) {
+            Bounds.setEmpty(mBoneBounds, i * Bounds.SIZE);
+        }
+
+        // Every vertex's (sorted) bone indices, MAX_INFLUENCES per vertex, for remapping to
+        // the skeleton LODs once we know them.
+        List<int[]> meshBoneIds = new ArrayList<>();
 
         for(Mesh mesh : meshes) {
             // Vertices
@@ -38,17 +47,32 @@ public class ByteBufferModel {
             ByteBuffer vertByteBuffer = ByteBuffer.allocateDirect(nBytes).order(ByteOrder.nativeOrder());
             FloatBuffer vertFloatBuffer = vertByteBuffer.asFloatBuffer();
 
-            for(Vertex vert : mesh.verts) {
-                Pair<Integer, Integer> packedBones = packBoneIndices(vert);
+            int meshInfluences = 1;
+            int rigidBone = (mesh.verts.length > 0) ? RIGID_UNKNOWN : NOT_RIGID;
+            int[] boneIds = new int[MAX_INFLUENCES];
+            float[] boneWeights = new float[MAX_INFLUENCES];
+            int[] vertBoneIds = new int[mesh.verts.length * MAX_INFLUENCES];
+            for(int vertIdx=0; vertIdx<mesh.verts.length; vertIdx++) {
+                Vertex vert = mesh.verts[vertIdx];
+                int nInfluences = sortInfluences(vert, boneIds, boneWeights);
+                System.arraycopy(boneIds, 0, vertBoneIds, vertIdx * MAX_INFLUENCES, MAX_INFLUENCES);
+                meshInfluences = Math.max(meshInfluences, nInfluences);
+                mInfluenceClassVertCounts[influenceClassIndex(nInfluences)]++;
+                rigidBone = updateRigidBone(rigidBone, nInfluences, boneIds[0], boneWeights[0]);
+                for (int i=0; i<nInfluences; i++) {
+                    Bounds.addPoint(mBoneBounds, boneIds[i] * Bounds.SIZE,
+                            (float)vert.pos[0], (float)vert.pos[1], (float)vert.pos[2]);
+                }
+
                 // Batch 3+2+3+2+4 of the nio copy calls without trashing caches and such.
                 // Could probably afford increase the batch size...
                 float vertValues[] = {
                         (float)vert.pos[0], (float)vert.pos[1], (float)vert.pos[2],
                         (float)vert.texCoords[0], (float)vert.texCoords[1],
                         (float)vert.normal[0], (float)vert.normal[1], (float)vert.normal[2],
-                        (float)packedBones.first, (float)packedBones.second,
-                        (float)vert.getBoneWeight(0), (float)vert.getBoneWeight(1),
-                        (float)vert.getBoneWeight(2), (float)vert.getBoneWeight(3)
+                        (float)packBoneIndices(boneIds[0], boneIds[1]),
+                        (float)packBoneIndices(boneIds[2], boneIds[3]),
+                        boneWeights[0], boneWeights[1], boneWeights[2], boneWeights[3]
                 };
                 vertFloatBuffer.put(vertValues);
             }
@@ -56,6 +80,9 @@ public class ByteBufferModel {
             // Move cursor back to the beginning of the buffer.
             vertByteBuffer.position(0);
             mVertByteBuffers.add(vertByteBuffer);
+            mMaxInfluences.add(INFLUENCE_CLASSES[influenceClassIndex(meshInfluences)]);
+            mRigidBones.add(rigidBone);
+            meshBoneIds.add(vertBoneIds);
 
 
             // Faces
@@ -76,24 +103,186 @@ public class ByteBufferModel {
         }
 
         mSkeleton = skeleton;
+        mSkeletonLods = SkeletonLod.build(skeleton, mBoneBounds, SkeletonLod.DEFAULT_THRESHOLDS);
+        for (int[] vertBoneIds : meshBoneIds) {
+            mLodBoneIndexBuffers.add(createLodBoneIndexBuffers(vertBoneIds));
+        }
+    }
+
+    /// An empty model, for DiskModelCache to fill with one it stored earlier.
+    ByteBufferModel() {
+    }
+
+    /**
+     * @return  The size of the vertex, index and LOD bone index buffers.  About what the
+     *          model will cost in GPU buffers.
+     */
+    public long getByteCount() {
+        long ret = 0;
+        for (int i=0; i<mVertByteBuffers.size(); i++) {
+            ret += mVertByteBuffers.get(i).capacity();
+            ret += (long)mFaceShortBuffers.get(i).capacity() * BYTES_PER_SHORT;
+            for (ByteBuffer lodBuffer : mLodBoneIndexBuffers.get(i)) {
+                ret += lodBuffer.capacity();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Drop the buffers and the imported skeleton, once the model is uploaded.  Direct buffers
+     * can't be freed on Android, only forgotten, so that their native memory goes with the next
+     * GC.  This makes sure that a ByteBufferModel that is still referenced (by a prefetch that
+     * was waited on, say) doesn't keep them alive.  Nothing can be uploaded from it after.
+     * @return  The native bytes dropped.  getByteCount() before.
+     */
+    public long release() {
+        long bytes = getByteCount();
+        mVertByteBuffers.clear();
+        mFaceShortBuffers.clear();
+        mLodBoneIndexBuffers.clear();
+        mSkeleton = null;
+        return bytes;
+    }
+
+    /// @return True after release().
+    public boolean isReleased() {
+        return mSkeleton == null;
+    }
+
+    /**
+     * @param vertBoneIds   A mesh's vertices' bone indices, MAX_INFLUENCES per vertex.
+     * @return  For each skeleton LOD but the first, the indices remapped to the LOD's bones
+     *          and packed like in the vertex buffer.
+     */
+    private ByteBuffer[] createLodBoneIndexBuffers(int[] vertBoneIds) {
+        int nVerts = vertBoneIds.length / MAX_INFLUENCES;
+        ByteBuffer[] ret = new ByteBuffer[mSkeletonLods.size() - 1];
+        for (int lod=1; lod<mSkeletonLods.size(); lod++) {
+            int[] remap = mSkeletonLods.get(lod).mRemap;
+            ByteBuffer byteBuffer = ByteBuffer.allocateDirect(nVerts * LOD_BONE_INDEX_BYTES)
+                    .order(ByteOrder.nativeOrder());
+            FloatBuffer floatBuffer = byteBuffer.asFloatBuffer();
+            for (int i=0; i<vertBoneIds.length; i+=MAX_INFLUENCES) {
+                floatBuffer.put(packBoneIndices(remap[vertBoneIds[i]], remap[vertBoneIds[i+1]]));
+                floatBuffer.put(packBoneIndices(remap[vertBoneIds[i+2]], remap[vertBoneIds[i+3]]));
+            }
+            byteBuffer.position(0);
+            ret[lod-1] = byteBuffer;
+        }
+        return ret;
     }
 
     /**
-     * @return
-     * ret.first is first two bones -- last 5 bits are bone 0, next 5 bits are bone 1 (mediump is guaranteed 10 bits)
-     * ret.second is the remaining two bones in a similar encoding.
+     * @return  Two bones packed into one value -- last 5 bits are b0, next 5 bits are b1
+     *          (mediump is guaranteed 10 bits)
      */
-    private Pair<Integer, Integer> packBoneIndices(Vertex vert) {
-      int b0 = vert.getBone(0), b1 = vert.getBone(1),
-        b2 = vert.getBone(2), b3 = vert.getBone(3);
-      return new Pair<>(b1*32 + b0, b3*32 + b2);
+    private static int packBoneIndices(int b0, int b1) {
+        return b1*32 + b0;
+    }
+
+    /**
+     * Fold one more vertex into the running "is this mesh bound to one bone?" test.
+     * @param rigidBone     The result so far.  RIGID_UNKNOWN before the first vertex.
+     * @return  The bone that all vertices so far are fully bound to, or NOT_RIGID.
+     */
+    private static int updateRigidBone(int rigidBone, int nInfluences, int boneId, float boneWeight) {
+        if (rigidBone == NOT_RIGID || nInfluences != 1 || Math.abs(boneWeight - 1.0f) > RIGID_WEIGHT_TOLERANCE) {
+            return NOT_RIGID;
+        }
+        if (rigidBone == RIGID_UNKNOWN || rigidBone == boneId) {
+            return boneId;
+        }
+        return NOT_RIGID;
+    }
+
+    /**
+     * Copy the vertex's influences into boneIds/boneWeights, heaviest first, dropping
+     * zero-weight influences and padding the rest with bone 0/weight 0.  Weights are left
+     * as-is -- renormalizing is the importer's business.  Heaviest-first
+     * means a shader that only reads the first N influences reads the ones that matter.
+     * @return  The number of (non-zero) influences on the vertex.
+     */
+    private static int sortInfluences(Vertex vert, int[] boneIds, float[] boneWeights) {
+        int nInfluences = 0;
+        for (int i=0; i<vert.bones.size(); i++) {
+            float weight = (float)vert.getBoneWeight(i);
+            if (weight == 0.0f) {
+                continue;
+            }
+            // Insertion sort.  There are at most four of these.  If there are more than
+            // four then the lightest falls off the end (the shader couldn't use it anyway).
+            int j = nInfluences;
+            if (j == MAX_INFLUENCES) {
+                if (boneWeights[j-1] >= weight) {
+                    continue;
+                }
+                j--;
+            } else {
+                nInfluences++;
+            }
+            while (j > 0 && boneWeights[j-1] < weight) {
+                boneIds[j] = boneIds[j-1];
+                boneWeights[j] = boneWeights[j-1];
+                j--;
+            }
+            boneIds[j] = vert.getBone(i);
+            boneWeights[j] = weight;
+        }
+        for (int i=nInfluences; i<MAX_INFLUENCES; i++) {
+            boneIds[i] = 0;
+            boneWeights[i] = 0.0f;
+        }
+        return nInfluences;
+    }
 
+    /**
+     * @return  The index in INFLUENCE_CLASSES of the smallest class that can
+     *          hold nInfluences bones.
+     */
+    public static int influenceClassIndex(int nInfluences) {
+        for (int i=0; i<INFLUENCE_CLASSES.length-1; i++) {
+            if (nInfluences <= INFLUENCE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return INFLUENCE_CLASSES.length-1;
     }
 
+    /// mRigidBones value for meshes that need per-vertex skinning.
+    public static final int NOT_RIGID = -1;
+    private static final int RIGID_UNKNOWN = -2;
+    private static final float RIGID_WEIGHT_TOLERANCE = 1e-4f;
+
+    /// The most bones that can influence a vertex.  Set by the VBO vertex layout.
+    public static final int MAX_INFLUENCES = 4;
+
+    /**
+     * The numbers of bone influences that the skinning shaders are specialized for.
+     * Every vertex (and mesh) is put into the smallest class that holds all of its influences.
+     */
+    public static final int[] INFLUENCE_CLASSES = { 1, 2, MAX_INFLUENCES };
+
+    /// Size of a vertex's bone indices in mLodBoneIndexBuffers: two floats of two packed indices.
+    public static final int LOD_BONE_INDEX_BYTES = 2 * 4;
+
     public Skeleton mSkeleton;
+    /// Reduced skeletons for drawing the model far away.  [0] is the full skeleton.
+    public List<SkeletonLod> mSkeletonLods;
+    /// For each mesh, the vertices' bone indices for each of mSkeletonLods but the first.
+    public List<ByteBuffer[]> mLodBoneIndexBuffers = new ArrayList<>();  // nMeshes x (nLods-1)
     public List<ShortBuffer> mFaceShortBuffers = new ArrayList<>();     // nMeshes
     public List<ByteBuffer> mVertByteBuffers = new ArrayList<>();       // nMeshes
     public List<Material> mMaterials = new ArrayList<>();               // nMeshes
+    /// Number of influences the shader must handle for each mesh.  One of INFLUENCE_CLASSES.
+    public List<Integer> mMaxInfluences = new ArrayList<>();            // nMeshes
+    /// The bone each mesh is rigidly (100%) bound to, or NOT_RIGID if it needs skinning.
+    public List<Integer> mRigidBones = new ArrayList<>();               // nMeshes
+    /// For each bone, the bind-pose bounds (see Bounds) of the vertices it influences.
+    /// Empty for bones that influence nothing.
+    public float[] mBoneBounds;                                         // nBones * Bounds.SIZE
+    /// Number of vertices in the model that fall in each of INFLUENCE_CLASSES.
+    public int[] mInfluenceClassVertCounts = new int[INFLUENCE_CLASSES.length];
 
     private static final int BYTES_PER_FLOAT = 4;
     private static final int BYTES_PER_SHORT = 2;
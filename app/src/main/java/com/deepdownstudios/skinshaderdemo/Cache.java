@@ -1,70 +1,537 @@
 package com.deepdownstudios.skinshaderdemo;
 
 import android.content.ComponentCallbacks2;
-import android.os.Build;
-import android.util.LruCache;
+import android.util.Log;
+
+import com.deepdownstudios.util.Util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Simple (lame) cache of data that respects low-memory warnings.
+ * Cache of data, budgeted by bytes, that respects low-memory warnings.
+ *
+ * Each item costs what it says it does (see Sized) -- GPU buffers and textures plus the CPU
+ * side data it keeps.  When the total goes over the budget, the least recently used items
+ * are dropped until it fits.  Items that aren't Sized are free, so only a trim to nothing
+ * gets rid of them.
+ * Dropped items that are Releasable (models, textures) get their GL objects deleted on the
+ * GLES thread, with GLESContext.enqueueRelease.
+ *
+ * Items are handed out in Handles, which pin them: a pinned item is never dropped for the
+ * budget or a trim, only the ones nobody holds are.  So pinned items can take the cache over
+ * budget, and it gets back under as they are let go.  clear() does drop pinned items, but
+ * they are only released when their last Handle is.
+ *
+ * This used to be an android.util.LruCache capped at 128 items.  That counts a 4MB model the
+ * same as a 1KB texture, and it can't be trimmed at all before API 17.
+ *
+ * Safe to use from any thread.  Hits are a ConcurrentHashMap lookup, a tick of a counter and
+ * a pin with compare-and-set, with no lock.  Misses put a FutureTask in the map, so there is
+ * only ever one load of a name in flight; the totals and eviction are under the Cache's lock.
+ *
+ * getStats() says how that is going.  Hits aren't counted as such: the clock that every
+ * acquire ticks for least recently used already counts them, so they cost nothing extra.
+ *
+ * Releasable items are taken to be GL objects, and to belong to the GLES context (see
+ * GLESContext.getGeneration) that was current when they were loaded.  Once that context is
+ * lost they are stale: onContextCreated() drops them, and acquiring one that is still around
+ * loads it again.  Everything else lives through a context loss.  For models, that load is
+ * normally a DiskModelCache hit, so getting back from the background doesn't parse anything.
  */
 public class Cache<V> {
-    // Don't really care about this.  Eviction should be done based on low-memory indications.
-    private static final int MAX_NUM_ITEMS = 128;
+    /// Budget for caches that aren't given one
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * A pinned item.  Release it exactly once, when done with the item.  Not thread safe:
+     * each user should acquire its own.
+     */
+    public static class Handle<V> {
+        /**
+         * A Handle to an item that no cache owns, for Cache stand-ins.  Releasing it does
+         * nothing.
+         */
+        public Handle(V item) {
+            this(item, null, null);
+        }
+
+        private Handle(V item, Cache<V> cache, Entry<V> entry) {
+            mItem = item;
+            mCache = cache;
+            mEntry = entry;
+        }
+
+        public V get() {
+            Util.Assert(!mReleased, "Handle used after release");
+            return mItem;
+        }
+
+        /// Unpin the item.  It can be dropped from then on.  Don't use it after this.
+        public void release() {
+            Util.Assert(!mReleased, "Handle released twice");
+            mReleased = true;
+            if (mCache != null) {
+                mCache.unpin(mEntry);
+            }
+        }
+
+        private final V mItem;
+        private final Cache<V> mCache;
+        private final Entry<V> mEntry;
+        private boolean mReleased = false;
+    }
 
-    private final LruCache<String, V> mLruCache = new LruCache<>(MAX_NUM_ITEMS);
+    public Cache() {
+        this(DEFAULT_MAX_BYTES);
+    }
 
     /**
-     * Load from source or retrieve item from the cache.
+     * @param maxBytes  The most that the unpinned cached items can cost together, in bytes.
+     */
+    public Cache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Load from source or retrieve item from the cache, and pin it.
      * Callers to this method must be prepared for the source to load the item.  For
      * example, if this is Android View-based then it must run on the main thread or the
      * source should asynchronously do that.
      * If the source is GLES-based then this method requires an active GLES
      * context on the GLES thread.
+     * Any thread.  Each name is only loaded once at a time: the first caller loads it and
+     * everyone else who asks for it meanwhile waits for that load.  (So don't acquire a GLES
+     * item on the GLES thread while another thread is loading it -- the other thread can't
+     * finish without the GLES thread.)  Errors from the load are thrown to all of them.
+     * An item that costs more than the whole budget is returned but not kept.  It is released
+     * with its last Handle.
      * @param name          Key to cache/load the item with
      * @param itemSource    Source capable of loading the item in case it is not in the cache
-     * @return  The item or null if it was not cached and failed to load
+     * @return  A Handle to the item, or null if it was not cached and failed to load
      */
-    public V fetch(String name, Source<V> itemSource) {
-        V item = mLruCache.get(name);
-        if (item!= null) {
-            return item;
+    public Handle<V> acquire(String name, final Source<V> itemSource) {
+        while (true) {
+            // The hit path takes no locks.
+            Entry<V> entry = mItems.get(name);
+            if (entry == null) {
+                Entry<V> newEntry = new Entry<>(itemSource);
+                entry = mItems.putIfAbsent(name, newEntry);
+                if (entry == null) {
+                    return load(name, newEntry);
+                }
+            }
+            if (!pin(entry)) {
+                // Dropped between the lookup and the pin.  It's on its way out of the map.
+                mItems.remove(name, entry);
+                continue;
+            }
+            entry.mLastUsed = mClock.incrementAndGet();
+            V item;
+            try {
+                item = waitFor(entry.mLoad);
+            } catch (RuntimeException|Error e) {
+                entry.mPins.decrementAndGet();          // failed loads are never resident
+                throw e;
+            }
+            if (item == null) {
+                entry.mPins.decrementAndGet();
+                return null;
+            }
+            if (isStale(entry)) {
+                // Its GL objects went with their context.  Drop it and load it again.
+                entry.mPins.decrementAndGet();
+                synchronized (this) {
+                    drop(name, entry, CacheStats.Eviction.CONTEXT_LOST);
+                }
+                continue;
+            }
+            // Only now is it a hit: a stale or failed entry means another load (or none).
+            mHits.incrementAndGet();
+            return new Handle<>(item, this, entry);
+        }
+    }
+
+    /// Run an entry's load on this thread and account for the result.
+    private Handle<V> load(String name, Entry<V> entry) {
+        mMisses.incrementAndGet();
+        entry.mPins.incrementAndGet();
+        long startNanos = System.nanoTime();
+        entry.mLoad.run();
+        V item;
+        try {
+            item = waitFor(entry.mLoad);
+        } catch (RuntimeException|Error e) {
+            mItems.remove(name, entry);         // the next acquire tries again
+            throw e;
+        }
+        if (item == null) {
+            mItems.remove(name, entry);
+            return null;
+        }
+
+        mLoadMicros.record((System.nanoTime() - startNanos) / 1000);
+
+        Sized sized = (item instanceof Sized) ? (Sized)item : null;
+        synchronized (this) {
+            entry.mItem = item;
+            entry.mGpuBytes = (sized != null) ? sized.getGpuBytes() : 0;
+            entry.mCpuBytes = (sized != null) ? sized.getCpuBytes() : 0;
+            entry.mLastUsed = mClock.incrementAndGet();
+            mLoads++;
+            if (entry.mGpuBytes + entry.mCpuBytes > mMaxBytes || mItems.get(name) != entry) {
+                // Too big -- making room would flush everything else and then drop it anyway.
+                // Or the cache was cleared while we were loading.  Either way it isn't kept,
+                // and goes when the Handles to it do.
+                mItems.remove(name, entry);
+                entry.mDropped = true;
+            } else {
+                entry.mResident = true;
+                mCount++;
+                mGpuBytes += entry.mGpuBytes;
+                mSizeBytes += entry.mGpuBytes + entry.mCpuBytes;
+                trimToBytes(mMaxBytes, CacheStats.Eviction.LRU);
+            }
+        }
+        return new Handle<>(item, this, entry);
+    }
+
+    /// @return  The result of a load, waiting for it if need be.  Rethrows what it threw.
+    private static <V> V waitFor(FutureTask<V> load) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return load.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;     // someone else's load can't be abandoned
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
-        item = itemSource.load();
-        mLruCache.put(name, item);
-        return item;
     }
 
     /**
-     * Extra-lame policy for eviction.  This is more than enough for our dumb sample tho.
+     * Drop items to get under a fraction of the budget that depends on how bad things are.
+     * The budget itself is unchanged, so the cache can fill up again once things get better.
+     * Pinned items stay.
      * @param level See ComponentCallbacks2.onTrimMemory()
      */
     public void onTrimMemory(int level) {
-        switch (level) {
-            case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
-            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
-                trimToSize(2);
-                break;
-            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
-            case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
-                trimToSize(1);
-                break;
-        }
-    }
-
-    // LRUCache is garbage before API 17, when trimToSize was introduced.
-    // Before that, I just evict everything and don't give a f#$!
-    private void trimToSize(int newSize) {
-        // Pet peeve: Don't use Build-VERSION_CODES.  Its an extra layer of indirection that
-        // obscures what we are doing, which is checking that we have at least API
-        // level 17.  VERSION_CODES is marketing, not useful.
-        if (Build.VERSION.SDK_INT >= 17) {
-            mLruCache.trimToSize(newSize);
+        float fraction = getTrimFraction(level);
+        synchronized (this) {
+            int count = mCount;
+            long bytes = mSizeBytes;
+            trimToBytes((long)(mMaxBytes * fraction), CacheStats.Eviction.TRIM);
+            Log.i(TAG, "onTrimMemory(" + level + ") : kept " + mCount + " of " + count +
+                    " items, " + mSizeBytes + " of " + bytes + " bytes");
+        }
+    }
+
+    /**
+     * A new GLES context was created.  Drop the items that belonged to the old one (their GL
+     * objects are gone), pinned or not, like clear() does.  They load again, in the new
+     * context, the next time they are acquired.  Call after GLESContext.onContextCreated(),
+     * on the GLES thread.
+     */
+    public synchronized void onContextCreated() {
+        int count = 0;
+        for (Map.Entry<String, Entry<V>> mapEntry : mItems.entrySet()) {
+            Entry<V> entry = mapEntry.getValue();
+            if (entry.mResident && isStale(entry)) {
+                drop(mapEntry.getKey(), entry, CacheStats.Eviction.CONTEXT_LOST);
+                count++;
+            }
+        }
+        Log.i(TAG, "onContextCreated : dropped " + count + " items, kept " + mCount);
+    }
+
+    /**
+     * The levels are thresholds (the docs say to compare with >=) so that levels added later
+     * still get something sensible.
+     * @param level See ComponentCallbacks2.onTrimMemory()
+     * @return  The fraction of the budget that the cache should shrink to.
+     */
+    public static float getTrimFraction(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            return 0.0f;        // next in line to be killed
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return 0.1f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return 0.5f;        // nothing is drawn until we come back
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.75f;
+        }
+        return 1.0f;
+    }
+
+    /**
+     * Change the budget.  Drops unpinned items right away if they no longer fit.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToBytes(mMaxBytes, CacheStats.Eviction.LRU);
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /// @return  What the cached items cost together, in bytes.  Only more than getMaxBytes()
+    ///          if the pinned ones are.
+    public synchronized long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /// @return  The part of getSizeBytes() that is GPU memory.
+    public synchronized long getGpuBytes() {
+        return mGpuBytes;
+    }
+
+    /// @return  The number of cached items.  Not counting the ones being loaded.
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return  True if the item is cached (loaded, and not dropped).  Doesn't pin it or count
+     *          as a use, so it can be gone by the time you acquire it.
+     */
+    public boolean contains(String name) {
+        Entry<V> entry = mItems.get(name);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (this) {
+            return entry.mResident && !isStale(entry);
+        }
+    }
+
+    /// @return  What the pinned items cost together.  The rest of the budget is for the others.
+    public synchronized long getPinnedBytes() {
+        long bytes = 0;
+        for (Entry<V> entry : mItems.values()) {
+            if (entry.mResident && entry.mPins.get() > 0) {
+                bytes += entry.mGpuBytes + entry.mCpuBytes;
+            }
+        }
+        return bytes;
+    }
+
+    /// @return  The number of cached items that are pinned.
+    public synchronized int getPinnedCount() {
+        int count = 0;
+        for (Entry<V> entry : mItems.values()) {
+            count += (entry.mResident && entry.mPins.get() > 0) ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * @return  A snapshot of the counters.  Cheap, but takes the lock: don't call it per frame.
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(mHits.get(), mMisses.get(), mLoads, mLoadMicros, mEvictions,
+                mCount, getPinnedCount(), mSizeBytes, mGpuBytes, mMaxBytes);
+    }
+
+    /**
+     * Drop everything, pinned or not.  Pinned items are released when their last Handle is.
+     * After the GLES context is lost this is safe too: the items know their objects are gone
+     * and release nothing.
+     */
+    public synchronized void clear() {
+        Iterator<Entry<V>> it = mItems.values().iterator();
+        while (it.hasNext()) {
+            Entry<V> entry = it.next();
+            it.remove();
+            entry.mDropped = true;
+            if (entry.mResident) {
+                remove(entry);
+                mEvictions[CacheStats.Eviction.EXPLICIT.ordinal()]++;
+                if (entry.mPins.compareAndSet(0, DEAD)) {
+                    release(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop least recently used unpinned items until they cost at most maxBytes.
+     * MATH ALERT: each drop is a scan of every entry, so trimming k items out of n is O(k*n).
+     * These caches hold tens of things and only trim on a miss or unpin, while hits stay
+     * lock-free, which an access-ordered list can't do.
+     * @param cause     What to count the drops as.
+     */
+    private void trimToBytes(long maxBytes, CacheStats.Eviction cause) {
+        while (mSizeBytes > maxBytes) {
+            Map.Entry<String, Entry<V>> oldest = null;
+            for (Map.Entry<String, Entry<V>> mapEntry : mItems.entrySet()) {
+                Entry<V> entry = mapEntry.getValue();
+                if (entry.mResident && entry.mPins.get() == 0 &&
+                        (oldest == null || entry.mLastUsed < oldest.getValue().mLastUsed)) {
+                    oldest = mapEntry;
+                }
+            }
+            if (oldest == null) {
+                return;         // everything left is pinned
+            }
+            Entry<V> entry = oldest.getValue();
+            if (!entry.mPins.compareAndSet(0, DEAD)) {
+                continue;       // pinned since we looked.  Look again.
+            }
+            mItems.remove(oldest.getKey(), entry);
+            entry.mDropped = true;
+            remove(entry);
+            mEvictions[cause.ordinal()]++;
+            release(entry);
+        }
+    }
+
+    /// Take an entry out of the map for good, and release it once it isn't pinned.
+    private void drop(String name, Entry<V> entry, CacheStats.Eviction cause) {
+        if (!mItems.remove(name, entry)) {
+            return;         // someone beat us to it
+        }
+        entry.mDropped = true;
+        if (entry.mResident) {
+            remove(entry);
+            mEvictions[cause.ordinal()]++;
+        }
+        if (entry.mPins.compareAndSet(0, DEAD)) {
+            release(entry);
+        }
+    }
+
+    /// @return  The Handles to name that are out or waiting for its load.  For tests.
+    int getPinCount(String name) {
+        Entry<V> entry = mItems.get(name);
+        return (entry != null) ? Math.max(0, entry.mPins.get()) : 0;
+    }
+
+    /// @return  True if the entry's item is a GL object from a lost context.  Only once it is loaded.
+    private static <V> boolean isStale(Entry<V> entry) {
+        return entry.mGeneration != ANY_GENERATION && entry.mGeneration != GLESContext.getGeneration();
+    }
+
+    /// @return  True if the entry was pinned, false if it is dead.
+    private static <V> boolean pin(Entry<V> entry) {
+        while (true) {
+            int pins = entry.mPins.get();
+            if (pins == DEAD) {
+                return false;
+            }
+            if (entry.mPins.compareAndSet(pins, pins + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /// Handle.release()
+    private void unpin(Entry<V> entry) {
+        if (entry.mPins.decrementAndGet() != 0) {
+            return;
+        }
+        if (entry.mDropped) {
+            // Nobody can pin it again (it's out of the map), but clear() may be racing us.
+            if (entry.mPins.compareAndSet(0, DEAD)) {
+                release(entry);
+            }
         } else {
-            mLruCache.evictAll();
+            // We may have been holding the cache over budget.
+            synchronized (this) {
+                trimToBytes(mMaxBytes, CacheStats.Eviction.LRU);
+            }
+        }
+    }
+
+    /// Take a resident entry out of the totals.
+    private void remove(Entry<V> entry) {
+        entry.mResident = false;
+        mCount--;
+        mGpuBytes -= entry.mGpuBytes;
+        mSizeBytes -= entry.mGpuBytes + entry.mCpuBytes;
+    }
+
+    /// Have a dead entry's item released on the GLES thread.
+    private static <V> void release(Entry<V> entry) {
+        if (entry.mItem instanceof Releasable) {
+            GLESContext.enqueueRelease((Releasable)entry.mItem);
         }
     }
 
-    public void clear() {
-        mLruCache.evictAll();
+    /// A load, and once it is done, the item and what it cost.
+    private static class Entry<V> {
+        Entry(final Source<V> source) {
+            mLoad = new FutureTask<>(new Callable<V>() {
+                @Override
+                public V call() {
+                    int generation = GLESContext.getGeneration();
+                    V item = source.load();
+                    mGeneration = (item instanceof Releasable) ? generation : ANY_GENERATION;
+                    return item;
+                }
+            });
+        }
+
+        final FutureTask<V> mLoad;
+        /// The GLES context the item belongs to, or ANY_GENERATION.  Written by the load,
+        /// so only read once it is done.
+        int mGeneration = ANY_GENERATION;
+        /// Handles out, or DEAD once dropped and released.  Never pinned again once DEAD.
+        final AtomicInteger mPins = new AtomicInteger();
+        /// mClock when last acquired.  Written without the lock, so only roughly in order.
+        volatile long mLastUsed;
+        /// Out of the map for good.  Its last Handle releases it.
+        volatile boolean mDropped = false;
+        // The rest is guarded by the Cache.
+        /// Counted in the totals (loaded, and not yet dropped)
+        boolean mResident = false;
+        V mItem;
+        long mGpuBytes;
+        long mCpuBytes;
     }
+
+    private static final String TAG = "Cache";
+    private static final int DEAD = -1;
+    /// Entry.mGeneration of items that aren't GL objects
+    private static final int ANY_GENERATION = -1;
+
+    /// Loaded and loading items.  Changed under the Cache lock, except by acquire.
+    private final ConcurrentHashMap<String, Entry<V>> mItems = new ConcurrentHashMap<>();
+    /// Ticks once per acquire, for least recently used
+    private final AtomicLong mClock = new AtomicLong();
+    private int mCount = 0;
+    private long mMaxBytes;
+    private long mSizeBytes = 0;
+    private long mGpuBytes = 0;
+    // Stats
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private long mLoads = 0;
+    private final long[] mEvictions = new long[CacheStats.Eviction.values().length];
+    private final Histogram mLoadMicros = new Histogram();
 }
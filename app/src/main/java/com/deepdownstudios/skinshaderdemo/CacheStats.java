@@ -0,0 +1,122 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import java.util.Locale;
+
+/**
+ * What a Cache has been up to: a snapshot from Cache.getStats().  For tuning the budgets,
+ * and for noticing when the assets grow.
+ */
+public class CacheStats {
+    /// Why an item was dropped.
+    public enum Eviction {
+        /// To fit the budget, after a load or unpin, or because the budget shrank.
+        LRU,
+        /// onTrimMemory
+        TRIM,
+        /// clear()
+        EXPLICIT,
+        /// A GL object whose context was lost.  See Cache.onContextCreated.
+        CONTEXT_LOST
+    }
+
+    CacheStats(long hits, long misses, long loads, Histogram loadMicros, long[] evictions,
+               int count, int pinnedCount, long sizeBytes, long gpuBytes, long maxBytes) {
+        mHits = hits;
+        mMisses = misses;
+        mLoads = loads;
+        mLoadMicrosP50 = loadMicros.getPercentile(0.5);
+        mLoadMicrosP95 = loadMicros.getPercentile(0.95);
+        mLoadMicrosMax = loadMicros.getMax();
+        mEvictions = evictions.clone();
+        mCount = count;
+        mPinnedCount = pinnedCount;
+        mSizeBytes = sizeBytes;
+        mGpuBytes = gpuBytes;
+        mMaxBytes = maxBytes;
+    }
+
+    /// @return Acquires that found their item, including ones that waited for another's load.
+    public long getHitCount() {
+        return mHits;
+    }
+
+    /// @return Acquires that had to load.
+    public long getMissCount() {
+        return mMisses;
+    }
+
+    /// @return Misses whose load returned an item.  The rest threw or returned null.
+    public long getLoadCount() {
+        return mLoads;
+    }
+
+    /// @return Hits over acquires, or 0 before the first acquire.
+    public double getHitRate() {
+        long acquires = mHits + mMisses;
+        return (acquires > 0) ? (double)mHits / acquires : 0.0;
+    }
+
+    /// Load times, in microseconds, of the loads that returned an item.  See Histogram.
+    public long getLoadMicrosP50() {
+        return mLoadMicrosP50;
+    }
+
+    public long getLoadMicrosP95() {
+        return mLoadMicrosP95;
+    }
+
+    public long getLoadMicrosMax() {
+        return mLoadMicrosMax;
+    }
+
+    public long getEvictionCount(Eviction cause) {
+        return mEvictions[cause.ordinal()];
+    }
+
+    /// The rest are Cache.getCount() and friends, when the snapshot was taken.
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getPinnedCount() {
+        return mPinnedCount;
+    }
+
+    public long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public long getGpuBytes() {
+        return mGpuBytes;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /// One line, for logcat or a dump.
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "hits %d misses %d (%.1f%% hit) loads %d, load ms p50 %.1f p95 %.1f max %.1f, " +
+                "evicted lru %d trim %d explicit %d context lost %d, resident %d items (%d pinned) %d KB (%d KB GPU) of %d KB",
+                mHits, mMisses, 100.0 * getHitRate(), mLoads,
+                mLoadMicrosP50 / 1000.0, mLoadMicrosP95 / 1000.0, mLoadMicrosMax / 1000.0,
+                getEvictionCount(Eviction.LRU), getEvictionCount(Eviction.TRIM),
+                getEvictionCount(Eviction.EXPLICIT), getEvictionCount(Eviction.CONTEXT_LOST),
+                mCount, mPinnedCount, mSizeBytes / 1024, mGpuBytes / 1024, mMaxBytes / 1024);
+    }
+
+    private final long mHits;
+    private final long mMisses;
+    private final long mLoads;
+    private final long mLoadMicrosP50;
+    private final long mLoadMicrosP95;
+    private final long mLoadMicrosMax;
+    private final long[] mEvictions;         // by Eviction.ordinal()
+    private final int mCount;
+    private final int mPinnedCount;
+    private final long mSizeBytes;
+    private final long mGpuBytes;
+    private final long mMaxBytes;
+}
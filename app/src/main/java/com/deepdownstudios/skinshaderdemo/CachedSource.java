@@ -27,16 +27,17 @@ public class CachedSource<V> extends Cache<V> implements Source<V> {
     }
 
     /**
-     * Fetch using the bound source.
+     * Acquire using the bound source.
      * @param name  Name of the entity to find in the cache or create.
-     * @return      The entity.
+     * @return      A Handle to the entity.  Release it when done.
      */
-    public V fetch(String name) {
-        return mCache.fetch(name, mSource);
+    public Handle<V> acquire(String name) {
+        return mCache.acquire(name, mSource);
     }
 
-    public V fetch(String name, Source<V> source) {
-        return mCache.fetch(name, source);      // ignores mSource
+    @Override
+    public Handle<V> acquire(String name, Source<V> source) {
+        return mCache.acquire(name, source);      // ignores mSource
     }
 
     @Override
@@ -49,10 +50,61 @@ public class CachedSource<V> extends Cache<V> implements Source<V> {
         mCache.onTrimMemory(level);
     }
 
+    @Override
+    public void onContextCreated() {
+        mCache.onContextCreated();
+    }
+
+    @Override
     public void clear() {
         mCache.clear();
     }
 
+    @Override
+    public void setMaxBytes(long maxBytes) {
+        mCache.setMaxBytes(maxBytes);
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return mCache.getMaxBytes();
+    }
+
+    @Override
+    public long getSizeBytes() {
+        return mCache.getSizeBytes();
+    }
+
+    @Override
+    public long getGpuBytes() {
+        return mCache.getGpuBytes();
+    }
+
+    @Override
+    public int getCount() {
+        return mCache.getCount();
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return mCache.contains(name);
+    }
+
+    @Override
+    public long getPinnedBytes() {
+        return mCache.getPinnedBytes();
+    }
+
+    @Override
+    public int getPinnedCount() {
+        return mCache.getPinnedCount();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return mCache.getStats();
+    }
+
     @SuppressWarnings("unused")
     public Cache<V> getCache() {
         return mCache;
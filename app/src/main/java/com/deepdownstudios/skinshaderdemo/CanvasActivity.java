@@ -14,6 +14,9 @@ import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 
 public class CanvasActivity extends Activity {
 
@@ -62,7 +65,10 @@ public class CanvasActivity extends Activity {
             mGLSurfaceView.setEGLContextClientVersion(2);           // GLES 2.0
             mRenderer = new CanvasRenderer(mGLSurfaceView, modelInfoView);
             mGLSurfaceView.setRenderer(mRenderer);
+            // Only draw when the renderer asks to (see RenderScheduler), not continuously.
+            mGLSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
             mGLSurfaceView.setOnClickListener(mRenderer);
+            mGLSurfaceView.setOnLongClickListener(mRenderer);
 
             FrameLayout contentView = new FrameLayout(this);
             contentView.addView(mGLSurfaceView);
@@ -131,6 +137,16 @@ public class CanvasActivity extends Activity {
         }
     }
 
+    /**
+     * "adb shell dumpsys activity com.deepdownstudios.skinshaderdemo" lands here.  Redirect it
+     * to keep a file of the cache stats.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        ModelData.dumpCacheStats(writer);
+    }
+
     @Override
     public void onWindowFocusChanged(boolean hasFocus) {
         getWindow().getDecorView().setSystemUiVisibility(
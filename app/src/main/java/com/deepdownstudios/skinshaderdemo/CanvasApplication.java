@@ -1,6 +1,7 @@
 package com.deepdownstudios.skinshaderdemo;
 
 import android.app.Application;
+import android.content.pm.PackageManager;
 
 import java.lang.ref.WeakReference;
 
@@ -21,4 +22,16 @@ public class CanvasApplication extends Application {
     public static CanvasApplication getInstance() {
         return thisApp.get();
     }
+
+    /**
+     * @return  When the app was last installed or updated, which is when its resources can
+     *          have changed.  0 if the package manager doesn't know.
+     */
+    public long getInstallTime() {
+        try {
+            return getPackageManager().getPackageInfo(getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
 }
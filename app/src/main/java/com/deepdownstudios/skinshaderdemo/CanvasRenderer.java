@@ -6,10 +6,16 @@ import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -17,14 +23,54 @@ import javax.microedition.khronos.opengles.GL10;
 /**
  * Describes this specific app's behavior.  We load and display one animated model
  * (AnimationRenderer) at a time.  On clicks, we move to the next
- * model/animation/blending mechanism.
+ * model/animation/blending mechanism.  Long clicks pause and unpause the animation.
+ *
+ * The GLSurfaceView should be in RENDERMODE_WHEN_DIRTY.  We ask for frames through a
+ * RenderScheduler, which only does so while the animation is playing or after a change.
+ *
+ * Clicks go through the specs in order, so we know which model comes next.  A ModelPrefetcher
+ * gets it ready in the background.
  */
-class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
+class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener, View.OnLongClickListener {
+    /// Cap on animation frames per second.  0 to draw as fast as the display refreshes.
+    private static final float MAX_ANIMATION_FPS = 0.0f;
 
     public CanvasRenderer(GLSurfaceView glSurfaceView, TextView modelInfoView) {
         mWeakGLSurfaceView = new WeakReference<>(glSurfaceView);
         mModelInfoView = modelInfoView;
         mAnimationRenderer = getAnimRenderer(0);
+        mScheduler = new RenderScheduler(new RenderScheduler.Host() {
+            @Override
+            public void requestRender() {
+                GLSurfaceView glSurfaceView = mWeakGLSurfaceView.get();
+                if (glSurfaceView != null) {
+                    glSurfaceView.requestRender();
+                }
+            }
+
+            @Override
+            public void scheduleTimer(long delayMillis) {
+                mMainHandler.postDelayed(mOnTimer, delayMillis);
+            }
+        });
+        mScheduler.setMaxAnimationFps(MAX_ANIMATION_FPS);
+        mScheduler.setAnimating(true);
+        mPrefetcher = new ModelPrefetcher(Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ModelPrefetcher");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);        // don't compete with drawing
+                return thread;
+            }
+        }), new ModelPrefetcher.Host() {
+            @Override
+            public void onImportDone() {
+                // Even if we are paused, we need a frame to finish the prefetch in.
+                mScheduler.invalidate();
+            }
+        });
+        mPrefetcher.prefetch(getNextModelRenderer(0));
 
         String label = mAnimationRenderer.mModelName + " : " +
                 mAnimationRenderer.mAnimName + " - " +
@@ -35,6 +81,15 @@ class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
 
 
     public void onDrawFrame(GL10 glUnused) {
+        mScheduler.onFrame(SystemClock.uptimeMillis());
+        releasePending();
+        // A slice of the uploads in flight.  Keep the frames coming, even when paused, until
+        // they are done.
+        ModelData.UPLOAD_QUEUE.runFrame();
+        if (ModelData.UPLOAD_QUEUE.isPending()) {
+            mScheduler.invalidate();
+        }
+
         /// This is run on the GLES thread but the mAnimationRenderer is sometimes
         // cleared... on the main thread.  We can still complete this method using the
         // old one but we should make sure that the we don't lose the reference.
@@ -51,8 +106,8 @@ class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
 
         // Ignore the passed-in GL10 interface, and use the GLES20
         // class's static methods instead.
-        GLES20.glClearColor(0.18f, 0.18f, 0.18f, 1.0f);
-        GLES20.glClear( GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
+        GLESContext.gl().glClearColor(0.18f, 0.18f, 0.18f, 1.0f);
+        GLESContext.gl().glClear( GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
 
         // TODO: Spin the camera or implement a trackball or something.
         float[] tempMat = new float[16];
@@ -65,25 +120,44 @@ class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
         Matrix.multiplyMV(tempLightPos, 0, tempMat, 0, mEyeLightPos, 0);
 
         animRenderer.onDrawFrame(mProjMatrix, mVMatrix, tempLightPos);
+
+        if (mContextCreatedMillis != 0) {
+            // How long getting back from the background takes, or starting up.
+            Log.i(TAG, "First frame " + (SystemClock.uptimeMillis() - mContextCreatedMillis) +
+                    " ms after the GLES context was created");
+            mContextCreatedMillis = 0;
+        }
+
+        // The frame is done.  Whatever time is left is the prefetcher's.
+        mPrefetcher.onIdle();
     }
 
     public void onSurfaceChanged(GL10 glUnused, int width, int height) {
-        GLES20.glViewport(0, 0, width, height);
+        GLESContext.gl().glViewport(0, 0, width, height);
         float ratio = (float)width / (float)height;
         Matrix.frustumM(mProjMatrix, 0, -ratio, ratio, -1, 1, 0.6f, 100.0f);
 
-        // We lost the GL context.  All of our cached GL objects are gone.
-        // We should also recreate the AnimationRenderer since it holds e.g.
-        // shader programs.
-        ModelData.TEXTURE_CACHE.clear();
-        ModelData.MODEL_CACHE.clear();
+        // Recreate the AnimationRenderer since it holds e.g. shader programs, which are
+        // gone if the context is new.  Its model comes from the cache: if the context is
+        // the same (a resize) that is a hit, otherwise it is reloaded from the DiskModelCache.
         setModelInfo(mClickCount);
+        mScheduler.invalidate();
     }
 
     public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
-        GLES20.glEnable( GLES20.GL_DEPTH_TEST );
-        GLES20.glDepthFunc( GLES20.GL_LEQUAL );
-        GLES20.glDepthMask( true );
+        mContextCreatedMillis = SystemClock.uptimeMillis();
+
+        // New context.  Whatever state we shadowed, any programs we compiled, and the
+        // cached models and textures belonged to the old one.
+        GLESContext.onContextCreated();
+        ModelData.MODEL_CACHE.onContextCreated();
+        ModelData.TEXTURE_CACHE.onContextCreated();
+        ModelData.SHADER_PROGRAMS.clear();
+        // Compile every shader program now so that switching animations never does.
+        ModelData.SHADER_PROGRAMS.warmUp();
+        GLESContext.gl().glEnable( GLES20.GL_DEPTH_TEST );
+        GLESContext.gl().glDepthFunc( GLES20.GL_LEQUAL );
+        GLESContext.gl().glDepthMask( true );
 
         mEyeLightPos[0] = 5.0f;
         mEyeLightPos[1] = 8.0f;
@@ -102,9 +176,45 @@ class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
         setModelInfo(mClickCount);
     }
 
+    @Override
+    public boolean onLongClick(View v) {
+        mPaused = !mPaused;
+        AnimationRenderer animRenderer = mAnimationRenderer;
+        if (animRenderer != null) {
+            animRenderer.setPaused(mPaused);
+        }
+        mScheduler.setAnimating(!mPaused);
+        return true;
+    }
+
     public void onTrimMemory(int level) {
         ModelData.MODEL_CACHE.onTrimMemory(level);
         ModelData.TEXTURE_CACHE.onTrimMemory(level);
+        StringWriter stats = new StringWriter();
+        ModelData.dumpCacheStats(new PrintWriter(stats));
+        Log.i(TAG, "After onTrimMemory(" + level + ") :\n" + stats);
+
+        // The caches only enqueued the GL deletes.  Don't wait for a frame to run them: when
+        // paused there may not be one for a long time.
+        GLSurfaceView glSurfaceView = mWeakGLSurfaceView.get();
+        if (glSurfaceView != null) {
+            glSurfaceView.queueEvent(new Runnable() {
+                @Override
+                public void run() {
+                    releasePending();
+                    VBOModel.releaseStagingBuffer();
+                }
+            });
+        }
+    }
+
+    /// Delete the GL objects that the caches dropped.  GLES thread only.
+    private void releasePending() {
+        int count = GLESContext.runPendingReleases();
+        GLStateTracker stateTracker = GLESContext.getStateTracker();
+        if (count > 0 && stateTracker != null) {
+            Log.i(TAG, "Released " + count + " cached items.  " + stateTracker.getObjectTracker());
+        }
     }
 
     @SuppressLint("SetTextI18n")
@@ -126,7 +236,14 @@ class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
                 }
 
                 mCallOnInit = true;
-                mAnimationRenderer = getAnimRenderer(index);
+                AnimationRenderer animRenderer = getAnimRenderer(index);
+                // If we saw this coming, the model is (or soon will be) ready.
+                mPrefetcher.onSwitched(animRenderer);
+                mPrefetcher.prefetch(getNextModelRenderer(index));
+                animRenderer.setPaused(mPaused);
+                mAnimationRenderer = animRenderer;
+                // Draw the new model even if we are paused.
+                mScheduler.invalidate();
                 // For thread safety, build this string before, not in, the post()-ed Runnable.
                 final String label = mAnimationRenderer.mModelName + " : " +
                         mAnimationRenderer.mAnimName + " - " +
@@ -167,6 +284,22 @@ class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
         throw new IllegalArgumentException("There must be a math bug here or index was too big.");
     }
 
+    /**
+     * @return  The renderer of the first spec after index that draws a different model --
+     *          the next one that a click could have to load.  Null if there is only one model.
+     */
+    private AnimationRenderer getNextModelRenderer(int index) {
+        AnimationRenderer current = getAnimRenderer(index);
+        int count = getAnimDescriptorCount();
+        for (int i=1; i<count; i++) {
+            AnimationRenderer next = getAnimRenderer(index + i);
+            if (!next.isSameModel(current)) {
+                return next;
+            }
+        }
+        return null;
+    }
+
     public int getAnimDescriptorCount() {
         int model = 0;
         int count = 0;
@@ -179,7 +312,6 @@ class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
 
     private static final ModelData.AnimModelSpec[] mAnimSpecs = ModelData.MODEL_ANIMS;
 
-    @SuppressWarnings("unused")
     private static String TAG = "CanvasRenderer";
 
     private int mClickCount = 0;
@@ -192,4 +324,16 @@ class CanvasRenderer implements GLSurfaceView.Renderer, View.OnClickListener {
     private float[] mVMatrix = new float[16];
     private float[] mEyeLightPos = new float[4];
     private boolean mCallOnInit = true;
+    private volatile boolean mPaused = false;
+    /// When onSurfaceCreated was called, until the first frame after it is drawn.  GLES thread.
+    private long mContextCreatedMillis = 0;
+    private final RenderScheduler mScheduler;
+    private final ModelPrefetcher mPrefetcher;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mOnTimer = new Runnable() {
+        @Override
+        public void run() {
+            mScheduler.onTimer(SystemClock.uptimeMillis());
+        }
+    };
 }
@@ -0,0 +1,73 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import com.deepdownstudios.skinshaderdemo.Bones.TransformStorage;
+
+import java.util.List;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Animation;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.RigidTransform;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Skeleton;
+
+/**
+ * Reference (CPU, double precision) skinning.  This is not what we render with -- it is
+ * the yardstick that the import-time tools measure the shaders' approximations against.
+ * It does linear (matrix) blending, like vert_shader_matrix.
+ */
+public final class CpuSkinning {
+    /**
+     * Bone transforms kept as RigidTransforms, straight from Bones.storeBoneTransforms.
+     */
+    public static class Palette implements TransformStorage {
+        /**
+         * Calculate bone pose.
+         * @param animation The animation to apply or null for the default pose.
+         * @param skeleton  The skeleton of the model to animate
+         * @param delta     The time in the animation to set as pose, in seconds.  Ignored if animation == null.
+         */
+        public Palette(Animation animation, Skeleton skeleton, double delta) {
+            Bones.storeBoneTransforms(animation, skeleton, delta, this);
+        }
+
+        @Override
+        public void allocateStorage(int nTransforms) {
+            mTforms = new RigidTransform[nTransforms];
+        }
+
+        @Override
+        public void storeTransform(int transformIdx, RigidTransform transform) {
+            mTforms[transformIdx] = transform;
+        }
+
+        public RigidTransform get(int boneIdx) {
+            return mTforms[boneIdx];
+        }
+
+        public int size() {
+            return mTforms.length;
+        }
+
+        private RigidTransform[] mTforms;
+    }
+
+    /**
+     * Linear-blend skin a model-space point.
+     * @param palette   The posed bone (skinning) transforms.
+     * @param bones     Indices of the bones that influence the point.
+     * @param weights   Weights of the bones.  Aligned with `bones`.
+     * @param pos       The model-space point in the bind pose.
+     * @param result    On output, the skinned model-space point.
+     */
+    public static void skinPoint(Palette palette, List<Integer> bones, List<Double> weights,
+                                 double[] pos, double[] result) {
+        result[0] = result[1] = result[2] = 0.0;
+        for (int i=0; i<bones.size(); i++) {
+            RigidTransform tform = palette.get(bones.get(i));
+            double weight = weights.get(i);
+            // MATH ALERT: (unitless) * model-space = model-space, same as the shader.
+            double[] rotated = tform.quat.transformPoint(pos);
+            for (int j=0; j<3; j++) {
+                result[j] += weight * (rotated[j] + tform.pos[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,616 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.content.res.Resources;
+import android.util.Log;
+import android.util.Pair;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Animation;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Bone;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Material;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.RigidTransform;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Skeleton;
+
+/**
+ * The second level under a Cache<Model>: imported models, stored in files so that the next
+ * run of the app can skip the importers.  Parsing the M. Chief XML takes seconds.  Reading it
+ * back from here is a memory map.
+ *
+ * A model's file is named for its importer, the importer's converter version, a hash of what
+ * the importer reads (see ModelImporter) and the salt, which should change whenever the app is
+ * installed.  Raw resources can't change without a reinstall but their resource IDs can, and
+ * the stored materials refer to textures by ID.  When a model is stored, the files of its
+ * older versions are deleted, and the least recently used files are deleted to keep the
+ * directory under its budget.  Use is the file's modified time, so it lasts between runs.
+ * Files are written to a temporary file first.  One left behind by a run that was killed
+ * mid-write isn't a model and doesn't count against the budget, so it is deleted when the
+ * next run makes its DiskModelCache.
+ *
+ * A file is a small header, the "meta" data (skeleton, animations, materials, ... written
+ * with a DataOutputStream) and then the vertex, index and LOD bone index buffers, 4 byte
+ * aligned, in native byte order.  Reading maps the file and the model's buffers are slices
+ * of the map, so they go straight to glBufferSubData without being copied.
+ *
+ * Thread safe.  A file that can't be read (it is damaged, or was written by another version
+ * of this class) is deleted and counts as a miss.
+ */
+public class DiskModelCache {
+    /// Bump this when the file layout changes.  Old files are then ignored and replaced.
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * @param dir       Where to keep the files.  Created if it doesn't exist.  Everything in
+     *                  it with our extensions is ours.  One DiskModelCache at a time per dir.
+     * @param maxBytes  Budget for the files in dir.
+     * @param salt      Goes into every file name.  See the class comment.
+     */
+    public DiskModelCache(File dir, long maxBytes, long salt) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+        mSalt = salt;
+        deleteTempFiles();
+    }
+
+    /**
+     * A Source<Model> that goes through this cache.  Put this under a CachedSource.
+     */
+    public class StoredSource implements Source<Model> {
+        private StoredSource(ModelImporter importer) {
+            mImporter = importer;
+        }
+
+        @Override
+        public Model load() {
+            return mImporter.upload(importModel());
+        }
+
+        /// The slow half of load(), that doesn't need GLES.  Any thread.
+        public ByteBufferModel importModel() {
+            return DiskModelCache.this.load(mImporter);
+        }
+
+        public ModelImporter getImporter() {
+            return mImporter;
+        }
+
+        private final ModelImporter mImporter;
+    }
+
+    public StoredSource wrap(ModelImporter importer) {
+        return new StoredSource(importer);
+    }
+
+    /**
+     * Read the importer's model back, or import it and store it for next time.
+     */
+    public ByteBufferModel load(ModelImporter importer) {
+        File file = new File(mDir, getFileName(importer));
+        if (file.exists()) {
+            ByteBufferModel ret = null;
+            try {
+                ret = read(file);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Dropping unreadable stored model " + file.getName(), e);
+            }
+            if (ret != null) {
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(System.currentTimeMillis());
+                mHits.incrementAndGet();
+                return ret;
+            }
+            delete(file);
+        }
+
+        mMisses.incrementAndGet();
+        ByteBufferModel ret = importer.importModel();
+        store(file, importer.getName(), ret);
+        return ret;
+    }
+
+    /// Delete every stored model.  A model being stored right now fails to, and is logged.
+    public synchronized void clear() {
+        for (File file : listFiles()) {
+            delete(file);
+        }
+        deleteTempFiles();
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToBytes(maxBytes, null);
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /// @return The size of the stored models.
+    public synchronized long getSizeBytes() {
+        long ret = 0;
+        for (File file : listFiles()) {
+            ret += file.length();
+        }
+        return ret;
+    }
+
+    /// @return The number of stored models.
+    public synchronized int getCount() {
+        return listFiles().length;
+    }
+
+    /// @return The number of loads that read a stored model.
+    public int getHitCount() {
+        return mHits.get();
+    }
+
+    /// @return The number of loads that had to import.
+    public int getMissCount() {
+        return mMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits " + getHitCount() + " misses " + getMissCount() + ", stored " + getCount() +
+                " models " + getSizeBytes() / 1024 + " KB of " + getMaxBytes() / 1024 + " KB";
+    }
+
+    /**
+     * Hash resource files for ModelImporter.getContentHash.
+     * @param params    The importer's parameters, as a string.  Hashed with the files.
+     */
+    public static long hashResources(Resources resources, String params, int... resourceIds) {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        for (int resourceId : resourceIds) {
+            InputStream stream = resources.openRawResource(resourceId);
+            try {
+                try {
+                    int nRead;
+                    while ((nRead = stream.read(buffer)) != -1) {
+                        crc.update(buffer, 0, nRead);
+                    }
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to hash resource file: " + resourceId, e);
+            }
+        }
+        crc.update(params.getBytes());
+        return crc.getValue();
+    }
+
+    private String getFileName(ModelImporter importer) {
+        return importer.getName() + "-v" + importer.getConverterVersion() + "-" +
+                Long.toHexString(importer.getContentHash()) + "-" + Long.toHexString(mSalt) + EXTENSION;
+    }
+
+    /**
+     * Write a model to file, through a temporary file so that readers never see half of it.
+     * Then delete the model's other versions and trim to the budget.  Failures are logged:
+     * the model just isn't stored.
+     */
+    private void store(File file, String importerName, ByteBufferModel bbModel) {
+        File tempFile = new File(mDir, file.getName() + TEMP_EXTENSION + Thread.currentThread().getId());
+        try {
+            if (!mDir.isDirectory() && !mDir.mkdirs() && !mDir.isDirectory()) {
+                throw new IOException("Failed to create " + mDir);
+            }
+            write(tempFile, bbModel);
+            if (tempFile.length() > getMaxBytes()) {
+                Log.w(TAG, "Not storing " + file.getName() + ", it is bigger than the budget");
+                delete(tempFile);
+                return;
+            }
+            synchronized (this) {
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Failed to rename " + tempFile + " to " + file);
+                }
+                String stalePrefix = importerName + "-v";
+                for (File other : listFiles()) {
+                    if (other.getName().startsWith(stalePrefix) && !other.equals(file)) {
+                        Log.i(TAG, "Deleting stale stored model " + other.getName());
+                        delete(other);
+                    }
+                }
+                trimToBytes(mMaxBytes, file);
+            }
+            Log.i(TAG, "Stored " + file.getName() + " : " + file.length() + " bytes");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to store model " + file.getName(), e);
+            delete(tempFile);
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the rest fit in maxBytes.
+     * @param keep  A file that stays no matter what.  May be null.
+     */
+    private synchronized void trimToBytes(long maxBytes, File keep) {
+        File[] files = listFiles();
+        final long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        long total = 0;
+        for (int i=0; i<files.length; i++) {
+            // lastModified is a stat(), and sort would call it O(n log n) times.
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+            total += files[i].length();
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                long diff = lastModified[lhs] - lastModified[rhs];
+                return (diff < 0) ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i=0; i<order.length && total > maxBytes; i++) {
+            File file = files[order[i]];
+            if (file.equals(keep)) {
+                continue;
+            }
+            total -= file.length();
+            Log.i(TAG, "Evicting stored model " + file.getName());
+            delete(file);
+        }
+    }
+
+    private File[] listFiles() {
+        File[] ret = mDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(EXTENSION);
+            }
+        });
+        return (ret != null) ? ret : new File[0];
+    }
+
+    /// Delete the temporary files of store()s that never finished.
+    private synchronized void deleteTempFiles() {
+        File[] files = mDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().contains(EXTENSION + TEMP_EXTENSION);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Log.i(TAG, "Deleting unfinished stored model " + file.getName());
+            delete(file);
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+
+    private static void write(File file, ByteBufferModel bbModel) throws IOException {
+        // The buffers, in the order they follow the meta data.
+        List<ByteBuffer> buffers = new ArrayList<>();
+        ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+        DataOutputStream meta = new DataOutputStream(metaBytes);
+
+        int nMeshes = bbModel.mVertByteBuffers.size();
+        meta.writeInt(nMeshes);
+        for (int i=0; i<nMeshes; i++) {
+            buffers.add(bbModel.mVertByteBuffers.get(i));
+            buffers.add(asByteBuffer(bbModel.mFaceShortBuffers.get(i)));
+            ByteBuffer[] lodBuffers = bbModel.mLodBoneIndexBuffers.get(i);
+            buffers.addAll(Arrays.asList(lodBuffers));
+
+            meta.writeInt(bbModel.mVertByteBuffers.get(i).capacity());
+            meta.writeInt(bbModel.mFaceShortBuffers.get(i).capacity());
+            meta.writeInt(lodBuffers.length);
+            for (ByteBuffer lodBuffer : lodBuffers) {
+                meta.writeInt(lodBuffer.capacity());
+            }
+            meta.writeInt(bbModel.mMaxInfluences.get(i));
+            meta.writeInt(bbModel.mRigidBones.get(i));
+            writeMaterial(meta, bbModel.mMaterials.get(i));
+        }
+        writeFloats(meta, bbModel.mBoneBounds);
+        writeInts(meta, bbModel.mInfluenceClassVertCounts);
+        writeSkeleton(meta, bbModel.mSkeleton);
+        meta.writeInt(bbModel.mSkeletonLods.size());
+        for (SkeletonLod lod : bbModel.mSkeletonLods) {
+            writeInts(meta, lod.mBones);
+            writeInts(meta, lod.mRemap);
+            writeFloats(meta, lod.mBoneBounds);
+        }
+        meta.flush();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(getByteOrderTag()).putInt(metaBytes.size());
+            header.flip();
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(metaBytes.toByteArray()));
+            for (ByteBuffer buffer : buffers) {
+                writeFully(channel, ByteBuffer.allocate(align(channel.position()) - (int)channel.position()));
+                ByteBuffer view = buffer.duplicate();
+                view.position(0);
+                view.limit(view.capacity());
+                writeFully(channel, view);
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static ByteBufferModel read(File file) throws IOException {
+        ByteBuffer map;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            // The map outlives the channel.
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+        if (map.capacity() < HEADER_BYTES || map.getInt() != MAGIC || map.getInt() != FORMAT_VERSION ||
+                map.getInt() != getByteOrderTag()) {
+            throw new IOException("Not a stored model of this format");
+        }
+        int nMetaBytes = map.getInt();
+        if (nMetaBytes < 0 || nMetaBytes > map.remaining()) {
+            throw new IOException("Bad stored model meta data size " + nMetaBytes);
+        }
+        byte[] metaBytes = new byte[nMetaBytes];
+        map.get(metaBytes);
+        DataInputStream meta = new DataInputStream(new ByteArrayInputStream(metaBytes));
+
+        ByteBufferModel ret = new ByteBufferModel();
+        int nMeshes = meta.readInt();
+        for (int i=0; i<nMeshes; i++) {
+            int vertBytes = meta.readInt();
+            int nIndices = meta.readInt();
+            ret.mVertByteBuffers.add(slice(map, vertBytes));
+            ret.mFaceShortBuffers.add(slice(map, nIndices * BYTES_PER_SHORT).asShortBuffer());
+            ByteBuffer[] lodBuffers = new ByteBuffer[meta.readInt()];
+            for (int lod=0; lod<lodBuffers.length; lod++) {
+                lodBuffers[lod] = slice(map, meta.readInt());
+            }
+            ret.mLodBoneIndexBuffers.add(lodBuffers);
+            ret.mMaxInfluences.add(meta.readInt());
+            ret.mRigidBones.add(meta.readInt());
+            ret.mMaterials.add(readMaterial(meta));
+        }
+        ret.mBoneBounds = readFloats(meta);
+        ret.mInfluenceClassVertCounts = readInts(meta);
+        ret.mSkeleton = readSkeleton(meta);
+        int nLods = meta.readInt();
+        ret.mSkeletonLods = new ArrayList<>(nLods);
+        for (int lod=0; lod<nLods; lod++) {
+            ret.mSkeletonLods.add(new SkeletonLod(readInts(meta), readInts(meta), readFloats(meta)));
+        }
+        if (meta.available() != 0) {
+            throw new IOException("Trailing data in stored model meta data");
+        }
+        return ret;
+    }
+
+    /// @return The next length bytes of map, aligned, as a native order buffer.
+    private static ByteBuffer slice(ByteBuffer map, int length) {
+        map.position(align(map.position()));
+        ByteBuffer view = map.duplicate();
+        view.limit(view.position() + length);
+        map.position(view.limit());
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer asByteBuffer(ShortBuffer shorts) {
+        ByteBuffer ret = ByteBuffer.allocate(shorts.capacity() * BYTES_PER_SHORT).order(ByteOrder.nativeOrder());
+        ShortBuffer view = shorts.duplicate();
+        view.clear();
+        ret.asShortBuffer().put(view);
+        return ret;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int align(long offset) {
+        return (int)((offset + ALIGNMENT - 1) & ~(ALIGNMENT - 1));
+    }
+
+    /// The buffers are stored in native order, so a file is only good on a device of the same order.
+    private static int getByteOrderTag() {
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0;
+    }
+
+    private static void writeMaterial(DataOutputStream out, Material material) throws IOException {
+        out.writeInt(material.textureResourceId);
+        out.writeInt(material.bumpResourceId);
+        writeFloats(out, material.ambient);
+        writeFloats(out, material.diffuse);
+        writeFloats(out, material.specular);
+        writeFloats(out, material.emissive);
+        out.writeFloat(material.shininess);
+        out.writeFloat(material.transparency);
+    }
+
+    private static Material readMaterial(DataInputStream in) throws IOException {
+        Material ret = new Material();
+        ret.textureResourceId = in.readInt();
+        ret.bumpResourceId = in.readInt();
+        ret.ambient = readFloats(in);
+        ret.diffuse = readFloats(in);
+        ret.specular = readFloats(in);
+        ret.emissive = readFloats(in);
+        ret.shininess = in.readFloat();
+        ret.transparency = in.readFloat();
+        return ret;
+    }
+
+    /**
+     * The bones and animations.  The inverse bind pose isn't stored: it is recomputed from the
+     * bones like the importers do.
+     */
+    private static void writeSkeleton(DataOutputStream out, Skeleton skeleton) throws IOException {
+        out.writeInt(skeleton.bones.size());
+        for (Bone bone : skeleton.bones) {
+            writeString(out, bone.name);
+            out.writeInt(bone.parentIdx);
+            writeTransform(out, bone.transform);
+        }
+        out.writeInt(skeleton.animations.size());
+        for (Animation animation : skeleton.animations) {
+            writeString(out, animation.name);
+            out.writeDouble(animation.duration);
+            out.writeInt(animation.keyframes.length);
+            for (List<Pair<Double, RigidTransform>> channel : animation.keyframes) {
+                // Bones without keyframes have a null channel.
+                out.writeInt(channel != null ? channel.size() : -1);
+                if (channel == null) {
+                    continue;
+                }
+                for (Pair<Double, RigidTransform> keyframe : channel) {
+                    out.writeDouble(keyframe.first);
+                    writeTransform(out, keyframe.second);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Skeleton readSkeleton(DataInputStream in) throws IOException {
+        Skeleton ret = new Skeleton();
+        int nBones = in.readInt();
+        for (int i=0; i<nBones; i++) {
+            Bone bone = new Bone();
+            bone.name = readString(in);
+            bone.parentIdx = in.readInt();
+            bone.transform = readTransform(in);
+            ret.bones.add(bone);
+        }
+        ret.invBindPose = Bones.calculateInvBindPose(ret.bones);
+        int nAnimations = in.readInt();
+        for (int i=0; i<nAnimations; i++) {
+            Animation animation = new Animation();
+            animation.name = readString(in);
+            animation.duration = in.readDouble();
+            animation.keyframes = new ArrayList[in.readInt()];
+            for (int bone=0; bone<animation.keyframes.length; bone++) {
+                int nKeyframes = in.readInt();
+                if (nKeyframes == -1) {
+                    continue;
+                }
+                ArrayList<Pair<Double, RigidTransform>> channel = new ArrayList<>(nKeyframes);
+                for (int key=0; key<nKeyframes; key++) {
+                    double time = in.readDouble();
+                    channel.add(new Pair<>(time, readTransform(in)));
+                }
+                animation.keyframes[bone] = channel;
+            }
+            ret.animations.add(animation);
+        }
+        return ret;
+    }
+
+    private static void writeTransform(DataOutputStream out, RigidTransform transform) throws IOException {
+        for (double value : transform.pos) {
+            out.writeDouble(value);
+        }
+        for (double value : transform.quat.values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static RigidTransform readTransform(DataInputStream in) throws IOException {
+        RigidTransform ret = new RigidTransform();
+        for (int i=0; i<ret.pos.length; i++) {
+            ret.pos[i] = in.readDouble();
+        }
+        for (int i=0; i<ret.quat.values.length; i++) {
+            ret.quat.values[i] = in.readDouble();
+        }
+        return ret;
+    }
+
+    /// Strings may be null.
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] ret = new int[in.readInt()];
+        for (int i=0; i<ret.length; i++) {
+            ret[i] = in.readInt();
+        }
+        return ret;
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static float[] readFloats(DataInputStream in) throws IOException {
+        float[] ret = new float[in.readInt()];
+        for (int i=0; i<ret.length; i++) {
+            ret[i] = in.readFloat();
+        }
+        return ret;
+    }
+
+    private static final String TAG = "DiskModelCache";
+    private static final String EXTENSION = ".model";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int MAGIC = 0x42424d44;       // "BBMD"
+    private static final int HEADER_BYTES = 4 * 4;
+    /// Buffers start on this many bytes, so their float views are aligned.
+    private static final int ALIGNMENT = 4;
+    private static final int BYTES_PER_SHORT = 2;
+
+    private final File mDir;
+    private final long mSalt;
+    private long mMaxBytes;
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+}
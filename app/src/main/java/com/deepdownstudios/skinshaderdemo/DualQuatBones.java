@@ -1,6 +1,5 @@
 package com.deepdownstudios.skinshaderdemo;
 
-import android.opengl.GLES20;
 
 import com.deepdownstudios.skinshaderdemo.Bones.GLSLBones;
 
@@ -20,12 +19,59 @@ public class DualQuatBones implements GLSLBones, TransformStorage {
      * @param delta     The time in the animation to set as pose, in seconds.  Ignored if animation == null.
      */
     public DualQuatBones(Animation animation, Skeleton skeleton, double delta) {
-        Bones.storeBoneTransforms(animation, skeleton, delta, this);
+        this(animation, skeleton, delta, null);
+    }
+
+    /**
+     * Calculate the pose of some of the bones.  See Bones.storeBoneTransforms.
+     * @param boneSubset    The bones to pose, or null for all.  Bone i here is boneSubset[i].
+     */
+    public DualQuatBones(Animation animation, Skeleton skeleton, double delta, int[] boneSubset) {
+        Bones.storeBoneTransforms(animation, skeleton, delta, boneSubset, this);
     }
 
     @Override
     public void postToGLSLUniform(int boneArrayId) {
-        GLES20.glUniform4fv(boneArrayId, mTforms.length / 4, mTforms, 0);
+        GLESContext.gl().glUniform4fv(boneArrayId, mTforms.length / 4, mTforms, 0);
+    }
+
+    @Override
+    public void getBoneMatrix(int boneIdx, float[] result, int offset) {
+        // Same as dualQuatToMat in the shader.  Remember we are in GLSL order here (w last).
+        int base = boneIdx*8;
+        double x0 = mTforms[base], y0 = mTforms[base+1], z0 = mTforms[base+2], w0 = mTforms[base+3];
+        double xe = mTforms[base+4], ye = mTforms[base+5], ze = mTforms[base+6], we = mTforms[base+7];
+        double t0 = 2.0 * (-we*x0 + xe*w0 - ye*z0 + ze*y0);
+        double t1 = 2.0 * (-we*y0 + xe*z0 + ye*w0 - ze*x0);
+        double t2 = 2.0 * (-we*z0 - xe*y0 + ye*x0 + ze*w0);
+        Bones.storeRigidMatrix(w0, x0, y0, z0, t0, t1, t2, result, offset);
+    }
+
+    @Override
+    public void lerp(GLSLBones a, GLSLBones b, float t) {
+        float[] aTforms = ((DualQuatBones)a).mTforms;
+        float[] bTforms = ((DualQuatBones)b).mTforms;
+        if (mTforms == null || mTforms.length != aTforms.length) {
+            mTforms = new float[aTforms.length];
+        }
+        for (int base=0; base<aTforms.length; base+=8) {
+            // MATH ALERT: q and -q are the same rotation but blending q with -q goes through
+            // zero.  Blend b's dual quat with whichever sign is closer to a's.
+            float dot = 0.0f;
+            for (int i=0; i<4; i++) {
+                dot += aTforms[base+i] * bTforms[base+i];
+            }
+            float bSign = (dot >= 0.0f) ? 1.0f : -1.0f;
+            for (int i=0; i<8; i++) {
+                mTforms[base+i] = (1.0f-t)*aTforms[base+i] + t*bSign*bTforms[base+i];
+            }
+            // Renormalize, like the shader does after blending.  getBoneMatrix doesn't.
+            float realLength = (float)Math.sqrt(mTforms[base]*mTforms[base] + mTforms[base+1]*mTforms[base+1] +
+                    mTforms[base+2]*mTforms[base+2] + mTforms[base+3]*mTforms[base+3]);
+            for (int i=0; i<8; i++) {
+                mTforms[base+i] /= realLength;
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,182 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.util.Log;
+
+import com.deepdownstudios.util.Util;
+
+/**
+ * Holds a frame time budget by trading quality for time.  Scene reports how long each frame's
+ * pose, upload and draw phases took.  Once a window of frames has been seen, if their average
+ * is over budget the governor drops one quality level.  If it is comfortably under
+ * budget (see HEADROOM), it takes one back.  The window is then cleared, so the next
+ * decision only sees frames at the new level.
+ *
+ * Each level turns one more quality knob, in the order of STEPS -- the ones that are hardest
+ * to see first:
+ *   ANIMATION_RATE  Doubles the bias on AnimationLod (instances are posed less often)
+ *   SKINNING        Doubles the bias on SkinningLod (cheaper skinning shaders sooner)
+ *   SKELETON        Doubles the bias on skeleton LOD (fewer bones sooner).  This is what we
+ *                   have instead of mesh LOD: it is the per-vertex cost knob of a VBOModel.
+ *   MAX_ANIMATED    Halves the fraction of visible instances that can be posed per frame.
+ *                   The others hold their last pose until their turn comes round.
+ * A bias of b makes the LODs treat instances as if they were b times smaller on screen.
+ *
+ * Only CPU time is measured.  GPU time shows up as time blocked in eglSwapBuffers, which
+ * is outside of Scene, so a GPU-bound frame looks cheap to the governor.
+ */
+public class FrameGovernor {
+    public enum Knob { ANIMATION_RATE, SKINNING, SKELETON, MAX_ANIMATED }
+
+    /// What each level turns, in order.  Level n has the first n steps applied.
+    public static final Knob[] STEPS = {
+            Knob.ANIMATION_RATE, Knob.SKINNING, Knob.SKELETON,
+            Knob.ANIMATION_RATE, Knob.SKINNING, Knob.SKELETON,
+            Knob.MAX_ANIMATED, Knob.MAX_ANIMATED, Knob.MAX_ANIMATED
+    };
+    /// Frames averaged for each decision
+    public static final int DEFAULT_WINDOW = 30;
+    /// Only improve quality when frames take less than this fraction of the budget.  Below 1
+    /// so that a level that is barely under budget isn't left and re-entered over and over.
+    public static final float HEADROOM = 0.7f;
+
+    /**
+     * @param budgetMillis  Target CPU time of Scene.draw(), in milliseconds.
+     */
+    public FrameGovernor(float budgetMillis) {
+        this(budgetMillis, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param budgetMillis  Target CPU time of Scene.draw(), in milliseconds.
+     * @param window        Number of frames to average before each decision.
+     */
+    public FrameGovernor(float budgetMillis, int window) {
+        Util.Assert(budgetMillis > 0.0f && window > 0);
+        mBudgetNanos = (long)(budgetMillis * 1e6);
+        mPoseNanos = new long[window];
+        mUploadNanos = new long[window];
+        mDrawNanos = new long[window];
+    }
+
+    /**
+     * Report the time taken by the phases of a frame.  Call once per frame.
+     * @return  True if the quality level changed.
+     */
+    public boolean onFrame(long poseNanos, long uploadNanos, long drawNanos) {
+        mPoseNanos[mFrameCount] = poseNanos;
+        mUploadNanos[mFrameCount] = uploadNanos;
+        mDrawNanos[mFrameCount] = drawNanos;
+        mFrameCount++;
+        if (mFrameCount < mPoseNanos.length) {
+            return false;
+        }
+
+        // A full window.  Decide, then start a new one.
+        mAveragePoseNanos = average(mPoseNanos);
+        mAverageUploadNanos = average(mUploadNanos);
+        mAverageDrawNanos = average(mDrawNanos);
+        mFrameCount = 0;
+        long total = mAveragePoseNanos + mAverageUploadNanos + mAverageDrawNanos;
+        int level = mLevel;
+        if (total > mBudgetNanos && mLevel < STEPS.length) {
+            mLevel++;
+            mDowngradeCount++;
+        } else if (total < mBudgetNanos * HEADROOM && mLevel > 0) {
+            mLevel--;
+            mUpgradeCount++;
+        }
+        if (level == mLevel) {
+            return false;
+        }
+        Log.i(TAG, "Frames took " + total / 1e6 + "ms of " + mBudgetNanos / 1e6 + "ms.  Quality level " +
+                level + " -> " + mLevel);
+        return true;
+    }
+
+    /// @return How many of STEPS are applied.  0 is full quality.
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /// @return How much smaller AnimationLod should think instances are.  1 or more.
+    public float getAnimationRateBias() {
+        return (float)Math.pow(2.0, countSteps(Knob.ANIMATION_RATE));
+    }
+
+    /// @return How much smaller SkinningLod should think instances are.  1 or more.
+    public float getSkinningBias() {
+        return (float)Math.pow(2.0, countSteps(Knob.SKINNING));
+    }
+
+    /// @return How much smaller the skeleton LOD should think instances are.  1 or more.
+    public float getSkeletonBias() {
+        return (float)Math.pow(2.0, countSteps(Knob.SKELETON));
+    }
+
+    /// @return The fraction of visible instances that may be posed per frame.  1 or less.
+    public float getAnimatedFraction() {
+        return (float)Math.pow(0.5, countSteps(Knob.MAX_ANIMATED));
+    }
+
+    /// @return The average pose time of the last full window, in milliseconds.
+    public float getAveragePoseMillis() {
+        return mAveragePoseNanos / 1e6f;
+    }
+
+    /// @return The average upload time of the last full window, in milliseconds.
+    public float getAverageUploadMillis() {
+        return mAverageUploadNanos / 1e6f;
+    }
+
+    /// @return The average draw time of the last full window, in milliseconds.
+    public float getAverageDrawMillis() {
+        return mAverageDrawNanos / 1e6f;
+    }
+
+    /// @return The number of times quality was lowered since the governor was created.
+    public int getDowngradeCount() {
+        return mDowngradeCount;
+    }
+
+    /// @return The number of times quality was raised since the governor was created.
+    public int getUpgradeCount() {
+        return mUpgradeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "level " + mLevel + " (pose " + getAveragePoseMillis() + "ms, upload " +
+                getAverageUploadMillis() + "ms, draw " + getAverageDrawMillis() + "ms)";
+    }
+
+    private int countSteps(Knob knob) {
+        int count = 0;
+        for (int i=0; i<mLevel; i++) {
+            count += (STEPS[i] == knob) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static long average(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total / values.length;
+    }
+
+    private static final String TAG = "FrameGovernor";
+
+    private final long mBudgetNanos;
+    /// The current window.  The first mFrameCount entries are valid.
+    private final long[] mPoseNanos;
+    private final long[] mUploadNanos;
+    private final long[] mDrawNanos;
+    private int mFrameCount = 0;
+    private long mAveragePoseNanos = 0;
+    private long mAverageUploadNanos = 0;
+    private long mAverageDrawNanos = 0;
+    private int mLevel = 0;
+    private int mDowngradeCount = 0;
+    private int mUpgradeCount = 0;
+}
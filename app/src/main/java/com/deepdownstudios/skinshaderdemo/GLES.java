@@ -0,0 +1,64 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/**
+ * The GLES 2.0 calls that this app makes, as an interface instead of the static methods
+ * in android.opengl.GLES20.  Rendering code gets the current implementation from
+ * GLESContext.gl().  On a device that is AndroidGLES, which just forwards to GLES20.
+ * Tests (and tools) can swap in something that records or counts calls instead, which is
+ * the only way to measure things like draw calls and state changes without a device.
+ * The methods are named and ordered exactly like their GLES20 counterparts.
+ * All methods require an active GLES context on the GLES thread.
+ */
+public interface GLES {
+    void glActiveTexture(int texture);
+    void glAttachShader(int program, int shader);
+    void glBindBuffer(int target, int buffer);
+    void glBindTexture(int target, int texture);
+    void glBufferData(int target, int size, Buffer data, int usage);
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+    void glClear(int mask);
+    void glClearColor(float red, float green, float blue, float alpha);
+    void glCompileShader(int shader);
+    int glCreateProgram();
+    int glCreateShader(int type);
+    void glCullFace(int mode);
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+    void glDeleteProgram(int program);
+    void glDeleteShader(int shader);
+    void glDeleteTextures(int n, int[] textures, int offset);
+    void glDepthFunc(int func);
+    void glDepthMask(boolean flag);
+    void glDisable(int cap);
+    void glDisableVertexAttribArray(int index);
+    void glDrawElements(int mode, int count, int type, int offset);
+    void glEnable(int cap);
+    void glEnableVertexAttribArray(int index);
+    void glGenBuffers(int n, int[] buffers, int offset);
+    void glGenTextures(int n, int[] textures, int offset);
+    void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset,
+                           int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset);
+    int glGetAttribLocation(int program, String name);
+    int glGetError();
+    String glGetProgramInfoLog(int program);
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+    String glGetShaderInfoLog(int shader);
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+    int glGetUniformLocation(int program, String name);
+    void glLinkProgram(int program);
+    void glShaderSource(int shader, String string);
+    void glTexParameteri(int target, int pname, int param);
+    void glUniform1i(int location, int x);
+    void glUniform3fv(int location, int count, float[] v, int offset);
+    void glUniform4fv(int location, int count, float[] v, int offset);
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+    void glUseProgram(int program);
+    void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset);
+    void glViewport(int x, int y, int width, int height);
+
+    /// android.opengl.GLUtils.texImage2D
+    void texImage2D(int target, int level, Bitmap bitmap, int border);
+}
@@ -0,0 +1,134 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the GLES implementation that all rendering code goes through.  There is one
+ * GLES context (and one GLES thread) in this app so this is static, like the caches
+ * in ModelData.
+ * By default that is AndroidGLES behind a GLStateTracker, so redundant state changes
+ * never reach the driver.
+ * Also keeps the Releasables that are waiting to be deleted on the GLES thread, and which
+ * context (generation) GL objects belong to.
+ */
+public final class GLESContext {
+    /// Never call glGetError.
+    public static final int VALIDATE_NONE = 0;
+    /// Check for GL errors when loading and uploading (shaders, buffers, textures) but
+    /// not while drawing.  The default.
+    public static final int VALIDATE_LOAD = 1;
+    /// Also check after the calls made while drawing.  glGetError is a driver round-trip
+    /// so this is slow -- use it to track down a GL error, not to measure anything.
+    public static final int VALIDATE_DRAW = 2;
+
+    /// Null if the installed GLES does not track state.
+    private static GLStateTracker sStateTracker = new GLStateTracker(new AndroidGLES());
+    private static GLES sGL = sStateTracker;
+    private static int sValidationLevel = VALIDATE_LOAD;
+    /// Bumped every time the context is (re)created.  Volatile: read on any thread.
+    private static volatile int sGeneration = 0;
+    private static final List<Releasable> sPendingReleases = new ArrayList<>();
+
+    /**
+     * @return  The GLES implementation to make calls with.  Only call its methods on the
+     *          GLES thread.
+     */
+    public static GLES gl() {
+        return sGL;
+    }
+
+    /**
+     * Replace the GLES implementation.  This is for tests and tools (eg a recording or
+     * counting stand-in).
+     */
+    public static void setGL(GLES gl) {
+        sGL = gl;
+        sStateTracker = (gl instanceof GLStateTracker) ? (GLStateTracker)gl : null;
+    }
+
+    /**
+     * @return  The state tracker that gl() goes through, for its counters, or null if
+     *          calls go straight to the implementation.
+     */
+    public static GLStateTracker getStateTracker() {
+        return sStateTracker;
+    }
+
+    /**
+     * A new GLES context was created (onSurfaceCreated).  Objects from the old one are gone:
+     * forget them, the state we shadowed and any releases that hadn't run yet.
+     */
+    public static void onContextCreated() {
+        sGeneration++;
+        synchronized (sPendingReleases) {
+            sPendingReleases.clear();
+        }
+        if (sStateTracker != null) {
+            sStateTracker.getObjectTracker().clear();
+        }
+        invalidateState();
+    }
+
+    /**
+     * @return  Which context this is.  GL objects should remember it when they are created
+     *          and not delete anything once it changes.
+     */
+    public static int getGeneration() {
+        return sGeneration;
+    }
+
+    /**
+     * Have a Releasable released on the GLES thread, the next time runPendingReleases() is
+     * called.  Any thread.
+     */
+    public static void enqueueRelease(Releasable releasable) {
+        synchronized (sPendingReleases) {
+            sPendingReleases.add(releasable);
+        }
+    }
+
+    /**
+     * Release everything that was enqueued.  GLES thread only -- call at the start of a frame.
+     * @return  The number of Releasables released.
+     */
+    public static int runPendingReleases() {
+        Releasable[] releasables;
+        synchronized (sPendingReleases) {
+            if (sPendingReleases.isEmpty()) {
+                return 0;
+            }
+            releasables = sPendingReleases.toArray(new Releasable[sPendingReleases.size()]);
+            sPendingReleases.clear();
+        }
+        for (Releasable releasable : releasables) {
+            releasable.release();
+        }
+        return releasables.length;
+    }
+
+    /**
+     * Forget the GL state that has been shadowed.  Call this when the GLES context is
+     * (re)created.
+     */
+    public static void invalidateState() {
+        if (sStateTracker != null) {
+            sStateTracker.invalidate();
+        }
+    }
+
+    /**
+     * @return  How much GL error checking to do.  One of the VALIDATE_ constants.
+     */
+    public static int getValidationLevel() {
+        return sValidationLevel;
+    }
+
+    /**
+     * Set how much GL error checking to do.
+     * @param level One of the VALIDATE_ constants.
+     */
+    public static void setValidationLevel(int level) {
+        sValidationLevel = level;
+    }
+}
@@ -3,10 +3,69 @@ package com.deepdownstudios.skinshaderdemo;
 /**
  * Represents a GLES texture.
  */
-public class GLESTexture {
+public class GLESTexture implements Sized, Releasable {
+    /// 0 once released
     public int mId;
 
+    /**
+     * A texture of unknown size.  It is free as far as Cache is concerned.
+     */
     public GLESTexture(int id) {
         mId = id;
+        mGeneration = GLESContext.getGeneration();
     }
+
+    /**
+     * @param bytesPerPixel As uploaded, eg 4 for RGBA8888.
+     * @param mipmapped     True if the whole mip chain was (or will be) created.
+     */
+    public GLESTexture(int id, int width, int height, int bytesPerPixel, boolean mipmapped) {
+        mId = id;
+        mGeneration = GLESContext.getGeneration();
+        mGpuBytes = getTextureBytes(width, height, bytesPerPixel, mipmapped);
+    }
+
+    /**
+     * @return  What a texture costs in GPU memory.  A full mip chain adds about a third.
+     */
+    public static long getTextureBytes(int width, int height, int bytesPerPixel, boolean mipmapped) {
+        long bytes = (long)width * height * bytesPerPixel;
+        while (mipmapped && (width > 1 || height > 1)) {
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            bytes += (long)width * height * bytesPerPixel;
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getGpuBytes() {
+        return mGpuBytes;
+    }
+
+    @Override
+    public long getCpuBytes() {
+        return 0;       // the bitmap is recycled once uploaded
+    }
+
+    /// @return  False while its pixels are waiting in an UploadQueue.  Don't draw with it until then.
+    public boolean isResident() {
+        return mResident;
+    }
+
+    void setResident(boolean resident) {
+        mResident = resident;
+    }
+
+    @Override
+    public void release() {
+        if (mId != 0 && mGeneration == GLESContext.getGeneration()) {
+            GLESContext.gl().glDeleteTextures(1, new int[] { mId }, 0);
+        }
+        mId = 0;
+    }
+
+    private final int mGeneration;
+    private long mGpuBytes = 0;
+    private boolean mResident = true;
 }
@@ -0,0 +1,95 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps count of the GL objects that are alive (created and not yet deleted) and how much
+ * storage was given to them.  GLStateTracker feeds it, since it sees every GL call, so
+ * this is what the driver was actually asked for -- not what the owners think they hold.
+ * If the numbers keep growing while the app cycles through models, something leaks.
+ *
+ * Texture bytes are what was uploaded: a new level 0 replaces the texture's bytes and
+ * other levels add to them.  Buffer bytes are the last glBufferData.
+ * GLES thread only, like the calls it watches.
+ */
+public class GLObjectTracker {
+    public enum Kind { BUFFER, TEXTURE, SHADER, PROGRAM }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public GLObjectTracker() {
+        mLive = new Map[Kind.values().length];
+        for (int i=0; i<mLive.length; i++) {
+            mLive[i] = new HashMap<>();
+        }
+    }
+
+    /// An object was created.  Name 0 is never an object.
+    public void onCreated(Kind kind, int name) {
+        if (name != 0) {
+            mLive[kind.ordinal()].put(name, 0L);
+        }
+    }
+
+    /// An object was deleted (or flagged for deletion).  Unknown names are ignored, as GL does.
+    public void onDeleted(Kind kind, int name) {
+        mLive[kind.ordinal()].remove(name);
+    }
+
+    /**
+     * Storage was (re)specified for a live object.
+     * @param replace   True if bytes replace the object's storage, false if they add to it.
+     */
+    public void onStorage(Kind kind, int name, long bytes, boolean replace) {
+        Map<Integer, Long> live = mLive[kind.ordinal()];
+        Long current = live.get(name);
+        if (current != null) {
+            live.put(name, replace ? bytes : current + bytes);
+        }
+    }
+
+    /// @return The number of live objects of a kind.
+    public int getLiveCount(Kind kind) {
+        return mLive[kind.ordinal()].size();
+    }
+
+    /// @return The storage of the live objects of a kind, in bytes.
+    public long getLiveBytes(Kind kind) {
+        long bytes = 0;
+        for (long objectBytes : mLive[kind.ordinal()].values()) {
+            bytes += objectBytes;
+        }
+        return bytes;
+    }
+
+    /// @return The storage of all live objects, in bytes.
+    public long getLiveBytes() {
+        long bytes = 0;
+        for (Kind kind : Kind.values()) {
+            bytes += getLiveBytes(kind);
+        }
+        return bytes;
+    }
+
+    /// Forget everything.  Call when the GLES context is (re)created: its objects are gone.
+    public void clear() {
+        for (Map<Integer, Long> live : mLive) {
+            live.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder ret = new StringBuilder("Live GL objects --");
+        for (Kind kind : Kind.values()) {
+            ret.append(' ').append(kind).append(" : ").append(getLiveCount(kind));
+            if (kind == Kind.BUFFER || kind == Kind.TEXTURE) {
+                ret.append(" (").append(getLiveBytes(kind)).append(" bytes)");
+            }
+        }
+        return ret.toString();
+    }
+
+    /// By Kind ordinal: name -> bytes
+    private final Map<Integer, Long>[] mLive;
+}
@@ -0,0 +1,524 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+/**
+ * A GLES that sits in front of another one and remembers the state it has set: the
+ * program, buffer and texture bindings, enabled caps, depth/cull settings and vertex
+ * attribute arrays.  Calls that would set something to what it already is are dropped
+ * instead of going to the driver.  So callers can just say what they need for each draw
+ * and not worry about what the previous draw (or model) left behind.
+ * Every other call is passed straight through.
+ * This only works if ALL GL calls go through it (ie through GLESContext.gl()).  If
+ * anything changes state behind its back, or the context is lost, call invalidate().
+ * Counts how many calls were issued to the driver and how many were elided.
+ * Also keeps a GLObjectTracker up to date with the objects that are created and deleted.
+ */
+public class GLStateTracker implements GLES {
+    /// Shadow value for state we don't know.  Never equal to a real value.
+    private static final int UNKNOWN = -1;
+    /// Texture units and vertex attributes beyond these are passed through untracked.
+    private static final int MAX_TRACKED_TEXTURE_UNITS = 8;
+    private static final int MAX_TRACKED_VERTEX_ATTRIBS = 16;
+    /// glEnable/glDisable caps that are tracked.  Others are passed through.
+    private static final int TRACKED_CAPS[] = {
+            GLES20.GL_CULL_FACE, GLES20.GL_DEPTH_TEST, GLES20.GL_BLEND,
+            GLES20.GL_SCISSOR_TEST, GLES20.GL_STENCIL_TEST
+    };
+
+    public GLStateTracker(GLES gl) {
+        mGL = gl;
+        invalidate();
+    }
+
+    /**
+     * Forget all shadowed state.  The next call that sets each piece of state goes through.
+     * Call when the GLES context is (re)created or someone has made GL calls without us.
+     */
+    public void invalidate() {
+        mProgram = UNKNOWN;
+        mArrayBuffer = UNKNOWN;
+        mElementArrayBuffer = UNKNOWN;
+        mActiveTexture = UNKNOWN;
+        Arrays.fill(mBoundTextures, UNKNOWN);
+        Arrays.fill(mCaps, UNKNOWN);
+        mCullFace = UNKNOWN;
+        mDepthFunc = UNKNOWN;
+        mDepthMask = UNKNOWN;
+        Arrays.fill(mAttribEnabled, UNKNOWN);
+        Arrays.fill(mAttribBuffer, UNKNOWN);
+    }
+
+    /// @return The number of calls that were passed on to the driver.
+    public long getIssuedCount() {
+        return mIssued;
+    }
+
+    /// @return The number of calls that were dropped because they changed nothing.
+    public long getElidedCount() {
+        return mElided;
+    }
+
+    public void resetCounts() {
+        mIssued = 0;
+        mElided = 0;
+    }
+
+    /// @return The live GL objects created through us.
+    public GLObjectTracker getObjectTracker() {
+        return mObjects;
+    }
+
+    /// @return The buffer bound to target, or UNKNOWN.
+    private int boundBuffer(int target) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            return mArrayBuffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            return mElementArrayBuffer;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Record a state-setting call.
+     * @return  True if the call is needed, false if it is redundant.
+     */
+    private boolean changes(int current, int value) {
+        if (current == value) {
+            mElided++;
+            return false;
+        }
+        mIssued++;
+        return true;
+    }
+
+    private static int capIndex(int cap) {
+        for (int i=0; i<TRACKED_CAPS.length; i++) {
+            if (TRACKED_CAPS[i] == cap) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /// @return The texture unit index (0 for GL_TEXTURE0) we track, or -1.
+    private int activeUnit() {
+        int unit = mActiveTexture - GLES20.GL_TEXTURE0;
+        return (mActiveTexture != UNKNOWN && unit >= 0 && unit < MAX_TRACKED_TEXTURE_UNITS) ? unit : -1;
+    }
+
+    /******************************************************************************/
+    // Tracked calls
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (changes(mActiveTexture, texture)) {
+            mActiveTexture = texture;
+            mGL.glActiveTexture(texture);
+        }
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (changes(mArrayBuffer, buffer)) {
+                mArrayBuffer = buffer;
+                mGL.glBindBuffer(target, buffer);
+            }
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (changes(mElementArrayBuffer, buffer)) {
+                mElementArrayBuffer = buffer;
+                mGL.glBindBuffer(target, buffer);
+            }
+        } else {
+            mIssued++;
+            mGL.glBindBuffer(target, buffer);
+        }
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        int unit = activeUnit();
+        if (target != GLES20.GL_TEXTURE_2D || unit == -1) {
+            mIssued++;
+            mGL.glBindTexture(target, texture);
+        } else if (changes(mBoundTextures[unit], texture)) {
+            mBoundTextures[unit] = texture;
+            mGL.glBindTexture(target, texture);
+        }
+    }
+
+    @Override
+    public void glCullFace(int mode) {
+        if (changes(mCullFace, mode)) {
+            mCullFace = mode;
+            mGL.glCullFace(mode);
+        }
+    }
+
+    @Override
+    public void glDepthFunc(int func) {
+        if (changes(mDepthFunc, func)) {
+            mDepthFunc = func;
+            mGL.glDepthFunc(func);
+        }
+    }
+
+    @Override
+    public void glDepthMask(boolean flag) {
+        if (changes(mDepthMask, flag ? 1 : 0)) {
+            mDepthMask = flag ? 1 : 0;
+            mGL.glDepthMask(flag);
+        }
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        int idx = capIndex(cap);
+        if (idx == -1) {
+            mIssued++;
+            mGL.glDisable(cap);
+        } else if (changes(mCaps[idx], 0)) {
+            mCaps[idx] = 0;
+            mGL.glDisable(cap);
+        }
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        int idx = capIndex(cap);
+        if (idx == -1) {
+            mIssued++;
+            mGL.glEnable(cap);
+        } else if (changes(mCaps[idx], 1)) {
+            mCaps[idx] = 1;
+            mGL.glEnable(cap);
+        }
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (index < 0 || index >= MAX_TRACKED_VERTEX_ATTRIBS) {
+            mIssued++;
+            mGL.glDisableVertexAttribArray(index);
+        } else if (changes(mAttribEnabled[index], 0)) {
+            mAttribEnabled[index] = 0;
+            mGL.glDisableVertexAttribArray(index);
+        }
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (index < 0 || index >= MAX_TRACKED_VERTEX_ATTRIBS) {
+            mIssued++;
+            mGL.glEnableVertexAttribArray(index);
+        } else if (changes(mAttribEnabled[index], 1)) {
+            mAttribEnabled[index] = 1;
+            mGL.glEnableVertexAttribArray(index);
+        }
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (changes(mProgram, program)) {
+            mProgram = program;
+            mGL.glUseProgram(program);
+        }
+    }
+
+    @Override
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset) {
+        // The pointer is relative to the buffer bound when it is set, so that is part of the state.
+        int normalizedValue = normalized ? 1 : 0;
+        if (indx >= 0 && indx < MAX_TRACKED_VERTEX_ATTRIBS && mArrayBuffer != UNKNOWN &&
+                mAttribBuffer[indx] == mArrayBuffer && mAttribSize[indx] == size &&
+                mAttribType[indx] == type && mAttribNormalized[indx] == normalizedValue &&
+                mAttribStride[indx] == stride && mAttribOffset[indx] == offset) {
+            mElided++;
+            return;
+        }
+        mIssued++;
+        if (indx >= 0 && indx < MAX_TRACKED_VERTEX_ATTRIBS) {
+            mAttribBuffer[indx] = mArrayBuffer;
+            mAttribSize[indx] = size;
+            mAttribType[indx] = type;
+            mAttribNormalized[indx] = normalizedValue;
+            mAttribStride[indx] = stride;
+            mAttribOffset[indx] = offset;
+        }
+        mGL.glVertexAttribPointer(indx, size, type, normalized, stride, offset);
+    }
+
+    // Deleting a bound object unbinds it.
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        for (int i=0; i<n; i++) {
+            int buffer = buffers[offset + i];
+            if (buffer == mArrayBuffer) {
+                mArrayBuffer = 0;
+            }
+            if (buffer == mElementArrayBuffer) {
+                mElementArrayBuffer = 0;
+            }
+            for (int j=0; j<MAX_TRACKED_VERTEX_ATTRIBS; j++) {
+                if (mAttribBuffer[j] == buffer) {
+                    mAttribBuffer[j] = UNKNOWN;
+                }
+            }
+            mObjects.onDeleted(GLObjectTracker.Kind.BUFFER, buffer);
+        }
+        mIssued++;
+        mGL.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        // A program in use is only flagged for deletion.  It stays current.
+        mObjects.onDeleted(GLObjectTracker.Kind.PROGRAM, program);
+        mIssued++;
+        mGL.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        for (int i=0; i<n; i++) {
+            for (int unit=0; unit<MAX_TRACKED_TEXTURE_UNITS; unit++) {
+                if (mBoundTextures[unit] == textures[offset + i]) {
+                    mBoundTextures[unit] = 0;
+                }
+            }
+            mObjects.onDeleted(GLObjectTracker.Kind.TEXTURE, textures[offset + i]);
+        }
+        mIssued++;
+        mGL.glDeleteTextures(n, textures, offset);
+    }
+
+    /******************************************************************************/
+    // Pass-through calls
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        mIssued++;
+        mGL.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        mObjects.onStorage(GLObjectTracker.Kind.BUFFER, boundBuffer(target), size, true);
+        mIssued++;
+        mGL.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        mIssued++;
+        mGL.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        mIssued++;
+        mGL.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        mIssued++;
+        mGL.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        mIssued++;
+        mGL.glCompileShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        mIssued++;
+        int program = mGL.glCreateProgram();
+        mObjects.onCreated(GLObjectTracker.Kind.PROGRAM, program);
+        return program;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        mIssued++;
+        int shader = mGL.glCreateShader(type);
+        mObjects.onCreated(GLObjectTracker.Kind.SHADER, shader);
+        return shader;
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        // A shader attached to a program really goes with the program, but it's ours to
+        // forget about either way.
+        mObjects.onDeleted(GLObjectTracker.Kind.SHADER, shader);
+        mIssued++;
+        mGL.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mIssued++;
+        mGL.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        mIssued++;
+        mGL.glGenBuffers(n, buffers, offset);
+        for (int i=0; i<n; i++) {
+            mObjects.onCreated(GLObjectTracker.Kind.BUFFER, buffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        mIssued++;
+        mGL.glGenTextures(n, textures, offset);
+        for (int i=0; i<n; i++) {
+            mObjects.onCreated(GLObjectTracker.Kind.TEXTURE, textures[offset + i]);
+        }
+    }
+
+    @Override
+    public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset,
+                                  int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        mIssued++;
+        mGL.glGetActiveAttrib(program, index, bufsize, length, lengthOffset, size, sizeOffset,
+                type, typeOffset, name, nameOffset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        mIssued++;
+        return mGL.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetError() {
+        mIssued++;
+        return mGL.glGetError();
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        mIssued++;
+        return mGL.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        mIssued++;
+        mGL.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        mIssued++;
+        return mGL.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        mIssued++;
+        mGL.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        mIssued++;
+        return mGL.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        mIssued++;
+        mGL.glLinkProgram(program);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        mIssued++;
+        mGL.glShaderSource(shader, string);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        mIssued++;
+        mGL.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        mIssued++;
+        mGL.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, float[] v, int offset) {
+        mIssued++;
+        mGL.glUniform3fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        mIssued++;
+        mGL.glUniform4fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        mIssued++;
+        mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        mIssued++;
+        mGL.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        int unit = activeUnit();
+        if (target == GLES20.GL_TEXTURE_2D && unit != -1 && bitmap != null) {
+            mObjects.onStorage(GLObjectTracker.Kind.TEXTURE, mBoundTextures[unit],
+                    bitmap.getByteCount(), level == 0);
+        }
+        mIssued++;
+        mGL.texImage2D(target, level, bitmap, border);
+    }
+
+    private final GLES mGL;
+
+    private long mIssued;
+    private long mElided;
+    private final GLObjectTracker mObjects = new GLObjectTracker();
+
+    // Shadowed state.  UNKNOWN until set through us.  Booleans are 0/1.
+    private int mProgram;
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+    private int mActiveTexture;
+    /// GL_TEXTURE_2D binding of each texture unit
+    private final int[] mBoundTextures = new int[MAX_TRACKED_TEXTURE_UNITS];
+    /// Aligned with TRACKED_CAPS
+    private final int[] mCaps = new int[TRACKED_CAPS.length];
+    private int mCullFace;
+    private int mDepthFunc;
+    private int mDepthMask;
+    private final int[] mAttribEnabled = new int[MAX_TRACKED_VERTEX_ATTRIBS];
+    private final int[] mAttribBuffer = new int[MAX_TRACKED_VERTEX_ATTRIBS];
+    private final int[] mAttribSize = new int[MAX_TRACKED_VERTEX_ATTRIBS];
+    private final int[] mAttribType = new int[MAX_TRACKED_VERTEX_ATTRIBS];
+    private final int[] mAttribNormalized = new int[MAX_TRACKED_VERTEX_ATTRIBS];
+    private final int[] mAttribStride = new int[MAX_TRACKED_VERTEX_ATTRIBS];
+    private final int[] mAttribOffset = new int[MAX_TRACKED_VERTEX_ATTRIBS];
+}
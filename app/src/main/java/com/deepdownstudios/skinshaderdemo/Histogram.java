@@ -0,0 +1,87 @@
+package com.deepdownstudios.skinshaderdemo;
+
+/**
+ * A histogram of non-negative values (durations, say) that is small and fixed size however
+ * many values go in.  The buckets are log-linear: each power of two is split into four, so a
+ * percentile is within 25% of the truth.  The max is exact.
+ *
+ * Thread safe.  Recording takes a lock, so keep it off of hot paths that contend.
+ */
+public class Histogram {
+    /// Values below this get a bucket each.  After that, this many buckets per power of two.
+    private static final int SUB_BUCKETS = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mBuckets[getBucket(value)]++;
+        mCount++;
+        mMax = Math.max(mMax, value);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @param fraction  In [0, 1].  0.5 for the median.
+     * @return  A value that at least this fraction of the values are at or below: the top of
+     *          the bucket the percentile falls in, but never more than the max.  0 if empty.
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(fraction * mCount));
+        long seen = 0;
+        for (int i=0; i<mBuckets.length; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                return (i + 1 < mBuckets.length) ? Math.min(getBucketStart(i + 1) - 1, mMax) : mMax;
+            }
+        }
+        return mMax;
+    }
+
+    public synchronized void clear() {
+        for (int i=0; i<mBuckets.length; i++) {
+            mBuckets[i] = 0;
+        }
+        mCount = 0;
+        mMax = 0;
+    }
+
+    /**
+     * MATH ALERT: above SUB_BUCKETS, a value with its highest bit at 'log' goes in one of the
+     * SUB_BUCKETS buckets of that power of two, chosen by the SUB_BUCKET_BITS below the
+     * highest bit.  So bucket = SUB_BUCKETS * (log - SUB_BUCKET_BITS + 1) + those bits.
+     */
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        int log = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (log - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (log - SUB_BUCKET_BITS + 1) + sub;
+    }
+
+    /// @return The smallest value in a bucket.  The inverse of getBucket.
+    static long getBucketStart(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int log = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (log - SUB_BUCKET_BITS);
+    }
+
+    private final long[] mBuckets = new long[getBucket(Long.MAX_VALUE) + 1];
+    private long mCount = 0;
+    private long mMax = 0;
+}
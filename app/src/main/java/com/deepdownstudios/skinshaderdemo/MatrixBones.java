@@ -1,6 +1,5 @@
 package com.deepdownstudios.skinshaderdemo;
 
-import android.opengl.GLES20;
 
 import com.deepdownstudios.skinshaderdemo.Bones.GLSLBones;
 import com.deepdownstudios.skinshaderdemo.Bones.TransformStorage;
@@ -10,7 +9,10 @@ import static com.deepdownstudios.skinshaderdemo.BasicModel.RigidTransform;
 import static com.deepdownstudios.skinshaderdemo.BasicModel.Skeleton;
 
 /**
- * Animated bones presented as matrices.
+ * Animated bones presented as matrices.  Each bone is sent to GLES as the top three rows
+ * of its 4x4 matrix (three vec4s) since the last row of a rigid transform is always
+ * (0,0,0,1).  That is 25% less uniform data than a mat4 per bone and it means more
+ * bones fit in GL_MAX_VERTEX_UNIFORM_VECTORS.
  */
 public class MatrixBones implements GLSLBones, TransformStorage {
     /**
@@ -20,23 +22,53 @@ public class MatrixBones implements GLSLBones, TransformStorage {
      * @param delta     The time in the animation to set as pose, in seconds.  Ignored if animation == null.
      */
     public MatrixBones(Animation animation, Skeleton skeleton, double delta) {
-        Bones.storeBoneTransforms(animation, skeleton, delta, this);
+        this(animation, skeleton, delta, null);
+    }
+
+    /**
+     * Calculate the pose of some of the bones.  See Bones.storeBoneTransforms.
+     * @param boneSubset    The bones to pose, or null for all.  Bone i here is boneSubset[i].
+     */
+    public MatrixBones(Animation animation, Skeleton skeleton, double delta, int[] boneSubset) {
+        Bones.storeBoneTransforms(animation, skeleton, delta, boneSubset, this);
     }
 
     @Override
     public void postToGLSLUniform(int boneArrayId) {
-        GLES20.glUniformMatrix4fv(boneArrayId, mTforms.length / 16, false, mTforms, 0);
+        GLESContext.gl().glUniform4fv(boneArrayId, mTforms.length / 4, mTforms, 0);
+    }
+
+    @Override
+    public void getBoneMatrix(int boneIdx, float[] result, int offset) {
+        // Our rows are the first three columns of the column-major matrix.
+        int base = FLOATS_PER_BONE*boneIdx;
+        for (int row=0; row<3; row++) {
+            for (int col=0; col<4; col++) {
+                result[offset + 4*col + row] = mTforms[base + 4*row + col];
+            }
+        }
+        result[offset+3] = result[offset+7] = result[offset+11] = 0.0f;
+        result[offset+15] = 1.0f;
+    }
+
+    @Override
+    public void lerp(GLSLBones a, GLSLBones b, float t) {
+        mTforms = Bones.lerpTransforms(mTforms, ((MatrixBones)a).mTforms, ((MatrixBones)b).mTforms, t);
     }
 
     @Override
     public void allocateStorage(int nTransforms) {
-        mTforms = new float[nTransforms * 16];
+        mTforms = new float[nTransforms * FLOATS_PER_BONE];
     }
 
     @Override
     public void storeTransform(int transformIdx, RigidTransform transform) {
-        System.arraycopy(transform.asMatrix(), 0, mTforms, 16*transformIdx, 16);
+        // Written straight from the quaternion and translation.  No temporary matrix.
+        transform.storeAffineRows(mTforms, FLOATS_PER_BONE*transformIdx);
     }
 
+    /// 3 rows * 4 columns
+    private static final int FLOATS_PER_BONE = 12;
+
     private float[] mTforms;
 }
@@ -2,8 +2,10 @@ package com.deepdownstudios.skinshaderdemo;
 
 /**
  * All methods require an active GLES context on the GLES thread.
+ * Models are Sized so that Cache can budget them by what their buffers cost, and Releasable
+ * so that their buffers go when the Cache drops them.
  */
-public interface Model {
+public interface Model extends Sized, Releasable {
     /**
      * Request an instance of a playing animation from the model.
      * @param animName If the model indexes its animations by name then this
@@ -2,6 +2,8 @@ package com.deepdownstudios.skinshaderdemo;
 
 import android.util.Pair;
 
+import java.io.File;
+import java.io.PrintWriter;
 import java.util.Arrays;
 
 /**
@@ -13,31 +15,51 @@ public class ModelData {
      * Caches GLES representations of texture resources.  Remember never to request the
      * texture unless you are on the GLES thread!
      */
-    public static final Cache<GLESTexture> TEXTURE_CACHE = new Cache<>();
+    public static final Cache<GLESTexture> TEXTURE_CACHE = new Cache<>(16L * 1024 * 1024);
+
+    /**
+     * Every shader program, compiled once per GLES context.  GLES thread only.
+     */
+    public static final ShaderProgramRegistry SHADER_PROGRAMS =
+            new ShaderProgramRegistry(CanvasApplication.getInstance().getResources());
+
+    /**
+     * GPU uploads of the models and their textures, spread over frames so that loading one
+     * doesn't make the one on screen stutter.  GLES thread only.
+     */
+    public static final UploadQueue UPLOAD_QUEUE = new UploadQueue(256 * 1024);
 
     /**
      * Cache of Models that should be used by each of the AnimModelSpecs in MODEL_ANIMS.
      */
-    public static final Cache<Model> MODEL_CACHE = new Cache<>();
+    public static final Cache<Model> MODEL_CACHE = new Cache<>(32L * 1024 * 1024);
+
+    /**
+     * Imported models, kept on disk between runs so that only the first run has to parse
+     * them.  MODEL_CACHE loads through this.
+     */
+    public static final DiskModelCache MODEL_STORE = new DiskModelCache(
+            new File(CanvasApplication.getInstance().getCacheDir(), "models"), 16L * 1024 * 1024,
+            CanvasApplication.getInstance().getInstallTime());
 
     public static final AnimModelSpec[] MODEL_ANIMS = new AnimModelSpec[] {
               new AnimModelSpec("M. Chief",
                     new String[] { "idle", "something" },
-                    new CachedSource<>(MODEL_CACHE,
+                    new CachedSource<>(MODEL_CACHE, MODEL_STORE.wrap(
                             new OgreModelSource(CanvasApplication.getInstance().getResources(),
-                                TEXTURE_CACHE,
-                                R.raw.m_chief_mesh, R.raw.m_chief_skeleton) ))
+                                TEXTURE_CACHE, SHADER_PROGRAMS, UPLOAD_QUEUE,
+                                R.raw.m_chief_mesh, R.raw.m_chief_skeleton) )))
             , new AnimModelSpec("Ninja",
                     new String[] { "walk", "stealth", "punch", "sword", "swipe", "spin", "death", "idle" },
-                    new CachedSource<>(MODEL_CACHE,
+                    new CachedSource<>(MODEL_CACHE, MODEL_STORE.wrap(
                             new Ms3dModelSource(CanvasApplication.getInstance().getResources(),
-                                TEXTURE_CACHE,
+                                TEXTURE_CACHE, SHADER_PROGRAMS, UPLOAD_QUEUE,
                                 R.raw.ninja,
                                 Arrays.asList(new Pair<>(1, 14), new Pair<>(15, 30),
                                               new Pair<>(32, 44), new Pair<>(45, 59),
                                               new Pair<>(60, 68), new Pair<>(134, 145),
                                               new Pair<>(166, 173), new Pair<>(206, 250)),
-                                1.0/8.0 /* speed coefficient */) ))
+                                1.0/8.0 /* speed coefficient */) )))
 /*
             , new AnimModelSpec("Alien", new String[] { "belly", "licking" },
                   new Ms3dModelSource(CanvasApplication.getInstance().getResources(),
@@ -46,6 +68,15 @@ public class ModelData {
 */
     };
 
+    /**
+     * Write the stats of the caches, one line each.  See CacheStats.
+     */
+    public static void dumpCacheStats(PrintWriter out) {
+        out.println("Texture cache : " + TEXTURE_CACHE.getStats());
+        out.println("Model cache : " + MODEL_CACHE.getStats());
+        out.println("Model store : " + MODEL_STORE);
+    }
+
     /**
      * An AnimModelSpec defines a set of animations for one model.
      */
@@ -0,0 +1,29 @@
+package com.deepdownstudios.skinshaderdemo;
+
+/**
+ * A Source<Model> in two steps: importing the model's files into a ByteBufferModel (slow --
+ * XML and such) and uploading that to GLES (fast).  Splitting them lets a DiskModelCache keep
+ * the imported model between runs.  load() is just upload(importModel()).
+ */
+public interface ModelImporter extends Source<Model> {
+    /**
+     * @return  Name of the model in a DiskModelCache.  Unique among importers and the same
+     *          on every run, for the same files.  The resource ID is a good start.
+     */
+    String getName();
+
+    /// Bump this when a change to the importer (or to ByteBufferModel) changes what it makes.
+    int getConverterVersion();
+
+    /**
+     * @return  Hash of everything the import reads: the contents of its files and its
+     *          parameters.  Called on every load, on the loading thread (the GLES thread,
+     *          for a synchronous load), so hash the bytes once and keep the result.
+     */
+    long getContentHash();
+
+    ByteBufferModel importModel();
+
+    /// Upload, and release() bbModel.  Requires an active GLES context on the GLES thread.
+    Model upload(ByteBufferModel bbModel);
+}
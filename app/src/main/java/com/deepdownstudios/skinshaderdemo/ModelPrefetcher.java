@@ -0,0 +1,174 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Gets the model that the user is going to see next ready while they watch the current one,
+ * so that switching to it is instant.
+ *
+ * There are two halves to loading a model.  The import (parsing, or reading it back from the
+ * DiskModelCache) runs on a background Executor.  The upload and the shader program compiles
+ * need the GLES thread, so they wait for onIdle(), which the renderer calls once it has drawn
+ * a frame.  The model goes into its cache like any other load, unpinned, so it is budgeted
+ * (and can be dropped) like anything else.  A model that wouldn't fit next to the pinned ones
+ * isn't prefetched at all.
+ *
+ * Models whose source isn't a DiskModelCache.StoredSource can't be split, so they are loaded
+ * entirely in onIdle().
+ *
+ * prefetch() something else and the old prefetch is cancelled.  An import that has already
+ * started runs to the end, in the background, since parsers can't be interrupted (and the
+ * DiskModelCache keeps what it makes), but nothing is uploaded.
+ */
+public class ModelPrefetcher {
+    public interface Host {
+        /// The import is done.  Call onIdle() on the GLES thread soon.  Called on any thread.
+        void onImportDone();
+    }
+
+    public ModelPrefetcher(Executor executor, Host host) {
+        mExecutor = executor;
+        mHost = host;
+    }
+
+    /**
+     * Start getting a model and animation ready, instead of whatever was being got ready.
+     * Any thread.
+     * @param next  What the user is likely to see next.  Null to just cancel.
+     */
+    public synchronized void prefetch(final AnimationRenderer next) {
+        if (next != null && mTarget != null && next.isSameModel(mTarget)) {
+            mTarget = next;         // same import, maybe another animation
+            return;
+        }
+        cancel();
+        if (next == null) {
+            return;
+        }
+        mTarget = next;
+        Source<Model> source = next.mModelCache.getSource();
+        if (next.mModelCache.contains(next.mModelName) || !(source instanceof DiskModelCache.StoredSource)) {
+            // Nothing to do in the background.
+            mHost.onImportDone();
+            return;
+        }
+        final DiskModelCache.StoredSource storedSource = (DiskModelCache.StoredSource)source;
+        mImport = new FutureTask<ByteBufferModel>(new Callable<ByteBufferModel>() {
+            @Override
+            public ByteBufferModel call() {
+                return storedSource.importModel();
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (!isCancelled()) {
+                    mHost.onImportDone();
+                }
+            }
+        };
+        mExecutor.execute(mImport);
+    }
+
+    /// Forget the prefetch in progress, if any.  Any thread.
+    public synchronized void cancel() {
+        if (mImport != null) {
+            mImport.cancel(false);
+        }
+        mTarget = null;
+        mImport = null;
+    }
+
+    /**
+     * Finish the prefetch if its import is done.  GLES thread, after drawing a frame.
+     * @return  True if it did something.
+     */
+    public boolean onIdle() {
+        AnimationRenderer target;
+        FutureTask<ByteBufferModel> modelImport;
+        synchronized (this) {
+            if (mTarget == null || (mImport != null && !mImport.isDone())) {
+                return false;
+            }
+            target = mTarget;
+            modelImport = mImport;
+            mTarget = null;
+            mImport = null;
+        }
+        finish(target, modelImport);
+        return true;
+    }
+
+    /**
+     * The user switched to current.  If that is the model we were getting ready, finish now,
+     * waiting for the import if need be (it's no slower than starting the load over).
+     * Otherwise the prefetch was a miss: cancel it.  GLES thread, before current.onInit().
+     */
+    public void onSwitched(AnimationRenderer current) {
+        AnimationRenderer target;
+        FutureTask<ByteBufferModel> modelImport;
+        synchronized (this) {
+            if (mTarget == null || !mTarget.isSameModel(current)) {
+                cancel();
+                return;
+            }
+            target = current;
+            modelImport = mImport;
+            mTarget = null;
+            mImport = null;
+        }
+        finish(target, modelImport);
+    }
+
+    /// @return The number of prefetches that got their model uploaded and ready.
+    public int getPreparedCount() {
+        return mPreparedCount;
+    }
+
+    /// Upload and compile.  GLES thread.
+    private void finish(AnimationRenderer target, FutureTask<ByteBufferModel> modelImport) {
+        Source<Model> source = target.mModelCache.getSource();
+        if (modelImport != null) {
+            final ByteBufferModel bbModel;
+            try {
+                bbModel = modelImport.get();
+            } catch (ExecutionException e) {
+                // The real load will fail the same way, and say so.
+                Log.w(TAG, "Prefetch of " + target.mModelName + " failed", e.getCause());
+                return;
+            } catch (InterruptedException | CancellationException e) {
+                return;
+            }
+            Cache<Model> cache = target.mModelCache;
+            if (cache.getPinnedBytes() + bbModel.getByteCount() > cache.getMaxBytes()) {
+                Log.i(TAG, "Not prefetching " + target.mModelName + ", it doesn't fit in the cache");
+                return;
+            }
+            final ModelImporter importer = ((DiskModelCache.StoredSource)source).getImporter();
+            source = new Source<Model>() {
+                @Override
+                public Model load() {
+                    return importer.upload(bbModel);
+                }
+            };
+        }
+        target.prepare(source);
+        mPreparedCount++;
+        Log.i(TAG, "Prefetched " + target.mModelName + " : " + target.mAnimName + " - " + target.mAnimator);
+    }
+
+    private static final String TAG = "ModelPrefetcher";
+
+    private final Executor mExecutor;
+    private final Host mHost;
+    /// What to get ready, and its import, if it has one.  Guarded by this.
+    private AnimationRenderer mTarget;
+    private FutureTask<ByteBufferModel> mImport;
+    /// GLES thread only
+    private int mPreparedCount = 0;
+}
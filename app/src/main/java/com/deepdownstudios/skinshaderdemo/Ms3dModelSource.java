@@ -34,17 +34,23 @@ import static com.deepdownstudios.skinshaderdemo.BasicModel.Vertex;
  * Based on the MS3D 1.8.5 spec:
  * https://gist.githubusercontent.com/sapper-trle/db1dc6670ec0fa733d7d/raw/17899c1004bd896e3f9049b3dc181f9070ae6cbb/ms3dspec.txt.c
  */
-public class Ms3dModelSource implements Source<Model> {
+public class Ms3dModelSource implements ModelImporter {
 
     /**
      * Milkshape skinned import.
      * @param textureCache    Cache of GLESTextures
+     * @param shaderPrograms  Registry the model's instances get their shader programs from.
+     * @param uploadQueue     Where the model's buffers and textures are uploaded from, a
+     *                        frame at a time.  Null to upload them all in upload().
      * @param animFrameRanges A list of [start,end] frame ranges (inclusive).
      */
     public Ms3dModelSource(Resources resources, Cache<GLESTexture> textureCache,
+                           ShaderProgramRegistry shaderPrograms, UploadQueue uploadQueue,
                            int resourceId, List<Pair<Integer, Integer>> animFrameRanges, double speed) {
         mResources = resources;
         mTextureCache = textureCache;
+        mShaderPrograms = shaderPrograms;
+        mUploadQueue = uploadQueue;
         mResourceId = resourceId;
         mAnimFrameRanges = animFrameRanges;
         mSpeed = speed;
@@ -52,15 +58,45 @@ public class Ms3dModelSource implements Source<Model> {
 
     @Override
     public Model load() {
+        return upload(importModel());
+    }
+
+    @Override
+    public String getName() {
+        return "ms3d-" + Integer.toHexString(mResourceId);
+    }
+
+    @Override
+    public int getConverterVersion() {
+        return CONVERTER_VERSION;
+    }
+
+    @Override
+    public synchronized long getContentHash() {
+        if (!mHasContentHash) {
+            // The animations are cut from the file by the frame ranges.
+            mContentHash = DiskModelCache.hashResources(mResources, mAnimFrameRanges + " " + mSpeed, mResourceId);
+            mHasContentHash = true;
+        }
+        return mContentHash;
+    }
+
+    @Override
+    public ByteBufferModel importModel() {
         LittleEndianDataInputStream stream =
                 new LittleEndianDataInputStream(new BufferedInputStream(mResources.openRawResource(mResourceId)));
-        ByteBufferModel bbModel;
         try {
-            bbModel = loadBB(stream);
+            return loadBB(stream);
         } catch (IOException e) {
             throw new IllegalStateException("Failed to read ms3d resource file: " + mResourceId, e);
         }
-        return new VBOModel(mResources, mTextureCache, bbModel);
+    }
+
+    @Override
+    public Model upload(ByteBufferModel bbModel) {
+        VBOModel model = new VBOModel(mResources, mTextureCache, mShaderPrograms, bbModel, true, mUploadQueue);
+        bbModel.release();
+        return model;
     }
 
     @SuppressWarnings("unused")
@@ -152,6 +188,7 @@ public class Ms3dModelSource implements Source<Model> {
 
         // Now break the "one animation" into multiple animations based on mAnimFrameRanges and fps.
         skeleton.animations = splitAnimation(skeleton.animations.get(0), mAnimFrameRanges, fps, mSpeed);
+        SkinWeightPruner.prune(meshes, skeleton);
         return new ByteBufferModel(meshes, skeleton);
     }
 
@@ -650,12 +687,19 @@ public class Ms3dModelSource implements Source<Model> {
     }
 
     private static final String TAG = "Ms3dModelSource";
+    /// See ModelImporter.getConverterVersion.
+    private static final int CONVERTER_VERSION = 1;
     private Resources mResources;
     private Cache<GLESTexture> mTextureCache;
+    private ShaderProgramRegistry mShaderPrograms;
+    private UploadQueue mUploadQueue;
     private int mResourceId;
     /// "Sorted" list of animations, defined by start/end keyframe (sorted by start keyframe #).
     private List<Pair<Integer, Integer>> mAnimFrameRanges;
     private double mSpeed;
+    /// getContentHash, once it has read the file.
+    private long mContentHash;
+    private boolean mHasContentHash = false;
 
     /// We assume that per-face normal/texturing properties are really per-vertex as they
     /// are in most formats.  This tests that theory on ingest and throws an exception
@@ -33,25 +33,68 @@ import static com.deepdownstudios.skinshaderdemo.BasicModel.Vertex;
 /**
  * Handles OGRE .mesh and .skeleton files.
  */
-public class OgreModelSource implements Source<Model> {
+public class OgreModelSource implements ModelImporter {
 
     /**
      * Create an instance of ... whatever this format is.
      *
      * @param resources         The Android SDK Resource object for loading files.
      * @param textureCache      Cache of GLES texture IDs.
+     * @param shaderPrograms    Registry the model's instances get their shader programs from.
+     * @param uploadQueue       Where the model's buffers and textures are uploaded from, a
+     *                          frame at a time.  Null to upload them all in upload().
      * @param meshResourceId    The resource ID of the .mesh file
      * @param skelResourceId    The resource ID of the .skel file
      */
-    public OgreModelSource(Resources resources, Cache<GLESTexture> textureCache, int meshResourceId, int skelResourceId) {
+    public OgreModelSource(Resources resources, Cache<GLESTexture> textureCache,
+                           ShaderProgramRegistry shaderPrograms, UploadQueue uploadQueue,
+                           int meshResourceId, int skelResourceId) {
         mResources = resources;
         mTextureCache = textureCache;
+        mShaderPrograms = shaderPrograms;
+        mUploadQueue = uploadQueue;
         mMeshResourceId = meshResourceId;
         mSkelResourceId = skelResourceId;
     }
 
     @Override
     public Model load() {
+        return upload(importModel());
+    }
+
+    @Override
+    public String getName() {
+        return "ogre-" + Integer.toHexString(mMeshResourceId);
+    }
+
+    @Override
+    public int getConverterVersion() {
+        return CONVERTER_VERSION;
+    }
+
+    /**
+     * The material files are found by reading the mesh, so only the mesh and skeleton are
+     * hashed.  The DiskModelCache's salt covers the rest: resources only change on install.
+     * That is 5 MB for M. Chief, so it is only read once.
+     */
+    @Override
+    public synchronized long getContentHash() {
+        if (!mHasContentHash) {
+            mContentHash = DiskModelCache.hashResources(mResources, "", mMeshResourceId, mSkelResourceId);
+            mHasContentHash = true;
+        }
+        return mContentHash;
+    }
+
+    @Override
+    public Model upload(ByteBufferModel bbModel) {
+        VBOModel model = new VBOModel(mResources, mTextureCache, mShaderPrograms, bbModel, true, mUploadQueue);
+        bbModel.release();
+        return model;
+    }
+
+    @Override
+    public ByteBufferModel importModel() {
         InputStream inputStream = mResources.openRawResource(mMeshResourceId);
         XmlPullParser meshXpp;
         try {
@@ -70,19 +113,18 @@ public class OgreModelSource implements Source<Model> {
             throw new IllegalStateException("Failed to read skeleton resource file : " + mSkelResourceId, e);
         }
 
-        ByteBufferModel bbModel;
         try {
-            bbModel = loadBB(meshXpp, skelXpp);
+            return loadBB(meshXpp, skelXpp);
         } catch (Exception e) {
             throw new IllegalStateException("Failed to build BasicModel for mesh resource : " +
                     mMeshResourceId + " and skel resource : " + mSkelResourceId, e);
         }
-        return new VBOModel(mResources, mTextureCache, bbModel);
     }
 
     private ByteBufferModel loadBB(XmlPullParser meshXpp, XmlPullParser skelXpp) throws IOException, XmlPullParserException {
         List<Mesh> meshes = readMeshes(meshXpp);
         Skeleton skeleton = readSkeleton(skelXpp);
+        SkinWeightPruner.prune(meshes, skeleton);
         return new ByteBufferModel(meshes, skeleton);
     }
 
@@ -399,8 +441,15 @@ public class OgreModelSource implements Source<Model> {
     }
 
     private static final String TAG = "OgreModelSource";
+    /// See ModelImporter.getConverterVersion.
+    private static final int CONVERTER_VERSION = 1;
     private Resources mResources;
     private Cache<GLESTexture> mTextureCache;
+    private ShaderProgramRegistry mShaderPrograms;
+    private UploadQueue mUploadQueue;
     private int mMeshResourceId;
     private int mSkelResourceId;
+    /// getContentHash, once it has read the files.
+    private long mContentHash;
+    private boolean mHasContentHash = false;
 }
@@ -1,6 +1,5 @@
 package com.deepdownstudios.skinshaderdemo;
 
-import android.opengl.GLES20;
 
 import com.deepdownstudios.skinshaderdemo.Bones.GLSLBones;
 
@@ -20,12 +19,34 @@ public class QuatBones implements GLSLBones, TransformStorage {
      * @param delta     The time in the animation to set as pose, in seconds.  Ignored if animation == null.
      */
     public QuatBones(Animation animation, Skeleton skeleton, double delta) {
-        Bones.storeBoneTransforms(animation, skeleton, delta, this);
+        this(animation, skeleton, delta, null);
+    }
+
+    /**
+     * Calculate the pose of some of the bones.  See Bones.storeBoneTransforms.
+     * @param boneSubset    The bones to pose, or null for all.  Bone i here is boneSubset[i].
+     */
+    public QuatBones(Animation animation, Skeleton skeleton, double delta, int[] boneSubset) {
+        Bones.storeBoneTransforms(animation, skeleton, delta, boneSubset, this);
     }
 
     @Override
     public void postToGLSLUniform(int boneArrayId) {
-        GLES20.glUniform3fv(boneArrayId, mTforms.length / 3, mTforms, 0);
+        GLESContext.gl().glUniform3fv(boneArrayId, mTforms.length / 3, mTforms, 0);
+    }
+
+    @Override
+    public void getBoneMatrix(int boneIdx, float[] result, int offset) {
+        // Same reconstruction of w as the shader.  See storeTransform.
+        double x = mTforms[boneIdx*6], y = mTforms[boneIdx*6+1], z = mTforms[boneIdx*6+2];
+        double w = Math.sqrt(Math.max(0.0, 1.0 - x*x - y*y - z*z));
+        Bones.storeRigidMatrix(w, x, y, z,
+                mTforms[boneIdx*6+3], mTforms[boneIdx*6+4], mTforms[boneIdx*6+5], result, offset);
+    }
+
+    @Override
+    public void lerp(GLSLBones a, GLSLBones b, float t) {
+        mTforms = Bones.lerpTransforms(mTforms, ((QuatBones)a).mTforms, ((QuatBones)b).mTforms, t);
     }
 
     @Override
@@ -142,6 +142,39 @@ public class Quaternion {
         return ret;
     }
 
+    /**
+     * Write the rotation as the top-left 3x3 of a row-major 3x4 matrix, without building
+     * the 4x4 matrix first.  Row r goes to dst[offset + 4*r .. offset + 4*r + 2].  The
+     * fourth entry of each row (the translation) is left untouched.
+     * This is the transpose of the layout asMatrix() uses.
+     */
+    public void storeRotationRows(float[] dst, int offset) {
+        double w2 = values[0]*values[0];
+        double x2 = values[1]*values[1];
+        double y2 = values[2]*values[2];
+        double z2 = values[3]*values[3];
+        double len2 = w2+x2+y2+z2;
+
+        double wx = 2.0*values[0]*values[1];
+        double wy = 2.0*values[0]*values[2];
+        double wz = 2.0*values[0]*values[3];
+        double xy = 2.0*values[1]*values[2];
+        double xz = 2.0*values[1]*values[3];
+        double yz = 2.0*values[2]*values[3];
+
+        dst[offset]   = (float)(( x2 - y2 - z2 + w2)/len2);
+        dst[offset+1] = (float)((xy - wz)/len2);
+        dst[offset+2] = (float)((xz + wy)/len2);
+
+        dst[offset+4] = (float)((xy + wz)/len2);
+        dst[offset+5] = (float)((-x2 + y2 - z2 + w2)/len2);
+        dst[offset+6] = (float)((yz - wx)/len2);
+
+        dst[offset+8]  = (float)((xz - wy)/len2);
+        dst[offset+9]  = (float)((yz + wx)/len2);
+        dst[offset+10] = (float)((-x2 - y2 + z2 + w2)/len2);
+    }
+
     /**
      * Spherically interpolate from this (when weight == 0) to o (when weight == 1.0)
      * @param o         The quaternion corresponding to weight 1.0
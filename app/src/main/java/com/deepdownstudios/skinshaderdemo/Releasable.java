@@ -0,0 +1,16 @@
+package com.deepdownstudios.skinshaderdemo;
+
+/**
+ * Owns GL objects that have to be deleted explicitly.  The garbage collector can't do it
+ * (it doesn't know about GPU memory, and it doesn't run on the GLES thread), so without
+ * this they live until the context dies.
+ * Code that isn't on the GLES thread (eg Cache eviction from onTrimMemory) should hand
+ * these to GLESContext.enqueueRelease() instead of calling release() itself.
+ */
+public interface Releasable {
+    /**
+     * Delete the GL objects.  GLES thread only.  Calling it again, or after the context that
+     * created the objects was lost, does nothing -- their names may belong to someone else now.
+     */
+    void release();
+}
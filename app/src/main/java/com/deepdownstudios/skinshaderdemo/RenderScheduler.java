@@ -0,0 +1,129 @@
+package com.deepdownstudios.skinshaderdemo;
+
+/**
+ * Decides when a GLSurfaceView in RENDERMODE_WHEN_DIRTY should draw.  Frames are only
+ * requested while an animation is playing or when something changed (invalidate()), so a
+ * paused or still scene costs no GPU or CPU time at all instead of being redrawn at the
+ * display rate.  While animating, frames can also be capped to a rate below the display's:
+ * the next frame is requested with a delay instead of straight away.
+ *
+ * All of the Android specifics are in the Host, so the decisions can be tested without a
+ * device.  Methods can be called from any thread.
+ */
+public class RenderScheduler {
+    /// How the scheduler gets frames drawn.
+    public interface Host {
+        /// Draw a frame as soon as possible (eg GLSurfaceView.requestRender).
+        void requestRender();
+
+        /// Call RenderScheduler.onTimer() after delayMillis (eg with Handler.postDelayed).
+        void scheduleTimer(long delayMillis);
+    }
+
+    public RenderScheduler(Host host) {
+        mHost = host;
+    }
+
+    /**
+     * @param maxFps    The most frames per second to draw for animation.  0 (the default) for
+     *                  as many as the display shows.  invalidate() is never delayed.
+     */
+    public synchronized void setMaxAnimationFps(float maxFps) {
+        mMinFrameMillis = (maxFps <= 0.0f) ? 0 : (long)Math.ceil(1000.0 / maxFps);
+    }
+
+    /**
+     * @param animating True while something on screen is moving by itself.
+     */
+    public synchronized void setAnimating(boolean animating) {
+        if (animating == mAnimating) {
+            return;
+        }
+        mAnimating = animating;
+        if (animating) {
+            request();
+        }
+    }
+
+    public synchronized boolean isAnimating() {
+        return mAnimating;
+    }
+
+    /**
+     * Something changed (model switched, surface resized...).  Draw one frame as soon as
+     * possible, animating or not.
+     */
+    public synchronized void invalidate() {
+        request();
+    }
+
+    /**
+     * Call at the start of every frame that is drawn.  Requests the next frame if the
+     * animation needs one.
+     * @param nowMillis     SystemClock.uptimeMillis()
+     */
+    public synchronized void onFrame(long nowMillis) {
+        mRequested = false;
+        mFrameCount++;
+        mLastFrameMillis = nowMillis;
+        if (!mAnimating) {
+            return;
+        }
+        if (mMinFrameMillis == 0) {
+            request();
+        } else if (!mTimerPending) {
+            mTimerPending = true;
+            mHost.scheduleTimer(mMinFrameMillis);
+        }
+    }
+
+    /**
+     * The Host's timer went off.
+     * @param nowMillis     SystemClock.uptimeMillis()
+     */
+    public synchronized void onTimer(long nowMillis) {
+        mTimerPending = false;
+        if (!mAnimating) {
+            return;
+        }
+        long wait = mLastFrameMillis + mMinFrameMillis - nowMillis;
+        if (wait > 0) {
+            // Timers can go off early, and a frame may have been drawn since (eg for an
+            // invalidate()).  Either way, it's not time yet.
+            mTimerPending = true;
+            mHost.scheduleTimer(wait);
+        } else {
+            request();
+        }
+    }
+
+    /// @return The number of frames drawn so far.
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /// @return The number of times the Host was asked for a frame.
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /// requestRender, unless a request is already waiting to be drawn.
+    private void request() {
+        if (mRequested) {
+            return;
+        }
+        mRequested = true;
+        mRequestCount++;
+        mHost.requestRender();
+    }
+
+    private final Host mHost;
+    private boolean mAnimating = false;
+    private long mMinFrameMillis = 0;
+    /// A requestRender hasn't been drawn yet
+    private boolean mRequested = false;
+    private boolean mTimerPending = false;
+    private long mLastFrameMillis = 0;
+    private int mFrameCount = 0;
+    private int mRequestCount = 0;
+}
@@ -0,0 +1,603 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.annotation.SuppressLint;
+import android.opengl.Matrix;
+
+import com.deepdownstudios.skinshaderdemo.Bones.GLSLBones;
+import com.deepdownstudios.util.Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Many animated model instances drawn together.  Each instance has its own model matrix,
+ * animation and Animator (they are SkinnedVBOAnimModels) but instances can share
+ * VBOModels, textures and shader programs.
+ *
+ * draw() keeps a draw list with one entry per mesh draw of every instance, sorted by
+ * program, then texture, then VBOModel, and submits it in that order, so the expensive
+ * state changes happen as rarely as possible.  The list is only rebuilt (and resorted)
+ * when instances are added or removed.  Per-frame state (the light and the texture
+ * sampler) is only set when the program changes, and view/projection are folded into
+ * each instance's matrices once per frame instead of once per draw.
+ *
+ * Instances are culled against the view frustum with bounds derived from their bones (see
+ * VBOModel.computeBounds).  With pose culling on, instances whose whole animation is
+ * off-screen (VBOModel.getAnimationBounds) aren't even posed.  With an AnimationLod,
+ * instances that are small on screen are posed less often than every frame.  Small instances
+ * are also posed and drawn with a reduced skeleton (see SkeletonLod) and, with a SkinningLod,
+ * cheaper skinning shaders.  Changing an instance's shaders changes its draws' sort keys, so
+ * that makes draw() resort the draw list.
+ *
+ * A FrameGovernor can be given the time that each frame's pose, upload and draw phases
+ * take.  It makes all of the LODs above think instances are smaller than they are when frames
+ * run over budget, and can cap the number of instances posed per frame.  Capped instances
+ * take turns.
+ *
+ * The price of sorting by texture before instance is that an instance's matrices and
+ * bones are set once per texture it uses instead of once per program.  Uniform uploads are
+ * much cheaper for the driver than texture and buffer binds, so that is usually a good trade.
+ *
+ * A draw list entry is a single long so that building and sorting it allocates nothing:
+ *   | program slot (5) | texture slot (11) | model slot (10) | instance (21) | draw (16) |
+ * The slots are small numbers handed out when an instance is added and given back when the
+ * last draw using them is removed, so adding and removing instances of ever new models
+ * neither runs out of slots nor keeps the removed models alive.  Their order is
+ * meaningless -- they only group equal state together.
+ *
+ * All methods require an active GLES context on the GLES thread.
+ */
+@SuppressLint("Assert")
+public class Scene {
+    private static final int DRAW_BITS = 16;
+    private static final int INSTANCE_BITS = 21;
+    private static final int MODEL_BITS = 10;
+    private static final int TEXTURE_BITS = 11;
+    private static final int PROGRAM_BITS = 5;
+
+    private static final int INSTANCE_SHIFT = DRAW_BITS;
+    private static final int MODEL_SHIFT = INSTANCE_SHIFT + INSTANCE_BITS;
+    private static final int TEXTURE_SHIFT = MODEL_SHIFT + MODEL_BITS;
+    private static final int PROGRAM_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+
+    /// Default projected radii (see Bounds.projectedRadius) below which instances use skeleton
+    /// LOD 1, 2...  See setSkeletonLodThresholds.
+    public static final float[] DEFAULT_SKELETON_LOD_THRESHOLDS = { 0.1f, 0.04f };
+
+    /**
+     * One model instance in the scene.  Move it by changing mModelMatrix.
+     */
+    public static class Instance {
+        /// Model-space to world-space.  Identity when added.
+        public final float[] mModelMatrix = new float[16];
+
+        Instance(SkinnedVBOAnimModel animModel) {
+            mAnimModel = animModel;
+            mAnimationBounds = animModel.getVboModel().getAnimationBounds(animModel.getAnimation());
+            Matrix.setIdentityM(mModelMatrix, 0);
+        }
+
+        public SkinnedVBOAnimModel getAnimModel() {
+            return mAnimModel;
+        }
+
+        /// @return True if the last Scene.draw() found the instance to be off-screen.
+        public boolean isCulled() {
+            return mCulled;
+        }
+
+        private final SkinnedVBOAnimModel mAnimModel;
+        private final VBOModel.InstanceMatrices mMatrices = new VBOModel.InstanceMatrices();
+        private final float[] mAnimationBounds;
+        /// True if the instance is outside the frustum this frame
+        private boolean mCulled;
+        /// Spreads the pose updates of instances with the same update interval over frames.
+        private int mPhase;
+        /// The Scene.mFrame the instance was last posed in
+        private int mPoseFrame;
+        /// The last two poses, and a blend of them for interpolating between updates.
+        private GLSLBones mPrevBones;
+        private GLSLBones mNextBones;
+        private GLSLBones mBlendBones;
+        /// The bones to draw with this frame.  One of the above.
+        private GLSLBones mBones;
+        /// Index of the SkinningLod level the instance is skinned with.  0 is its own.
+        private int mSkinningLevel;
+        /// The program, texture and model bits of the sort key of each of the model's draws.
+        private long[] mKeyPrefixes;
+        /// Position in Scene.mInstances
+        private int mIndex = -1;
+    }
+
+    /**
+     * Add an instance of an animated model.
+     * @return  The instance, to position it or remove it later.
+     */
+    public Instance add(SkinnedVBOAnimModel animModel) {
+        Util.Assert(mInstances.size() < (1 << INSTANCE_BITS));
+        Instance instance = new Instance(animModel);
+        int nDraws = animModel.getVboModel().getDrawCount();
+        Util.Assert(nDraws <= (1 << DRAW_BITS));
+        instance.mKeyPrefixes = new long[nDraws];
+        acquireSlots(instance);
+
+        instance.mPhase = mNextPhase++;
+        instance.mIndex = mInstances.size();
+        mInstances.add(instance);
+        mDrawCount += nDraws;
+        mDrawListDirty = true;
+        return instance;
+    }
+
+    /**
+     * Set the program, texture and model bits of the sort keys of an instance's draws from
+     * its current programs.  Each draw holds a reference to its three slots.
+     */
+    private void acquireSlots(Instance instance) {
+        VBOModel vboModel = instance.mAnimModel.getVboModel();
+        ShaderProgram[] programs = instance.mAnimModel.getPrograms();
+        for (int drawIdx=0; drawIdx<instance.mKeyPrefixes.length; drawIdx++) {
+            long programSlot = mPrograms.acquire(programs[vboModel.getDrawVariant(drawIdx)]);
+            long textureSlot = mTextures.acquire(vboModel.getDrawTexture(drawIdx));
+            long modelSlot = mModels.acquire(vboModel);
+            instance.mKeyPrefixes[drawIdx] = (programSlot << PROGRAM_SHIFT) |
+                    (textureSlot << TEXTURE_SHIFT) | (modelSlot << MODEL_SHIFT);
+        }
+    }
+
+    /// Give back the slots that acquireSlots took for instance's draws.
+    private void releaseSlots(Instance instance) {
+        for (long prefix : instance.mKeyPrefixes) {
+            mPrograms.release((int)(prefix >>> PROGRAM_SHIFT));
+            mTextures.release((int)((prefix >>> TEXTURE_SHIFT) & ((1 << TEXTURE_BITS) - 1)));
+            mModels.release((int)((prefix >>> MODEL_SHIFT) & ((1 << MODEL_BITS) - 1)));
+        }
+    }
+
+    /**
+     * Remove an instance.  Does nothing if it is not in the scene.
+     */
+    public void remove(Instance instance) {
+        int index = instance.mIndex;
+        if (index < 0 || index >= mInstances.size() || mInstances.get(index) != instance) {
+            return;
+        }
+        // Order of instances doesn't matter (draw() sorts anyway) so fill the hole with the last one.
+        Instance last = mInstances.remove(mInstances.size() - 1);
+        if (last != instance) {
+            mInstances.set(index, last);
+            last.mIndex = index;
+        }
+        instance.mIndex = -1;
+        releaseSlots(instance);
+        mDrawCount -= instance.mKeyPrefixes.length;
+        mDrawListDirty = true;
+    }
+
+    /**
+     * Remove all instances and forget the programs, textures and models they used.
+     */
+    public void clear() {
+        for (Instance instance : mInstances) {
+            instance.mIndex = -1;
+        }
+        mInstances.clear();
+        mDrawCount = 0;
+        mDrawListDirty = true;
+        mPrograms.clear();
+        mTextures.clear();
+        mModels.clear();
+    }
+
+    /**
+     * @param poseCulling   If true (the default), instances that are off-screen in every
+     *                      pose of their animation are culled without being posed.  Their
+     *                      animation bounds are sampled, so very fast motion between samples
+     *                      could be missed.  If false, every instance is posed and culled by
+     *                      its exact bounds.
+     */
+    public void setPoseCulling(boolean poseCulling) {
+        mPoseCulling = poseCulling;
+    }
+
+    /**
+     * @param projectedRadii    Decreasing projected radii (see Bounds.projectedRadius).  Instances
+     *                          smaller than projectedRadii[i] use skeleton LOD i+1 (or the
+     *                          smallest skeleton their model has).  null or empty to always use
+     *                          the full skeleton.  Defaults to DEFAULT_SKELETON_LOD_THRESHOLDS.
+     */
+    public void setSkeletonLodThresholds(float[] projectedRadii) {
+        mSkeletonLodThresholds = (projectedRadii == null) ? new float[0] : projectedRadii.clone();
+    }
+
+    /**
+     * @param skinningLod   Which cheaper Animators and influence counts to skin small instances
+     *                      with.  null (the default) skins every instance with its own Animator.
+     *                      Instances already in the scene go back to their own Animator.
+     */
+    public void setSkinningLod(SkinningLod skinningLod) {
+        mSkinningLod = skinningLod;
+        for (Instance instance : mInstances) {
+            setSkinningLevel(instance, 0);
+        }
+    }
+
+    /**
+     * @param governor  Fed the time of every draw()'s phases and obeyed.  null (the default)
+     *                  for full quality however long frames take.
+     */
+    public void setFrameGovernor(FrameGovernor governor) {
+        mGovernor = governor;
+    }
+
+    /**
+     * @param animationLod  When to pose instances less often than every frame.  null (the
+     *                      default) poses every visible instance every frame.
+     */
+    public void setAnimationLod(AnimationLod animationLod) {
+        mAnimationLod = animationLod;
+    }
+
+    public int getInstanceCount() {
+        return mInstances.size();
+    }
+
+    /**
+     * Animate all instances to `time` and draw them.
+     * @param time  In seconds, on the same clock as the instances' start times.
+     */
+    public void draw(float[] projMatrix, float[] viewMatrix, float[] eyeLightPos, double time) {
+        // Cull, pose and compute the per-instance matrices.  This is the only per-instance
+        // work -- everything after this is per draw.
+        long startNanos = (mGovernor == null) ? 0 : System.nanoTime();
+        int nInstances = mInstances.size();
+        mPoseBudget = Integer.MAX_VALUE;
+        if (mGovernor != null && mGovernor.getAnimatedFraction() < 1.0f) {
+            mPoseBudget = Math.max(1, (int)Math.ceil(mGovernor.getAnimatedFraction() * (nInstances - mLastCulledCount)));
+        }
+        mLastCulledCount = mLastPosedCount = mLastSkinningLevelChanges = mLastDeferredCount = 0;
+        mFrame++;
+        // Start with the first instance whose pose was deferred last frame, so that a capped
+        // number of posings goes round all of the instances in turn.
+        int start = (mPoseStart < nInstances) ? mPoseStart : 0;
+        mPoseStart = 0;
+        boolean deferring = false;
+        for (int j=0; j<nInstances; j++) {
+            int i = (start + j) % nInstances;
+            Instance instance = mInstances.get(i);
+            VBOModel.InstanceMatrices matrices = instance.mMatrices;
+            matrices.set(instance.mModelMatrix, viewMatrix, projMatrix);
+            if (!instance.mAnimModel.getVboModel().isResident()) {
+                instance.mCulled = true;        // still uploading
+            } else if (mPoseCulling && Bounds.isOutsideFrustum(matrices.mMvpMatrix, instance.mAnimationBounds, 0)) {
+                instance.mCulled = true;
+            } else {
+                float projectedRadius = Bounds.projectedRadius(matrices.mMvMatrix, projMatrix,
+                        instance.mAnimationBounds, 0);
+                if (!pose(instance, projectedRadius, time) && !deferring) {
+                    deferring = true;
+                    mPoseStart = i;
+                }
+                SkinnedVBOAnimModel animModel = instance.mAnimModel;
+                instance.mCulled = !animModel.getVboModel().isVisible(matrices, instance.mBones,
+                        animModel.getSkeletonLod());
+            }
+            mLastCulledCount += instance.mCulled ? 1 : 0;
+        }
+
+        if (mDrawListDirty) {
+            buildDrawList();
+        }
+        long poseEndNanos = (mGovernor == null) ? 0 : System.nanoTime();
+        long uploadNanos = 0;
+
+        // Submit.  Skinned programs get their per-instance uniforms once per run of draws
+        // of the same instance.  Rigid draws need them every time since their bone is folded
+        // into the matrices.  Attribute pointers depend on the program, the model and the
+        // VBO segment so they are only respecified when one of those changes.
+        mLastProgramChanges = mLastTextureChanges = mLastModelChanges = 0;
+        ShaderProgram curProgram = null;
+        VBOModel curModel = null;
+        GLESTexture curTexture = null;
+        Instance curInstance = null;
+        int curVertByteOffset = -1;
+        int curSkeletonLod = 0;
+        int nDrawn = 0;
+        for (int k=0; k<mDrawCount; k++) {
+            long key = mKeys[k];
+            Instance instance = mInstances.get((int)((key >>> INSTANCE_SHIFT) & ((1 << INSTANCE_BITS) - 1)));
+            if (instance.mCulled) {
+                continue;
+            }
+            int drawIdx = (int)(key & ((1 << DRAW_BITS) - 1));
+            int skeletonLod = instance.mAnimModel.getSkeletonLod();
+            ShaderProgram program = mPrograms.get((int)(key >>> PROGRAM_SHIFT));
+            VBOModel model = mModels.get((int)((key >>> MODEL_SHIFT) & ((1 << MODEL_BITS) - 1)));
+
+            if (program != curProgram) {
+                VBOModel.useProgram(program, eyeLightPos);
+                curProgram = program;
+                curInstance = null;
+                curVertByteOffset = -1;
+                mLastProgramChanges++;
+            }
+            if (model != curModel) {
+                model.bindModel();
+                curModel = model;
+                curVertByteOffset = -1;
+                mLastModelChanges++;
+            }
+            if (!program.mSkinned || instance != curInstance) {
+                long uploadStartNanos = (mGovernor == null) ? 0 : System.nanoTime();
+                model.setInstanceUniforms(program, drawIdx, skeletonLod, instance.mMatrices, instance.mBones);
+                curInstance = instance;
+                if (mGovernor != null) {
+                    uploadNanos += System.nanoTime() - uploadStartNanos;
+                }
+            }
+            GLESTexture texture = model.getDrawTexture(drawIdx);
+            if (texture != curTexture) {
+                curTexture = texture;
+                mLastTextureChanges++;
+            }
+            int vertByteOffset = model.getDrawVertexOffset(drawIdx);
+            model.bindDraw(program, drawIdx, skeletonLod,
+                    vertByteOffset != curVertByteOffset || skeletonLod != curSkeletonLod);
+            curVertByteOffset = vertByteOffset;
+            curSkeletonLod = skeletonLod;
+            model.issueDraw(drawIdx);
+            nDrawn++;
+        }
+        mLastDrawCount = nDrawn;
+
+        if (mGovernor != null) {
+            long endNanos = System.nanoTime();
+            mGovernor.onFrame(poseEndNanos - startNanos, uploadNanos, endNanos - poseEndNanos - uploadNanos);
+        }
+    }
+
+    /**
+     * Set instance.mBones for this frame, posing the instance if the AnimationLod says it is due.
+     * @return  False if it was due but the governor's cap on posings was already reached.  It
+     *          holds its last pose instead.
+     */
+    private boolean pose(Instance instance, float projectedRadius, double time) {
+        SkinnedVBOAnimModel animModel = instance.mAnimModel;
+        float animationRateBias = 1.0f, skinningBias = 1.0f, skeletonBias = 1.0f;
+        if (mGovernor != null) {
+            animationRateBias = mGovernor.getAnimationRateBias();
+            skinningBias = mGovernor.getSkinningBias();
+            skeletonBias = mGovernor.getSkeletonBias();
+        }
+        int interval = 1;
+        if (mAnimationLod != null) {
+            interval = mAnimationLod.getUpdateInterval(projectedRadius / animationRateBias);
+        }
+        int skeletonLod = 0;
+        while (skeletonLod < mSkeletonLodThresholds.length &&
+                projectedRadius / skeletonBias < mSkeletonLodThresholds[skeletonLod]) {
+            skeletonLod++;
+        }
+        int oldSkeletonLod = animModel.getSkeletonLod();
+        animModel.setSkeletonLod(skeletonLod);
+        boolean bonesChanged = (animModel.getSkeletonLod() != oldSkeletonLod);
+        if (mSkinningLod != null) {
+            // A new Animator needs new bones (of its kind) just like a new skeleton does.
+            Animator oldAnimator = animModel.getAnimator();
+            setSkinningLevel(instance, mSkinningLod.chooseLevel(projectedRadius / skinningBias,
+                    instance.mSkinningLevel));
+            bonesChanged |= (animModel.getAnimator() != oldAnimator);
+        }
+
+        int framesSinceUpdate = mFrame - instance.mPoseFrame;
+        // Without a pose for its current skeleton and Animator, the instance can't be drawn.
+        boolean mustPose = (instance.mNextBones == null) || bonesChanged;
+        boolean due = mustPose || (framesSinceUpdate >= interval) || ((mFrame + instance.mPhase) % interval == 0);
+        if (due && !mustPose && mPoseBudget <= 0) {
+            instance.mBones = instance.mNextBones;
+            mLastDeferredCount++;
+            return false;
+        }
+        if (due) {
+            // Don't blend from a pose that is older than one interval (eg the instance was
+            // culled) or from another skeleton or Animator.
+            instance.mPrevBones = (framesSinceUpdate <= interval && !bonesChanged) ? instance.mNextBones : null;
+            animModel.jumpTo(time);
+            instance.mNextBones = animModel.getBones();
+            instance.mPoseFrame = mFrame;
+            framesSinceUpdate = 0;
+            mLastPosedCount++;
+            mPoseBudget--;
+        }
+
+        if (interval == 1 || instance.mPrevBones == null || !mAnimationLod.isInterpolating()) {
+            instance.mBones = instance.mNextBones;
+            return true;
+        }
+        // Show the pose between the last two updates.  That lags the animation by one interval
+        // but it never has to guess where the animation is going.
+        if (instance.mBlendBones == null) {
+            instance.mBlendBones = animModel.getAnimator().getBonesAtTime(
+                    animModel.getAnimation(), animModel.getVboModel().getSkeleton(), 0);
+        }
+        instance.mBlendBones.lerp(instance.mPrevBones, instance.mNextBones,
+                (float)framesSinceUpdate / interval);
+        instance.mBones = instance.mBlendBones;
+        return true;
+    }
+
+    /**
+     * Switch an instance to a SkinningLod level (or its own skinning for level 0).  Its draws
+     * are resorted by their new programs at the next draw().
+     */
+    private void setSkinningLevel(Instance instance, int level) {
+        if (level == instance.mSkinningLevel) {
+            return;
+        }
+        SkinnedVBOAnimModel animModel = instance.mAnimModel;
+        Animator oldAnimator = animModel.getAnimator();
+        animModel.setSkinningLevel((level == 0) ? null : mSkinningLod.getLevel(level));
+        if (animModel.getAnimator() != oldAnimator) {
+            instance.mBlendBones = null;        // the old Animator's kind of bones
+        }
+        instance.mSkinningLevel = level;
+        releaseSlots(instance);
+        acquireSlots(instance);
+        mDrawListDirty = true;
+        mLastSkinningLevelChanges++;
+    }
+
+    /**
+     * Fill mKeys with a key for every draw of every instance and sort it.  The keys only
+     * depend on which instances there are, so this only happens when that changes.
+     */
+    private void buildDrawList() {
+        if (mKeys.length < mDrawCount) {
+            mKeys = new long[Math.max(mDrawCount, 2*mKeys.length)];
+        }
+        int nKeys = 0;
+        for (int i=0; i<mInstances.size(); i++) {
+            long[] prefixes = mInstances.get(i).mKeyPrefixes;
+            long instanceBits = (long)i << INSTANCE_SHIFT;
+            for (int drawIdx=0; drawIdx<prefixes.length; drawIdx++) {
+                mKeys[nKeys++] = prefixes[drawIdx] | instanceBits | drawIdx;
+            }
+        }
+        Util.Assert(nKeys == mDrawCount);
+        Arrays.sort(mKeys, 0, nKeys);
+        mDrawListDirty = false;
+    }
+
+    /// @return The number of glDrawElements calls made by the last draw().
+    public int getLastDrawCount() {
+        return mLastDrawCount;
+    }
+
+    /// @return The number of instances that the last draw() culled.
+    public int getLastCulledCount() {
+        return mLastCulledCount;
+    }
+
+    /// @return The number of instances that the last draw() posed (ie that jumpTo was called on).
+    public int getLastPosedCount() {
+        return mLastPosedCount;
+    }
+
+    /// @return The number of instances that were due to be posed in the last draw() but held
+    ///         their last pose because of the FrameGovernor's cap.
+    public int getLastDeferredCount() {
+        return mLastDeferredCount;
+    }
+
+    /// @return The number of instances that changed SkinningLod level in the last draw().
+    public int getLastSkinningLevelChanges() {
+        return mLastSkinningLevelChanges;
+    }
+
+    /// @return The number of times the last draw() switched programs.
+    public int getLastProgramChanges() {
+        return mLastProgramChanges;
+    }
+
+    /// @return The number of times the last draw() switched textures.
+    public int getLastTextureChanges() {
+        return mLastTextureChanges;
+    }
+
+    /// @return The number of times the last draw() switched VBOModels (ie VBO/IBO pairs).
+    public int getLastModelChanges() {
+        return mLastModelChanges;
+    }
+
+    /**
+     * Reference counted slots for one kind of state (programs, textures or models).  A slot
+     * goes back to being free, and forgets its object, when its last reference is released.
+     */
+    private static class SlotTable<T> {
+        SlotTable(int nBits) {
+            mObjects = new Object[1 << nBits];
+            mRefCounts = new int[1 << nBits];
+        }
+
+        /**
+         * @return  The slot of object, handing out the lowest free one if it doesn't have one.
+         *          Each call is a reference to be given back with release().
+         */
+        int acquire(T object) {
+            Integer slot = mSlots.get(object);
+            if (slot == null) {
+                int free = 0;
+                while (free < mRefCounts.length && mRefCounts[free] > 0) {
+                    free++;
+                }
+                Util.Assert(free < mRefCounts.length);
+                slot = free;
+                mSlots.put(object, slot);
+                mObjects[free] = object;
+            }
+            mRefCounts[slot]++;
+            return slot;
+        }
+
+        void release(int slot) {
+            Util.Assert(mRefCounts[slot] > 0);
+            if (--mRefCounts[slot] == 0) {
+                mSlots.remove(mObjects[slot]);
+                mObjects[slot] = null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int slot) {
+            return (T)mObjects[slot];
+        }
+
+        void clear() {
+            mSlots.clear();
+            Arrays.fill(mObjects, null);
+            Arrays.fill(mRefCounts, 0);
+        }
+
+        private final Map<T, Integer> mSlots = new IdentityHashMap<>();
+        /// Indexed by slot
+        private final Object[] mObjects;
+        private final int[] mRefCounts;
+    }
+
+    private final List<Instance> mInstances = new ArrayList<>();
+    private final SlotTable<ShaderProgram> mPrograms = new SlotTable<>(PROGRAM_BITS);
+    private final SlotTable<GLESTexture> mTextures = new SlotTable<>(TEXTURE_BITS);
+    private final SlotTable<VBOModel> mModels = new SlotTable<>(MODEL_BITS);
+    /// Total draws of all instances
+    private int mDrawCount = 0;
+    /// The sorted draw list.  The first mDrawCount entries are valid unless mDrawListDirty.
+    private long[] mKeys = new long[0];
+    private boolean mDrawListDirty = false;
+    private boolean mPoseCulling = true;
+    private AnimationLod mAnimationLod = null;
+    private SkinningLod mSkinningLod = null;
+    private FrameGovernor mGovernor = null;
+    /// Posings left this frame under the governor's cap
+    private int mPoseBudget = Integer.MAX_VALUE;
+    /// Index of the instance to start posing from next frame
+    private int mPoseStart = 0;
+    private float[] mSkeletonLodThresholds = DEFAULT_SKELETON_LOD_THRESHOLDS.clone();
+    /// Number of draw() calls so far
+    private int mFrame = 0;
+    private int mNextPhase = 0;
+
+    private int mLastDrawCount = 0;
+    private int mLastCulledCount = 0;
+    private int mLastPosedCount = 0;
+    private int mLastSkinningLevelChanges = 0;
+    private int mLastDeferredCount = 0;
+    private int mLastProgramChanges = 0;
+    private int mLastTextureChanges = 0;
+    private int mLastModelChanges = 0;
+
+    @SuppressWarnings("unused")
+    private static final String TAG = "Scene";
+}
@@ -0,0 +1,185 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * A linked GLES shader program and the locations of all of its variables, resolved once
+ * when it is compiled so that drawing never has to look anything up by name.
+ * Immutable, until released.  Get these from a ShaderProgramRegistry, which makes sure each
+ * one is only compiled once (and releases them).
+ * Locations are -1 for variables the program does not have (eg bone data in the rigid
+ * program).
+ */
+public class ShaderProgram implements Releasable {
+    /// The vertex attributes, in the order they appear in the VBO.
+    /// It does not matter if they use this order in the shader itself.
+    public static final String ATTRIB_NAMES[] = {
+            "aPosition", "aTexCoord", "aNormal", "aBoneIndices", "aBoneWeights"
+    };
+
+    public final int mId;
+    /// False for programs without bone variables (ie the rigid program)
+    public final boolean mSkinned;
+    public final int mMVPMatrixHandle;
+    public final int mMVMatrixHandle;
+    public final int mVTIMMatrixHandle;
+    public final int mBoneTformsHandle;
+    public final int mLightPosHandle;
+    public final int mTextureHandle;
+    /// Aligned with ATTRIB_NAMES
+    private final int[] mAttribHandles = new int[ATTRIB_NAMES.length];
+
+    /**
+     * Compile and link a program and resolve its variables.
+     * Requires an active GLES context on the GLES thread.
+     * @param skinned   False if the program does not use the bone attributes and uniforms.
+     */
+    ShaderProgram(String vertexSource, String fragmentSource, boolean skinned) {
+        mSkinned = skinned;
+        mId = createProgram(vertexSource, fragmentSource);
+        mGeneration = GLESContext.getGeneration();
+
+        for (int i=0; i<ATTRIB_NAMES.length; i++) {
+            String name = ATTRIB_NAMES[i];
+            int handle = GLESContext.gl().glGetAttribLocation(mId, name);
+            checkGlError("glGetAttribLocation " + name);
+            if (handle == -1 && (skinned || !isBoneVariable(name))) {
+                throw new RuntimeException("Could not get attrib location for " + name);
+            }
+            mAttribHandles[i] = handle;
+        }
+
+        // uVTIMMatrix is view * ((model^-1)^T), for deforming normals even if model has scale.
+        // Use [0] for array members.  This shouldn't be necessary (although it is valid)
+        // but GLES driver writers have been deviating from the spec this way for years.
+        mMVPMatrixHandle = getUniformLocation("uMVPMatrix");
+        mMVMatrixHandle = getUniformLocation("uMVMatrix");
+        mVTIMMatrixHandle = getUniformLocation("uVTIMMatrix");
+        mBoneTformsHandle = getUniformLocation("uBoneTforms[0]");
+        mLightPosHandle = getUniformLocation("uLightPos");
+        mTextureHandle = getUniformLocation("uTexture");
+    }
+
+    /**
+     * Delete the program.  Its shaders were already flagged for deletion, so they go with it.
+     */
+    @Override
+    public void release() {
+        if (!mReleased && mGeneration == GLESContext.getGeneration()) {
+            GLESContext.gl().glDeleteProgram(mId);
+        }
+        mReleased = true;
+    }
+
+    /**
+     * @param attribIdx Index in ATTRIB_NAMES
+     * @return  The location of the attribute or -1 if the program doesn't have it.
+     */
+    public int getAttribHandle(int attribIdx) {
+        return mAttribHandles[attribIdx];
+    }
+
+    private int getUniformLocation(String name) {
+        int handle = GLESContext.gl().glGetUniformLocation(mId, name);
+        checkGlError("glGetUniformLocation " + name);
+        if (handle == -1 && (mSkinned || !isBoneVariable(name))) {
+            throw new RuntimeException("Could not get uniformlocation for " + name);
+        }
+        return handle;
+    }
+
+    private static boolean isBoneVariable(String name) {
+        return name.startsWith("aBone") || name.startsWith("uBone");
+    }
+
+    private static int loadShader(int shaderType, String source) {
+        int shader = GLESContext.gl().glCreateShader(shaderType);
+        if (shader == 0) {
+            throw new IllegalStateException("Failed to create "
+                    + ((shaderType == GLES20.GL_VERTEX_SHADER) ? "vertex" : "fragment")
+                    + " shader program : " + source);
+        }
+        GLESContext.gl().glShaderSource(shader, source);
+        GLESContext.gl().glCompileShader(shader);
+        int[] compiled = new int[1];
+        GLESContext.gl().glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) {
+            Log.e(TAG, "Could not compile shader " + shaderType + ":");
+            Log.e(TAG, GLESContext.gl().glGetShaderInfoLog(shader));
+            GLESContext.gl().glDeleteShader(shader);
+            throw new IllegalStateException("Failed to compile "
+                    + ((shaderType == GLES20.GL_VERTEX_SHADER) ? "vertex" : "fragment")
+                    + " shader program : " + source);
+        }
+        return shader;
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource) {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int pixelShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = GLESContext.gl().glCreateProgram();
+        if (program == 0) {
+            throw new IllegalStateException("Failed to create shader program.");
+        }
+
+        GLESContext.gl().glAttachShader(program, vertexShader);
+        checkGlError("create Program attachShader vertex");
+        GLESContext.gl().glAttachShader(program, pixelShader);
+        checkGlError("create Program attachShader pixel");
+        GLESContext.gl().glLinkProgram(program);
+        int[] linkStatus = new int[1];
+        GLESContext.gl().glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, "Could not link program: ");
+            Log.e(TAG, GLESContext.gl().glGetProgramInfoLog(program));
+            GLESContext.gl().glDeleteProgram(program);
+            throw new IllegalStateException("Failed to link shader program.");
+        }
+        // The program keeps what it needs.  Deleting the shaders now means they are freed
+        // with the program instead of leaking.
+        GLESContext.gl().glDeleteShader(vertexShader);
+        GLESContext.gl().glDeleteShader(pixelShader);
+        return program;
+    }
+
+    /**
+     * Get and log ALL current GL errors.  Throw the last one as an exception.
+     * Does nothing at GLESContext.VALIDATE_NONE.
+     * @param message Message to log if there are errors.
+     */
+    private static void checkGlError(String message) {
+        if (GLESContext.getValidationLevel() == GLESContext.VALIDATE_NONE) {
+            return;
+        }
+        int error = GLESContext.gl().glGetError();
+        while (error != GLES20.GL_NO_ERROR) {
+            Log.e(TAG, message + ".  GlError : " + error);
+            error = GLESContext.gl().glGetError();
+            if (error == GLES20.GL_NO_ERROR) {
+                throw new RuntimeException(message + ". GlError : " + error);
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    public void logShaderVariables()
+    {
+        int[] count = new int[1];
+        GLESContext.gl().glGetProgramiv(mId, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+
+        for (int i=0; i<count[0]; i++) {
+            int[] tmp = {0, 0, 0};
+            byte[] nameb = new byte[64];
+            GLESContext.gl().glGetActiveAttrib(mId, i, 64, tmp, 0, tmp, 1, tmp, 2, nameb, 0);
+            String name = new String(nameb, 0, tmp[0]);
+            Log.i(TAG, "Program " + mId + " : Variable " + i + " : name = " + name);
+        }
+    }
+
+    private static final String TAG = "ShaderProgram";
+
+    /// GLESContext generation that mId belongs to
+    private final int mGeneration;
+    private boolean mReleased = false;
+}
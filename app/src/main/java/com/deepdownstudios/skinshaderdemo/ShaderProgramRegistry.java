@@ -0,0 +1,180 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.content.res.Resources;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.deepdownstudios.skinshaderdemo.ByteBufferModel.INFLUENCE_CLASSES;
+
+/**
+ * All of the app's shader programs, each compiled once per GLES context and shared by
+ * everything that draws with it.  Programs are keyed by their (full) source, so the same
+ * shader with different #defines is a different program and the same shader requested
+ * twice is the same one.
+ *
+ * The skinning shaders come in variants: one per influence class (see
+ * ByteBufferModel.INFLUENCE_CLASSES), with N_INFLUENCES #define-d to the class so it only
+ * blends that many bones, plus RIGID_VARIANT for meshes bound rigidly to one bone, which
+ * does no skinning at all.  A model picks a variant per mesh and the Animator picks the
+ * skinning shader.  For skinning LOD (see SkinningLod) a variant can also be capped to fewer
+ * influences than its class, with RENORMALIZE_WEIGHTS #define-d so that the influences it
+ * does blend add up to one.
+ *
+ * All methods require an active GLES context on the GLES thread.
+ */
+public class ShaderProgramRegistry {
+    /// Variant for meshes that are bound rigidly to one bone.  The others are influence classes.
+    public static final int RIGID_VARIANT = INFLUENCE_CLASSES.length;
+    /// Number of variants of each skinning program.
+    public static final int VARIANT_COUNT = INFLUENCE_CLASSES.length + 1;
+
+    public ShaderProgramRegistry(Resources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * Get the program built from the given sources, compiling it if this is the first
+     * time it is asked for.
+     * @param skinned   False if the program does not use the bone attributes and uniforms.
+     */
+    public ShaderProgram get(String vertexSource, String fragmentSource, boolean skinned) {
+        String key = (skinned ? "S" : "R") + vertexSource + "\u0000" + fragmentSource;
+        ShaderProgram program = mPrograms.get(key);
+        if (program == null) {
+            program = new ShaderProgram(vertexSource, fragmentSource, skinned);
+            mPrograms.put(key, program);
+            mCompileCount++;
+        }
+        return program;
+    }
+
+    /**
+     * Get a variant of the skinning program for an Animator.
+     * @param variant   Index of an influence class in INFLUENCE_CLASSES, or RIGID_VARIANT.
+     */
+    public ShaderProgram getSkinningProgram(Animator animator, int variant) {
+        return getSkinningProgram(animator, variant, INFLUENCE_CLASSES.length - 1);
+    }
+
+    /**
+     * Get a variant of the skinning program for an Animator that blends at most some number
+     * of influences.  Cheap: the programs are remembered by their arguments.
+     * @param variant           Index of an influence class in INFLUENCE_CLASSES, or RIGID_VARIANT.
+     * @param maxInfluenceClass Index of an influence class in INFLUENCE_CLASSES.  Variants of
+     *                          bigger classes only blend this class's number of influences.
+     */
+    public ShaderProgram getSkinningProgram(Animator animator, int variant, int maxInfluenceClass) {
+        int influenceClass = Math.min(variant, maxInfluenceClass);
+        if (variant == RIGID_VARIANT) {
+            influenceClass = 0;         // nothing to cap
+        }
+        ShaderProgram[] programs = mSkinningPrograms[animator.ordinal()][variant];
+        ShaderProgram program = programs[influenceClass];
+        if (program != null) {
+            return program;
+        }
+
+        String fragmentSource = getSource(R.raw.frag_shader);
+        if (variant == RIGID_VARIANT) {
+            // Same for all Animators -- there is nothing to blend.
+            program = get(getSource(R.raw.vert_shader_rigid), fragmentSource, false);
+        } else {
+            String defines = "#define N_INFLUENCES " + INFLUENCE_CLASSES[influenceClass] + "\n";
+            if (influenceClass < variant) {
+                defines += "#define RENORMALIZE_WEIGHTS\n";
+            }
+            program = get(defines + getSource(animator.getVertexShaderResource()), fragmentSource, true);
+        }
+        programs[influenceClass] = program;
+        return program;
+    }
+
+    /**
+     * Compile every variant of every Animator's skinning program, including the capped ones,
+     * so that nothing has to be compiled later, when an animation is started or an instance
+     * changes skinning LOD.  Call after the GLES surface is created.
+     */
+    public void warmUp() {
+        long start = SystemClock.uptimeMillis();
+        int compileCount = mCompileCount;
+        for (Animator animator : Animator.values()) {
+            for (int variant=0; variant<VARIANT_COUNT; variant++) {
+                for (int maxInfluenceClass=0; maxInfluenceClass<INFLUENCE_CLASSES.length; maxInfluenceClass++) {
+                    getSkinningProgram(animator, variant, maxInfluenceClass);
+                }
+            }
+        }
+        Log.i(TAG, "Warm-up compiled " + (mCompileCount - compileCount) + " shader programs in " +
+                (SystemClock.uptimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Forget all programs.  Call when the GLES context is lost, which takes the programs
+     * with it.  Shader sources are kept.
+     */
+    public void clear() {
+        mPrograms.clear();
+        mSkinningPrograms = newSkinningPrograms();
+    }
+
+    /**
+     * Delete all programs and forget them.  Use when the context is still alive but nothing
+     * will be drawn with it for a while -- clear() is for after it is lost.
+     */
+    public void release() {
+        for (ShaderProgram program : mPrograms.values()) {
+            program.release();
+        }
+        clear();
+    }
+
+    /// @return The number of programs that have been compiled, ever.
+    public int getCompileCount() {
+        return mCompileCount;
+    }
+
+    /// @return The text of a raw shader resource.  Each one is only read once.
+    private String getSource(int resourceId) {
+        String source = mSources.get(resourceId);
+        if (source == null) {
+            source = readRawResource(resourceId);
+            mSources.put(resourceId, source);
+        }
+        return source;
+    }
+
+    private static ShaderProgram[][][] newSkinningPrograms() {
+        return new ShaderProgram[Animator.values().length][VARIANT_COUNT][INFLUENCE_CLASSES.length];
+    }
+
+    /// Overridable so that tests can supply sources without Resources.
+    protected String readRawResource(int resourceId) {
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(mResources.openRawResource(resourceId)));
+        String line;
+        StringBuilder ret = new StringBuilder();
+        try {
+            while ((line = reader.readLine()) != null) {
+                ret.append(line).append("\n");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return ret.toString();
+    }
+
+    private static final String TAG = "ShaderProgramRegistry";
+
+    private final Resources mResources;
+    private final Map<Integer, String> mSources = new HashMap<>();
+    private final Map<String, ShaderProgram> mPrograms = new HashMap<>();
+    /// getSkinningProgram's results by [animator ordinal][variant][capped influence class]
+    private ShaderProgram[][][] mSkinningPrograms = newSkinningPrograms();
+    private int mCompileCount = 0;
+}
@@ -0,0 +1,12 @@
+package com.deepdownstudios.skinshaderdemo;
+
+/**
+ * Something that knows (roughly) how much memory it is holding on to.  Cache budgets by this.
+ */
+public interface Sized {
+    /// @return  Bytes of GPU memory (buffers, textures) owned by this object.
+    long getGpuBytes();
+
+    /// @return  Bytes of Java/native heap owned by this object.  An estimate is fine.
+    long getCpuBytes();
+}
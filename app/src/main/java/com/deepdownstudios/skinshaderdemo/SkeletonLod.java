@@ -0,0 +1,139 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Skeleton;
+
+/**
+ * A reduced skeleton for drawing a model far away.  Small leaf bones (fingers, toes, ...)
+ * are collapsed into their parents: their vertices follow the parent instead and the bone is
+ * neither posed nor uploaded.  Far away, nobody can see the fingers move.
+ *
+ * The levels are built at import time (see build()) and each one is a subset of the
+ * previous.  Level 0 is always the full skeleton.  Vertices refer to the bones of a level by
+ * their index in mBones, so each level needs its own copy of the vertices' bone indices
+ * (see ByteBufferModel.mLodBoneIndexBuffers).  Their weights don't change -- two influences
+ * on the same bone are the same as one with their total weight.
+ */
+public class SkeletonLod {
+    /// Leaf bones whose vertices fit in a box this fraction of the size of the model's box
+    /// are collapsed at level 1, 2, ...
+    public static final float[] DEFAULT_THRESHOLDS = { 0.1f, 0.25f };
+
+    /// The bones of the skeleton that this level keeps, in skeleton order (so parents first).
+    public final int[] mBones;
+    /// For every bone of the skeleton, the index in mBones of the bone that its vertices
+    /// follow -- itself or its nearest kept ancestor.
+    public final int[] mRemap;
+    /// Bind-pose bounds (see Bounds) of each of mBones' vertices, including the vertices
+    /// of the bones collapsed into it.
+    public final float[] mBoneBounds;
+
+    private SkeletonLod(boolean[] kept, Skeleton skeleton, float[] boneBounds) {
+        int nBones = kept.length;
+        int nKept = 0;
+        for (boolean k : kept) {
+            nKept += k ? 1 : 0;
+        }
+        mBones = new int[nKept];
+        mRemap = new int[nBones];
+        mBoneBounds = new float[nKept * Bounds.SIZE];
+        int j = 0;
+        for (int bone=0; bone<nBones; bone++) {
+            if (kept[bone]) {
+                mBones[j] = bone;
+                mRemap[bone] = j++;
+                Bounds.setEmpty(mBoneBounds, mRemap[bone] * Bounds.SIZE);
+            } else {
+                // Parents come first, so the parent has already been remapped.
+                mRemap[bone] = mRemap[skeleton.bones.get(bone).parentIdx];
+            }
+        }
+        for (int bone=0; bone<nBones; bone++) {
+            Bounds.addBox(mBoneBounds, mRemap[bone] * Bounds.SIZE, boneBounds, bone * Bounds.SIZE);
+        }
+    }
+
+    /// A level that was built before, read back by DiskModelCache.
+    SkeletonLod(int[] bones, int[] remap, float[] boneBounds) {
+        mBones = bones;
+        mRemap = remap;
+        mBoneBounds = boneBounds;
+    }
+
+    public int getBoneCount() {
+        return mBones.length;
+    }
+
+    /**
+     * Build the levels of detail of a skeleton.  Levels that wouldn't remove any more bones
+     * than the previous one are left out, so there may be fewer than thresholds.length + 1.
+     * @param boneBounds    Bind-pose bounds of each bone's vertices (ByteBufferModel.mBoneBounds).
+     * @param thresholds    Increasing fractions of the model size.  Level i+1 collapses leaf
+     *                      bones whose vertices are smaller than thresholds[i] of the model.
+     *                      Collapsing can make the parent a leaf, which is then considered too.
+     * @return  The levels.  [0] is the full skeleton.
+     */
+    public static List<SkeletonLod> build(Skeleton skeleton, float[] boneBounds, float[] thresholds) {
+        int nBones = skeleton.bones.size();
+        boolean[] kept = new boolean[nBones];
+        int[] nKeptChildren = new int[nBones];
+        float[] mergedBounds = boneBounds.clone();
+        float[] modelBounds = new float[Bounds.SIZE];
+        Bounds.setEmpty(modelBounds, 0);
+        for (int bone=0; bone<nBones; bone++) {
+            kept[bone] = true;
+            int parent = skeleton.bones.get(bone).parentIdx;
+            if (parent != -1) {
+                nKeptChildren[parent]++;
+            }
+            Bounds.addBox(modelBounds, 0, boneBounds, bone * Bounds.SIZE);
+        }
+        float modelSize = size(modelBounds, 0);
+
+        List<SkeletonLod> ret = new ArrayList<>();
+        ret.add(new SkeletonLod(kept, skeleton, boneBounds));
+        int nKept = nBones;
+        for (float threshold : thresholds) {
+            // Children come after their parents, so going backwards collapses a whole
+            // chain of small bones in one pass.
+            for (int bone=nBones-1; bone>=0; bone--) {
+                int parent = skeleton.bones.get(bone).parentIdx;
+                if (!kept[bone] || parent == -1 || nKeptChildren[bone] > 0 ||
+                        size(mergedBounds, bone * Bounds.SIZE) >= threshold * modelSize) {
+                    continue;
+                }
+                kept[bone] = false;
+                nKeptChildren[parent]--;
+                nKept--;
+                Bounds.addBox(mergedBounds, parent * Bounds.SIZE, mergedBounds, bone * Bounds.SIZE);
+            }
+            if (nKept < ret.get(ret.size()-1).getBoneCount()) {
+                ret.add(new SkeletonLod(kept, skeleton, boneBounds));
+            }
+        }
+
+        StringBuilder report = new StringBuilder("Bones per skeleton LOD :");
+        for (SkeletonLod lod : ret) {
+            report.append(" ").append(lod.getBoneCount());
+        }
+        Log.i(TAG, report.toString());
+        return ret;
+    }
+
+    /// @return The length of the box's diagonal.  0 if it is empty.
+    private static float size(float[] box, int offset) {
+        if (Bounds.isEmpty(box, offset)) {
+            return 0.0f;
+        }
+        float dx = box[offset + 3] - box[offset];
+        float dy = box[offset + 4] - box[offset + 1];
+        float dz = box[offset + 5] - box[offset + 2];
+        return (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+    private static final String TAG = "SkeletonLod";
+}
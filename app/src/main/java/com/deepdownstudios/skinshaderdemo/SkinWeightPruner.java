@@ -0,0 +1,184 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Animation;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Mesh;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Skeleton;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Vertex;
+
+/**
+ * Import-time pass that removes skin weights too small to matter.  Exporters love to
+ * leave 0.3% influences lying around and each one can push a mesh into a more expensive
+ * shader variant (see ByteBufferModel.INFLUENCE_CLASSES) and costs the shader extra
+ * uBoneTforms fetches.
+ * Run this on the BasicModel data before building the ByteBufferModel.
+ */
+public final class SkinWeightPruner {
+    /// Influences lighter than this are dropped.
+    public static final double DEFAULT_WEIGHT_THRESHOLD = 0.01;
+    /// No vertex keeps more than this many influences.
+    public static final int DEFAULT_MAX_INFLUENCES = ByteBufferModel.MAX_INFLUENCES;
+    /// Number of poses, evenly spaced in time, sampled from each animation to measure error.
+    private static final int SAMPLES_PER_ANIMATION = 4;
+
+    /**
+     * What the pruning did.  The error is the largest distance, in model units, between
+     * a vertex skinned with its original weights and with its pruned weights, over the
+     * bind pose and the sampled animation poses.
+     */
+    public static class Report {
+        public int nVerts;
+        public int nVertsPruned;
+        public int nInfluencesRemoved;
+        public int nPosesMeasured;
+        public double maxError;
+
+        @Override
+        public String toString() {
+            return "Pruned " + nInfluencesRemoved + " influences from " + nVertsPruned + " of " +
+                    nVerts + " vertices.  Max deformation error over " + nPosesMeasured +
+                    " poses : " + maxError;
+        }
+    }
+
+    /**
+     * Prune with the default threshold and influence cap.
+     */
+    public static Report prune(List<Mesh> meshes, Skeleton skeleton) {
+        return prune(meshes, skeleton, DEFAULT_WEIGHT_THRESHOLD, DEFAULT_MAX_INFLUENCES);
+    }
+
+    /**
+     * Drop influences below `threshold`, keep at most `maxInfluences` of the heaviest
+     * of the rest and scale the survivors so that they add up to what the original weights
+     * added up to (which is 1 for sane data).  Vertices are changed in place.
+     * A vertex never loses its heaviest influence, however light it is.
+     * @param meshes        The meshes to prune.  Vertices shared between meshes are handled once.
+     * @param skeleton      The model's skeleton.  Used to measure the deformation error.
+     * @param threshold     Weights below this are removed.
+     * @param maxInfluences The most influences a vertex may keep.
+     * @return              What happened.
+     */
+    public static Report prune(List<Mesh> meshes, Skeleton skeleton,
+                               double threshold, int maxInfluences) {
+        Report report = new Report();
+
+        // Keep the original influences of the vertices we change so we can measure the damage.
+        Map<Vertex, Vertex> originals = new IdentityHashMap<>();
+        Map<Vertex, Boolean> visited = new IdentityHashMap<>();
+        for (Mesh mesh : meshes) {
+            for (Vertex vert : mesh.verts) {
+                if (visited.put(vert, Boolean.TRUE) != null) {
+                    continue;
+                }
+                report.nVerts++;
+                Vertex original = copyInfluences(vert);
+                int nRemoved = pruneVertex(vert, threshold, maxInfluences);
+                if (nRemoved > 0) {
+                    originals.put(vert, original);
+                    report.nVertsPruned++;
+                    report.nInfluencesRemoved += nRemoved;
+                }
+            }
+        }
+
+        measureError(originals, skeleton, report);
+        Log.i(TAG, report.toString());
+        return report;
+    }
+
+    /**
+     * @return  The number of influences removed from vert.
+     */
+    private static int pruneVertex(Vertex vert, double threshold, int maxInfluences) {
+        int nOriginal = vert.bones.size();
+        double originalSum = 0.0;
+        for (double weight : vert.boneWeights) {
+            originalSum += weight;
+        }
+
+        // Selection of the heaviest influences, in order.  There are only a handful.
+        List<Integer> keptBones = new ArrayList<>(maxInfluences);
+        List<Double> keptWeights = new ArrayList<>(maxInfluences);
+        boolean[] taken = new boolean[nOriginal];
+        while (keptBones.size() < maxInfluences) {
+            int heaviest = -1;
+            for (int i=0; i<nOriginal; i++) {
+                if (!taken[i] && (heaviest == -1 || vert.getBoneWeight(i) > vert.getBoneWeight(heaviest))) {
+                    heaviest = i;
+                }
+            }
+            if (heaviest == -1 ||
+                    (!keptBones.isEmpty() && vert.getBoneWeight(heaviest) < threshold)) {
+                break;
+            }
+            taken[heaviest] = true;
+            keptBones.add(vert.getBone(heaviest));
+            keptWeights.add(vert.getBoneWeight(heaviest));
+        }
+
+        int nRemoved = nOriginal - keptBones.size();
+        if (nRemoved == 0) {
+            return 0;
+        }
+
+        double keptSum = 0.0;
+        for (double weight : keptWeights) {
+            keptSum += weight;
+        }
+        if (keptSum > 0.0) {
+            for (int i=0; i<keptWeights.size(); i++) {
+                keptWeights.set(i, keptWeights.get(i) * originalSum / keptSum);
+            }
+        }
+        vert.bones = keptBones;
+        vert.boneWeights = keptWeights;
+        return nRemoved;
+    }
+
+    private static Vertex copyInfluences(Vertex vert) {
+        Vertex ret = new Vertex();
+        ret.pos = vert.pos;         // shared.  Not changed by pruning.
+        ret.bones = new ArrayList<>(vert.bones);
+        ret.boneWeights = new ArrayList<>(vert.boneWeights);
+        return ret;
+    }
+
+    /**
+     * CPU-skin the pruned vertices in the bind pose and in SAMPLES_PER_ANIMATION poses
+     * from every animation, with the original and pruned weights, and record the worst
+     * difference.
+     */
+    private static void measureError(Map<Vertex, Vertex> originals, Skeleton skeleton, Report report) {
+        List<CpuSkinning.Palette> palettes = new ArrayList<>();
+        palettes.add(new CpuSkinning.Palette(null, skeleton, 0));
+        for (Animation animation : skeleton.animations) {
+            for (int i=0; i<SAMPLES_PER_ANIMATION; i++) {
+                double delta = animation.duration * i / SAMPLES_PER_ANIMATION;
+                palettes.add(new CpuSkinning.Palette(animation, skeleton, delta));
+            }
+        }
+        report.nPosesMeasured = palettes.size();
+
+        double[] before = new double[3];
+        double[] after = new double[3];
+        for (Map.Entry<Vertex, Vertex> entry : originals.entrySet()) {
+            Vertex pruned = entry.getKey();
+            Vertex original = entry.getValue();
+            for (CpuSkinning.Palette palette : palettes) {
+                CpuSkinning.skinPoint(palette, original.bones, original.boneWeights, original.pos, before);
+                CpuSkinning.skinPoint(palette, pruned.bones, pruned.boneWeights, pruned.pos, after);
+                double dx = before[0]-after[0], dy = before[1]-after[1], dz = before[2]-after[2];
+                report.maxError = Math.max(report.maxError, Math.sqrt(dx*dx + dy*dy + dz*dz));
+            }
+        }
+    }
+
+    private static final String TAG = "SkinWeightPruner";
+}
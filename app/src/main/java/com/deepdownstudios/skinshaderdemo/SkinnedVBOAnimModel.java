@@ -5,6 +5,7 @@ import android.annotation.SuppressLint;
 import com.deepdownstudios.skinshaderdemo.Bones.GLSLBones;
 
 import static com.deepdownstudios.skinshaderdemo.BasicModel.*;
+import static com.deepdownstudios.skinshaderdemo.ByteBufferModel.INFLUENCE_CLASSES;
 
 /**
  * Created by davidp on 6/29/16.
@@ -14,21 +15,34 @@ import static com.deepdownstudios.skinshaderdemo.BasicModel.*;
 @SuppressLint("Assert")
 public class SkinnedVBOAnimModel implements AnimModel {
 
-    public SkinnedVBOAnimModel(VBOModel vboModel, Animation animation, double startTime,
-                               Animator animator) {
+    public SkinnedVBOAnimModel(VBOModel vboModel, ShaderProgramRegistry shaderPrograms,
+                               Animation animation, double startTime, Animator animator) {
         mVboModel = vboModel;
         mAnimation = animation;
         mStartTime = startTime;
-        mAnimator = animator;
+        mBaseAnimator = mAnimator = animator;
+        mShaderPrograms = shaderPrograms;
+        updatePrograms();
+    }
 
-        mVboModel.setShaderProgram(getVShader(animator), R.raw.frag_shader);
+    /**
+     * Our own set of programs, so instances with different Animators can share the
+     * VBOModel.  Already compiled if the registry was warmed up.
+     */
+    private void updatePrograms() {
+        for (int variant=0; variant<mPrograms.length; variant++) {
+            if (mVboModel.usesVariant(variant)) {
+                mPrograms[variant] = mShaderPrograms.getSkinningProgram(mAnimator, variant, mMaxInfluenceClass);
+            }
+        }
     }
 
     @Override
     public void jumpTo(double time) {
         double delta = (time - mStartTime) % mAnimation.duration;        // Loop the animation.
 //        long delta = Math.min((time - mStartTime), duration);        // Stop and freeze.
-        mBones = mAnimator.getBonesAtTime(mAnimation, mVboModel.getSkeleton(), delta);
+        int[] boneSubset = (mSkeletonLod == 0) ? null : mVboModel.getSkeletonLod(mSkeletonLod).mBones;
+        mBones = mAnimator.getBonesAtTime(mAnimation, mVboModel.getSkeleton(), delta, boneSubset);
     }
 
     @Override
@@ -36,26 +50,83 @@ public class SkinnedVBOAnimModel implements AnimModel {
         if (mBones == null) {
             jumpTo(mStartTime);
         }
-        mVboModel.draw(modelMatrix, viewMatrix, projMatrix, eyeLightPos, mBones);
+        mVboModel.draw(modelMatrix, viewMatrix, projMatrix, eyeLightPos, mBones, mPrograms, mSkeletonLod);
+    }
+
+    /**
+     * Pose and draw with a reduced skeleton.  Takes effect at the next jumpTo.
+     * @param lod   Index of a VBOModel.getSkeletonLod.  Clamped to the ones the model has.
+     */
+    public void setSkeletonLod(int lod) {
+        lod = Math.max(0, Math.min(lod, mVboModel.getSkeletonLodCount() - 1));
+        if (lod != mSkeletonLod) {
+            mSkeletonLod = lod;
+            mBones = null;      // posed with the old skeleton
+        }
     }
 
-    private int getVShader(Animator animator) {
-        switch (animator) {
-            case NORMAL:
-                return R.raw.vert_shader_matrix;
-            case QUAT:
-                return R.raw.vert_shader_quat;
-            case DUAL_QUAT:
-                return R.raw.vert_shader_dualquat;
+    /**
+     * Skin with a cheaper Animator and/or fewer influences per vertex.  An Animator change
+     * takes effect at the next jumpTo, fewer influences right away.
+     * @param level     A SkinningLod level, or null for the Animator the model was made with
+     *                  and all influences.
+     */
+    public void setSkinningLevel(SkinningLod.Level level) {
+        Animator animator = (level == null) ? mBaseAnimator : level.mAnimator;
+        int maxInfluenceClass = (level == null) ? INFLUENCE_CLASSES.length - 1 : level.mMaxInfluenceClass;
+        if (animator == mAnimator && maxInfluenceClass == mMaxInfluenceClass) {
+            return;
+        }
+        if (animator != mAnimator) {
+            mBones = null;      // posed for the old Animator's shader
+        }
+        mAnimator = animator;
+        mMaxInfluenceClass = maxInfluenceClass;
+        updatePrograms();
+    }
+
+    /// @return The skeleton LOD that getBones() was posed with.
+    public int getSkeletonLod() {
+        return mSkeletonLod;
+    }
+
+    public VBOModel getVboModel() {
+        return mVboModel;
+    }
+
+    /// @return The Animator that getBones() was posed with.  See setSkinningLevel.
+    public Animator getAnimator() {
+        return mAnimator;
+    }
+
+    public Animation getAnimation() {
+        return mAnimation;
+    }
+
+    /// @return The programs to draw with, indexed by ShaderProgramRegistry variant.
+    public ShaderProgram[] getPrograms() {
+        return mPrograms;
+    }
+
+    /// @return The bones at the time of the last jumpTo().
+    public GLSLBones getBones() {
+        if (mBones == null) {
+            jumpTo(mStartTime);
         }
-        throw new IllegalArgumentException("Invalid Animator : " + animator);
+        return mBones;
     }
 
     private VBOModel mVboModel;         // the model we are an instance of
     private Animation mAnimation;     // keyframes object for bones.  May or may not be uniform.
     private double mStartTime;            // value to consult as time of animation start, in seconds
     private Animator mAnimator;     // Type of bone matrix blending for this animation instance
+    private final Animator mBaseAnimator;   // mAnimator when not reduced by setSkinningLevel
+    private int mMaxInfluenceClass = INFLUENCE_CLASSES.length - 1;  // index in INFLUENCE_CLASSES
+    private final ShaderProgramRegistry mShaderPrograms;
     private GLSLBones mBones = null;        // bones at "current" time
+    private int mSkeletonLod = 0;           // index of the VBOModel skeleton LOD we pose
+    // Indexed by ShaderProgramRegistry variant.  null for variants the model doesn't use.
+    private ShaderProgram[] mPrograms = new ShaderProgram[ShaderProgramRegistry.VARIANT_COUNT];
 
     @SuppressWarnings("unused")
     private static String TAG = "SkinnedVBOAnimModel";
@@ -0,0 +1,103 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import com.deepdownstudios.util.Util;
+
+import static com.deepdownstudios.skinshaderdemo.ByteBufferModel.INFLUENCE_CLASSES;
+
+/**
+ * Skinning level of detail: which Animator and how many bone influences to skin an instance
+ * with, by how big it is on screen.  Small instances switch to cheaper vertex shaders --
+ * nobody can tell dual quaternion from matrix blending on a character the size of a
+ * thumbnail, or see the third and fourth influences of its vertices.
+ *
+ * Level 0 is the instance's own Animator with all of its influences.  Levels 1, 2, ... are
+ * given, and should be in order of decreasing vertex shader cost (see SkinningCostTest for
+ * what each one costs).  To keep instances near a threshold from popping back and forth
+ * between levels, they only go back to a finer level once they are a bit bigger than the
+ * threshold that they crossed going the other way.
+ * Used by Scene.
+ */
+public class SkinningLod {
+    /// An Animator and a cap on the number of influences blended per vertex.
+    public static class Level {
+        public final Animator mAnimator;
+        /// Index in ByteBufferModel.INFLUENCE_CLASSES
+        public final int mMaxInfluenceClass;
+
+        public Level(Animator animator, int maxInfluenceClass) {
+            Util.Assert(maxInfluenceClass >= 0 && maxInfluenceClass < INFLUENCE_CLASSES.length);
+            mAnimator = animator;
+            mMaxInfluenceClass = maxInfluenceClass;
+        }
+    }
+
+    /// Projected radii (see Bounds.projectedRadius) below which instances use DEFAULT_LEVELS[0],
+    /// [1]...
+    public static final float[] DEFAULT_THRESHOLDS = { 0.15f, 0.06f };
+    /// Matrix blending of two influences, then of one.  The cheapest shaders we have.
+    public static final Level[] DEFAULT_LEVELS = {
+            new Level(Animator.NORMAL, 1),
+            new Level(Animator.NORMAL, 0)
+    };
+    /// Instances go back to a finer level once they are this fraction bigger than its threshold.
+    public static final float DEFAULT_HYSTERESIS = 0.2f;
+
+    /**
+     * The default thresholds, levels and hysteresis.
+     */
+    public SkinningLod() {
+        this(DEFAULT_THRESHOLDS, DEFAULT_LEVELS, DEFAULT_HYSTERESIS);
+    }
+
+    /**
+     * @param thresholds    Decreasing projected radii.  Instances smaller than thresholds[i]
+     *                      use levels[i] (ie level i+1).
+     * @param levels        Aligned with thresholds.
+     * @param hysteresis    Instances at level i+1 only go back to level i when they are
+     *                      (1 + hysteresis) * thresholds[i] or bigger.
+     */
+    public SkinningLod(float[] thresholds, Level[] levels, float hysteresis) {
+        Util.Assert(thresholds.length == levels.length);
+        for (int i=1; i<thresholds.length; i++) {
+            Util.Assert(thresholds[i] < thresholds[i-1]);
+        }
+        mThresholds = thresholds.clone();
+        mLevels = levels.clone();
+        mHysteresis = hysteresis;
+    }
+
+    /**
+     * @param projectedRadius   Size of the instance on screen.  See Bounds.projectedRadius.
+     * @param currentLevel      The level the instance is at now.  0 for new instances.
+     * @return  The level the instance should be at.  0 is its own Animator and influences,
+     *          others are getLevel(level).
+     */
+    public int chooseLevel(float projectedRadius, int currentLevel) {
+        int level = 0;
+        while (level < mThresholds.length && projectedRadius < mThresholds[level]) {
+            level++;
+        }
+        if (level >= currentLevel) {
+            return level;
+        }
+        // Going finer.  Only as far as the raised thresholds allow.
+        int raisedLevel = 0;
+        while (raisedLevel < mThresholds.length && projectedRadius < mThresholds[raisedLevel] * (1.0f + mHysteresis)) {
+            raisedLevel++;
+        }
+        return Math.min(currentLevel, raisedLevel);
+    }
+
+    /// @param level    1 or more.  0 is the instance's own skinning.
+    public Level getLevel(int level) {
+        return mLevels[level - 1];
+    }
+
+    public int getLevelCount() {
+        return mLevels.length + 1;
+    }
+
+    private final float[] mThresholds;
+    private final Level[] mLevels;
+    private final float mHysteresis;
+}
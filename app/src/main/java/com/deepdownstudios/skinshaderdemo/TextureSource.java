@@ -4,7 +4,6 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import android.util.Log;
 
 /**
@@ -17,10 +16,21 @@ import android.util.Log;
 public class TextureSource implements Source<GLESTexture> {
     private Resources mResources;
     private int mTextureResourceId;
+    private UploadQueue mUploadQueue;
 
     public TextureSource(Resources resources, int textureResourceId) {
+        this(resources, textureResourceId, null);
+    }
+
+    /**
+     * @param uploadQueue   If not null, the pixels are uploaded from it, and the texture
+     *                      isn't GLESTexture.isResident() until they are.  The bitmap is
+     *                      decoded in load() either way.
+     */
+    public TextureSource(Resources resources, int textureResourceId, UploadQueue uploadQueue) {
         mResources = resources;
         mTextureResourceId = textureResourceId;
+        mUploadQueue = uploadQueue;
     }
 
     @Override
@@ -30,19 +40,38 @@ public class TextureSource implements Source<GLESTexture> {
         final Bitmap bitmap = BitmapFactory.decodeResource(mResources, mTextureResourceId, options);
 
         int[] glTexId = new int[1];
-        GLES20.glGenTextures(1, glTexId, 0);
+        GLESContext.gl().glGenTextures(1, glTexId, 0);
         checkGlError("glGenTextures : " + mTextureResourceId);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, glTexId[0]);
+        GLESContext.gl().glBindTexture(GLES20.GL_TEXTURE_2D, glTexId[0]);
         checkGlError("glBindTexture : " + mTextureResourceId);
         for(int[] texParam : DEFAULT_TEXTURE_PARAMETERS) {
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, texParam[0], texParam[1]);
+            GLESContext.gl().glTexParameteri(GLES20.GL_TEXTURE_2D, texParam[0], texParam[1]);
         }
         checkGlError("glTexParameteri : " + mTextureResourceId);
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        if (mUploadQueue != null) {
+            // The GPU copy costs what the bitmap does, as below.
+            int bytesPerPixel = bitmap.getByteCount() / Math.max(1, bitmap.getWidth() * bitmap.getHeight());
+            final GLESTexture texture = new GLESTexture(glTexId[0], bitmap.getWidth(), bitmap.getHeight(),
+                    bytesPerPixel, false);
+            texture.setResident(false);
+            mUploadQueue.enqueueTexture(texture, bitmap, new Runnable() {
+                @Override
+                public void run() {
+                    texture.setResident(true);
+                }
+            });
+            return texture;
+        }
+        GLESContext.gl().texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
         checkGlError("GLUtils.texImage2D : " + mTextureResourceId);
+        // texImage2D uploads the bitmap in its own format, so the GPU copy costs as much.
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int bytesPerPixel = bitmap.getByteCount() / Math.max(1, width * height);
         bitmap.recycle();
 
-        return new GLESTexture(glTexId[0]);
+        // No mipmaps: MIN_FILTER is NEAREST.
+        return new GLESTexture(glTexId[0], width, height, bytesPerPixel, false);
     }
 
     private static final int DEFAULT_TEXTURE_PARAMETERS[][] = {
@@ -54,13 +83,17 @@ public class TextureSource implements Source<GLESTexture> {
 
     /**
      * Get and log ALL current GL errors.  Throw the last one as an exception.
+     * Does nothing at GLESContext.VALIDATE_NONE.
      * @param message Message to log if there are errors.
      */
     private void checkGlError(String message) {
-        int error = GLES20.glGetError();
+        if (GLESContext.getValidationLevel() == GLESContext.VALIDATE_NONE) {
+            return;
+        }
+        int error = GLESContext.gl().glGetError();
         while (error != GLES20.GL_NO_ERROR) {
             Log.e(TAG, message + ".  GlError : " + error);
-            error = GLES20.glGetError();
+            error = GLESContext.gl().glGetError();
             if (error == GLES20.GL_NO_ERROR) {
                 throw new RuntimeException(message + ". GlError : " + error);
             }
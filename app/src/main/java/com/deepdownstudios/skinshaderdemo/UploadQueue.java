@@ -0,0 +1,242 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Spreads GPU uploads over frames, so that loading a big model doesn't stall the one that is
+ * animating.  Uploading a few MB of buffers in one go takes the driver long enough to drop
+ * frames, and it can't be moved off the GLES thread.
+ *
+ * Uploads are queued (VBOModel and TextureSource do it when given a queue) and runFrame(),
+ * called once per frame, does at most getMaxBytesPerFrame() of them.  Buffer data is copied
+ * in chunks with glBufferSubData.  A texture is one texImage2D, which can't be split, so one
+ * that is bigger than what is left of the frame waits for the next.  Something bigger than
+ * the whole cap gets a frame to itself, so the queue always moves.
+ * Each upload runs its callback once its last byte is uploaded.  Uploads can be cancelled
+ * (when what they were for is released), and ones from a lost GLES context are dropped.
+ *
+ * GLES thread only.
+ */
+public class UploadQueue {
+    /// Something to upload, a part at a time.
+    private static abstract class Upload {
+        Upload(Runnable onDone) {
+            mOnDone = onDone;
+            mGeneration = GLESContext.getGeneration();
+        }
+
+        /// @return The bytes left to upload.
+        abstract long getRemainingBytes();
+
+        /**
+         * Upload some more.
+         * @param maxBytes  The most to upload.  At least 1.
+         * @param force     True to upload something even if the smallest part is bigger than
+         *                  maxBytes.
+         * @return          The bytes uploaded.  0 if nothing fit.
+         */
+        abstract long upload(long maxBytes, boolean force);
+
+        /// The upload was cancelled or its context lost.  Let go of the data.
+        void drop() {
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        final Runnable mOnDone;
+        final int mGeneration;
+        boolean mCancelled = false;
+    }
+
+    /// A handle on a queued upload, for cancelling it.
+    public static class Ticket {
+        private Ticket(Upload upload) {
+            mUpload = upload;
+        }
+
+        /// Don't upload the rest and don't call back.  Does nothing once it is done.
+        public void cancel() {
+            mUpload.mCancelled = true;
+        }
+
+        private final Upload mUpload;
+    }
+
+    /**
+     * @param maxBytesPerFrame  The most to upload in a frame.  See setMaxBytesPerFrame.
+     */
+    public UploadQueue(long maxBytesPerFrame) {
+        setMaxBytesPerFrame(maxBytesPerFrame);
+    }
+
+    /**
+     * The cap trades load time for smoothness: a frame has to absorb the driver copying this
+     * much.  Something like 256 KB a frame still loads tens of MB a second.
+     */
+    public void setMaxBytesPerFrame(long maxBytesPerFrame) {
+        mMaxBytesPerFrame = Math.max(1, maxBytesPerFrame);
+    }
+
+    public long getMaxBytesPerFrame() {
+        return mMaxBytesPerFrame;
+    }
+
+    /**
+     * Queue copying data into part of a buffer object, which must already have its storage
+     * (glBufferData).  The buffer is bound to target to do it.
+     * @param data      Uploaded from position 0 to its capacity.  Not to be changed until done.
+     * @param onDone    Run (on the GLES thread) once it is all uploaded.  May be null.
+     */
+    public Ticket enqueueBuffer(final int target, final int buffer, final int offset,
+                                final ByteBuffer data, Runnable onDone) {
+        return enqueue(new Upload(onDone) {
+            @Override
+            long getRemainingBytes() {
+                return mSize - mDone;
+            }
+
+            @Override
+            long upload(long maxBytes, boolean force) {
+                int size = (int)Math.min(maxBytes, getRemainingBytes());
+                GLES gl = GLESContext.gl();
+                gl.glBindBuffer(target, buffer);
+                mData.position(mDone);
+                gl.glBufferSubData(target, offset + mDone, size, mData);
+                gl.glBindBuffer(target, 0);
+                mDone += size;
+                if (getRemainingBytes() == 0) {
+                    mData = null;
+                }
+                return size;
+            }
+
+            @Override
+            void drop() {
+                mData = null;
+            }
+
+            private ByteBuffer mData = data;
+            private final int mSize = data.capacity();
+            private int mDone = 0;
+        });
+    }
+
+    /**
+     * Queue a texImage2D of level 0 of texture.  The texture's parameters are set already.
+     * @param bitmap    Recycled once it is uploaded (or dropped).
+     * @param onDone    Run (on the GLES thread) once it is uploaded.  May be null.
+     */
+    public Ticket enqueueTexture(final GLESTexture texture, final Bitmap bitmap, Runnable onDone) {
+        return enqueue(new Upload(onDone) {
+            @Override
+            long getRemainingBytes() {
+                return (mBitmap != null) ? mSize : 0;
+            }
+
+            @Override
+            boolean isCancelled() {
+                return mCancelled || texture.mId == 0;       // released before it was uploaded
+            }
+
+            @Override
+            long upload(long maxBytes, boolean force) {
+                long size = getRemainingBytes();
+                if (size > maxBytes && !force) {
+                    return 0;
+                }
+                GLES gl = GLESContext.gl();
+                gl.glActiveTexture(GLES20.GL_TEXTURE0);
+                gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture.mId);
+                gl.texImage2D(GLES20.GL_TEXTURE_2D, 0, mBitmap, 0);
+                drop();
+                return size;
+            }
+
+            @Override
+            void drop() {
+                if (mBitmap != null) {
+                    mBitmap.recycle();
+                    mBitmap = null;
+                }
+            }
+
+            private Bitmap mBitmap = bitmap;
+            private final long mSize = Math.max(1, bitmap.getByteCount());
+        });
+    }
+
+    /**
+     * Upload up to getMaxBytesPerFrame() of what is queued, in order, and call back for what
+     * got done.  Call once per frame, before drawing, so that anything that became resident
+     * is drawn in the same frame.
+     * @return  The bytes uploaded.
+     */
+    public long runFrame() {
+        long frameBytes = 0;
+        while (!mUploads.isEmpty()) {
+            Upload upload = mUploads.peekFirst();
+            if (upload.isCancelled() || upload.mGeneration != GLESContext.getGeneration()) {
+                mUploads.removeFirst();
+                mQueuedBytes -= upload.getRemainingBytes();
+                upload.drop();
+                continue;
+            }
+            if (upload.getRemainingBytes() > 0) {
+                long maxBytes = mMaxBytesPerFrame - frameBytes;
+                long bytes = (maxBytes > 0) ? upload.upload(maxBytes, frameBytes == 0) : 0;
+                if (bytes == 0) {
+                    break;          // doesn't fit.  Next frame.
+                }
+                frameBytes += bytes;
+                mQueuedBytes -= bytes;
+                if (upload.getRemainingBytes() > 0) {
+                    continue;
+                }
+            }
+            mUploads.removeFirst();
+            if (upload.mOnDone != null) {
+                upload.mOnDone.run();
+            }
+        }
+        mLastFrameBytes = frameBytes;
+        if (frameBytes > 0 && mUploads.isEmpty()) {
+            Log.i(TAG, "Upload queue drained");
+        }
+        return frameBytes;
+    }
+
+    /// @return True if there is something left to upload.  Keep drawing frames until there isn't.
+    public boolean isPending() {
+        return !mUploads.isEmpty();
+    }
+
+    /// @return The bytes waiting to be uploaded.
+    public long getQueuedBytes() {
+        return mQueuedBytes;
+    }
+
+    /// @return What the last runFrame() uploaded.
+    public long getLastFrameBytes() {
+        return mLastFrameBytes;
+    }
+
+    private Ticket enqueue(Upload upload) {
+        mUploads.addLast(upload);
+        mQueuedBytes += upload.getRemainingBytes();
+        return new Ticket(upload);
+    }
+
+    private static final String TAG = "UploadQueue";
+
+    private long mMaxBytesPerFrame;
+    private final ArrayDeque<Upload> mUploads = new ArrayDeque<>();
+    private long mQueuedBytes = 0;
+    private long mLastFrameBytes = 0;
+}
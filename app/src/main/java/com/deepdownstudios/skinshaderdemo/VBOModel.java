@@ -5,22 +5,23 @@ import android.content.res.Resources;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.util.Log;
-import android.util.Pair;
 
 import com.deepdownstudios.skinshaderdemo.Bones.GLSLBones;
 import com.deepdownstudios.util.Util;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 import static com.deepdownstudios.skinshaderdemo.BasicModel.*;
+import static com.deepdownstudios.skinshaderdemo.ByteBufferModel.INFLUENCE_CLASSES;
+import static com.deepdownstudios.skinshaderdemo.ShaderProgramRegistry.RIGID_VARIANT;
 import static com.deepdownstudios.skinshaderdemo.BasicModel.Skeleton;
 
 /**
@@ -31,271 +32,725 @@ public class VBOModel implements Model {
 
     private static final int BYTES_PER_SHORT = 2;
 
-    public VBOModel(Resources resources, Cache<GLESTexture> textureCache, ByteBufferModel bbModel) {
+    /// The most vertices that 16-bit indices can address.
+    private static final int MAX_VERTS_PER_SEGMENT = 65536;
+
+    /// Number of poses, evenly spaced in time, sampled from an animation for getAnimationBounds.
+    private static final int ANIMATION_BOUNDS_SAMPLES = 32;
+    /// getAnimationBounds is grown by this fraction of its size on every side, to cover the
+    /// motion between samples.
+    private static final float ANIMATION_BOUNDS_MARGIN = 0.1f;
+
+    /**
+     * Upload a model, merging meshes that can be drawn together.  See the other constructor.
+     */
+    public VBOModel(Resources resources, Cache<GLESTexture> textureCache,
+                    ShaderProgramRegistry shaderPrograms, ByteBufferModel bbModel) {
+        this(resources, textureCache, shaderPrograms, bbModel, true);
+    }
+
+    /**
+     * Upload a model right away.  See the last constructor.
+     */
+    public VBOModel(Resources resources, Cache<GLESTexture> textureCache,
+                    ShaderProgramRegistry shaderPrograms, ByteBufferModel bbModel, boolean mergeMeshes) {
+        this(resources, textureCache, shaderPrograms, bbModel, mergeMeshes, null);
+    }
+
+    /**
+     * Upload a model.  All of the model's vertex and index data goes into one VBO and one
+     * IBO (the "arena") and each draw is issued by offset into them.  So drawing the model
+     * binds the buffers once, not once per mesh.
+     * @param shaderPrograms    Where the animated instances get their programs.
+     * @param mergeMeshes   If true, meshes that share a texture and a shader variant
+     *                      (and rigid bone, for rigid meshes) are merged into a single draw.
+     * @param uploadQueue   If not null, the buffers are only allocated here, and the data (and
+     *                      that of textures that aren't cached yet) goes through the queue, a
+     *                      frame at a time.  The model draws nothing until isResident().  The
+     *                      queue keeps bbModel's buffers until then, so it can be released.
+     */
+    public VBOModel(Resources resources, Cache<GLESTexture> textureCache,
+                    ShaderProgramRegistry shaderPrograms, ByteBufferModel bbModel, boolean mergeMeshes,
+                    UploadQueue uploadQueue) {
         this.mResources = resources;
+        this.mShaderPrograms = shaderPrograms;
+        this.mUploadQueue = uploadQueue;
+        GLES gl = GLESContext.gl();
 
+        Util.Assert(!bbModel.isReleased());
         Util.Assert(bbModel.mVertByteBuffers.size() == bbModel.mFaceShortBuffers.size());
         Util.Assert(bbModel.mVertByteBuffers.size() == bbModel.mMaterials.size());
 
-        int vbos[] = new int[bbModel.mVertByteBuffers.size()];
-        GLES20.glGenBuffers(vbos.length, vbos, 0);
-        int ibos[] = new int[bbModel.mVertByteBuffers.size()];
-        GLES20.glGenBuffers(ibos.length, ibos, 0);
+        // Describe each source mesh, then order them so that meshes that can share a draw
+        // are next to each other, grouped by shader variant so that draw() switches
+        // programs as little as possible.
+        List<Mesh> sourceMeshes = new ArrayList<>();
         for(int i=0; i<bbModel.mVertByteBuffers.size(); i++) {
             Mesh mesh = new Mesh();
-            mesh.mVbo = vbos[i];
-            mesh.mIbo = ibos[i];
-            mesh.mNTris = bbModel.mFaceShortBuffers.get(i).capacity();
+            mesh.mSourceIdx = i;
+            mesh.mNIndices = bbModel.mFaceShortBuffers.get(i).capacity();
+            mesh.mRigidBone = bbModel.mRigidBones.get(i);
+            mesh.mVariant = (mesh.mRigidBone != ByteBufferModel.NOT_RIGID) ? RIGID_VARIANT :
+                    ByteBufferModel.influenceClassIndex(bbModel.mMaxInfluences.get(i));
+            mesh.mTextureResourceId = bbModel.mMaterials.get(i).textureResourceId;
+            sourceMeshes.add(mesh);
+        }
+        Collections.sort(sourceMeshes, new Comparator<Mesh>() {
+            @Override
+            public int compare(Mesh lhs, Mesh rhs) {
+                if (lhs.mVariant != rhs.mVariant) {
+                    return lhs.mVariant - rhs.mVariant;
+                }
+                if (lhs.mTextureResourceId != rhs.mTextureResourceId) {
+                    return lhs.mTextureResourceId < rhs.mTextureResourceId ? -1 : 1;
+                }
+                return lhs.mRigidBone - rhs.mRigidBone;
+            }
+        });
+
+        // Lay the meshes out in the arena.  16-bit indices can only reach 64k vertices so
+        // the VBO is split into segments of at most that many.  Indices are rebased to the
+        // start of their segment.  Draws in the same segment share attribute pointers.
+        int totalVertBytes = 0;
+        int totalIndices = 0;
+        for (Mesh mesh : sourceMeshes) {
+            totalVertBytes += bbModel.mVertByteBuffers.get(mesh.mSourceIdx).capacity();
+            totalIndices += mesh.mNIndices;
+        }
+
+        // After the vertices, the arena has a stream of bone indices for each skeleton LOD
+        // but the first, in the same vertex order.  See bindDraw.
+        mSkeletonLods = bbModel.mSkeletonLods;
+        int totalVerts = totalVertBytes / SHADER_STRIDE;
+        mLodBoneIndexOffsets = new int[mSkeletonLods.size()];
+        int arenaBytes = totalVertBytes;
+        for (int lod=1; lod<mSkeletonLods.size(); lod++) {
+            mLodBoneIndexOffsets[lod] = arenaBytes;
+            arenaBytes += totalVerts * ByteBufferModel.LOD_BONE_INDEX_BYTES;
+        }
+        // Queued, the index data has to stay put until it is uploaded, so it can't be staged.
+        ByteBuffer arenaIndexBytes = (uploadQueue == null) ? getStagingBuffer(totalIndices * BYTES_PER_SHORT) :
+                ByteBuffer.allocateDirect(totalIndices * BYTES_PER_SHORT).order(ByteOrder.nativeOrder());
+        ShortBuffer arenaIndices = arenaIndexBytes.asShortBuffer();
+
+        int[] buffers = new int[2];
+        gl.glGenBuffers(2, buffers, 0);
+        mVbo = buffers[0];
+        mIbo = buffers[1];
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, arenaBytes, null, GLES20.GL_STATIC_DRAW);
+
+        int vertByteOffset = 0;
+        int segmentByteOffset = 0;
+        int segmentVerts = 0;
+        Mesh draw = null;
+        for (Mesh mesh : sourceMeshes) {
+            ByteBuffer vertBuffer = bbModel.mVertByteBuffers.get(mesh.mSourceIdx);
+            int nVerts = vertBuffer.capacity() / SHADER_STRIDE;
+            if (segmentVerts + nVerts > MAX_VERTS_PER_SEGMENT) {
+                segmentByteOffset = vertByteOffset;
+                segmentVerts = 0;
+            }
 
             // vbo
-            ByteBuffer vertBuffer = bbModel.mVertByteBuffers.get(i);
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbos[i]);
-            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertBuffer.capacity(),
-                    vertBuffer, GLES20.GL_STATIC_DRAW);
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            uploadVertexData(vertByteOffset, vertBuffer);
+            ByteBuffer[] lodBoneIndexBuffers = bbModel.mLodBoneIndexBuffers.get(mesh.mSourceIdx);
+            for (int lod=1; lod<mSkeletonLods.size(); lod++) {
+                uploadVertexData(getLodBoneIndexOffset(lod, vertByteOffset), lodBoneIndexBuffers[lod-1]);
+            }
 
-            // ibo
-            ShortBuffer faceBuffer = bbModel.mFaceShortBuffers.get(i);
-            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibos[i]);
-            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, faceBuffer.capacity() * BYTES_PER_SHORT,
-                    faceBuffer, GLES20.GL_STATIC_DRAW);
-            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            // ibo (built here, uploaded below)
+            int indexByteOffset = arenaIndices.position() * BYTES_PER_SHORT;
+            ShortBuffer faceBuffer = bbModel.mFaceShortBuffers.get(mesh.mSourceIdx);
+            for (int i=0; i<mesh.mNIndices; i++) {
+                arenaIndices.put((short)((faceBuffer.get(i) & 0xFFFF) + segmentVerts));
+            }
 
-            // textures.  Use string rendering of ID as name (ha!)
-            mesh.mTexture = textureCache.fetch(
-                    String.valueOf(bbModel.mMaterials.get(i).textureResourceId),
-                    new TextureSource(mResources, bbModel.mMaterials.get(i).textureResourceId));
+            boolean canMerge = mergeMeshes && draw != null &&
+                    draw.mVariant == mesh.mVariant &&
+                    draw.mTextureResourceId == mesh.mTextureResourceId &&
+                    draw.mRigidBone == mesh.mRigidBone &&
+                    draw.mVertByteOffset == segmentByteOffset;
+            if (canMerge) {
+                // Indices are contiguous in the IBO, so extending the draw is enough.
+                draw.mNIndices += mesh.mNIndices;
+            } else {
+                draw = mesh;
+                draw.mVertByteOffset = segmentByteOffset;
+                draw.mIndexByteOffset = indexByteOffset;
+
+                // textures.  Use string rendering of ID as name (ha!)  Pinned until we are
+                // released.
+                Cache.Handle<GLESTexture> textureHandle = textureCache.acquire(
+                        String.valueOf(mesh.mTextureResourceId),
+                        new TextureSource(mResources, mesh.mTextureResourceId, uploadQueue));
+                mTextureHandles.add(textureHandle);
+                draw.mTexture = textureHandle.get();
+
+                // its ready.
+                mMeshes.add(draw);
+            }
 
-            // its ready.
-            mMeshes.add(mesh);
+            vertByteOffset += vertBuffer.capacity();
+            segmentVerts += nVerts;
+        }
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        arenaIndices.position(0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIbo);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, totalIndices * BYTES_PER_SHORT,
+                (uploadQueue == null) ? arenaIndices : null, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        if (uploadQueue != null) {
+            enqueueUpload(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIbo, 0, arenaIndexBytes);
         }
+        mGpuBytes = arenaBytes + (long)totalIndices * BYTES_PER_SHORT;
+
+        mGeneration = GLESContext.getGeneration();
 
-        mSkeleton = bbModel.mSkeleton;
+        // Keep what drawing and posing need, packed.  The caller can release() bbModel.
+        mSkeleton = bbModel.mSkeleton.compact();
+        mInfluenceClassVertCounts = bbModel.mInfluenceClassVertCounts;
+        mCpuBytes = estimateCpuBytes();
+
+        int nRigidMeshes = 0;
+        for (Mesh mesh : mMeshes) {
+            nRigidMeshes += (mesh.mVariant == RIGID_VARIANT) ? 1 : 0;
+        }
+        StringBuilder report = new StringBuilder("Vertices per skinning influence class -- ");
+        for (int i=0; i<INFLUENCE_CLASSES.length; i++) {
+            report.append(INFLUENCE_CLASSES[i]).append(" bone(s) : ").append(mInfluenceClassVertCounts[i]).append("  ");
+        }
+        report.append("-- Draws : ").append(mMeshes.size()).append(" for ").append(sourceMeshes.size())
+                .append(" meshes.  Rigid draws : ").append(nRigidMeshes);
+        Log.i(TAG, report.toString());
+        Log.i(TAG, getMemoryReport() + ".  Skeleton was " + bbModel.mSkeleton.getHeapBytes() / 1024 +
+                " KB before packing.  " + getStagingBytes() / 1024 + " KB of staging kept for the next upload");
+    }
+
+    /**
+     * @return  True once the buffers and textures are uploaded.  Always, unless the model
+     *          was given an UploadQueue.  draw() draws nothing until then.
+     */
+    public boolean isResident() {
+        if (mResident) {
+            return true;
+        }
+        if (mPendingUploads > 0) {
+            return false;
+        }
+        for (Mesh mesh : mMeshes) {
+            if (!mesh.mTexture.isResident()) {
+                return false;
+            }
+        }
+        mResident = true;
+        return true;
+    }
+
+    /// Copy data to offset in the VBO, which is bound, or have it queued.
+    private void uploadVertexData(int offset, ByteBuffer data) {
+        if (mUploadQueue != null) {
+            enqueueUpload(GLES20.GL_ARRAY_BUFFER, mVbo, offset, data);
+            return;
+        }
+        data.position(0);
+        GLESContext.gl().glBufferSubData(GLES20.GL_ARRAY_BUFFER, offset, data.capacity(), data);
+    }
+
+    private void enqueueUpload(int target, int buffer, int offset, ByteBuffer data) {
+        // The queue holds on to data for the model until it is uploaded.
+        final long nativeBytes = data.isDirect() ? data.capacity() : 0;
+        mPendingUploads++;
+        mPendingNativeBytes += nativeBytes;
+        mUploadTickets.add(mUploadQueue.enqueueBuffer(target, buffer, offset, data, new Runnable() {
+            @Override
+            public void run() {
+                mPendingNativeBytes -= nativeBytes;
+                if (--mPendingUploads == 0) {
+                    mUploadTickets.clear();
+                    Log.i(TAG, "Uploaded " + mGpuBytes + " bytes of buffers");
+                }
+            }
+        }));
     }
 
     @Override
     public AnimModel createAnimModel(String animName, int animIndex, double startTime,
                                      Animator animator) {
-        return new SkinnedVBOAnimModel(this, getAnim(animName, animIndex), startTime, animator);
-    }
-
-    public void setShaderProgram(int vShaderResource, int pShaderResource) {
-        BufferedReader vsReader =
-                new BufferedReader(new InputStreamReader(mResources.openRawResource(vShaderResource)));
-        BufferedReader psReader =
-                new BufferedReader(new InputStreamReader(mResources.openRawResource(pShaderResource)));
-        String line;
-        StringBuilder vShader = new StringBuilder(), pShader = new StringBuilder();
-        try {
-            while ((line = vsReader.readLine()) != null) {
-                vShader.append(line).append("\n");
-            }
-            while ((line = psReader.readLine()) != null) {
-                pShader.append(line).append("\n");
+        return new SkinnedVBOAnimModel(this, mShaderPrograms, getAnim(animName, animIndex), startTime,
+                animator);
+    }
+
+    /**
+     * @param variant   A ShaderProgramRegistry variant.
+     * @return  True if some of the model's meshes are drawn with that variant.  draw() only
+     *          needs programs for those.
+     */
+    public boolean usesVariant(int variant) {
+        for (Mesh mesh : mMeshes) {
+            if (mesh.mVariant == variant) {
+                return true;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        Log.i(TAG, "Initializing shaders.  Vertex: " + vShaderResource + "  -  Pixel : " + pShaderResource);
-        setShaderProgram(vShader.toString(), pShader.toString());
+        return false;
     }
 
-    public void setShaderProgram(String vShader, String pShader) {
-        // Create program from shaders
-        mProgram = createProgram(vShader, pShader);
-        Util.Assert(mProgram != 0);
+    /**
+     * The per-instance matrices that the shaders need.  Each instance (or caller of draw())
+     * keeps one of these so that nothing is allocated per frame.
+     */
+    public static class InstanceMatrices {
+        public final float[] mMvMatrix = new float[16];
+        public final float[] mMvpMatrix = new float[16];
+        /// view * ((model^-1)^T), for deforming normals even if model has scale.
+        public final float[] mVtimMatrix = new float[16];
+        /// Model-space bounds of the posed model.  Set by isVisible.
+        public final float[] mBounds = new float[Bounds.SIZE];
+        private final float[] mTempMatrix = new float[16];
+        private final float[] mBoneMatrix = new float[16];
+
+        public void set(float[] modelMatrix, float[] viewMatrix, float[] projMatrix) {
+            Matrix.multiplyMM(mMvMatrix, 0, viewMatrix, 0, modelMatrix, 0);      // mv = view * model
+            Matrix.multiplyMM(mMvpMatrix, 0, projMatrix, 0, mMvMatrix, 0);       // mvp = proj * mv = proj * view * model
+
+            Matrix.invertM(mVtimMatrix, 0, modelMatrix, 0);                    // vtim = model^-1
+            Matrix.transposeM(mTempMatrix, 0, mVtimMatrix, 0);               // tempMat = vtim^T = (model^-1)^T
+            Matrix.multiplyMM(mVtimMatrix, 0, viewMatrix, 0, mTempMatrix, 0); // vtim = view * tempMat = view * (model^-1)^T
+        }
+    }
 
-        // Fetch handles to the shaders' uniform and attribute parameters.
-        int runningTotal = 0;
-        for(String name : SHADER_ATTRIB_NAMES) {
-            int handle = GLES20.glGetAttribLocation(mProgram, name);
-            checkGlError("glGetAttribLocation " + name);
-            if (handle == -1) {
-                throw new RuntimeException("Could not get attrib location for " + name);
+    /**
+     * Draw the model, unless it is posed entirely outside the view frustum or it isn't
+     * isResident() yet.  This is the
+     * per-frame hot path: it does no allocation and no lookups by name, and only checks for
+     * GL errors at GLESContext.VALIDATE_DRAW.
+     * To draw many instances at once, use a Scene instead.  It draws with the same
+     * building blocks (useProgram/setInstanceUniforms/bindModel/bindDraw/issueDraw) but orders the
+     * draws of all instances to minimize state changes.
+     * @param programs  The programs to draw with, indexed by ShaderProgramRegistry variant.
+     *                  Only the variants that usesVariant() are needed.
+     */
+    public void draw(float[] modelMatrix, float[] viewMatrix, float[] projMatrix,
+                     float[] eyeLightPos, GLSLBones bones, ShaderProgram[] programs) {
+        draw(modelMatrix, viewMatrix, projMatrix, eyeLightPos, bones, programs, 0);
+    }
+
+    /**
+     * Draw the model with a reduced skeleton.
+     * @param lod   Index of the skeleton LOD (see getSkeletonLod) that bones were posed with.
+     */
+    public void draw(float[] modelMatrix, float[] viewMatrix, float[] projMatrix,
+                     float[] eyeLightPos, GLSLBones bones, ShaderProgram[] programs, int lod) {
+        if (!isResident()) {
+            return;
+        }
+        mMatrices.set(modelMatrix, viewMatrix, projMatrix);
+        if (!isVisible(mMatrices, bones, lod)) {
+            return;
+        }
+        bindModel();
+
+        // Bindings, enables and attribute pointers that are already set (by the previous
+        // mesh or the previous model) are dropped by the GLStateTracker, so each mesh just
+        // asks for what it needs.  Uniforms are per-program and change every frame so we
+        // only set them when we switch programs.
+        ShaderProgram curProgram = null;
+        int curVertByteOffset = -1;
+        for (int drawIdx=0; drawIdx<mMeshes.size(); drawIdx++) {
+            Mesh mesh = mMeshes.get(drawIdx);
+            ShaderProgram program = programs[mesh.mVariant];
+            if (program != curProgram) {
+                curProgram = program;
+                curVertByteOffset = -1;     // attribute locations can differ between programs
+                useProgram(program, eyeLightPos);
+                if (program.mSkinned) {
+                    setInstanceUniforms(program, drawIdx, lod, mMatrices, bones);
+                }
             }
-            mAttribHandles.put(name, handle);
-            mAttribOffsets.put(name, runningTotal);
-            Pair<Integer, Integer> attribInfo = SHADER_ATTRIB_INFO.get(name);
-            runningTotal += attribInfo.first * glTypeSize(attribInfo.second);
+
+            if (!program.mSkinned) {
+                setInstanceUniforms(program, drawIdx, lod, mMatrices, bones);     // per rigid bone
+            }
+
+            // Attribute pointers only change when we move to another segment of the VBO or
+            // another program.  Skip them otherwise -- it is cheaper than asking the state
+            // tracker about each attribute.
+            boolean bindAttributes = (mesh.mVertByteOffset != curVertByteOffset);
+            curVertByteOffset = mesh.mVertByteOffset;
+            bindDraw(program, drawIdx, lod, bindAttributes);
+            issueDraw(drawIdx);
         }
+        // No GLES state is reset.  The state tracker makes leaving it bound cheap for the next model.
+    }
 
-        Util.Assert(runningTotal == mShaderStride);
+    /**
+     * Compute the bounds of the posed model and test them against the view frustum.
+     * @param matrices  The instance's matrices.  Its mBounds are set to the model-space bounds.
+     * @param lod       The skeleton LOD that bones were posed with.
+     * @return  False if no part of the model can be on screen.
+     */
+    public boolean isVisible(InstanceMatrices matrices, GLSLBones bones, int lod) {
+        computeBounds(bones, lod, matrices.mBounds, 0, matrices.mBoneMatrix);
+        return !Bounds.isOutsideFrustum(matrices.mMvpMatrix, matrices.mBounds, 0);
+    }
 
-        for(String name : SHADER_UNIFORM_NAMES) {
-            int handle = GLES20.glGetUniformLocation(mProgram, name);
-            checkGlError("glGetUniformLocation " + name);
-            if (handle == -1) {
-                throw new RuntimeException("Could not get uniformlocation for " + name);
+    /**
+     * Compute the model-space bounds of the model in a pose from the import-time bone bounds
+     * (SkeletonLod.mBoneBounds), which is much cheaper than skinning any vertices.
+     * MATH ALERT: A skinned vertex is a weighted average of the vertex transformed by each of
+     * its bones.  Each of those is inside that bone's transformed bounds, so the average is
+     * inside the box around all of them.  (Strictly that holds for matrix blending.  Quat
+     * and dual quat blending stay within a hair of it for rigid skeletons.)
+     * @param lod           The skeleton LOD that bones were posed with.
+     * @param scratchMatrix A float[16] to work in.
+     */
+    public void computeBounds(GLSLBones bones, int lod, float[] box, int offset, float[] scratchMatrix) {
+        Bounds.setEmpty(box, offset);
+        float[] boneBounds = mSkeletonLods.get(lod).mBoneBounds;
+        int nBones = boneBounds.length / Bounds.SIZE;
+        for (int bone=0; bone<nBones; bone++) {
+            if (Bounds.isEmpty(boneBounds, bone * Bounds.SIZE)) {
+                continue;
             }
-            mUniformHandles.put(name, handle);
+            bones.getBoneMatrix(bone, scratchMatrix, 0);
+            Bounds.addTransformedBox(box, offset, scratchMatrix, boneBounds, bone * Bounds.SIZE);
         }
     }
 
-    public void draw(float[] modelMatrix, float[] viewMatrix, float[] projMatrix,
-                     float[] eyeLightPos, GLSLBones bones) {
-        GLES20.glUseProgram(mProgram);
-        checkGlError("glUseProgram");
-
-        GLES20.glEnable(GLES20.GL_CULL_FACE);
-        GLES20.glCullFace(GLES20.GL_BACK);
-
-        float[] mvMatrix = new float[16];
-        float[] mvpMatrix = new float[16];
-        Matrix.multiplyMM(mvMatrix, 0, viewMatrix, 0, modelMatrix, 0);      // mv = view * model
-        Matrix.multiplyMM(mvpMatrix, 0, projMatrix, 0, mvMatrix, 0);        // mvp = proj * mv = proj * view * model
-
-        float[] vtimMatrix = new float[16];
-        float[] tempMat = new float[16];
-        Matrix.invertM(vtimMatrix, 0, modelMatrix, 0);                      // vtim = model^-1
-        Matrix.transposeM(tempMat, 0, vtimMatrix, 0);                    // tempMat = vtim^T = (model^-1)^T
-        Matrix.multiplyMM(vtimMatrix, 0, viewMatrix, 0, tempMat, 0);     // vtim = view * tempMat = view * (model^-1)^T
-
-        // Set the 'global' uniform shader variables.  These are the same
-        // for all of the model's meshes.
-        // Texture samplers are configured per-mesh.
-        GLES20.glUniformMatrix4fv(mUniformHandles.get("uMVPMatrix"), 1, false, mvpMatrix, 0);
-        checkGlError("glUniformMatrix4fv mvpMatrix");
-        GLES20.glUniformMatrix4fv(mUniformHandles.get("uMVMatrix"), 1, false, mvMatrix, 0);
-        checkGlError("glUniformMatrix4fv mvMatrix");
-        GLES20.glUniformMatrix4fv(mUniformHandles.get("uVTIMMatrix"), 1, false, vtimMatrix, 0);
-        checkGlError("glUniformMatrix4fv vtimMatrix");
-        GLES20.glUniform3fv(mUniformHandles.get("uLightPos"), 1, eyeLightPos, 0);
-        checkGlError("glUniform3fv uLightPos");
-        bones.postToGLSLUniform(mUniformHandles.get("uBoneTforms[0]"));
-        checkGlError("postToGLSLUniform");
-
-        for (Mesh mesh : mMeshes) {
-            // Set the uniform shader texture samplers
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mesh.mTexture.mId);
-            GLES20.glUniform1i(mUniformHandles.get("uTexture"), 0);     // bind to sampler #0
-            checkGlError("glUniform1i uTexture");
-
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.mVbo);
-            checkGlError("glBindBuffer mVbo");
-            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.mIbo);
-            checkGlError("glBindBuffer mIbo");
-
-            for (String attribName : SHADER_ATTRIB_INFO.keySet()) {
-                Pair<Integer, Integer> sizes = SHADER_ATTRIB_INFO.get(attribName);
-                int attribHandle = mAttribHandles.get(attribName);
-                int attribOffset = mAttribOffsets.get(attribName);
-                GLES20.glVertexAttribPointer(attribHandle, sizes.first, sizes.second, false,
-                        mShaderStride, attribOffset);
-                checkGlError("glVertexAttribPointer " + attribName);
-                GLES20.glEnableVertexAttribArray(attribHandle);
-                checkGlError("glEnableVertexAttribArray " + attribName);
+    /**
+     * @return  Model-space bounds that hold the model in (nearly) every pose of animation.
+     *          Computed from ANIMATION_BOUNDS_SAMPLES poses, with a margin, the first time
+     *          it is asked for.  Shared -- do not change it.
+     */
+    public float[] getAnimationBounds(Animation animation) {
+        float[] box = mAnimationBounds.get(animation);
+        if (box != null) {
+            return box;
+        }
+        box = new float[Bounds.SIZE];
+        Bounds.setEmpty(box, 0);
+        float[] poseBox = new float[Bounds.SIZE];
+        float[] scratchMatrix = new float[16];
+        int nSamples = (animation == null) ? 1 : ANIMATION_BOUNDS_SAMPLES;
+        for (int i=0; i<nSamples; i++) {
+            double delta = (animation == null) ? 0 : animation.duration * i / nSamples;
+            computeBounds(new MatrixBones(animation, mSkeleton, delta), 0, poseBox, 0, scratchMatrix);
+            Bounds.addBox(box, 0, poseBox, 0);
+        }
+        if (!Bounds.isEmpty(box, 0)) {
+            for (int i=0; i<3; i++) {
+                float margin = ANIMATION_BOUNDS_MARGIN * (box[3 + i] - box[i]);
+                box[i] -= margin;
+                box[3 + i] += margin;
             }
+        }
+        mAnimationBounds.put(animation, box);
+        return box;
+    }
 
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    /**
+     * Make program current and set its per-frame uniforms (the ones that are the same for
+     * every instance).  The program then needs setInstanceUniforms before drawing.
+     */
+    public static void useProgram(ShaderProgram program, float[] eyeLightPos) {
+        GLES gl = GLESContext.gl();
+        gl.glUseProgram(program.mId);
+        gl.glUniform3fv(program.mLightPosHandle, 1, eyeLightPos, 0);
+        gl.glUniform1i(program.mTextureHandle, 0);     // bind to sampler #0
+        checkDrawError("useProgram");
+    }
 
-            // Draw
-            GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.mNTris, GLES20.GL_UNSIGNED_SHORT, 0);
+    /**
+     * Set the per-instance uniforms (matrices and bones) of the current program for one of
+     * our draws.  For skinned programs that only has to happen once per instance per program
+     * since it doesn't depend on drawIdx.  Rigid draws need it for every draw since their
+     * bone is folded into the matrices.
+     * @param lod   The skeleton LOD that bones were posed with.
+     */
+    public void setInstanceUniforms(ShaderProgram program, int drawIdx, int lod,
+                                    InstanceMatrices matrices, GLSLBones bones) {
+        GLES gl = GLESContext.gl();
+        if (program.mSkinned) {
+            gl.glUniformMatrix4fv(program.mMVPMatrixHandle, 1, false, matrices.mMvpMatrix, 0);
+            gl.glUniformMatrix4fv(program.mMVMatrixHandle, 1, false, matrices.mMvMatrix, 0);
+            gl.glUniformMatrix4fv(program.mVTIMMatrixHandle, 1, false, matrices.mVtimMatrix, 0);
+            bones.postToGLSLUniform(program.mBoneTformsHandle);
+            checkDrawError("setInstanceUniforms");
+            return;
+        }
+
+        // Rigid mesh.  Fold its bone's skinning transform into the matrices instead
+        // of skinning every vertex.
+        // MATH ALERT: The bone transform is unitless (model-space to model-space) so
+        // mvp * bone still maps model-space to projection-space.  Since the bone is
+        // rigid, (model * bone)^-T has the same 3x3 part as (model^-1)^T * bone,
+        // which is all that normals use.
+        float[] tempMat = matrices.mTempMatrix;
+        float[] boneMatrix = matrices.mBoneMatrix;
+        bones.getBoneMatrix(mSkeletonLods.get(lod).mRemap[mMeshes.get(drawIdx).mRigidBone], boneMatrix, 0);
+        Matrix.multiplyMM(tempMat, 0, matrices.mMvpMatrix, 0, boneMatrix, 0);
+        gl.glUniformMatrix4fv(program.mMVPMatrixHandle, 1, false, tempMat, 0);
+        Matrix.multiplyMM(tempMat, 0, matrices.mMvMatrix, 0, boneMatrix, 0);
+        gl.glUniformMatrix4fv(program.mMVMatrixHandle, 1, false, tempMat, 0);
+        Matrix.multiplyMM(tempMat, 0, matrices.mVtimMatrix, 0, boneMatrix, 0);
+        gl.glUniformMatrix4fv(program.mVTIMMatrixHandle, 1, false, tempMat, 0);
+        checkDrawError("setInstanceUniforms rigid");
+    }
+
+    /**
+     * Bind the model's buffers and set the fixed-function state it draws with.  Needed
+     * before bindDraw when moving to this model from another.
+     */
+    public void bindModel() {
+        GLES gl = GLESContext.gl();
+        gl.glEnable(GLES20.GL_CULL_FACE);
+        gl.glCullFace(GLES20.GL_BACK);
+
+        // The whole model lives in one VBO/IBO pair.
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIbo);
+        checkDrawError("bindModel");
+    }
 
-            // Reset GLES state
-            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    /**
+     * Bind the texture (and attribute pointers) for one of our draws.  The model must be
+     * bound (bindModel).
+     * @param lod               The skeleton LOD to draw with.  Picks the bone indices.
+     * @param bindAttributes    Whether to (re)specify the vertex attribute pointers.  They
+     *                          only change with the program, the VBO, the LOD and
+     *                          getDrawVertexOffset.
+     */
+    public void bindDraw(ShaderProgram program, int drawIdx, int lod, boolean bindAttributes) {
+        GLES gl = GLESContext.gl();
+        Mesh mesh = mMeshes.get(drawIdx);
+
+        // Set the uniform shader texture samplers
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, mesh.mTexture.mId);
+
+        if (bindAttributes) {
+            for (int i=0; i<SHADER_ATTRIB_NAMES.length; i++) {
+                int attribHandle = program.getAttribHandle(i);
+                if (attribHandle == -1) {
+                    continue;       // Not used by this program (eg bone data in the rigid program)
+                }
+                if (i == BONE_INDICES_ATTRIB && lod != 0) {
+                    // The reduced skeleton's bone indices are in their own stream.
+                    gl.glVertexAttribPointer(attribHandle, SHADER_ATTRIB_SIZES[i], SHADER_ATTRIB_TYPES[i],
+                            false, ByteBufferModel.LOD_BONE_INDEX_BYTES,
+                            getLodBoneIndexOffset(lod, mesh.mVertByteOffset));
+                } else {
+                    gl.glVertexAttribPointer(attribHandle, SHADER_ATTRIB_SIZES[i], SHADER_ATTRIB_TYPES[i],
+                            false, SHADER_STRIDE, mesh.mVertByteOffset + SHADER_ATTRIB_OFFSETS[i]);
+                }
+                gl.glEnableVertexAttribArray(attribHandle);
+            }
         }
+        checkDrawError("bindDraw");
+    }
 
-        GLES20.glDisable(GLES20.GL_CULL_FACE);
+    public void issueDraw(int drawIdx) {
+        Mesh mesh = mMeshes.get(drawIdx);
+        GLESContext.gl().glDrawElements(GLES20.GL_TRIANGLES, mesh.mNIndices, GLES20.GL_UNSIGNED_SHORT,
+                mesh.mIndexByteOffset);
+        checkDrawError("glDrawElements");
     }
 
     public Skeleton getSkeleton() {
         return mSkeleton;
     }
 
+    /// @return The number of skeleton LODs.  0 is the full skeleton.
+    public int getSkeletonLodCount() {
+        return mSkeletonLods.size();
+    }
+
+    public SkeletonLod getSkeletonLod(int lod) {
+        return mSkeletonLods.get(lod);
+    }
+
+    /**
+     * @return  Byte offset in the VBO of the bone indices of skeleton LOD lod (> 0) for the
+     *          vertex at vertByteOffset in the main part of the VBO.
+     */
+    private int getLodBoneIndexOffset(int lod, int vertByteOffset) {
+        return mLodBoneIndexOffsets[lod] + (vertByteOffset / SHADER_STRIDE) * ByteBufferModel.LOD_BONE_INDEX_BYTES;
+    }
+
+    /**
+     * @return  The number of the model's vertices that fall into each of
+     *          ByteBufferModel.INFLUENCE_CLASSES.
+     */
+    public int[] getInfluenceClassVertCounts() {
+        return mInfluenceClassVertCounts;
+    }
+
+    /**
+     * Delete the arena VBO and IBO, and unpin the textures.  They belong to the texture cache,
+     * which releases them when it drops them.  Nothing that was created from this model can
+     * be drawn after.
+     */
+    @Override
+    public void release() {
+        for (UploadQueue.Ticket ticket : mUploadTickets) {
+            ticket.cancel();
+        }
+        mUploadTickets.clear();
+        mPendingNativeBytes = 0;
+        if (mVbo != 0 && mGeneration == GLESContext.getGeneration()) {
+            GLESContext.gl().glDeleteBuffers(2, new int[] { mVbo, mIbo }, 0);
+            Log.i(TAG, "Released " + mGpuBytes + " bytes of buffers");
+        }
+        for (Cache.Handle<GLESTexture> textureHandle : mTextureHandles) {
+            textureHandle.release();
+        }
+        mTextureHandles.clear();
+        mVbo = 0;
+        mIbo = 0;
+        mGpuBytes = 0;
+    }
+
+    /// @return  The size of the arena VBO and IBO.  Textures are counted by their own cache.
+    @Override
+    public long getGpuBytes() {
+        return mGpuBytes;
+    }
+
+    /// @return  About how much the skeleton, its animations and LODs take.  The vertex data
+    ///          isn't kept once it is uploaded.
+    @Override
+    public long getCpuBytes() {
+        return mCpuBytes;
+    }
+
+    /// @return  Native (direct buffer) memory that the model holds on to: the vertex and index
+    ///          data of uploads still in its UploadQueue.  None once it is all in the VBO and IBO.
+    public long getNativeBytes() {
+        return mPendingNativeBytes;
+    }
+
+    /// @return  One line on what the model keeps, for logcat or a dump.
+    public String getMemoryReport() {
+        return "Retained " + getCpuBytes() / 1024 + " KB heap, " + getNativeBytes() / 1024 +
+                " KB native, " + getGpuBytes() / 1024 + " KB GPU buffers";
+    }
+
+    /**
+     * Drop the buffer that uploads build their index data in.  It is kept (and grown) between
+     * uploads so that loading a model doesn't leave another dead direct buffer for the GC.
+     * GLES thread.
+     * @return  The bytes dropped.
+     */
+    public static long releaseStagingBuffer() {
+        long bytes = getStagingBytes();
+        sStagingBuffer = null;
+        return bytes;
+    }
+
+    /// @return  The size of the staging buffer kept for uploads.  GLES thread.
+    public static long getStagingBytes() {
+        return (sStagingBuffer != null) ? sStagingBuffer.capacity() : 0;
+    }
+
+    /// @return  The staging buffer, cleared, with room for at least nBytes.  GLES thread.
+    private static ByteBuffer getStagingBuffer(int nBytes) {
+        if (sStagingBuffer == null || sStagingBuffer.capacity() < nBytes) {
+            sStagingBuffer = ByteBuffer.allocateDirect(nBytes).order(ByteOrder.nativeOrder());
+        }
+        sStagingBuffer.clear();
+        return sStagingBuffer;
+    }
+
+    /**
+     * @return  The number of glDrawElements calls that draw() makes.
+     */
+    public int getDrawCount() {
+        return mMeshes.size();
+    }
+
+    /// @return The ShaderProgramRegistry variant that draws drawIdx.
+    public int getDrawVariant(int drawIdx) {
+        return mMeshes.get(drawIdx).mVariant;
+    }
+
+    public GLESTexture getDrawTexture(int drawIdx) {
+        return mMeshes.get(drawIdx).mTexture;
+    }
+
+    /// @return Offset of drawIdx's VBO segment.  Draws with the same one share attribute pointers.
+    public int getDrawVertexOffset(int drawIdx) {
+        return mMeshes.get(drawIdx).mVertByteOffset;
+    }
 
     /******************************************************************************/
 
+    /// One draw call: a mesh, or several meshes merged together, in the arena.
     private class Mesh {
         /// GLES index of the primary texture
         public GLESTexture mTexture;
-        /// GLES index of the vertex buffer object
-        public int mVbo;
-        /// GLES index of the index buffer object
-        public int mIbo;
-        /// Number of triangles in the mesh
-        public int mNTris;
+        /// Resource ID of the primary texture.  Meshes with the same one can be merged.
+        public int mTextureResourceId;
+        /// Byte offset in the VBO of the segment the mesh's indices refer to
+        public int mVertByteOffset;
+        /// Byte offset of the mesh's first index in the IBO
+        public int mIndexByteOffset;
+        /// Number of indices (3 per triangle) in the mesh
+        public int mNIndices;
+        /// The ShaderProgramRegistry variant that draws this mesh.  For skinned
+        /// meshes, this is the index of its influence class in INFLUENCE_CLASSES.
+        public int mVariant;
+        /// The bone the mesh is rigidly bound to, or ByteBufferModel.NOT_RIGID
+        public int mRigidBone;
+        /// Index of the (first) mesh in the ByteBufferModel.  Only used while loading.
+        public int mSourceIdx;
     }
 
     /******************************************************************************/
 
 
-    private int loadShader(int shaderType, String source) {
-        int shader = GLES20.glCreateShader(shaderType);
-        if (shader == 0) {
-            throw new IllegalStateException("Failed to create "
-                    + ((shaderType == GLES20.GL_VERTEX_SHADER) ? "vertex" : "fragment")
-                    + " shader program : " + source);
-        }
-        GLES20.glShaderSource(shader, source);
-        GLES20.glCompileShader(shader);
-        int[] compiled = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
-        if (compiled[0] == 0) {
-            Log.e(TAG, "Could not compile shader " + shaderType + ":");
-            Log.e(TAG, GLES20.glGetShaderInfoLog(shader));
-            GLES20.glDeleteShader(shader);
-            throw new IllegalStateException("Failed to compile "
-                    + ((shaderType == GLES20.GL_VERTEX_SHADER) ? "vertex" : "fragment")
-                    + " shader program : " + source);
-        }
-        return shader;
-    }
-
-    private int createProgram(String vertexSource, String fragmentSource) {
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
-        int pixelShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
-        int program = GLES20.glCreateProgram();
-        if (program == 0) {
-            throw new IllegalStateException("Failed to create shader program.");
-        }
-
-        GLES20.glAttachShader(program, vertexShader);
-        checkGlError("create Program attachShader vertex");
-        GLES20.glAttachShader(program, pixelShader);
-        checkGlError("create Program attachShader pixel");
-        GLES20.glLinkProgram(program);
-        int[] linkStatus = new int[1];
-        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
-        if (linkStatus[0] != GLES20.GL_TRUE) {
-            Log.e(TAG, "Could not link program: ");
-            Log.e(TAG, GLES20.glGetProgramInfoLog(program));
-            GLES20.glDeleteProgram(program);
-            throw new IllegalStateException("Failed to link shader program.");
-        }
-        return program;
+    /// @return The heap the model keeps once uploaded: skeleton, LODs and meshes.
+    /// MATH ALERT: guesses at the object layout, like Skeleton.getHeapBytes.
+    private long estimateCpuBytes() {
+        long bytes = mSkeleton.getHeapBytes();
+        for (SkeletonLod lod : mSkeletonLods) {
+            bytes += (lod.mBones.length + lod.mRemap.length + lod.mBoneBounds.length) * 4;
+        }
+        bytes += mMeshes.size() * MESH_BYTES;
+        return bytes;
+    }
+    /// A Mesh and its Cache.Handle
+    private static final long MESH_BYTES = 48 + 16;
+
+    /**
+     * checkGlError for the draw path.  glGetError is a round-trip to the driver (and
+     * a pipeline stall on some) so this only checks at GLESContext.VALIDATE_DRAW.
+     */
+    private static void checkDrawError(String message) {
+        if (GLESContext.getValidationLevel() >= GLESContext.VALIDATE_DRAW) {
+            checkGlError(message);
+        }
     }
 
     /**
      * Get and log ALL current GL errors.  Throw the last one as an exception.
+     * Does nothing at GLESContext.VALIDATE_NONE.
      * @param message Message to log if there are errors.
      */
-    private void checkGlError(String message) {
-        int error = GLES20.glGetError();
+    private static void checkGlError(String message) {
+        if (GLESContext.getValidationLevel() == GLESContext.VALIDATE_NONE) {
+            return;
+        }
+        int error = GLESContext.gl().glGetError();
         while (error != GLES20.GL_NO_ERROR) {
             Log.e(TAG, message + ".  GlError : " + error);
-            error = GLES20.glGetError();
+            error = GLESContext.gl().glGetError();
             if (error == GLES20.GL_NO_ERROR) {
                 throw new RuntimeException(message + ". GlError : " + error);
             }
         }
     }
 
-    @SuppressWarnings("unused")
-    private void logShaderVariables(int program)
-    {
-        int[] count = new int[1];
-        GLES20.glGetProgramiv(program, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
-
-        for (int i=0; i<count[0]; i++) {
-            int[] tmp = {0, 0, 0};
-            byte[] nameb = new byte[64];
-            GLES20.glGetActiveAttrib(program, i, 64, tmp, 0, tmp, 1, tmp, 2, nameb, 0);
-            String name = new String(nameb, 0, tmp[0]);
-            Log.i(TAG, "Program " + program + " : Variable " + i + " : name = " + name);
-        }
-    }
-
     private Animation getAnim(String animName, int animIndex) {
         if (!animName.isEmpty()) {
             for (Animation anim : mSkeleton.animations) {
@@ -311,25 +766,27 @@ public class VBOModel implements Model {
     }
 
     /// This is the order the values must appear in the VBO.
-    /// It does not matter if they use this order in the shader itself.
-    private static final String SHADER_ATTRIB_NAMES[] = {
-            "aPosition", "aTexCoord", "aNormal", "aBoneIndices", "aBoneWeights"
-    };
+    private static final String SHADER_ATTRIB_NAMES[] = ShaderProgram.ATTRIB_NAMES;
+
+    /// Index of aBoneIndices in SHADER_ATTRIB_NAMES
+    private static final int BONE_INDICES_ATTRIB = 3;
+
+    /// Number of components of each of SHADER_ATTRIB_NAMES
+    private static final int SHADER_ATTRIB_SIZES[] = { 3, 2, 3, 2 /* 2 bones per float */, 4 };
 
-    /// uVTIMMatrix is view * ((model^-1)^T), for deforming normals even if model has scale.
-    /// Use [0] for array members.  This shouldn't be necessary (although it is valid)
-    /// but GLES driver writers have been deviating from the spec this way for years.
-    private static final String SHADER_UNIFORM_NAMES[] = {
-            "uMVPMatrix", "uMVMatrix",  "uVTIMMatrix", "uBoneTforms[0]", "uLightPos", "uTexture"
+    /// GLES type of the components of each of SHADER_ATTRIB_NAMES
+    private static final int SHADER_ATTRIB_TYPES[] = {
+            GLES20.GL_FLOAT, GLES20.GL_FLOAT, GLES20.GL_FLOAT, GLES20.GL_FLOAT, GLES20.GL_FLOAT
     };
 
-    private Map<String, Integer> mAttribHandles = new HashMap<>();
-    private Map<String, Integer> mAttribOffsets = new HashMap<>();
-    private Map<String, Pair<Integer,Integer>> SHADER_ATTRIB_INFO = new HashMap<>();
-    private int mShaderStride;
+    /// Byte offset of each of SHADER_ATTRIB_NAMES in a vertex
+    private static final int SHADER_ATTRIB_OFFSETS[] = new int[SHADER_ATTRIB_NAMES.length];
+
+    /// Size of a vertex in bytes
+    private static final int SHADER_STRIDE;
 
     // Returns size  of type in bytes
-    private int glTypeSize(int glType) {
+    private static int glTypeSize(int glType) {
         switch(glType) {
             case GLES20.GL_FLOAT:
             case GLES20.GL_UNSIGNED_INT:
@@ -348,25 +805,50 @@ public class VBOModel implements Model {
         throw new IllegalArgumentException("glTypeSize called with " + glType + " which is not a legal type.");
     }
 
-    {
-        SHADER_ATTRIB_INFO.put("aPosition", new Pair<>(3, GLES20.GL_FLOAT));
-        SHADER_ATTRIB_INFO.put("aTexCoord", new Pair<>(2, GLES20.GL_FLOAT));
-        SHADER_ATTRIB_INFO.put("aNormal", new Pair<>(3, GLES20.GL_FLOAT));
-        SHADER_ATTRIB_INFO.put("aBoneIndices", new Pair<>(2, GLES20.GL_FLOAT)); // 2 bones per float
-        SHADER_ATTRIB_INFO.put("aBoneWeights", new Pair<>(4, GLES20.GL_FLOAT));
-        mShaderStride = 0;
-        for (Pair<Integer, Integer> info : SHADER_ATTRIB_INFO.values()) {
-            mShaderStride += info.first * glTypeSize(info.second);
+    static {
+        int runningTotal = 0;
+        for (int i=0; i<SHADER_ATTRIB_NAMES.length; i++) {
+            SHADER_ATTRIB_OFFSETS[i] = runningTotal;
+            runningTotal += SHADER_ATTRIB_SIZES[i] * glTypeSize(SHADER_ATTRIB_TYPES[i]);
         }
+        SHADER_STRIDE = runningTotal;
     }
 
-    private Map<String, Integer> mUniformHandles = new HashMap<>();
-
-    private int mProgram;
-
     private static String TAG = "VBOModel";
 
+    /// See getStagingBuffer.  GLES thread only.
+    private static ByteBuffer sStagingBuffer;
+
     private Resources mResources;
+    private ShaderProgramRegistry mShaderPrograms;
+    /// The arena: one VBO and one IBO holding every mesh.
+    private int mVbo;
+    private int mIbo;
+    private long mGpuBytes;
+    private long mCpuBytes;
+    /// GLESContext generation that mVbo and mIbo belong to
+    private int mGeneration;
+    /// Null if everything was uploaded in the constructor.
+    private UploadQueue mUploadQueue;
+    /// Buffer uploads still in mUploadQueue, and how to cancel them.
+    private int mPendingUploads = 0;
+    /// Direct buffer bytes that the pending uploads keep alive
+    private long mPendingNativeBytes = 0;
+    private final List<UploadQueue.Ticket> mUploadTickets = new ArrayList<>();
+    /// isResident(), once it is.
+    private boolean mResident = false;
     private List<Mesh> mMeshes = new ArrayList<>();
+    /// One per draw.  Keeps the draws' textures in their cache.
+    private final List<Cache.Handle<GLESTexture>> mTextureHandles = new ArrayList<>();
     private Skeleton mSkeleton;
+    private int[] mInfluenceClassVertCounts;
+    /// Reduced skeletons.  [0] is the full skeleton.
+    private List<SkeletonLod> mSkeletonLods;
+    /// Byte offset in the VBO of each skeleton LOD's bone index stream.  [0] is unused.
+    private int[] mLodBoneIndexOffsets;
+    private final Map<Animation, float[]> mAnimationBounds = new IdentityHashMap<>();
+
+    // Scratch space for draw(), so that it doesn't allocate every frame.  Only used on
+    // the GLES thread.
+    private final InstanceMatrices mMatrices = new InstanceMatrices();
 }
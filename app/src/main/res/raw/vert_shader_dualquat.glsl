@@ -1,5 +1,15 @@
 #define N_BONE_TFORMS 32
 
+// Number of bone influences blended per vertex.  VBOModel compiles one variant of this
+// shader per influence class (1, 2 or 4) by #define-ing this ahead of the source.
+// Influences are sorted heaviest-first so a variant reads the ones that matter.
+#ifndef N_INFLUENCES
+#define N_INFLUENCES 4
+#endif
+
+// (RENORMALIZE_WEIGHTS, for skinning LOD variants, needs no code here: the blended dual
+// quaternion is normalized anyway, which takes care of weights that don't add up to one.)
+
 // model-space
 attribute highp vec3 aPosition;
 // model-space
@@ -58,7 +68,7 @@ void main() {
     // (This is the "optimized" form.)
     highp vec4 realPart = boneWeights.x * uBoneTforms[iBoneIndices.x*2];
     highp vec4 dualPart = boneWeights.x * uBoneTforms[iBoneIndices.x*2+1];
-    for (int i=0; i<3; i++) {
+    for (int i=1; i<N_INFLUENCES; i++) {
         iBoneIndices = iBoneIndices.yzwx;
         boneWeights = boneWeights.yzwx;
         if (boneWeights.x != 0.0) {
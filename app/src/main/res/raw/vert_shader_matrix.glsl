@@ -1,5 +1,24 @@
 #define N_BONE_TFORMS 32
 
+// Number of bone influences blended per vertex.  VBOModel compiles one variant of this
+// shader per influence class (1, 2 or 4) by #define-ing this ahead of the source.
+// Influences are sorted heaviest-first so a variant reads the ones that matter.
+#ifndef N_INFLUENCES
+#define N_INFLUENCES 4
+#endif
+
+// Defined for skinning LOD variants, whose N_INFLUENCES is less than the mesh's own
+// influence class.  They make the influences that they do blend add up to one.
+#ifdef RENORMALIZE_WEIGHTS
+#if N_INFLUENCES == 1
+#define INFLUENCE_MASK vec4(1.0, 0.0, 0.0, 0.0)
+#elif N_INFLUENCES == 2
+#define INFLUENCE_MASK vec4(1.0, 1.0, 0.0, 0.0)
+#else
+#define INFLUENCE_MASK vec4(1.0)
+#endif
+#endif
+
 // model-space
 attribute highp vec3 aPosition;
 // model-space
@@ -22,7 +41,9 @@ uniform highp mat4 uMVMatrix;
 uniform mediump mat4 uVTIMMatrix;
 
 // uBoneTforms = unitless transformations
-uniform highp mat4 uBoneTforms[N_BONE_TFORMS];
+// These are the top three rows of each bone's 4x4 matrix (three vec4s per joint).
+// The fourth row of a rigid transformation is always (0,0,0,1) so we don't send it.
+uniform highp vec4 uBoneTforms[N_BONE_TFORMS*3];
 
 // view-space
 varying mediump vec3 vPos;
@@ -36,23 +57,32 @@ void main() {
     mediump ivec2 rem2 = iBoneIndices2/32;
     mediump ivec4 iBoneIndices = ivec4(iBoneIndices2.x - rem2.x*32, rem2.x, iBoneIndices2.y - rem2.y*32, rem2.y);
     mediump vec4 boneWeights = aBoneWeights;
+#ifdef RENORMALIZE_WEIGHTS
+    boneWeights = boneWeights / dot(boneWeights, INFLUENCE_MASK);
+#endif
 
     // Write the weighted matrix sum to avoid extra calculations for 0-weight
     // bones, which are very common.  TODO: Profile that.
     // Note that the weights are unitless, so the sum has the same units as the
     // individual transforms, which is none (they were unitless).  So we are
     // mapping from model-space back into model-space, which is what we want.
-    highp mat4 boneMatWeightSum = boneWeights.x * uBoneTforms[iBoneIndices.x];
-    for (int i=0; i<3; i++) {
+    // The sum is done row-by-row since we only have the top three rows.
+    highp vec4 row0 = boneWeights.x * uBoneTforms[iBoneIndices.x*3];
+    highp vec4 row1 = boneWeights.x * uBoneTforms[iBoneIndices.x*3+1];
+    highp vec4 row2 = boneWeights.x * uBoneTforms[iBoneIndices.x*3+2];
+    for (int i=1; i<N_INFLUENCES; i++) {
         iBoneIndices = iBoneIndices.yzwx;
         boneWeights = boneWeights.yzwx;
         if (boneWeights.x != 0.0) {
-            boneMatWeightSum = boneMatWeightSum + boneWeights.x * uBoneTforms[iBoneIndices.x];
+            row0 = row0 + boneWeights.x * uBoneTforms[iBoneIndices.x*3];
+            row1 = row1 + boneWeights.x * uBoneTforms[iBoneIndices.x*3+1];
+            row2 = row2 + boneWeights.x * uBoneTforms[iBoneIndices.x*3+2];
         }
     }
 
     // modelPos = (unitless) * model-space = model-space
-    highp vec4 modelPos = boneMatWeightSum * vec4(aPosition, 1.0);
+    highp vec4 position = vec4(aPosition, 1.0);
+    highp vec4 modelPos = vec4(dot(row0, position), dot(row1, position), dot(row2, position), 1.0);
 
     // gl_Position = projected-space/model-space * model-space = projected-space
     gl_Position = uMVPMatrix * modelPos;
@@ -61,7 +91,9 @@ void main() {
     vPos = vec3(uMVMatrix * modelPos);
 
     // Same
-    vNormal = normalize(vec3(uVTIMMatrix * (boneMatWeightSum * vec4(aNormal, 0.0))));
+    // (Normals have no translation so we only need the 3x3 part of each row.)
+    highp vec3 modelNormal = vec3(dot(row0.xyz, aNormal), dot(row1.xyz, aNormal), dot(row2.xyz, aNormal));
+    vNormal = normalize(vec3(uVTIMMatrix * vec4(modelNormal, 0.0)));
 
     vTexCoord = aTexCoord;
 }
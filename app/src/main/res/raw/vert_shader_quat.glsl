@@ -1,5 +1,24 @@
 #define N_BONE_TFORMS 32
 
+// Number of bone influences blended per vertex.  VBOModel compiles one variant of this
+// shader per influence class (1, 2 or 4) by #define-ing this ahead of the source.
+// Influences are sorted heaviest-first so a variant reads the ones that matter.
+#ifndef N_INFLUENCES
+#define N_INFLUENCES 4
+#endif
+
+// Defined for skinning LOD variants, whose N_INFLUENCES is less than the mesh's own
+// influence class.  They make the influences that they do blend add up to one.
+#ifdef RENORMALIZE_WEIGHTS
+#if N_INFLUENCES == 1
+#define INFLUENCE_MASK vec4(1.0, 0.0, 0.0, 0.0)
+#elif N_INFLUENCES == 2
+#define INFLUENCE_MASK vec4(1.0, 1.0, 0.0, 0.0)
+#else
+#define INFLUENCE_MASK vec4(1.0)
+#endif
+#endif
+
 // model-space
 attribute highp vec3 aPosition;
 // model-space
@@ -58,6 +77,9 @@ void main() {
     mediump ivec2 rem2 = iBoneIndices2/32;
     mediump ivec4 iBoneIndices = ivec4(iBoneIndices2.x - rem2.x*32, rem2.x, iBoneIndices2.y - rem2.y*32, rem2.y);
     mediump vec4 boneWeights = aBoneWeights;
+#ifdef RENORMALIZE_WEIGHTS
+    boneWeights = boneWeights / dot(boneWeights, INFLUENCE_MASK);
+#endif
 
     // Calculate the weighted quaternion and translation sums.
     // Note that the weights are unitless, so the sum has the same units as the
@@ -66,7 +88,7 @@ void main() {
     highp vec4 boneQuat = boneWeights.x *
                 vec4(uBoneTforms[iBoneIndices.x*2], sqrt(1.0-dot(uBoneTforms[iBoneIndices.x*2],uBoneTforms[iBoneIndices.x*2])));
     highp vec3 boneTrans = boneWeights.x * uBoneTforms[iBoneIndices.x*2+1];
-    for (int i=0; i<3; i++) {
+    for (int i=1; i<N_INFLUENCES; i++) {
         iBoneIndices = iBoneIndices.yzwx;
         boneWeights = boneWeights.yzwx;
         if (boneWeights.x != 0.0) {
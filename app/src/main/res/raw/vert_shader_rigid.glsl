@@ -0,0 +1,43 @@
+// Used for meshes that are bound entirely to one bone (helmets, weapons, ...).
+// There is no per-vertex skinning.  The Java program pre-multiplies that bone's
+// (unitless) skinning transformation into the matrices below, so this is the
+// same as a plain, unskinned, vertex shader.
+
+// model-space
+attribute highp vec3 aPosition;
+// model-space
+attribute mediump vec3 aNormal;
+attribute mediump vec2 aTexCoord;
+
+// uMVPMatrix = projection-space/view-space * view-space/world-space * world-space/model-space * (unitless bone)
+//    = projection-space/model-space
+uniform highp mat4 uMVPMatrix;
+
+// uMVMatrix = view-space/world-space * world-space/model-space * (unitless bone)
+//    = view-space/model-space (for lighting)
+uniform highp mat4 uMVMatrix;
+
+// Similar.  Indeed, without scaling, this is the same as uMVMatrix.
+uniform mediump mat4 uVTIMMatrix;
+
+// view-space
+varying mediump vec3 vPos;
+
+// view-space
+varying mediump vec3 vNormal;
+varying mediump vec2 vTexCoord;
+
+void main() {
+    highp vec4 modelPos = vec4(aPosition, 1.0);
+
+    // gl_Position = projected-space/model-space * model-space = projected-space
+    gl_Position = uMVPMatrix * modelPos;
+
+    // vPos = view-space/model-space * model-space = view-space
+    vPos = vec3(uMVMatrix * modelPos);
+
+    // Same
+    vNormal = normalize(vec3(uVTIMMatrix * vec4(aNormal, 0.0)));
+
+    vTexCoord = aTexCoord;
+}
@@ -0,0 +1,282 @@
+package android.opengl;
+
+/**
+ * Stands in for android.opengl.Matrix in local unit tests.  The android.jar they run against
+ * has no code (returnDefaultValues makes every method a no-op), so every matrix would stay
+ * zero: nothing culls, nothing projects, and the Scene and VBOModel tests test nothing.  Test
+ * classes come before android.jar on the test classpath, so this one is used instead.
+ *
+ * Same API and results as the device's for what it has: 4x4 column-major float matrices,
+ * angles in degrees.  Like the device's, nothing allocates (temporaries are in sTemp), so the
+ * allocation checks measure our code, and multiplyMM's and multiplyMV's results are undefined
+ * if result overlaps an input.
+ */
+public class Matrix {
+    /// Scratch for invertM and rotateM.  Guarded by itself.
+    private static final float[] sTemp = new float[32];
+
+    /// result = lhs * rhs
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                                  float[] rhs, int rhsOffset) {
+        for (int col=0; col<4; col++) {
+            for (int row=0; row<4; row++) {
+                float sum = 0.0f;
+                for (int k=0; k<4; k++) {
+                    sum += lhs[lhsOffset + row + 4*k] * rhs[rhsOffset + k + 4*col];
+                }
+                result[resultOffset + row + 4*col] = sum;
+            }
+        }
+    }
+
+    /// resultVec = lhsMat * rhsVec
+    public static void multiplyMV(float[] resultVec, int resultVecOffset, float[] lhsMat, int lhsMatOffset,
+                                  float[] rhsVec, int rhsVecOffset) {
+        for (int row=0; row<4; row++) {
+            float sum = 0.0f;
+            for (int k=0; k<4; k++) {
+                sum += lhsMat[lhsMatOffset + row + 4*k] * rhsVec[rhsVecOffset + k];
+            }
+            resultVec[resultVecOffset + row] = sum;
+        }
+    }
+
+    public static void transposeM(float[] mTrans, int mTransOffset, float[] m, int mOffset) {
+        for (int i=0; i<4; i++) {
+            for (int j=0; j<4; j++) {
+                mTrans[mTransOffset + i*4 + j] = m[mOffset + j*4 + i];
+            }
+        }
+    }
+
+    /// @return False (and mInv unchanged) if m is singular.
+    public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+        // MATH ALERT: inverse = adjugate / determinant, with the cofactors expanded.  Works on
+        // the array as is: the inverse of the transpose is the transpose of the inverse.
+        synchronized (sTemp) {
+            float[] a = sTemp;
+            System.arraycopy(m, mOffset, a, 0, 16);
+            return invert(a, mInv, mInvOffset);
+        }
+    }
+
+    /// invertM of a, which is sTemp[0..15].  The cofactors go in sTemp[16..31].
+    private static boolean invert(float[] a, float[] mInv, int mInvOffset) {
+        a[16 + 0] = a[5]*a[10]*a[15] - a[5]*a[11]*a[14] - a[9]*a[6]*a[15] + a[9]*a[7]*a[14] + a[13]*a[6]*a[11] - a[13]*a[7]*a[10];
+        a[16 + 4] = -a[4]*a[10]*a[15] + a[4]*a[11]*a[14] + a[8]*a[6]*a[15] - a[8]*a[7]*a[14] - a[12]*a[6]*a[11] + a[12]*a[7]*a[10];
+        a[16 + 8] = a[4]*a[9]*a[15] - a[4]*a[11]*a[13] - a[8]*a[5]*a[15] + a[8]*a[7]*a[13] + a[12]*a[5]*a[11] - a[12]*a[7]*a[9];
+        a[16 + 12] = -a[4]*a[9]*a[14] + a[4]*a[10]*a[13] + a[8]*a[5]*a[14] - a[8]*a[6]*a[13] - a[12]*a[5]*a[10] + a[12]*a[6]*a[9];
+        a[16 + 1] = -a[1]*a[10]*a[15] + a[1]*a[11]*a[14] + a[9]*a[2]*a[15] - a[9]*a[3]*a[14] - a[13]*a[2]*a[11] + a[13]*a[3]*a[10];
+        a[16 + 5] = a[0]*a[10]*a[15] - a[0]*a[11]*a[14] - a[8]*a[2]*a[15] + a[8]*a[3]*a[14] + a[12]*a[2]*a[11] - a[12]*a[3]*a[10];
+        a[16 + 9] = -a[0]*a[9]*a[15] + a[0]*a[11]*a[13] + a[8]*a[1]*a[15] - a[8]*a[3]*a[13] - a[12]*a[1]*a[11] + a[12]*a[3]*a[9];
+        a[16 + 13] = a[0]*a[9]*a[14] - a[0]*a[10]*a[13] - a[8]*a[1]*a[14] + a[8]*a[2]*a[13] + a[12]*a[1]*a[10] - a[12]*a[2]*a[9];
+        a[16 + 2] = a[1]*a[6]*a[15] - a[1]*a[7]*a[14] - a[5]*a[2]*a[15] + a[5]*a[3]*a[14] + a[13]*a[2]*a[7] - a[13]*a[3]*a[6];
+        a[16 + 6] = -a[0]*a[6]*a[15] + a[0]*a[7]*a[14] + a[4]*a[2]*a[15] - a[4]*a[3]*a[14] - a[12]*a[2]*a[7] + a[12]*a[3]*a[6];
+        a[16 + 10] = a[0]*a[5]*a[15] - a[0]*a[7]*a[13] - a[4]*a[1]*a[15] + a[4]*a[3]*a[13] + a[12]*a[1]*a[7] - a[12]*a[3]*a[5];
+        a[16 + 14] = -a[0]*a[5]*a[14] + a[0]*a[6]*a[13] + a[4]*a[1]*a[14] - a[4]*a[2]*a[13] - a[12]*a[1]*a[6] + a[12]*a[2]*a[5];
+        a[16 + 3] = -a[1]*a[6]*a[11] + a[1]*a[7]*a[10] + a[5]*a[2]*a[11] - a[5]*a[3]*a[10] - a[9]*a[2]*a[7] + a[9]*a[3]*a[6];
+        a[16 + 7] = a[0]*a[6]*a[11] - a[0]*a[7]*a[10] - a[4]*a[2]*a[11] + a[4]*a[3]*a[10] + a[8]*a[2]*a[7] - a[8]*a[3]*a[6];
+        a[16 + 11] = -a[0]*a[5]*a[11] + a[0]*a[7]*a[9] + a[4]*a[1]*a[11] - a[4]*a[3]*a[9] - a[8]*a[1]*a[7] + a[8]*a[3]*a[5];
+        a[16 + 15] = a[0]*a[5]*a[10] - a[0]*a[6]*a[9] - a[4]*a[1]*a[10] + a[4]*a[2]*a[9] + a[8]*a[1]*a[6] - a[8]*a[2]*a[5];
+
+        float det = a[0]*a[16 + 0] + a[1]*a[16 + 4] + a[2]*a[16 + 8] + a[3]*a[16 + 12];
+        if (det == 0.0f) {
+            return false;
+        }
+        for (int i=0; i<16; i++) {
+            mInv[mInvOffset + i] = a[16 + i] / det;
+        }
+        return true;
+    }
+
+    public static void orthoM(float[] m, int mOffset, float left, float right, float bottom, float top,
+                              float near, float far) {
+        checkRange(left, right, bottom, top, near, far);
+        float rWidth = 1.0f / (right - left);
+        float rHeight = 1.0f / (top - bottom);
+        float rDepth = 1.0f / (far - near);
+        java.util.Arrays.fill(m, mOffset, mOffset + 16, 0.0f);
+        m[mOffset + 0] = 2.0f * rWidth;
+        m[mOffset + 5] = 2.0f * rHeight;
+        m[mOffset + 10] = -2.0f * rDepth;
+        m[mOffset + 12] = -(right + left) * rWidth;
+        m[mOffset + 13] = -(top + bottom) * rHeight;
+        m[mOffset + 14] = -(far + near) * rDepth;
+        m[mOffset + 15] = 1.0f;
+    }
+
+    public static void frustumM(float[] m, int offset, float left, float right, float bottom, float top,
+                                float near, float far) {
+        checkRange(left, right, bottom, top, near, far);
+        if (near <= 0.0f || far <= 0.0f) {
+            throw new IllegalArgumentException("near <= 0.0f or far <= 0.0f");
+        }
+        float rWidth = 1.0f / (right - left);
+        float rHeight = 1.0f / (top - bottom);
+        float rDepth = 1.0f / (near - far);
+        java.util.Arrays.fill(m, offset, offset + 16, 0.0f);
+        m[offset + 0] = 2.0f * near * rWidth;
+        m[offset + 5] = 2.0f * near * rHeight;
+        m[offset + 8] = (right + left) * rWidth;
+        m[offset + 9] = (top + bottom) * rHeight;
+        m[offset + 10] = (far + near) * rDepth;
+        m[offset + 11] = -1.0f;
+        m[offset + 14] = 2.0f * far * near * rDepth;
+    }
+
+    public static void perspectiveM(float[] m, int offset, float fovy, float aspect, float zNear, float zFar) {
+        float f = 1.0f / (float)Math.tan(fovy * (Math.PI / 360.0));
+        float rangeReciprocal = 1.0f / (zNear - zFar);
+        java.util.Arrays.fill(m, offset, offset + 16, 0.0f);
+        m[offset + 0] = f / aspect;
+        m[offset + 5] = f;
+        m[offset + 10] = (zFar + zNear) * rangeReciprocal;
+        m[offset + 11] = -1.0f;
+        m[offset + 14] = 2.0f * zFar * zNear * rangeReciprocal;
+    }
+
+    public static float length(float x, float y, float z) {
+        return (float)Math.sqrt(x*x + y*y + z*z);
+    }
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i=0; i<16; i++) {
+            sm[smOffset + i] = (i % 5 == 0) ? 1.0f : 0.0f;
+        }
+    }
+
+    public static void scaleM(float[] sm, int smOffset, float[] m, int mOffset, float x, float y, float z) {
+        for (int i=0; i<4; i++) {
+            sm[smOffset + i] = m[mOffset + i] * x;
+            sm[smOffset + 4 + i] = m[mOffset + 4 + i] * y;
+            sm[smOffset + 8 + i] = m[mOffset + 8 + i] * z;
+            sm[smOffset + 12 + i] = m[mOffset + 12 + i];
+        }
+    }
+
+    public static void scaleM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i=0; i<4; i++) {
+            m[mOffset + i] *= x;
+            m[mOffset + 4 + i] *= y;
+            m[mOffset + 8 + i] *= z;
+        }
+    }
+
+    public static void translateM(float[] tm, int tmOffset, float[] m, int mOffset, float x, float y, float z) {
+        System.arraycopy(m, mOffset, tm, tmOffset, 12);
+        for (int i=0; i<4; i++) {
+            tm[tmOffset + 12 + i] = m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z +
+                    m[mOffset + 12 + i];
+        }
+    }
+
+    public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i=0; i<4; i++) {
+            m[mOffset + 12 + i] += m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z;
+        }
+    }
+
+    public static void rotateM(float[] rm, int rmOffset, float[] m, int mOffset, float a, float x, float y, float z) {
+        synchronized (sTemp) {
+            setRotateM(sTemp, 0, a, x, y, z);
+            multiplyMM(rm, rmOffset, m, mOffset, sTemp, 0);
+        }
+    }
+
+    public static void rotateM(float[] m, int mOffset, float a, float x, float y, float z) {
+        synchronized (sTemp) {
+            setRotateM(sTemp, 0, a, x, y, z);
+            multiplyMM(sTemp, 16, m, mOffset, sTemp, 0);
+            System.arraycopy(sTemp, 16, m, mOffset, 16);
+        }
+    }
+
+    public static void setRotateM(float[] rm, int rmOffset, float a, float x, float y, float z) {
+        rm[rmOffset + 3] = 0.0f;
+        rm[rmOffset + 7] = 0.0f;
+        rm[rmOffset + 11] = 0.0f;
+        rm[rmOffset + 12] = 0.0f;
+        rm[rmOffset + 13] = 0.0f;
+        rm[rmOffset + 14] = 0.0f;
+        rm[rmOffset + 15] = 1.0f;
+        double radians = Math.toRadians(a);
+        float s = (float)Math.sin(radians);
+        float c = (float)Math.cos(radians);
+        float len = length(x, y, z);
+        if (len != 1.0f) {
+            float recipLen = 1.0f / len;
+            x *= recipLen;
+            y *= recipLen;
+            z *= recipLen;
+        }
+        float nc = 1.0f - c;
+        float xy = x * y;
+        float yz = y * z;
+        float zx = z * x;
+        float xs = x * s;
+        float ys = y * s;
+        float zs = z * s;
+        rm[rmOffset + 0] = x*x*nc + c;
+        rm[rmOffset + 4] = xy*nc - zs;
+        rm[rmOffset + 8] = zx*nc + ys;
+        rm[rmOffset + 1] = xy*nc + zs;
+        rm[rmOffset + 5] = y*y*nc + c;
+        rm[rmOffset + 9] = yz*nc - xs;
+        rm[rmOffset + 2] = zx*nc - ys;
+        rm[rmOffset + 6] = yz*nc + xs;
+        rm[rmOffset + 10] = z*z*nc + c;
+    }
+
+    public static void setLookAtM(float[] rm, int rmOffset, float eyeX, float eyeY, float eyeZ,
+                                  float centerX, float centerY, float centerZ,
+                                  float upX, float upY, float upZ) {
+        // The forward vector f, side s = f x up and recomputed up u = s x f.
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+        float rlf = 1.0f / length(fx, fy, fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        float rls = 1.0f / length(sx, sy, sz);
+        sx *= rls;
+        sy *= rls;
+        sz *= rls;
+        float ux = sy * fz - sz * fy;
+        float uy = sz * fx - sx * fz;
+        float uz = sx * fy - sy * fx;
+
+        rm[rmOffset + 0] = sx;
+        rm[rmOffset + 1] = ux;
+        rm[rmOffset + 2] = -fx;
+        rm[rmOffset + 3] = 0.0f;
+        rm[rmOffset + 4] = sy;
+        rm[rmOffset + 5] = uy;
+        rm[rmOffset + 6] = -fy;
+        rm[rmOffset + 7] = 0.0f;
+        rm[rmOffset + 8] = sz;
+        rm[rmOffset + 9] = uz;
+        rm[rmOffset + 10] = -fz;
+        rm[rmOffset + 11] = 0.0f;
+        rm[rmOffset + 12] = 0.0f;
+        rm[rmOffset + 13] = 0.0f;
+        rm[rmOffset + 14] = 0.0f;
+        rm[rmOffset + 15] = 1.0f;
+        translateM(rm, rmOffset, -eyeX, -eyeY, -eyeZ);
+    }
+
+    private static void checkRange(float left, float right, float bottom, float top, float near, float far) {
+        if (left == right) {
+            throw new IllegalArgumentException("left == right");
+        }
+        if (bottom == top) {
+            throw new IllegalArgumentException("top == bottom");
+        }
+        if (near == far) {
+            throw new IllegalArgumentException("near == far");
+        }
+    }
+}
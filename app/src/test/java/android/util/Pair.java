@@ -0,0 +1,44 @@
+package android.util;
+
+/**
+ * Stands in for android.util.Pair in local unit tests.  The android.jar they run against has
+ * no code (returnDefaultValues makes every method a no-op, constructors included), so its
+ * Pair's first and second are always null and keyframes read back as nothing.  Test classes
+ * come before android.jar on the test classpath, so this one is used instead.  Same API.
+ */
+public class Pair<F, S> {
+    public final F first;
+    public final S second;
+
+    public Pair(F first, S second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public static <A, B> Pair<A, B> create(A a, B b) {
+        return new Pair<>(a, b);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Pair)) {
+            return false;
+        }
+        Pair<?, ?> p = (Pair<?, ?>)o;
+        return equal(p.first, first) && equal(p.second, second);
+    }
+
+    @Override
+    public int hashCode() {
+        return (first == null ? 0 : first.hashCode()) ^ (second == null ? 0 : second.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "Pair{" + String.valueOf(first) + " " + String.valueOf(second) + "}";
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+}
@@ -0,0 +1,49 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoundsTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void transformedBoxHoldsTransformedCorners() {
+        float[] src = { -1, -2, -3, 4, 5, 6 };
+        // 90 degrees about z, then a translation.  Column-major.
+        float[] m = {
+                0, 1, 0, 0,
+                -1, 0, 0, 0,
+                0, 0, 1, 0,
+                10, 20, 30, 1
+        };
+        float[] box = new float[Bounds.SIZE];
+        Bounds.setEmpty(box, 0);
+        Bounds.addTransformedBox(box, 0, m, src, 0);
+        // (x, y, z) -> (-y + 10, x + 20, z + 30)
+        float[] expected = { 10 - 5, 20 - 1, 30 - 3, 10 + 2, 20 + 4, 30 + 6 };
+        assertArrayEquals(expected, box, EPSILON);
+    }
+
+    @Test
+    public void emptyBoxesAreIgnoredAndCulled() {
+        float[] box = new float[Bounds.SIZE];
+        Bounds.setEmpty(box, 0);
+        assertTrue(Bounds.isEmpty(box, 0));
+        assertTrue(Bounds.isOutsideFrustum(TestModels.IDENTITY, box, 0));
+
+        float[] total = { 0, 0, 0, 1, 1, 1 };
+        Bounds.addBox(total, 0, box, 0);
+        assertArrayEquals(new float[] { 0, 0, 0, 1, 1, 1 }, total, EPSILON);
+    }
+
+    @Test
+    public void frustumTest() {
+        // With an identity MVP the frustum is the cube [-1, 1]^3.
+        assertFalse(Bounds.isOutsideFrustum(TestModels.IDENTITY, new float[] { -0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f }, 0));
+        assertFalse(Bounds.isOutsideFrustum(TestModels.IDENTITY, new float[] { 0.9f, 0, 0, 5, 1, 1 }, 0));      // straddles
+        assertFalse(Bounds.isOutsideFrustum(TestModels.IDENTITY, new float[] { -5, -5, -5, 5, 5, 5 }, 0));     // contains
+        assertTrue(Bounds.isOutsideFrustum(TestModels.IDENTITY, new float[] { 1.1f, 0, 0, 5, 1, 1 }, 0));
+        assertTrue(Bounds.isOutsideFrustum(TestModels.IDENTITY, new float[] { 0, 0, -5, 1, 1, -1.1f }, 0));
+    }
+}
@@ -0,0 +1,180 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Many threads fetching from one Cache: each name is loaded once at a time, and the totals
+ * add up however the fetches interleave.
+ */
+public class CacheConcurrencyTest {
+    private static final int N_THREADS = 8;
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        final Cache<Item> cache = new Cache<>(1024);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch acquiring = new CountDownLatch(N_THREADS);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final Source<Item> slowSource = new Source<Item>() {
+            @Override
+            public Item load() {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    finish.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return new Item(100);
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(N_THREADS);
+        List<Future<Item>> results = new ArrayList<>();
+        for (int i=0; i<N_THREADS; i++) {
+            results.add(pool.submit(new Callable<Item>() {
+                @Override
+                public Item call() {
+                    acquiring.countDown();
+                    return TestModels.fetch(cache, "slow", slowSource);
+                }
+            }));
+        }
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        assertTrue(acquiring.await(5, TimeUnit.SECONDS));
+        // Hold the load until everyone else is waiting for it.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getPinCount("slow") < N_THREADS) {
+            assertTrue("only " + cache.getPinCount("slow") + " waiting", System.nanoTime() < deadline);
+            Thread.yield();
+        }
+        assertEquals(1, loads.get());
+        finish.countDown();
+        Item item = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<Item> result : results) {
+            assertSame(item, result.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+        assertEquals(1, loads.get());
+        assertEquals(100, cache.getSizeBytes());
+    }
+
+    @Test
+    public void failedLoadsAreNotCached() {
+        Cache<Item> cache = new Cache<>(1024);
+        try {
+            TestModels.fetch(cache, "bad", new Source<Item>() {
+                @Override
+                public Item load() {
+                    throw new IllegalStateException("corrupt");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("corrupt", e.getMessage());
+        }
+        assertEquals(0, cache.getCount());
+        assertNotNull(TestModels.fetch(cache, "bad", source(10, null)));
+        assertEquals(1, cache.getCount());
+    }
+
+    @Test
+    public void totalsHoldUnderContention() throws Exception {
+        final Cache<Item> cache = new Cache<>(5000);
+        final AtomicInteger loads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(N_THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t=0; t<N_THREADS; t++) {
+            final int seed = t;
+            results.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i=0; i<5000; i++) {
+                        int key = random.nextInt(40);
+                        Item item = TestModels.fetch(cache, "item" + key, source(100 + key * 10, loads));
+                        assertEquals(100 + key * 10, item.mBytes);
+                        if (i % 1000 == 999) {
+                            cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertTrue(cache.getSizeBytes() <= cache.getMaxBytes());
+        // The totals are what the survivors cost.  Probe with a source that throws, so a miss
+        // can't change anything.
+        Source<Item> missing = new Source<Item>() {
+            @Override
+            public Item load() {
+                throw new IllegalStateException();
+            }
+        };
+        long size = 0;
+        int count = 0;
+        for (int key=0; key<40; key++) {
+            try {
+                size += TestModels.fetch(cache, "item" + key, missing).mBytes;
+                count++;
+            } catch (IllegalStateException e) {
+                // not cached
+            }
+        }
+        assertEquals(cache.getCount(), count);
+        assertEquals(cache.getSizeBytes(), size);
+        assertEquals(loads.get(), cache.getStats().getLoadCount());
+        assertTrue(loads.get() + " loads for " + N_THREADS * 5000 + " fetches",
+                loads.get() < N_THREADS * 5000);
+    }
+
+    private static class Item implements Sized {
+        final long mBytes;
+
+        Item(long bytes) {
+            mBytes = bytes;
+        }
+
+        @Override
+        public long getGpuBytes() {
+            return mBytes;
+        }
+
+        @Override
+        public long getCpuBytes() {
+            return 0;
+        }
+    }
+
+    private static Source<Item> source(final long bytes, final AtomicInteger loads) {
+        return new Source<Item>() {
+            @Override
+            public Item load() {
+                if (loads != null) {
+                    loads.incrementAndGet();
+                }
+                return new Item(bytes);
+            }
+        };
+    }
+}
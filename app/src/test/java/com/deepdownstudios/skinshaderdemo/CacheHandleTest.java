@@ -0,0 +1,123 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Items that are held through a Cache.Handle aren't dropped, and aren't released until the
+ * last Handle to them is.
+ */
+public class CacheHandleTest {
+    private static final long KB = 1024;
+
+    @Before
+    public void setUp() {
+        GLESContext.onContextCreated();         // nothing left in the release queue
+    }
+
+    @Test
+    public void pinnedItemsAreNeverEvicted() {
+        Cache<Item> cache = new Cache<>(100 * KB);
+        Cache.Handle<Item> a = cache.acquire("a", source(60 * KB));
+        TestModels.fetch(cache, "b", source(30 * KB));
+        assertEquals(1, cache.getPinnedCount());
+
+        // Unpinned ones go first, even if they were used more recently.
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(60 * KB, cache.getSizeBytes());
+        assertEquals(1, GLESContext.runPendingReleases());
+        assertFalse(a.get().mReleased);
+
+        // Pins can hold the cache over budget, until they are let go.
+        Cache.Handle<Item> c = cache.acquire("c", source(60 * KB));
+        assertEquals(120 * KB, cache.getSizeBytes());
+        assertEquals(2, cache.getPinnedCount());
+        a.release();
+        assertEquals(60 * KB, cache.getSizeBytes());
+        assertEquals(1, GLESContext.runPendingReleases());
+        assertFalse(c.get().mReleased);
+
+        // A second Handle to the same item pins it too.
+        Cache.Handle<Item> c2 = cache.acquire("c", source(60 * KB));
+        assertSame(c.get(), c2.get());
+        c.release();
+        cache.setMaxBytes(0);
+        assertEquals(1, cache.getCount());
+        c2.release();
+        assertEquals(0, cache.getCount());
+        assertEquals(1, GLESContext.runPendingReleases());
+    }
+
+    @Test
+    public void droppedWhilePinnedIsReleasedWithTheLastHandle() {
+        Cache<Item> cache = new Cache<>(100 * KB);
+        Cache.Handle<Item> pinned = cache.acquire("pinned", source(10 * KB));
+        TestModels.fetch(cache, "unpinned", source(10 * KB));
+        cache.clear();
+        assertEquals(0, cache.getSizeBytes());
+        assertEquals(1, GLESContext.runPendingReleases());
+        assertFalse(pinned.get().mReleased);
+
+        // After a clear, a new acquire loads a new one.
+        Cache.Handle<Item> again = cache.acquire("pinned", source(10 * KB));
+        assertNotSame(pinned.get(), again.get());
+        pinned.release();
+        assertEquals(1, GLESContext.runPendingReleases());
+        assertFalse(again.get().mReleased);
+        again.release();
+
+        // Too big to cache: still released, when its user is done with it.
+        Cache.Handle<Item> huge = cache.acquire("huge", source(1000 * KB));
+        assertEquals(0, GLESContext.runPendingReleases());
+        Item item = huge.get();
+        huge.release();
+        assertEquals(1, GLESContext.runPendingReleases());
+        assertTrue(item.mReleased);
+    }
+
+    @Test(expected = AssertionError.class)
+    public void handlesAreReleasedOnce() {
+        Cache<Item> cache = new Cache<>(100 * KB);
+        Cache.Handle<Item> handle = cache.acquire("a", source(10 * KB));
+        handle.release();
+        handle.release();
+    }
+
+    private static class Item implements Sized, Releasable {
+        final long mBytes;
+        boolean mReleased = false;
+
+        Item(long bytes) {
+            mBytes = bytes;
+        }
+
+        @Override
+        public long getGpuBytes() {
+            return mBytes;
+        }
+
+        @Override
+        public long getCpuBytes() {
+            return 0;
+        }
+
+        @Override
+        public void release() {
+            assertFalse(mReleased);
+            mReleased = true;
+        }
+    }
+
+    private static Source<Item> source(final long bytes) {
+        return new Source<Item>() {
+            @Override
+            public Item load() {
+                return new Item(bytes);
+            }
+        };
+    }
+}
@@ -0,0 +1,150 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cache.getStats() counts what the Cache did, and Histogram's percentiles are close enough.
+ */
+public class CacheStatsTest {
+    private static final long KB = 1024;
+
+    @Before
+    public void setUp() {
+        GLESContext.onContextCreated();         // nothing left in the release queue
+    }
+
+    @Test
+    public void everyAcquireAndDropIsCounted() {
+        Cache<Item> cache = new Cache<>(100 * KB);
+        TestModels.fetch(cache, "a", source(40 * KB));
+        TestModels.fetch(cache, "a", source(40 * KB));
+        TestModels.fetch(cache, "a", source(40 * KB));
+        try {
+            TestModels.fetch(cache, "bad", new Source<Item>() {
+                @Override
+                public Item load() {
+                    throw new IllegalStateException();
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // counted as a miss without a load
+        }
+        TestModels.fetch(cache, "b", source(40 * KB));
+        TestModels.fetch(cache, "c", source(40 * KB));        // "a" goes to make room
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(4, stats.getMissCount());
+        assertEquals(3, stats.getLoadCount());
+        assertEquals(0.333, stats.getHitRate(), 0.001);
+        assertEquals(1, stats.getEvictionCount(CacheStats.Eviction.LRU));
+        assertEquals(2, stats.getCount());
+        assertEquals(80 * KB, stats.getSizeBytes());
+        assertTrue(stats.getLoadMicrosMax() >= stats.getLoadMicrosP95());
+        assertTrue(stats.getLoadMicrosP95() >= stats.getLoadMicrosP50());
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);     // to half
+        Cache.Handle<Item> pinned = cache.acquire("c", source(40 * KB));
+        cache.clear();
+        pinned.release();
+        stats = cache.getStats();
+        assertEquals(1, stats.getEvictionCount(CacheStats.Eviction.TRIM));
+        assertEquals(1, stats.getEvictionCount(CacheStats.Eviction.EXPLICIT));
+        assertEquals(3, stats.getHitCount());
+        assertEquals(stats.toString(), 0, stats.getCount());
+    }
+
+    @Test
+    public void hitsAddUpUnderContention() throws Exception {
+        final Cache<Item> cache = new Cache<>(2 * KB);
+        final int nThreads = 8;
+        final int nAcquires = 5000;
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t=0; t<nThreads; t++) {
+            final int seed = t;
+            results.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i=0; i<nAcquires; i++) {
+                        TestModels.fetch(cache, "item" + random.nextInt(40), source(100));
+                    }
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        CacheStats stats = cache.getStats();
+        assertEquals(nThreads * nAcquires, stats.getHitCount() + stats.getMissCount());
+        assertEquals(stats.getMissCount(), stats.getLoadCount());
+        assertEquals(stats.getLoadCount() - stats.getCount(),
+                stats.getEvictionCount(CacheStats.Eviction.LRU));
+    }
+
+    @Test
+    public void histogramPercentilesAreWithinABucket() {
+        for (long value=0; value<100000; value+=7) {
+            int bucket = Histogram.getBucket(value);
+            assertTrue(Histogram.getBucketStart(bucket) <= value);
+            assertTrue(Histogram.getBucketStart(bucket + 1) > value);
+        }
+
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i=1; i<=1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1000, histogram.getPercentile(1.0));
+        long p50 = histogram.getPercentile(0.5);
+        long p95 = histogram.getPercentile(0.95);
+        assertTrue(p50 >= 500 && p50 < 500 * 1.25);
+        assertTrue(p95 >= 950 && p95 <= 1000);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1.0));
+    }
+
+    private static class Item implements Sized {
+        final long mBytes;
+
+        Item(long bytes) {
+            mBytes = bytes;
+        }
+
+        @Override
+        public long getGpuBytes() {
+            return mBytes;
+        }
+
+        @Override
+        public long getCpuBytes() {
+            return 0;
+        }
+    }
+
+    private static Source<Item> source(final long bytes) {
+        return new Source<Item>() {
+            @Override
+            public Item load() {
+                return new Item(bytes);
+            }
+        };
+    }
+}
@@ -0,0 +1,149 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cache budgets by what its items say they cost, dropping the least recently fetched first.
+ */
+public class CacheTest {
+    private static final long KB = 1024;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule();
+
+    @Test
+    public void evictsLeastRecentlyUsedByBytes() {
+        Cache<Item> cache = new Cache<>(100 * KB);
+        Item big = TestModels.fetch(cache, "big", source(60 * KB, 0));
+        Item small = TestModels.fetch(cache, "small", source(10 * KB, 10 * KB));
+        assertEquals(80 * KB, cache.getSizeBytes());
+        assertEquals(70 * KB, cache.getGpuBytes());
+
+        // "big" was used most recently, so "small" makes way for another 30KB.
+        assertSame(big, TestModels.fetch(cache, "big", source(60 * KB, 0)));
+        TestModels.fetch(cache, "other", source(30 * KB, 0));
+        assertEquals(2, cache.getCount());
+        assertEquals(90 * KB, cache.getSizeBytes());
+        assertNotSame(small, TestModels.fetch(cache, "small", source(10 * KB, 10 * KB)));
+        assertEquals(50 * KB, cache.getSizeBytes());        // and now "big" went
+
+        // One 4MB model doesn't count the same as a texture: it doesn't fit at all, and
+        // isn't allowed to flush everything else trying.
+        Item huge = TestModels.fetch(cache, "huge", source(4 * KB * KB, 0));
+        assertNotNull(huge);
+        assertNotSame(huge, TestModels.fetch(cache, "huge", source(4 * KB * KB, 0)));
+        assertEquals(50 * KB, cache.getSizeBytes());
+
+        // Failed loads aren't cached.
+        assertNull(TestModels.fetch(cache, "missing", new Source<Item>() {
+            @Override
+            public Item load() {
+                return null;
+            }
+        }));
+
+        cache.setMaxBytes(25 * KB);
+        assertEquals(20 * KB, cache.getSizeBytes());
+        cache.clear();
+        assertEquals(0, cache.getSizeBytes());
+        assertEquals(0, cache.getCount());
+    }
+
+    @Test
+    public void trimMemoryIsGraded() {
+        int[] levels = {
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+                ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN,
+                ComponentCallbacks2.TRIM_MEMORY_BACKGROUND,
+                ComponentCallbacks2.TRIM_MEMORY_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+        };
+        long[] kept = new long[levels.length];
+        for (int i=0; i<levels.length; i++) {
+            Cache<Item> cache = new Cache<>(100 * KB);
+            for (int item=0; item<20; item++) {
+                TestModels.fetch(cache, "item" + item, source(5 * KB, 0));
+            }
+            assertEquals(100 * KB, cache.getSizeBytes());
+            cache.onTrimMemory(levels[i]);
+            kept[i] = cache.getSizeBytes();
+            assertEquals((long)(100 * KB * Cache.getTrimFraction(levels[i])), kept[i]);
+        }
+        assertEquals(75 * KB, kept[0]);
+        assertEquals(0, kept[levels.length - 1]);
+        // The worse it is (while in the background), the less is kept.
+        for (int i=4; i<levels.length; i++) {
+            assertTrue(kept[i] < kept[i - 1]);
+        }
+    }
+
+    @Test
+    public void textureBytesCountMips() {
+        assertEquals(256 * 256 * 4, GLESTexture.getTextureBytes(256, 256, 4, false));
+        assertEquals(4 * (65536 + 16384 + 4096 + 1024 + 256 + 64 + 16 + 4 + 1),
+                GLESTexture.getTextureBytes(256, 256, 4, true));
+        assertEquals(2 * (4 + 2 + 1), GLESTexture.getTextureBytes(4, 1, 2, true));
+        assertEquals(0, new GLESTexture(1).getGpuBytes());
+    }
+
+    @Test
+    public void modelCountsItsArena() {
+        GLESContext.setGL(new RecordingGLES());
+        ByteBufferModel bbModel = TestModels.createByteBufferModel(4, 2);
+        long expected = 0;
+        for (ByteBuffer vertBuffer : bbModel.mVertByteBuffers) {
+            expected += vertBuffer.capacity();
+        }
+        for (ByteBuffer[] lodBuffers : bbModel.mLodBoneIndexBuffers) {
+            for (ByteBuffer lodBuffer : lodBuffers) {
+                expected += lodBuffer.capacity();
+            }
+        }
+        for (ShortBuffer faceBuffer : bbModel.mFaceShortBuffers) {
+            expected += faceBuffer.capacity() * 2;
+        }
+        VBOModel model = new VBOModel(null, new TestModels.TextureCache(),
+                new ShaderProgramRegistry(null), bbModel, true);
+        assertEquals(expected, model.getGpuBytes());
+        assertTrue(model.getCpuBytes() > 0);
+    }
+
+    private static class Item implements Sized {
+        final long mGpuBytes;
+        final long mCpuBytes;
+
+        Item(long gpuBytes, long cpuBytes) {
+            mGpuBytes = gpuBytes;
+            mCpuBytes = cpuBytes;
+        }
+
+        @Override
+        public long getGpuBytes() {
+            return mGpuBytes;
+        }
+
+        @Override
+        public long getCpuBytes() {
+            return mCpuBytes;
+        }
+    }
+
+    private static Source<Item> source(final long gpuBytes, final long cpuBytes) {
+        return new Source<Item>() {
+            @Override
+            public Item load() {
+                return new Item(gpuBytes, cpuBytes);
+            }
+        };
+    }
+}
@@ -0,0 +1,184 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * After the GLES context is lost, the caches reload only their GL items, lazily, and models
+ * come back from the DiskModelCache instead of their importer.
+ */
+public class ContextLossTest {
+    private static final long MB = 1024 * 1024;
+
+    private final RecordingGLES mGL = new RecordingGLES();
+    private File mDir;
+    private DiskModelCache mStore;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(new GLStateTracker(mGL), true);
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("models").toFile();
+        mStore = new DiskModelCache(mDir, MB, 0);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.clear();
+        assertTrue(mDir.delete());
+    }
+
+    @Test
+    public void modelsComeBackFromTheStore() {
+        Cache<Model> cache = new Cache<>(MB);
+        Importer importer = new Importer();
+        Source<Model> source = mStore.wrap(importer);
+        Cache.Handle<Model> handle = cache.acquire("model", source);       // on screen
+        Model lost = handle.get();
+
+        GLESContext.onContextCreated();
+        cache.onContextCreated();
+        assertFalse(cache.contains("model"));
+        assertEquals(0, cache.getCount());
+        assertEquals(1, cache.getStats().getEvictionCount(CacheStats.Eviction.CONTEXT_LOST));
+
+        // The old renderer lets go.  Its buffers are already gone, so nothing is deleted.
+        handle.release();
+        assertEquals(1, GLESContext.runPendingReleases());
+        assertEquals(0, mGL.count("glDeleteBuffers"));
+
+        handle = cache.acquire("model", source);
+        assertNotSame(lost, handle.get());
+        assertEquals(1, importer.mImports);
+        assertEquals(2, importer.mUploads);
+        assertEquals(1, mStore.getHitCount());
+        handle.release();
+    }
+
+    @Test
+    public void onlyGLItemsGoWithTheContext() {
+        Cache<Sized> cache = new Cache<>(MB);
+        TestModels.fetch(cache, "texture", new TextureSource());
+        TestModels.fetch(cache, "data", new DataSource());
+        assertEquals(2, cache.getCount());
+
+        GLESContext.onContextCreated();
+        cache.onContextCreated();
+        assertEquals(1, cache.getCount());
+        assertTrue(cache.contains("data"));
+        assertFalse(cache.contains("texture"));
+        assertEquals(1, cache.getStats().getEvictionCount(CacheStats.Eviction.CONTEXT_LOST));
+    }
+
+    @Test
+    public void staleItemsAreReloadedWhenAcquired() {
+        Cache<Sized> cache = new Cache<>(MB);
+        TextureSource source = new TextureSource();
+        Sized lost = TestModels.fetch(cache, "texture", source);
+
+        // No Cache.onContextCreated: the next acquire notices.
+        GLESContext.onContextCreated();
+        assertFalse(cache.contains("texture"));
+        Sized texture = TestModels.fetch(cache, "texture", source);
+        assertNotSame(lost, texture);
+        assertEquals(2, source.mLoads);
+        assertSame(texture, TestModels.fetch(cache, "texture", source));
+        assertEquals(1, GLESContext.runPendingReleases());
+        assertEquals(0, mGL.count("glDeleteTextures"));
+        assertEquals(1, cache.getCount());
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getEvictionCount(CacheStats.Eviction.CONTEXT_LOST));
+        // The acquire that found the stale texture is a miss, not a hit too.
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+    }
+
+    @Test
+    public void cachedSourcesPassItOn() {
+        Cache<Sized> cache = new Cache<>(MB);
+        CachedSource<Sized> cachedSource = new CachedSource<>(cache, new TextureSource());
+        cachedSource.acquire("texture").release();
+
+        GLESContext.onContextCreated();
+        cachedSource.onContextCreated();
+        assertEquals(0, cache.getCount());
+        assertEquals(1, cache.getStats().getEvictionCount(CacheStats.Eviction.CONTEXT_LOST));
+    }
+
+    private static class TextureSource implements Source<Sized> {
+        int mLoads = 0;
+
+        @Override
+        public Sized load() {
+            mLoads++;
+            int[] id = new int[1];
+            GLESContext.gl().glGenTextures(1, id, 0);
+            return new GLESTexture(id[0], 16, 16, 4, false);
+        }
+    }
+
+    private static class DataSource implements Source<Sized> {
+        @Override
+        public Sized load() {
+            return new Sized() {
+                @Override
+                public long getGpuBytes() {
+                    return 0;
+                }
+
+                @Override
+                public long getCpuBytes() {
+                    return 1024;
+                }
+            };
+        }
+    }
+
+    private static class Importer implements ModelImporter {
+        int mImports = 0;
+        int mUploads = 0;
+
+        @Override
+        public String getName() {
+            return "model";
+        }
+
+        @Override
+        public int getConverterVersion() {
+            return 1;
+        }
+
+        @Override
+        public long getContentHash() {
+            return 0;
+        }
+
+        @Override
+        public ByteBufferModel importModel() {
+            mImports++;
+            return TestModels.createByteBufferModel(4, 2);
+        }
+
+        @Override
+        public Model upload(ByteBufferModel bbModel) {
+            mUploads++;
+            VBOModel model = new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null), bbModel);
+            bbModel.release();
+            return model;
+        }
+
+        @Override
+        public Model load() {
+            return upload(importModel());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.util.Pair;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.Animation;
+import static com.deepdownstudios.skinshaderdemo.BasicModel.RigidTransform;
+import static org.junit.Assert.*;
+
+/**
+ * Imported models come back from a DiskModelCache as they went in, on a later run, and are
+ * imported again when anything that went into them changes.
+ */
+public class DiskModelCacheTest {
+    private static final long MB = 1024 * 1024;
+    private File mDir;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule();
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("models").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        new DiskModelCache(mDir, MB, 0).clear();
+        assertTrue(mDir.delete());
+    }
+
+    @Test
+    public void storedModelsAreReadBackOnTheNextRun() {
+        FakeImporter importer = new FakeImporter("ninja");
+        ByteBufferModel imported = new DiskModelCache(mDir, MB, 0).load(importer);
+        assertEquals(1, importer.mImports);
+
+        // Another run: a new DiskModelCache on the same directory.
+        DiskModelCache store = new DiskModelCache(mDir, MB, 0);
+        ByteBufferModel stored = store.load(importer);
+        assertEquals(1, importer.mImports);
+        assertEquals(1, store.getHitCount());
+        assertEquals(0, store.getMissCount());
+        assertEquals(1, store.getCount());
+
+        assertEquals(imported.mVertByteBuffers.size(), stored.mVertByteBuffers.size());
+        for (int i=0; i<imported.mVertByteBuffers.size(); i++) {
+            assertTrue(stored.mVertByteBuffers.get(i).isDirect());
+            assertEquals(rewind(imported.mVertByteBuffers.get(i)), rewind(stored.mVertByteBuffers.get(i)));
+            assertEquals(imported.mFaceShortBuffers.get(i), stored.mFaceShortBuffers.get(i));
+            assertEquals(imported.mMaterials.get(i).textureResourceId, stored.mMaterials.get(i).textureResourceId);
+            assertEquals(imported.mMaxInfluences.get(i), stored.mMaxInfluences.get(i));
+            assertEquals(imported.mRigidBones.get(i), stored.mRigidBones.get(i));
+        }
+        assertArrayEquals(imported.mBoneBounds, stored.mBoneBounds, 0.0f);
+        assertArrayEquals(imported.mInfluenceClassVertCounts, stored.mInfluenceClassVertCounts);
+        assertEquals(imported.mSkeletonLods.size(), stored.mSkeletonLods.size());
+        assertArrayEquals(imported.mSkeletonLods.get(0).mRemap, stored.mSkeletonLods.get(0).mRemap);
+
+        assertEquals(imported.mSkeleton.bones.size(), stored.mSkeleton.bones.size());
+        assertEquals("child", stored.mSkeleton.bones.get(1).name);
+        assertEquals(imported.mSkeleton.invBindPose.size(), stored.mSkeleton.invBindPose.size());
+        Animation animation = stored.mSkeleton.animations.get(0);
+        assertEquals("still", animation.name);
+        assertNull(animation.keyframes[0]);
+        Pair<Double, RigidTransform> keyframe = animation.keyframes[1].get(0);
+        assertEquals(0.5, keyframe.first, 0.0);
+        assertEquals(2.0, keyframe.second.pos[1], 0.0);
+
+        // Models from the store upload like imported ones.
+        VBOModel model = new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null), stored);
+        assertEquals(new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null),
+                imported).getGpuBytes(), model.getGpuBytes());
+    }
+
+    @Test
+    public void changesInvalidateTheStoredModel() throws IOException {
+        FakeImporter importer = new FakeImporter("ninja");
+        new DiskModelCache(mDir, MB, 0).load(importer);
+
+        importer.mContentHash++;            // the file changed
+        new DiskModelCache(mDir, MB, 0).load(importer);
+        assertEquals(2, importer.mImports);
+        importer.mConverterVersion++;       // the importer changed
+        new DiskModelCache(mDir, MB, 0).load(importer);
+        assertEquals(3, importer.mImports);
+        new DiskModelCache(mDir, MB, 1).load(importer);        // reinstalled
+        assertEquals(4, importer.mImports);
+        // The old versions are gone.
+        assertEquals(1, new DiskModelCache(mDir, MB, 1).getCount());
+
+        // A damaged file is a miss, and is replaced.
+        File[] files = mDir.listFiles();
+        assertEquals(1, files.length);
+        FileOutputStream out = new FileOutputStream(files[0]);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+        DiskModelCache store = new DiskModelCache(mDir, MB, 1);
+        assertNotNull(store.load(importer));
+        assertEquals(5, importer.mImports);
+        assertEquals(1, store.getMissCount());
+        store.load(importer);
+        assertEquals(5, importer.mImports);
+        assertEquals(1, store.getHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedModelsAreEvicted() {
+        DiskModelCache store = new DiskModelCache(mDir, MB, 0);
+        store.load(new FakeImporter("a"));
+        long modelBytes = store.getSizeBytes();
+        store.setMaxBytes(modelBytes * 3 / 2);
+
+        FakeImporter b = new FakeImporter("b");
+        store.load(b);
+        assertEquals(1, store.getCount());
+        store.load(b);
+        assertEquals(1, b.mImports);
+        assertEquals(modelBytes, store.getSizeBytes());
+
+        // Bigger than the budget: used but not stored.
+        store.setMaxBytes(modelBytes / 2);
+        assertEquals(0, store.getCount());
+        store.load(b);
+        assertEquals(0, store.getCount());
+        assertEquals(2, b.mImports);
+    }
+
+    @Test
+    public void unfinishedFilesAreDeleted() throws IOException {
+        FakeImporter importer = new FakeImporter("ninja");
+        new DiskModelCache(mDir, MB, 0).load(importer);
+        // The last run was killed while it stored a model.
+        File temp = new File(mDir, mDir.list()[0] + ".tmp1");
+        FileOutputStream out = new FileOutputStream(temp);
+        out.write(new byte[1024]);
+        out.close();
+
+        DiskModelCache store = new DiskModelCache(mDir, MB, 0);
+        assertFalse(temp.exists());
+        assertEquals(1, mDir.list().length);
+        store.load(importer);
+        assertEquals(1, importer.mImports);
+    }
+
+    private static ByteBuffer rewind(ByteBuffer buffer) {
+        buffer.position(0);
+        return buffer;
+    }
+
+    private static class FakeImporter implements ModelImporter {
+        final String mName;
+        int mImports = 0;
+        long mContentHash = 1234;
+        int mConverterVersion = 1;
+
+        FakeImporter(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public int getConverterVersion() {
+            return mConverterVersion;
+        }
+
+        @Override
+        public long getContentHash() {
+            return mContentHash;
+        }
+
+        @Override
+        public ByteBufferModel importModel() {
+            mImports++;
+            ByteBufferModel ret = TestModels.createByteBufferModel(5, 2);
+            RigidTransform transform = new RigidTransform();
+            transform.pos[1] = 2.0;
+            ArrayList<Pair<Double, RigidTransform>> channel = new ArrayList<>();
+            channel.add(new Pair<>(0.5, transform));
+            ret.mSkeleton.animations.get(0).keyframes[1] = channel;
+            return ret;
+        }
+
+        @Override
+        public Model upload(ByteBufferModel bbModel) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Model load() {
+            return upload(importModel());
+        }
+    }
+}
@@ -10,6 +10,6 @@ import static org.junit.Assert.*;
 public class ExampleUnitTest {
     @Test
     public void addition_isCorrect() throws Exception {
-        Util.AssertEquals(4, 2 + 2);
+        assertEquals(4, 2 + 2);
     }
-}
\ No newline at end of file
+}
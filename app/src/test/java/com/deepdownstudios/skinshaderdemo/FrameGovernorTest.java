@@ -0,0 +1,102 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameGovernorTest {
+    private static final long MILLIS = 1000000;
+    private static final int WINDOW = 4;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule();
+
+    @Test
+    public void levelFollowsBudget() {
+        FrameGovernor governor = new FrameGovernor(10.0f, WINDOW);
+        assertFalse(feed(governor, 12 * MILLIS, WINDOW - 1));      // not a full window yet
+        assertTrue(feed(governor, 12 * MILLIS, 1));
+        assertEquals(1, governor.getLevel());
+        assertEquals(2.0f, governor.getAnimationRateBias(), 0.0f);
+        assertEquals(1.0f, governor.getSkinningBias(), 0.0f);
+        assertEquals(12.0f, governor.getAveragePoseMillis() + governor.getAverageUploadMillis() +
+                governor.getAverageDrawMillis(), 1e-3f);
+
+        feed(governor, 12 * MILLIS, WINDOW);
+        assertEquals(2, governor.getLevel());
+        // Under budget but without enough headroom to go back up.
+        assertFalse(feed(governor, 8 * MILLIS, WINDOW));
+        assertEquals(2, governor.getLevel());
+        assertTrue(feed(governor, 5 * MILLIS, WINDOW));
+        assertEquals(1, governor.getLevel());
+        assertEquals(2, governor.getDowngradeCount());
+        assertEquals(1, governor.getUpgradeCount());
+    }
+
+    @Test
+    public void everyKnobIsTurnedAtTheBottom() {
+        FrameGovernor governor = new FrameGovernor(1.0f, WINDOW);
+        feed(governor, 100 * MILLIS, WINDOW * (FrameGovernor.STEPS.length + 5));
+        assertEquals(FrameGovernor.STEPS.length, governor.getLevel());
+        assertEquals(4.0f, governor.getAnimationRateBias(), 0.0f);
+        assertEquals(4.0f, governor.getSkinningBias(), 0.0f);
+        assertEquals(4.0f, governor.getSkeletonBias(), 0.0f);
+        assertEquals(0.125f, governor.getAnimatedFraction(), 0.0f);
+    }
+
+    @Test
+    public void cappedInstancesTakeTurns() {
+        ShaderProgramRegistry registry = TestModels.createRegistry();
+        VBOModel model = TestModels.createVBOModel(4, 2, true);
+        Scene scene = new Scene();
+        List<Scene.Instance> instances = new ArrayList<>();
+        for (int i=0; i<100; i++) {
+            Scene.Instance instance = scene.add(TestModels.createAnimModel(model, registry, Animator.NORMAL));
+            instance.mModelMatrix[14] = -5.0f - i;
+            instances.add(instance);
+        }
+        float[] projMatrix = TestModels.perspective(60.0f, 1.0f, 0.1f, 1000.0f);
+        // No frame is ever fast enough, so the governor goes all the way down.
+        FrameGovernor governor = new FrameGovernor(1e-6f, 1);
+        scene.setFrameGovernor(governor);
+        int frame = 0;
+        while (governor.getLevel() < FrameGovernor.STEPS.length) {
+            scene.draw(projMatrix, TestModels.IDENTITY, new float[3], frame++ / 60.0);
+        }
+
+        int nVisible = instances.size() - scene.getLastCulledCount();
+        int cap = (int)Math.ceil(nVisible * governor.getAnimatedFraction());
+        List<Bones.GLSLBones> bones = new ArrayList<>();
+        for (Scene.Instance instance : instances) {
+            bones.add(instance.getAnimModel().getBones());
+        }
+        int nFrames = (int)Math.ceil(1.0 / governor.getAnimatedFraction());
+        for (int i=0; i<nFrames; i++) {
+            scene.draw(projMatrix, TestModels.IDENTITY, new float[3], frame++ / 60.0);
+            assertTrue(scene.getLastPosedCount() + " of " + nVisible + " visible posed, cap " + cap,
+                    scene.getLastPosedCount() <= cap);
+            assertTrue(scene.getLastDeferredCount() > 0);
+            assertEquals(nVisible * model.getDrawCount(), scene.getLastDrawCount());
+        }
+        // Every visible instance got its turn.
+        for (int i=0; i<instances.size(); i++) {
+            if (!instances.get(i).isCulled()) {
+                assertNotSame(bones.get(i), instances.get(i).getAnimModel().getBones());
+            }
+        }
+    }
+
+    /// Report `count` frames that each took `nanos`, split evenly over the phases.
+    /// @return True if the last one changed the quality level.
+    private static boolean feed(FrameGovernor governor, long nanos, int count) {
+        boolean changed = false;
+        for (int i=0; i<count; i++) {
+            changed = governor.onFrame(nanos / 2, nanos / 4, nanos - nanos / 2 - nanos / 4);
+        }
+        return changed;
+    }
+}
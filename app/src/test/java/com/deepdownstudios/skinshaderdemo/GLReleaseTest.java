@@ -0,0 +1,91 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * GL objects are deleted when their owners are released, and the GLObjectTracker in
+ * GLStateTracker sees it.
+ */
+public class GLReleaseTest {
+    private final RecordingGLES mRecorder = new RecordingGLES();
+    private final GLStateTracker mStateTracker = new GLStateTracker(mRecorder);
+    private final GLObjectTracker mObjects = mStateTracker.getObjectTracker();
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(mStateTracker, true);
+
+    @Test
+    public void cyclingModelsHoldsAFlatFootprint() {
+        VBOModel first = TestModels.createVBOModel(4, 2, true);
+        long modelBytes = first.getGpuBytes();
+        GLESContext.onContextCreated();     // forget that one
+        Cache<Model> cache = new Cache<>(3 * (modelBytes + first.getCpuBytes()));
+        long liveBytes = 0;
+        for (int i=0; i<30; i++) {
+            TestModels.fetch(cache, "model" + i, new Source<Model>() {
+                @Override
+                public Model load() {
+                    return TestModels.createVBOModel(4, 2, true);
+                }
+            });
+            GLESContext.runPendingReleases();
+            if (i == 3) {
+                liveBytes = mObjects.getLiveBytes(GLObjectTracker.Kind.BUFFER);
+            }
+        }
+        assertEquals(3 * modelBytes, liveBytes);
+        assertEquals(mObjects.toString(), liveBytes, mObjects.getLiveBytes(GLObjectTracker.Kind.BUFFER));
+        assertEquals(mObjects.toString(), 3 * 2, mObjects.getLiveCount(GLObjectTracker.Kind.BUFFER));
+        assertEquals(cache.getGpuBytes(), mObjects.getLiveBytes(GLObjectTracker.Kind.BUFFER));
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(3, GLESContext.runPendingReleases());
+        assertEquals(0, mObjects.getLiveCount(GLObjectTracker.Kind.BUFFER));
+    }
+
+    @Test
+    public void objectsOfALostContextAreLeftAlone() {
+        VBOModel model = TestModels.createVBOModel(4, 2, true);
+        int[] names = new int[1];
+        GLESContext.gl().glGenTextures(1, names, 0);
+        GLESTexture texture = new GLESTexture(names[0]);
+        assertEquals(2, mObjects.getLiveCount(GLObjectTracker.Kind.BUFFER));
+        assertEquals(1, mObjects.getLiveCount(GLObjectTracker.Kind.TEXTURE));
+
+        GLESContext.enqueueRelease(model);
+        GLESContext.onContextCreated();
+        assertEquals(0, GLESContext.runPendingReleases());     // dropped with the context
+        model.release();
+        texture.release();
+        assertEquals(0, mRecorder.count("glDeleteBuffers"));
+        assertEquals(0, mRecorder.count("glDeleteTextures"));
+        assertEquals(0, mObjects.getLiveCount(GLObjectTracker.Kind.BUFFER));
+    }
+
+    @Test
+    public void texturesAndProgramsAreDeleted() {
+        int[] names = new int[1];
+        GLESContext.gl().glGenTextures(1, names, 0);
+        GLESTexture texture = new GLESTexture(names[0]);
+        texture.release();
+        texture.release();
+        assertEquals(1, mRecorder.count("glDeleteTextures"));
+        assertEquals(0, mObjects.getLiveCount(GLObjectTracker.Kind.TEXTURE));
+
+        ShaderProgramRegistry registry = TestModels.createRegistry();
+        registry.warmUp();
+        int nPrograms = mObjects.getLiveCount(GLObjectTracker.Kind.PROGRAM);
+        assertTrue(nPrograms > 0);
+        // Shaders are deleted once linked.  They go with their programs.
+        assertEquals(0, mObjects.getLiveCount(GLObjectTracker.Kind.SHADER));
+
+        registry.release();
+        assertEquals(nPrograms, mRecorder.count("glDeleteProgram"));
+        assertEquals(0, mObjects.getLiveCount(GLObjectTracker.Kind.PROGRAM));
+    }
+}
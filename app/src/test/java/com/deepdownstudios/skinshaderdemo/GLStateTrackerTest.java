@@ -0,0 +1,80 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.opengl.GLES20;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GLStateTrackerTest {
+    private final RecordingGLES mGL = new RecordingGLES();
+    private final GLStateTracker mTracker = new GLStateTracker(mGL);
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(mTracker, false);
+
+    @Test
+    public void redundantCallsAreElided() {
+        mTracker.glUseProgram(3);
+        mTracker.glUseProgram(3);
+        mTracker.glEnable(GLES20.GL_CULL_FACE);
+        mTracker.glEnable(GLES20.GL_CULL_FACE);
+        mTracker.glActiveTexture(GLES20.GL_TEXTURE0);
+        mTracker.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mTracker.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mTracker.glBindTexture(GLES20.GL_TEXTURE_2D, 8);
+
+        assertEquals(1, mGL.count("glUseProgram"));
+        assertEquals(1, mGL.count("glEnable"));
+        assertEquals(2, mGL.count("glBindTexture"));
+        assertEquals(5, mTracker.getIssuedCount());
+        assertEquals(3, mTracker.getElidedCount());
+    }
+
+    @Test
+    public void attribPointerDependsOnBoundBuffer() {
+        mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        mTracker.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 56, 0);
+        mTracker.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 56, 0);
+        mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+        mTracker.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 56, 0);
+        assertEquals(2, mGL.count("glVertexAttribPointer"));
+    }
+
+    @Test
+    public void invalidateReissues() {
+        mTracker.glUseProgram(3);
+        mTracker.invalidate();
+        mTracker.glUseProgram(3);
+        assertEquals(2, mGL.count("glUseProgram"));
+    }
+
+    @Test
+    public void deletingBoundTextureUnbindsIt() {
+        mTracker.glActiveTexture(GLES20.GL_TEXTURE0);
+        mTracker.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mTracker.glDeleteTextures(1, new int[] { 7 }, 0);
+        mTracker.glBindTexture(GLES20.GL_TEXTURE_2D, 7);       // a new texture that reuses the name
+        assertEquals(2, mGL.count("glBindTexture"));
+    }
+
+    @Test
+    public void instancesShareState() {
+        VBOModel model = TestModels.createVBOModel(6, 2, true);
+        ShaderProgram[] programs = TestModels.createPrograms();
+        mGL.reset();
+        mTracker.resetCounts();
+        for (int i=0; i<4; i++) {
+            TestModels.draw(model, programs);
+        }
+        // Everything after the first instance is already bound.
+        assertEquals(1, mGL.count("glUseProgram"));
+        assertEquals(2, mGL.count("glBindBuffer"));
+        assertEquals(1, mGL.count("glEnable"));
+        assertTrue(mGL.count("glBindTexture") <= 1 + 4 * model.getDrawCount());
+        assertEquals(4 * model.getDrawCount(), mGL.count("glDrawElements"));
+        assertTrue(mTracker.getElidedCount() > 0);
+        assertEquals(mGL.totalCount(), mTracker.getIssuedCount());
+    }
+}
@@ -0,0 +1,98 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.util.Pair;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.*;
+import static org.junit.Assert.*;
+
+/**
+ * A VBOModel keeps only packed animation data once it is uploaded, poses the same with it,
+ * and the ByteBufferModel it came from can let go of its buffers.
+ */
+public class ModelMemoryTest {
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(new GLStateTracker(new RecordingGLES()), true);
+
+    @After
+    public void tearDown() {
+        VBOModel.releaseStagingBuffer();
+    }
+
+    @Test
+    public void packedKeyframesPoseLikeTheImportedOnes() {
+        ByteBufferModel bbModel = createAnimatedModel();
+        Skeleton imported = bbModel.mSkeleton;
+        Skeleton compact = imported.compact();
+        assertSame(imported.bones, compact.bones);
+        assertNull(compact.animations.get(0).keyframes);
+        assertSame(compact.animations.get(0), compact.animations.get(0).compact());
+        assertTrue(compact.getHeapBytes() * 2 < imported.getHeapBytes());
+
+        float[] expected = new float[16];
+        float[] actual = new float[16];
+        for (double delta=0.0; delta<2.0; delta+=0.0625) {
+            MatrixBones importedBones = new MatrixBones(imported.animations.get(0), imported, delta);
+            MatrixBones compactBones = new MatrixBones(compact.animations.get(0), compact, delta);
+            for (int bone=0; bone<imported.bones.size(); bone++) {
+                importedBones.getBoneMatrix(bone, expected, 0);
+                compactBones.getBoneMatrix(bone, actual, 0);
+                assertArrayEquals(expected, actual, 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void uploadKeepsOnlyWhatDrawingNeeds() {
+        ByteBufferModel bbModel = createAnimatedModel();
+        long importedSkeletonBytes = bbModel.mSkeleton.getHeapBytes();
+        long bufferBytes = bbModel.getByteCount();
+        VBOModel model = new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null), bbModel);
+        assertEquals(bufferBytes, bbModel.release());
+        assertTrue(bbModel.isReleased());
+        assertEquals(0, bbModel.getByteCount());
+
+        assertTrue(model.getCpuBytes() + " bytes kept, skeleton was " + importedSkeletonBytes,
+                model.getCpuBytes() < importedSkeletonBytes);
+        assertEquals(0, model.getNativeBytes());
+        assertNull(model.getSkeleton().animations.get(0).keyframes);
+        assertEquals(2, model.getDrawCount());
+
+        // The index staging buffer is reused by the next upload, until it is released.
+        long stagingBytes = VBOModel.getStagingBytes();
+        assertTrue(stagingBytes > 0);
+        new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null),
+                TestModels.createByteBufferModel(1, 1));
+        assertEquals(stagingBytes, VBOModel.getStagingBytes());
+        assertEquals(stagingBytes, VBOModel.releaseStagingBuffer());
+        assertEquals(0, VBOModel.getStagingBytes());
+    }
+
+    @Test(expected = AssertionError.class)
+    public void releasedModelsCannotBeUploaded() {
+        ByteBufferModel bbModel = TestModels.createByteBufferModel(1, 1);
+        bbModel.release();
+        new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null), bbModel);
+    }
+
+    /// @return createByteBufferModel(4, 2) with a two second animation of the child bone.
+    private static ByteBufferModel createAnimatedModel() {
+        ByteBufferModel ret = TestModels.createByteBufferModel(4, 2);
+        Animation animation = ret.mSkeleton.animations.get(0);
+        animation.duration = 2.0;
+        ArrayList<Pair<Double, RigidTransform>> channel = new ArrayList<>();
+        for (int i=0; i<=40; i++) {
+            RigidTransform transform = new RigidTransform();
+            transform.pos[1] = Math.sin(i * 0.1);
+            transform.quat = new Quaternion(i * 0.05, new double[] { 0, 0, 1 });
+            channel.add(new Pair<>(1.0 + i * 0.05, transform));      // starts at 1, like Milkshape
+        }
+        animation.keyframes[1] = channel;
+        return ret;
+    }
+}
@@ -0,0 +1,210 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * A ModelPrefetcher imports in the background, uploads and compiles when the renderer is
+ * idle, and drops prefetches that the user didn't go to.
+ */
+public class ModelPrefetcherTest {
+    private static final long MB = 1024 * 1024;
+
+    private File mDir;
+    private DiskModelCache mStore;
+    private ShaderProgramRegistry mRegistry;
+    private Cache<Model> mCache;
+    /// Background work, run when the test says so.
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private final Executor mExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            mTasks.add(runnable);
+        }
+    };
+    private int mImportsDone = 0;
+    private final ModelPrefetcher.Host mHost = new ModelPrefetcher.Host() {
+        @Override
+        public void onImportDone() {
+            mImportsDone++;
+        }
+    };
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(new GLStateTracker(new RecordingGLES()), true);
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("models").toFile();
+        mStore = new DiskModelCache(mDir, MB, 0);
+        mRegistry = TestModels.createRegistry();
+        mCache = new Cache<>(MB);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.clear();
+        assertTrue(mDir.delete());
+    }
+
+    @Test
+    public void nextModelIsReadyBeforeTheSwitch() {
+        ModelPrefetcher prefetcher = new ModelPrefetcher(mExecutor, mHost);
+        Importer importer = new Importer("b");
+        AnimationRenderer next = renderer(importer);
+        prefetcher.prefetch(next);
+        assertEquals(1, mTasks.size());
+        assertFalse(prefetcher.onIdle());           // still importing
+        assertEquals(0, importer.mUploads);
+
+        int compileCount = mRegistry.getCompileCount();
+        mTasks.remove(0).run();
+        assertEquals(1, mImportsDone);
+        assertEquals(0, importer.mUploads);         // not on the background thread
+        assertTrue(prefetcher.onIdle());
+        assertEquals(1, importer.mUploads);
+        assertTrue(mCache.contains("b"));
+        assertEquals(0, mCache.getPinnedCount());
+        assertTrue(mRegistry.getCompileCount() > compileCount);
+
+        // The switch is a hit, and compiles nothing.
+        compileCount = mRegistry.getCompileCount();
+        prefetcher.onSwitched(next);
+        next.onInit(TestModels.IDENTITY);
+        assertEquals(1, importer.mImports);
+        assertEquals(1, importer.mUploads);
+        assertEquals(1, mCache.getStats().getHitCount());
+        assertEquals(compileCount, mRegistry.getCompileCount());
+        next.onRelease();
+        assertFalse(prefetcher.onIdle());
+    }
+
+    @Test
+    public void jumpingElsewhereCancelsThePrefetch() {
+        ModelPrefetcher prefetcher = new ModelPrefetcher(mExecutor, mHost);
+        Importer b = new Importer("b");
+        Importer c = new Importer("c");
+        prefetcher.prefetch(renderer(b));
+        prefetcher.prefetch(renderer(c));
+        for (Runnable task : mTasks) {
+            task.run();
+        }
+        assertEquals(0, b.mImports);            // cancelled before it started
+        assertTrue(prefetcher.onIdle());
+        assertFalse(mCache.contains("b"));
+        assertTrue(mCache.contains("c"));
+
+        // The user went somewhere we didn't expect.  The prefetch is dropped.
+        mTasks.clear();
+        Importer d = new Importer("d");
+        prefetcher.prefetch(renderer(d));
+        prefetcher.onSwitched(renderer(b));
+        for (Runnable task : mTasks) {
+            task.run();
+        }
+        assertFalse(prefetcher.onIdle());
+        assertEquals(0, d.mUploads);
+        assertEquals(1, prefetcher.getPreparedCount());
+    }
+
+    @Test
+    public void prefetchesStayInTheBudget() {
+        ModelPrefetcher prefetcher = new ModelPrefetcher(mExecutor, mHost);
+        Importer current = new Importer("current");
+        AnimationRenderer currentRenderer = renderer(current);
+        currentRenderer.onInit(TestModels.IDENTITY);            // pinned while we draw it
+        mCache.setMaxBytes(mCache.getSizeBytes() * 3 / 2);
+
+        Importer next = new Importer("next");
+        prefetcher.prefetch(renderer(next));
+        mTasks.remove(0).run();
+        assertTrue(prefetcher.onIdle());
+        assertEquals(1, next.mImports);         // imported (and stored, for next time)
+        assertEquals(0, next.mUploads);         // but it wouldn't fit next to the current one
+        assertEquals(1, mCache.getCount());
+        currentRenderer.onRelease();
+    }
+
+    @Test
+    public void switchingWaitsForTheImport() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ModelPrefetcher prefetcher = new ModelPrefetcher(executor, mHost);
+        final Importer slow = new Importer("slow");
+        slow.mImportMillis = 100;
+        AnimationRenderer next = renderer(slow);
+        prefetcher.prefetch(next);
+        prefetcher.onSwitched(next);
+        assertTrue(mCache.contains("slow"));
+        assertEquals(1, slow.mImports);
+        assertEquals(1, slow.mUploads);
+        executor.shutdown();
+    }
+
+    private AnimationRenderer renderer(Importer importer) {
+        return new AnimationRenderer(new CachedSource<>(mCache, mStore.wrap(importer)), importer.getName(),
+                "still", 0, Animator.DUAL_QUAT);
+    }
+
+    private class Importer implements ModelImporter {
+        final String mName;
+        int mImports = 0;
+        int mUploads = 0;
+        long mImportMillis = 0;
+
+        Importer(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public int getConverterVersion() {
+            return 1;
+        }
+
+        @Override
+        public long getContentHash() {
+            return 0;
+        }
+
+        @Override
+        public ByteBufferModel importModel() {
+            mImports++;
+            try {
+                Thread.sleep(mImportMillis);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return TestModels.createByteBufferModel(4, 2);
+        }
+
+        @Override
+        public Model upload(ByteBufferModel bbModel) {
+            mUploads++;
+            VBOModel model = new VBOModel(null, new TestModels.TextureCache(), mRegistry, bbModel);
+            bbModel.release();
+            return model;
+        }
+
+        @Override
+        public Model load() {
+            return upload(importModel());
+        }
+    }
+}
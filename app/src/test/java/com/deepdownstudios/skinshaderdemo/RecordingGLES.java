@@ -0,0 +1,122 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A GLES that does nothing but count the calls made to it.  Object names (buffers,
+ * textures, shaders, programs) are handed out from one counter, every status query
+ * succeeds and every variable location is valid.  Good enough to drive the rendering code
+ * without a device and see what it would have asked the driver to do.
+ */
+public class RecordingGLES implements GLES {
+    private final Map<String, Integer> mCounts = new HashMap<>();
+    private int mNextName = 1;
+    private boolean mRecording = true;
+
+    /// @return How many times the GL function `name` (eg "glDrawElements") was called.
+    public int count(String name) {
+        Integer count = mCounts.get(name);
+        return (count == null) ? 0 : count;
+    }
+
+    /// @return How many GL calls were made in total.
+    public int totalCount() {
+        int total = 0;
+        for (int count : mCounts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /// Forget all of the counts so far.
+    public void reset() {
+        mCounts.clear();
+    }
+
+    /// Turn counting on or off.  Off makes the calls as close to free as they can be, for timing.
+    public void setRecording(boolean recording) {
+        mRecording = recording;
+    }
+
+    private void record(String name) {
+        if (!mRecording) {
+            return;
+        }
+        mCounts.put(name, count(name) + 1);
+    }
+
+    private void genNames(int n, int[] names, int offset) {
+        for (int i=0; i<n; i++) {
+            names[offset + i] = mNextName++;
+        }
+    }
+
+    @Override public void glActiveTexture(int texture) { record("glActiveTexture"); }
+    @Override public void glAttachShader(int program, int shader) { record("glAttachShader"); }
+    @Override public void glBindBuffer(int target, int buffer) { record("glBindBuffer"); }
+    @Override public void glBindTexture(int target, int texture) { record("glBindTexture"); }
+    @Override public void glBufferData(int target, int size, Buffer data, int usage) { record("glBufferData"); }
+    @Override public void glBufferSubData(int target, int offset, int size, Buffer data) { record("glBufferSubData"); }
+    @Override public void glClear(int mask) { record("glClear"); }
+    @Override public void glClearColor(float red, float green, float blue, float alpha) { record("glClearColor"); }
+    @Override public void glCompileShader(int shader) { record("glCompileShader"); }
+    @Override public int glCreateProgram() { record("glCreateProgram"); return mNextName++; }
+    @Override public int glCreateShader(int type) { record("glCreateShader"); return mNextName++; }
+    @Override public void glCullFace(int mode) { record("glCullFace"); }
+    @Override public void glDeleteBuffers(int n, int[] buffers, int offset) { record("glDeleteBuffers"); }
+    @Override public void glDeleteProgram(int program) { record("glDeleteProgram"); }
+    @Override public void glDeleteShader(int shader) { record("glDeleteShader"); }
+    @Override public void glDeleteTextures(int n, int[] textures, int offset) { record("glDeleteTextures"); }
+    @Override public void glDepthFunc(int func) { record("glDepthFunc"); }
+    @Override public void glDepthMask(boolean flag) { record("glDepthMask"); }
+    @Override public void glDisable(int cap) { record("glDisable"); }
+    @Override public void glDisableVertexAttribArray(int index) { record("glDisableVertexAttribArray"); }
+    @Override public void glDrawElements(int mode, int count, int type, int offset) { record("glDrawElements"); }
+    @Override public void glEnable(int cap) { record("glEnable"); }
+    @Override public void glEnableVertexAttribArray(int index) { record("glEnableVertexAttribArray"); }
+    @Override public void glGenBuffers(int n, int[] buffers, int offset) { record("glGenBuffers"); genNames(n, buffers, offset); }
+    @Override public void glGenTextures(int n, int[] textures, int offset) { record("glGenTextures"); genNames(n, textures, offset); }
+
+    @Override
+    public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset,
+                                  int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        record("glGetActiveAttrib");
+        length[lengthOffset] = 0;
+    }
+
+    @Override public int glGetAttribLocation(int program, String name) { record("glGetAttribLocation"); return 0; }
+    @Override public int glGetError() { record("glGetError"); return GLES20.GL_NO_ERROR; }
+    @Override public String glGetProgramInfoLog(int program) { record("glGetProgramInfoLog"); return ""; }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        record("glGetProgramiv");
+        params[offset] = GLES20.GL_TRUE;
+    }
+
+    @Override public String glGetShaderInfoLog(int shader) { record("glGetShaderInfoLog"); return ""; }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        record("glGetShaderiv");
+        params[offset] = GLES20.GL_TRUE;
+    }
+
+    @Override public int glGetUniformLocation(int program, String name) { record("glGetUniformLocation"); return 0; }
+    @Override public void glLinkProgram(int program) { record("glLinkProgram"); }
+    @Override public void glShaderSource(int shader, String string) { record("glShaderSource"); }
+    @Override public void glTexParameteri(int target, int pname, int param) { record("glTexParameteri"); }
+    @Override public void glUniform1i(int location, int x) { record("glUniform1i"); }
+    @Override public void glUniform3fv(int location, int count, float[] v, int offset) { record("glUniform3fv"); }
+    @Override public void glUniform4fv(int location, int count, float[] v, int offset) { record("glUniform4fv"); }
+    @Override public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) { record("glUniformMatrix4fv"); }
+    @Override public void glUseProgram(int program) { record("glUseProgram"); }
+    @Override public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset) { record("glVertexAttribPointer"); }
+    @Override public void glViewport(int x, int y, int width, int height) { record("glViewport"); }
+    @Override public void texImage2D(int target, int level, Bitmap bitmap, int border) { record("texImage2D"); }
+}
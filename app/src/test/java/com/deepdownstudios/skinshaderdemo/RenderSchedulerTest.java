@@ -0,0 +1,100 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * RenderScheduler against a fake GLSurfaceView and clock: frames are "drawn" whenever one has
+ * been requested and the display's next vsync comes round.
+ */
+public class RenderSchedulerTest {
+    private static final long VSYNC_MILLIS = 16;
+
+    private RenderScheduler mScheduler;
+    private long mNow;
+    private boolean mRenderRequested;
+    /// When the pending timer goes off, or -1
+    private long mTimerAt;
+
+    @Before
+    public void setUp() {
+        mNow = 0;
+        mTimerAt = -1;
+        mScheduler = new RenderScheduler(new RenderScheduler.Host() {
+            @Override
+            public void requestRender() {
+                mRenderRequested = true;
+            }
+
+            @Override
+            public void scheduleTimer(long delayMillis) {
+                assertEquals(-1, mTimerAt);     // one timer at a time
+                mTimerAt = mNow + delayMillis;
+            }
+        });
+    }
+
+    @Test
+    public void idleDrawsNothing() {
+        runFor(1000);
+        assertEquals(0, mScheduler.getFrameCount());
+
+        // A change gets exactly one frame.
+        mScheduler.invalidate();
+        mScheduler.invalidate();
+        runFor(1000);
+        assertEquals(1, mScheduler.getFrameCount());
+    }
+
+    @Test
+    public void animatingDrawsEveryVsync() {
+        mScheduler.setAnimating(true);
+        runFor(1000);
+        assertEquals(1000 / VSYNC_MILLIS, mScheduler.getFrameCount(), 1);
+
+        // Paused, it stops after the frame that was already asked for.
+        mScheduler.setAnimating(false);
+        int nFrames = mScheduler.getFrameCount();
+        runFor(1000);
+        assertTrue(mScheduler.getFrameCount() <= nFrames + 1);
+    }
+
+    @Test
+    public void animationRateIsCapped() {
+        mScheduler.setMaxAnimationFps(20.0f);
+        mScheduler.setAnimating(true);
+        runFor(1000);
+        // 50ms apart, rounded up to the next vsync: 64ms.
+        assertEquals(1000 / (4 * VSYNC_MILLIS), mScheduler.getFrameCount(), 1);
+
+        // Changes still draw right away, and don't bunch up the animation frames.
+        int nFrames = mScheduler.getFrameCount();
+        mScheduler.invalidate();
+        runFor(VSYNC_MILLIS);
+        assertEquals(nFrames + 1, mScheduler.getFrameCount());
+        runFor(1000);
+        assertEquals(nFrames + 1 + 1000 / (4 * VSYNC_MILLIS), mScheduler.getFrameCount(), 1);
+
+        // No timer is left running once paused.
+        mScheduler.setAnimating(false);
+        runFor(1000);
+        assertEquals(-1, mTimerAt);
+    }
+
+    /// Advance the fake clock by `millis`, a millisecond at a time.
+    private void runFor(long millis) {
+        long end = mNow + millis;
+        for (; mNow<end; mNow++) {
+            if (mTimerAt != -1 && mNow >= mTimerAt) {
+                mTimerAt = -1;
+                mScheduler.onTimer(mNow);
+            }
+            if (mRenderRequested && mNow % VSYNC_MILLIS == 0) {
+                mRenderRequested = false;
+                mScheduler.onFrame(mNow);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.*;
+import static org.junit.Assert.*;
+
+/**
+ * A crowd in a line going away from the camera, drawn with an AnimationLod.  Far away
+ * instances should be posed less often, and the posing should be spread evenly over frames.
+ */
+public class SceneAnimationLodTest {
+    private static final int N_INSTANCES = 800;
+    private static final int FRAMES = 64;
+
+    private Scene mScene;
+    private List<Scene.Instance> mInstances;
+    private float[] mProjMatrix;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule();
+
+    @Before
+    public void setUp() {
+        ShaderProgramRegistry registry = TestModels.createRegistry();
+        VBOModel model = TestModels.createVBOModel(4, 2, true);
+        mScene = new Scene();
+        mInstances = new ArrayList<>();
+        for (int i=0; i<N_INSTANCES; i++) {
+            Scene.Instance instance = mScene.add(TestModels.createAnimModel(model, registry, Animator.DUAL_QUAT));
+            instance.mModelMatrix[12] = -1.5f;
+            instance.mModelMatrix[14] = -5.0f - i;
+            mInstances.add(instance);
+        }
+        mProjMatrix = TestModels.perspective(60.0f, 1.0f, 0.1f, 1000.0f);
+    }
+
+    @Test
+    public void poseCostFollowsScreenSize() {
+        int[] fullRate = drawFrames();
+        AnimationLod animationLod = new AnimationLod();
+        mScene.setAnimationLod(animationLod);
+        int[] lod = drawFrames();
+
+        int min = Integer.MAX_VALUE, max = 0, total = 0;
+        for (int posed : lod) {
+            min = Math.min(min, posed);
+            max = Math.max(max, posed);
+            total += posed;
+        }
+        String posed = "posed per frame " + min + " - " + max + " (average " + (float)total/FRAMES + ")";
+        assertEquals(N_INSTANCES, fullRate[FRAMES-1]);
+        assertTrue(posed, total < FRAMES * N_INSTANCES / 4);
+        // About 152: each instance is posed once every getUpdateInterval(its projected radius).
+        assertEquals(posed, expectedPosedPerFrame(animationLod), (float)total/FRAMES, 1.0f);
+        // Every rate's updates are spread over its interval, so frames only differ by
+        // one instance per rate.
+        assertTrue(posed, max - min <= AnimationLod.DEFAULT_THRESHOLDS.length + 1);
+        assertEquals(0, mScene.getLastCulledCount());
+    }
+
+    @Test
+    public void intervalsAreByScreenSize() {
+        AnimationLod lod = new AnimationLod(new float[] { 0.2f, 0.1f }, false);
+        assertEquals(1, lod.getUpdateInterval(Float.POSITIVE_INFINITY));
+        assertEquals(1, lod.getUpdateInterval(0.2f));
+        assertEquals(2, lod.getUpdateInterval(0.15f));
+        assertEquals(4, lod.getUpdateInterval(0.01f));
+    }
+
+    @Test
+    public void dualQuatLerpTakesTheShortWay() {
+        // q and -q are the same rotation.  Blending them must not go through zero.
+        Skeleton skeleton = TestModels.createByteBufferModel(1, 1).mSkeleton;
+        Skeleton flipped = TestModels.createByteBufferModel(1, 1).mSkeleton;
+        flipped.invBindPose = skeleton.invBindPose;
+        skeleton.bones.get(0).transform.quat = new Quaternion(0.6, 0.8, 0, 0);
+        flipped.bones.get(0).transform.quat = new Quaternion(-0.6, -0.8, 0, 0);
+
+        DualQuatBones a = new DualQuatBones(null, skeleton, 0);
+        DualQuatBones b = new DualQuatBones(null, flipped, 0);
+        DualQuatBones blend = new DualQuatBones(null, skeleton, 0);
+        blend.lerp(a, b, 0.5f);
+        float[] expected = new float[16];
+        float[] actual = new float[16];
+        a.getBoneMatrix(0, expected, 0);
+        blend.getBoneMatrix(0, actual, 0);
+        assertArrayEquals(expected, actual, 1e-5f);
+    }
+
+    /// @return The average number of instances lod should pose per frame.
+    private float expectedPosedPerFrame(AnimationLod lod) {
+        VBOModel.InstanceMatrices matrices = new VBOModel.InstanceMatrices();
+        float posed = 0.0f;
+        for (Scene.Instance instance : mInstances) {
+            float[] bounds = instance.getAnimModel().getVboModel().getAnimationBounds(instance.getAnimModel().getAnimation());
+            matrices.set(instance.mModelMatrix, TestModels.IDENTITY, mProjMatrix);
+            posed += 1.0f / lod.getUpdateInterval(Bounds.projectedRadius(matrices.mMvMatrix, mProjMatrix, bounds, 0));
+        }
+        return posed;
+    }
+
+    /// @return The number of instances posed in each of FRAMES frames.
+    private int[] drawFrames() {
+        int[] posed = new int[FRAMES];
+        for (int i=0; i<FRAMES; i++) {
+            mScene.draw(mProjMatrix, TestModels.IDENTITY, new float[3], i / 60.0);
+            posed[i] = mScene.getLastPosedCount();
+        }
+        return posed;
+    }
+}
@@ -0,0 +1,112 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.opengl.Matrix;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * A crowd standing in a circle around the camera.  Only the ones in the field of view
+ * should be posed and drawn.
+ */
+public class SceneCullingTest {
+    private static final int N_INSTANCES = 360;
+    private static final float RADIUS = 30.0f;
+    private static final int N_MESHES = 4;
+
+    private final RecordingGLES mGL = new RecordingGLES();
+    private Scene mScene;
+    private List<Scene.Instance> mInstances;
+    private float[] mProjMatrix;
+    private int mDrawsPerInstance;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(new GLStateTracker(mGL), false);
+
+    @Before
+    public void setUp() {
+        ShaderProgramRegistry registry = TestModels.createRegistry();
+        VBOModel model = TestModels.createVBOModel(N_MESHES, 2, true);
+        mDrawsPerInstance = model.getDrawCount();
+        mScene = new Scene();
+        mInstances = new ArrayList<>();
+        for (int i=0; i<N_INSTANCES; i++) {
+            Scene.Instance instance = mScene.add(TestModels.createAnimModel(model, registry, Animator.NORMAL));
+            double angle = 2.0 * Math.PI * i / N_INSTANCES;
+            instance.mModelMatrix[12] = (float)(RADIUS * Math.sin(angle));
+            instance.mModelMatrix[14] = (float)(-RADIUS * Math.cos(angle));
+            mInstances.add(instance);
+        }
+        mProjMatrix = TestModels.perspective(60.0f, 1.0f, 0.1f, 100.0f);
+    }
+
+    @Test
+    public void offScreenInstancesAreNotDrawn() {
+        mScene.draw(mProjMatrix, TestModels.IDENTITY, new float[3], 0.0);
+        mGL.reset();
+        mScene.draw(mProjMatrix, TestModels.IDENTITY, new float[3], 0.5);
+
+        int nCulled = mScene.getLastCulledCount();
+        int nVisible = N_INSTANCES - nCulled;
+        String counts = "crowd of " + N_INSTANCES + " : " + nCulled + " culled, " +
+                mScene.getLastPosedCount() + " posed";
+        // A 60 degree field of view sees about a sixth of the circle.
+        assertTrue(counts, nCulled > N_INSTANCES * 3 / 4);
+        assertTrue(counts, nVisible > 0);
+        assertEquals(nVisible * mDrawsPerInstance, mScene.getLastDrawCount());
+        assertEquals(nVisible * mDrawsPerInstance, mGL.count("glDrawElements"));
+        assertTrue(counts, mScene.getLastPosedCount() < N_INSTANCES / 2);
+    }
+
+    @Test
+    public void cullingIsConservative() {
+        mScene.draw(mProjMatrix, TestModels.IDENTITY, new float[3], 0.0);
+        float[] mvp = new float[16];
+        float[] vert = new float[4];
+        float[] clip = new float[4];
+        int nInside = 0, nCulled = 0;
+        for (Scene.Instance instance : mInstances) {
+            Matrix.multiplyMM(mvp, 0, mProjMatrix, 0, instance.mModelMatrix, 0);
+            boolean anyVertInside = false;
+            for (int x=0; x<N_MESHES; x++) {
+                for (int y=0; y<3; y++) {
+                    vert[0] = x;
+                    vert[1] = y;
+                    vert[2] = 0;
+                    vert[3] = 1;
+                    Matrix.multiplyMV(clip, 0, mvp, 0, vert, 0);
+                    float w = clip[3];
+                    anyVertInside |= Math.abs(clip[0]) <= w && Math.abs(clip[1]) <= w && Math.abs(clip[2]) <= w;
+                }
+            }
+            if (anyVertInside) {
+                assertFalse(instance.isCulled());
+            }
+            nInside += anyVertInside ? 1 : 0;
+            nCulled += instance.isCulled() ? 1 : 0;
+        }
+        // Otherwise there was nothing to check.
+        String counts = nInside + " with a vertex on screen, " + nCulled + " culled";
+        assertTrue(counts, nInside > 0);
+        assertTrue(counts, nCulled > N_INSTANCES * 3 / 4);
+    }
+
+    @Test
+    public void poseCullingOnlySkipsPosing() {
+        mScene.draw(mProjMatrix, TestModels.IDENTITY, new float[3], 0.0);
+        int nCulled = mScene.getLastCulledCount();
+        int nDraws = mScene.getLastDrawCount();
+
+        mScene.setPoseCulling(false);
+        mScene.draw(mProjMatrix, TestModels.IDENTITY, new float[3], 0.0);
+        assertEquals(N_INSTANCES, mScene.getLastPosedCount());
+        assertEquals(nCulled, mScene.getLastCulledCount());
+        assertEquals(nDraws, mScene.getLastDrawCount());
+    }
+}
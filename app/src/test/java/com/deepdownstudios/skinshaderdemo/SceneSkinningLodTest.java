@@ -0,0 +1,147 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * A crowd of dual quaternion skinned instances in a line going away from the camera, drawn
+ * with a SkinningLod.  Far away ones should switch to the cheaper shaders, and instances
+ * hovering around a threshold shouldn't flip back and forth.
+ */
+public class SceneSkinningLodTest {
+    private static final int N_INSTANCES = 200;
+
+    private Scene mScene;
+    private List<Scene.Instance> mInstances;
+    private ShaderProgramRegistry mRegistry;
+    private float[] mProjMatrix;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule();
+
+    @Before
+    public void setUp() {
+        mRegistry = TestModels.createRegistry();
+        VBOModel model = TestModels.createVBOModel(4, 2, true);
+        mScene = new Scene();
+        mInstances = new ArrayList<>();
+        for (int i=0; i<N_INSTANCES; i++) {
+            Scene.Instance instance = mScene.add(TestModels.createAnimModel(model, mRegistry, Animator.DUAL_QUAT));
+            instance.mModelMatrix[12] = -1.5f;
+            instance.mModelMatrix[14] = -5.0f - i;
+            mInstances.add(instance);
+        }
+        mProjMatrix = TestModels.perspective(60.0f, 1.0f, 0.1f, 1000.0f);
+    }
+
+    @Test
+    public void farInstancesUseCheaperShaders() {
+        mScene.setSkinningLod(new SkinningLod());
+        draw(0.0);
+        int nDualQuat = 0, nCapped = 0;
+        ShaderProgram cheapest = mRegistry.getSkinningProgram(Animator.NORMAL, 1, 0);
+        for (Scene.Instance instance : mInstances) {
+            SkinnedVBOAnimModel animModel = instance.getAnimModel();
+            nDualQuat += (animModel.getAnimator() == Animator.DUAL_QUAT) ? 1 : 0;
+            nCapped += (animModel.getPrograms()[1] == cheapest) ? 1 : 0;
+        }
+        String levels = nDualQuat + " dual quat, " + (N_INSTANCES - nDualQuat - nCapped) + " matrix, " +
+                nCapped + " matrix with one influence";
+        assertEquals(Animator.DUAL_QUAT, mInstances.get(0).getAnimModel().getAnimator());
+        assertSame(cheapest, mInstances.get(N_INSTANCES - 1).getAnimModel().getPrograms()[1]);
+        // About 20 dual quat, 38 matrix and 142 capped: the thresholds fall at z = -25 and -62.
+        assertEquals(levels, countLargerThan(SkinningLod.DEFAULT_THRESHOLDS[0]), nDualQuat);
+        assertEquals(levels, N_INSTANCES - countLargerThan(SkinningLod.DEFAULT_THRESHOLDS[1]), nCapped);
+        assertTrue(levels, nDualQuat > 0 && nCapped > 0 && nDualQuat + nCapped < N_INSTANCES);
+        assertEquals(N_INSTANCES * mInstances.get(0).getAnimModel().getVboModel().getDrawCount(),
+                mScene.getLastDrawCount());
+
+        // Nothing moved, so nothing changes level.
+        draw(0.1);
+        assertEquals(0, mScene.getLastSkinningLevelChanges());
+
+        mScene.setSkinningLod(null);
+        draw(0.2);
+        for (Scene.Instance instance : mInstances) {
+            assertEquals(Animator.DUAL_QUAT, instance.getAnimModel().getAnimator());
+        }
+    }
+
+    @Test
+    public void hysteresisStopsPopping() {
+        SkinningLod lod = new SkinningLod(new float[] { 0.2f, 0.1f }, SkinningLod.DEFAULT_LEVELS, 0.2f);
+        assertEquals(1, lod.chooseLevel(0.15f, 0));
+        assertEquals(1, lod.chooseLevel(0.21f, 1));     // not 20% past the threshold yet
+        assertEquals(0, lod.chooseLevel(0.25f, 1));
+        assertEquals(2, lod.chooseLevel(0.05f, 0));
+        assertEquals(2, lod.chooseLevel(0.11f, 2));
+        assertEquals(1, lod.chooseLevel(0.13f, 2));
+
+        // An instance wobbling 5% either side of a threshold only changes level once.  Without
+        // hysteresis it changes on every frame after the first.
+        for (int i=1; i<N_INSTANCES; i++) {
+            mScene.remove(mInstances.get(i));
+        }
+        Scene.Instance instance = mInstances.get(0);
+        float z = findDistance(instance, 0.2f);
+        assertEquals(2.0f * z, findDistance(instance, 0.1f), -0.01f * z);   // about -18.7 and -37.5
+        assertEquals(1, wobble(instance, z, lod));
+        assertEquals(19, wobble(instance, z, new SkinningLod(new float[] { 0.2f, 0.1f }, SkinningLod.DEFAULT_LEVELS, 0.0f)));
+    }
+
+    /// @return  The number of level changes over 20 frames of instance alternating 5% either
+    ///          side of z, starting from DUAL_QUAT.
+    private int wobble(Scene.Instance instance, float z, SkinningLod lod) {
+        mScene.setSkinningLod(null);
+        instance.mModelMatrix[14] = -5.0f;
+        draw(0.0);
+        mScene.setSkinningLod(lod);
+        int nChanges = 0;
+        for (int frame=0; frame<20; frame++) {
+            instance.mModelMatrix[14] = z * ((frame % 2 == 0) ? 0.95f : 1.05f);
+            draw(frame / 60.0);
+            nChanges += mScene.getLastSkinningLevelChanges();
+        }
+        return nChanges;
+    }
+
+    /// @return  The number of instances whose projected radius is above `radius`.
+    private int countLargerThan(float radius) {
+        VBOModel.InstanceMatrices matrices = new VBOModel.InstanceMatrices();
+        int count = 0;
+        for (Scene.Instance instance : mInstances) {
+            float[] bounds = instance.getAnimModel().getVboModel().getAnimationBounds(instance.getAnimModel().getAnimation());
+            matrices.set(instance.mModelMatrix, TestModels.IDENTITY, mProjMatrix);
+            count += (Bounds.projectedRadius(matrices.mMvMatrix, mProjMatrix, bounds, 0) > radius) ? 1 : 0;
+        }
+        return count;
+    }
+
+    /// @return  The model matrix z at which instance's projected radius is `radius`.
+    private float findDistance(Scene.Instance instance, float radius) {
+        VBOModel.InstanceMatrices matrices = new VBOModel.InstanceMatrices();
+        float[] bounds = instance.getAnimModel().getVboModel().getAnimationBounds(instance.getAnimModel().getAnimation());
+        float near = -1.0f, far = -1000.0f;
+        for (int i=0; i<50; i++) {
+            float z = (near + far) / 2.0f;
+            instance.mModelMatrix[14] = z;
+            matrices.set(instance.mModelMatrix, TestModels.IDENTITY, mProjMatrix);
+            if (Bounds.projectedRadius(matrices.mMvMatrix, mProjMatrix, bounds, 0) > radius) {
+                near = z;
+            } else {
+                far = z;
+            }
+        }
+        return (near + far) / 2.0f;
+    }
+
+    private void draw(double time) {
+        mScene.draw(mProjMatrix, TestModels.IDENTITY, new float[3], time);
+    }
+}
@@ -0,0 +1,48 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShaderProgramRegistryTest {
+    private final RecordingGLES mGL = new RecordingGLES();
+    private ShaderProgramRegistry mRegistry;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(mGL, false);
+
+    @Before
+    public void setUp() {
+        mRegistry = new ShaderProgramRegistry(null);
+    }
+
+
+    @Test
+    public void sameSourceCompilesOnce() {
+        ShaderProgram first = mRegistry.get("vertex", "fragment", true);
+        ShaderProgram second = mRegistry.get("vertex", "fragment", true);
+        assertSame(first, second);
+        assertEquals(1, mRegistry.getCompileCount());
+        assertEquals(1, mGL.count("glLinkProgram"));
+    }
+
+    @Test
+    public void definesMakeADifferentProgram() {
+        ShaderProgram one = mRegistry.get("#define N_INFLUENCES 1\nvertex", "fragment", true);
+        ShaderProgram four = mRegistry.get("#define N_INFLUENCES 4\nvertex", "fragment", true);
+        assertNotSame(one, four);
+        assertTrue(one.mId != four.mId);
+        assertEquals(2, mRegistry.getCompileCount());
+    }
+
+    @Test
+    public void clearForgetsPrograms() {
+        ShaderProgram before = mRegistry.get("vertex", "fragment", false);
+        mRegistry.clear();
+        ShaderProgram after = mRegistry.get("vertex", "fragment", false);
+        assertNotSame(before, after);
+        assertEquals(2, mRegistry.getCompileCount());
+    }
+}
@@ -0,0 +1,145 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.*;
+import static org.junit.Assert.*;
+
+/**
+ * A body with a hand with a finger.  Far away, the finger and then the hand should be
+ * collapsed into their parents.
+ */
+public class SkeletonLodTest {
+    private static final int ROOT = 0, HAND = 1, FINGER = 2;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule();
+
+    @Test
+    public void smallLeafBonesAreCollapsed() {
+        List<SkeletonLod> lods = createModel().mSkeletonLods;
+        assertEquals(3, lods.size());
+        assertArrayEquals(new int[] { ROOT, HAND, FINGER }, lods.get(0).mBones);
+        // The finger goes first, then the hand that it made a leaf.
+        assertArrayEquals(new int[] { ROOT, HAND }, lods.get(1).mBones);
+        assertArrayEquals(new int[] { 0, 1, 1 }, lods.get(1).mRemap);
+        assertArrayEquals(new int[] { ROOT }, lods.get(2).mBones);
+        assertArrayEquals(new int[] { 0, 0, 0 }, lods.get(2).mRemap);
+        // The root's bounds now hold the hand and finger too.
+        assertArrayEquals(new float[] { -5, 0, 0, 5, 10.5f, 0 }, lods.get(2).mBoneBounds, 0.0f);
+    }
+
+    @Test
+    public void vertexBoneIndicesAreRemapped() {
+        ByteBufferModel model = createModel();
+        // Mesh 2 is the finger's.  At LOD 1 it follows the hand, whose index is still 1.
+        // (Its unused second influence is bone 0 with no weight.)
+        FloatBuffer lod1 = model.mLodBoneIndexBuffers.get(2)[0].asFloatBuffer();
+        assertEquals(1, lod1.get(0), 0.0f);
+        FloatBuffer lod2 = model.mLodBoneIndexBuffers.get(2)[1].asFloatBuffer();
+        assertEquals(0, lod2.get(0), 0.0f);
+        assertEquals(3 * ByteBufferModel.LOD_BONE_INDEX_BYTES, model.mLodBoneIndexBuffers.get(2)[0].capacity());
+    }
+
+    @Test
+    public void subsetPoseMatchesFullPose() {
+        Skeleton skeleton = createModel().mSkeleton;
+        // Bend things so that the poses aren't all identity.
+        skeleton.bones.get(HAND).transform.quat = new Quaternion(0.6, 0.8, 0, 0);
+        skeleton.bones.get(FINGER).transform.quat = new Quaternion(0.8, 0, 0.6, 0);
+        int[] subset = { ROOT, HAND };
+
+        for (Animator animator : new Animator[] { Animator.NORMAL, Animator.QUAT, Animator.DUAL_QUAT }) {
+            Bones.GLSLBones full = animator.getBonesAtTime(null, skeleton, 0);
+            Bones.GLSLBones reduced = animator.getBonesAtTime(null, skeleton, 0, subset);
+            float[] expected = new float[16];
+            float[] actual = new float[16];
+            for (int i=0; i<subset.length; i++) {
+                full.getBoneMatrix(subset[i], expected, 0);
+                reduced.getBoneMatrix(i, actual, 0);
+                assertArrayEquals(expected, actual, 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void reducedSkeletonUsesItsOwnBoneIndexStream() {
+        final List<int[]> boneIndexPointers = new ArrayList<>();
+        GLESContext.setGL(new GLStateTracker(new RecordingGLES() {
+            @Override
+            public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset) {
+                super.glVertexAttribPointer(indx, size, type, normalized, stride, offset);
+                if (stride == ByteBufferModel.LOD_BONE_INDEX_BYTES) {
+                    boneIndexPointers.add(new int[] { indx, offset });
+                }
+            }
+        }));
+        VBOModel model = new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null),
+                createModel(), false);
+        assertEquals(3, model.getSkeletonLodCount());
+        ShaderProgram[] programs = TestModels.createPrograms();
+
+        model.draw(TestModels.IDENTITY, TestModels.IDENTITY, TestModels.IDENTITY, new float[3],
+                new TestModels.NullBones(), programs, 0);
+        assertTrue(boneIndexPointers.isEmpty());
+
+        model.draw(TestModels.IDENTITY, TestModels.IDENTITY, TestModels.IDENTITY, new float[3],
+                new TestModels.NullBones(), programs, 2);
+        assertFalse(boneIndexPointers.isEmpty());
+        ByteBufferModel bbModel = createModel();
+        int vertBytes = 0;
+        for (ByteBuffer vertBuffer : bbModel.mVertByteBuffers) {
+            vertBytes += vertBuffer.capacity();
+        }
+        for (int[] pointer : boneIndexPointers) {
+            // Past the vertices and LOD 1's stream.
+            assertTrue(pointer[1] >= vertBytes + 9 * ByteBufferModel.LOD_BONE_INDEX_BYTES);
+        }
+    }
+
+    /// @return  A body (root), a hand and a finger, each with one triangle bound to it only.
+    private static ByteBufferModel createModel() {
+        Skeleton skeleton = new Skeleton();
+        String[] names = { "body", "hand", "finger" };
+        for (int i=0; i<names.length; i++) {
+            Bone bone = new Bone();
+            bone.name = names[i];
+            bone.parentIdx = i - 1;
+            bone.transform = new RigidTransform();
+            skeleton.bones.add(bone);
+        }
+        skeleton.invBindPose = Bones.calculateInvBindPose(skeleton.bones);
+
+        List<Mesh> meshes = new ArrayList<>();
+        meshes.add(createTriangle(ROOT, -5, 0, 5, 10));
+        meshes.add(createTriangle(HAND, -1, 8, 1, 10));
+        meshes.add(createTriangle(FINGER, 0, 10, 0.5f, 10.5f));
+        return new ByteBufferModel(meshes, skeleton);
+    }
+
+    private static Mesh createTriangle(int bone, float x0, float y0, float x1, float y1) {
+        float[][] corners = { { x0, y0 }, { x1, y0 }, { x1, y1 } };
+        Mesh mesh = new Mesh();
+        mesh.verts = new Vertex[3];
+        for (int j=0; j<3; j++) {
+            Vertex vert = new Vertex();
+            vert.pos[0] = corners[j][0];
+            vert.pos[1] = corners[j][1];
+            vert.bones.add(bone);
+            vert.boneWeights.add(1.0);
+            mesh.verts[j] = vert;
+        }
+        mesh.faces = new short[][] { {0, 1, 2} };
+        RenderPass pass = new RenderPass();
+        pass.material = new Material();
+        pass.material.textureResourceId = 100;
+        mesh.mRenderPasses.add(pass);
+        return mesh;
+    }
+}
@@ -0,0 +1,353 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.*;
+import static com.deepdownstudios.skinshaderdemo.ByteBufferModel.INFLUENCE_CLASSES;
+import static org.junit.Assert.*;
+
+/**
+ * What each skinning shader variant costs per vertex.  There is no GPU here, so the vertex
+ * shaders are ported line for line to Java, fed the same uniforms (captured from
+ * GLSLBones.postToGLSLUniform) and made to count their scalar ALU operations as they go --
+ * one per component of every add, multiply (or multiply-add), divide, compare and sqrt.
+ * Swizzles and negations are free.  Real GPUs schedule vec4s and have special units for
+ * sqrt, so the counts are only good for comparing the variants with each other, which is
+ * what SkinningLod needs.
+ *
+ * The ports' output is also checked against CpuSkinning, so they can't drift from what the
+ * shaders actually compute without this failing.
+ */
+public class SkinningCostTest {
+    private static final float EPSILON = 1e-4f;
+    private static final int N_BONES = 4;
+    /// Sorted heaviest-first, like ByteBufferModel does.
+    private static final int[] BONES = { 0, 1, 2, 3 };
+    private static final float[] WEIGHTS = { 0.4f, 0.3f, 0.2f, 0.1f };
+    private static final float[] POS = { 0.5f, 1.5f, -0.25f };
+    private static final float[] NORMAL = { 0.0f, 0.6f, 0.8f };
+
+    /// Unpacking the bone indices: ivec2 / 32, * 32 and subtract.
+    private static final int UNPACK_OPS = 6;
+    /// After skinning, every variant does uMVPMatrix * modelPos, uMVMatrix * modelPos and
+    /// normalizes the view-space normal.  (Transforming the normal differs per shader.)
+    private static final int TAIL_OPS = 16 + 16 + (3 + 1 + 3);
+
+    private float[] mUniforms;
+    private Skeleton mSkeleton;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(new GLStateTracker(new RecordingGLES() {
+        @Override
+        public void glUniform3fv(int location, int count, float[] v, int offset) {
+            mUniforms = Arrays.copyOfRange(v, offset, offset + 3 * count);
+        }
+
+        @Override
+        public void glUniform4fv(int location, int count, float[] v, int offset) {
+            mUniforms = Arrays.copyOfRange(v, offset, offset + 4 * count);
+        }
+    }), false);
+
+    @Before
+    public void setUp() {
+        mSkeleton = createPosedSkeleton();
+    }
+
+    @Test
+    public void costsGrowWithInfluencesAndAnimator() {
+        int meshClass = INFLUENCE_CLASSES.length - 1;
+        for (Animator animator : Animator.values()) {
+            for (int maxClass=1; maxClass<=meshClass; maxClass++) {
+                assertTrue(animator + " " + INFLUENCE_CLASSES[maxClass] + " influences",
+                        cost(animator, meshClass, maxClass - 1) < cost(animator, meshClass, maxClass));
+            }
+        }
+        for (int maxClass=0; maxClass<=meshClass; maxClass++) {
+            assertTrue(cost(Animator.NORMAL, meshClass, maxClass) < cost(Animator.QUAT, meshClass, maxClass));
+            assertTrue(cost(Animator.QUAT, meshClass, maxClass) < cost(Animator.DUAL_QUAT, meshClass, maxClass));
+        }
+        // What the default SkinningLod levels trade: matrix with 1 and 2 of 4 influences,
+        // against dual quaternions with all 4.
+        assertEquals(102, cost(Animator.NORMAL, meshClass, 0));
+        assertEquals(115, cost(Animator.NORMAL, meshClass, 1));
+        assertEquals(261, cost(Animator.DUAL_QUAT, meshClass, meshClass));
+    }
+
+    @Test
+    public void defaultLevelsGetCheaper() {
+        SkinningLod lod = new SkinningLod();
+        int meshClass = INFLUENCE_CLASSES.length - 1;
+        for (Animator animator : Animator.values()) {
+            int previous = cost(animator, meshClass, meshClass);
+            for (int level=1; level<lod.getLevelCount(); level++) {
+                SkinningLod.Level lodLevel = lod.getLevel(level);
+                int current = cost(lodLevel.mAnimator, meshClass, lodLevel.mMaxInfluenceClass);
+                assertTrue(animator + " level " + level, current < previous);
+                previous = current;
+            }
+        }
+    }
+
+    @Test
+    public void fullVariantsMatchReference() {
+        float[] expected = referenceSkin(INFLUENCE_CLASSES[INFLUENCE_CLASSES.length - 1]);
+        float[] actual = new float[6];
+        int meshClass = INFLUENCE_CLASSES.length - 1;
+        skin(Animator.NORMAL, meshClass, meshClass, actual);
+        assertArrayEquals(expected, actual, EPSILON);
+    }
+
+    @Test
+    public void cappedVariantsRenormalize() {
+        // Matrix blending with the heaviest two influences, made to add up to one.
+        int meshClass = INFLUENCE_CLASSES.length - 1;
+        float[] actual = new float[6];
+        skin(Animator.NORMAL, meshClass, 1, actual);
+        assertArrayEquals(referenceSkin(INFLUENCE_CLASSES[1]), actual, EPSILON);
+
+        // With one influence every Animator is a rigid transform by the heaviest bone.
+        // Without renormalizing, the quaternion shader would scale its translation by 0.4.
+        float[] expected = referenceSkin(INFLUENCE_CLASSES[0]);
+        for (Animator animator : Animator.values()) {
+            skin(animator, meshClass, 0, actual);
+            assertArrayEquals(animator.toString(), expected, actual, EPSILON);
+        }
+    }
+
+    /// @return  The ALU ops of a whole vertex shader invocation.
+    private int cost(Animator animator, int meshClass, int maxClass) {
+        return skin(animator, meshClass, maxClass, new float[6]);
+    }
+
+    /**
+     * Run the port of animator's vertex shader variant for meshClass capped to maxClass
+     * (see ShaderProgramRegistry.getSkinningProgram).
+     * @param result    On output, the model-space position and normal.
+     * @return  The ALU ops of the whole vertex shader.
+     */
+    private int skin(Animator animator, int meshClass, int maxClass, float[] result) {
+        animator.getBonesAtTime(null, mSkeleton, 0).postToGLSLUniform(0);
+        int nInfluences = INFLUENCE_CLASSES[Math.min(meshClass, maxClass)];
+        boolean renormalize = maxClass < meshClass;
+        ShaderPort port = new ShaderPort(mUniforms, nInfluences, renormalize);
+        switch (animator) {
+            case NORMAL:
+                port.matrix(result);
+                break;
+            case QUAT:
+                port.quat(result);
+                break;
+            default:
+                port.dualQuat(result);
+                break;
+        }
+        return port.mOps + TAIL_OPS;
+    }
+
+    /// @return  CpuSkinning of POS and NORMAL by the heaviest nInfluences of BONES, renormalized.
+    private float[] referenceSkin(int nInfluences) {
+        CpuSkinning.Palette palette = new CpuSkinning.Palette(null, mSkeleton, 0);
+        java.util.List<Integer> bones = new java.util.ArrayList<>();
+        java.util.List<Double> weights = new java.util.ArrayList<>();
+        double total = 0.0;
+        for (int i=0; i<nInfluences; i++) {
+            total += WEIGHTS[i];
+        }
+        for (int i=0; i<nInfluences; i++) {
+            bones.add(BONES[i]);
+            weights.add(WEIGHTS[i] / total);
+        }
+        double[] pos = new double[3];
+        CpuSkinning.skinPoint(palette, bones, weights, toDoubles(POS), pos);
+
+        // Normals have no translation: skin the normal's tip and subtract the skinned origin.
+        double[] tip = new double[3];
+        double[] origin = new double[3];
+        CpuSkinning.skinPoint(palette, bones, weights, toDoubles(NORMAL), tip);
+        CpuSkinning.skinPoint(palette, bones, weights, new double[3], origin);
+        float[] ret = new float[6];
+        for (int i=0; i<3; i++) {
+            ret[i] = (float)pos[i];
+            ret[3+i] = (float)(tip[i] - origin[i]);
+        }
+        return ret;
+    }
+
+    private static double[] toDoubles(float[] v) {
+        return new double[] { v[0], v[1], v[2] };
+    }
+
+    /// @return  A chain of N_BONES bones, each bent and moved a bit away from its bind pose.
+    private static Skeleton createPosedSkeleton() {
+        Skeleton skeleton = new Skeleton();
+        for (int i=0; i<N_BONES; i++) {
+            Bone bone = new Bone();
+            bone.name = "bone" + i;
+            bone.parentIdx = i - 1;
+            bone.transform = new RigidTransform();
+            bone.transform.pos[1] = (i == 0) ? 0.0 : 1.0;
+            skeleton.bones.add(bone);
+        }
+        skeleton.invBindPose = Bones.calculateInvBindPose(skeleton.bones);
+        for (int i=0; i<N_BONES; i++) {
+            RigidTransform transform = skeleton.bones.get(i).transform;
+            transform.quat = new Quaternion(0.3 * (i + 1), new double[] { 1.0, i, 0.5 });
+            transform.pos[0] += 0.1 * i;
+        }
+        return skeleton;
+    }
+
+    /**
+     * Ports of main() of the vertex shaders, up to the model-space position and normal.
+     * Statements are in the same order as the GLSL and each is followed by its op count.
+     */
+    private static class ShaderPort {
+        int mOps = 0;
+        private final float[] mBoneTforms;
+        private final int mNInfluences;
+        private final float[] mWeights = WEIGHTS.clone();
+
+        ShaderPort(float[] boneTforms, int nInfluences, boolean renormalize) {
+            mBoneTforms = boneTforms;
+            mNInfluences = nInfluences;
+            mOps += UNPACK_OPS;
+            if (renormalize) {
+                // boneWeights = boneWeights / dot(boneWeights, INFLUENCE_MASK);
+                float total = 0.0f;
+                for (int i=0; i<nInfluences; i++) {
+                    total += mWeights[i];
+                }
+                for (int i=0; i<4; i++) {
+                    mWeights[i] /= total;
+                }
+                mOps += 4 + 4;
+            }
+        }
+
+        /// vert_shader_matrix
+        void matrix(float[] result) {
+            float[] rows = new float[12];
+            for (int i=0; i<mNInfluences; i++) {
+                if (i > 0) {
+                    mOps += 1;                                  // boneWeights.x != 0.0
+                }
+                for (int j=0; j<12; j++) {
+                    rows[j] += mWeights[i] * mBoneTforms[BONES[i]*12 + j];
+                }
+                mOps += 12;                                     // row0..2 (+)= w * uBoneTforms
+            }
+            for (int row=0; row<3; row++) {
+                result[row] = rows[row*4] * POS[0] + rows[row*4+1] * POS[1] + rows[row*4+2] * POS[2] + rows[row*4+3];
+                result[3+row] = rows[row*4] * NORMAL[0] + rows[row*4+1] * NORMAL[1] + rows[row*4+2] * NORMAL[2];
+            }
+            mOps += 3*4 + 3*3;                                  // dot(row, position), dot(row.xyz, aNormal)
+            mOps += 16;                                         // uVTIMMatrix * vec4(modelNormal, 0.0)
+        }
+
+        /// vert_shader_quat
+        void quat(float[] result) {
+            float[] boneQuat = new float[4];                    // x, y, z, w like GLSL
+            float[] boneTrans = new float[3];
+            for (int i=0; i<mNInfluences; i++) {
+                if (i > 0) {
+                    mOps += 1;                                  // boneWeights.x != 0.0
+                }
+                int base = BONES[i]*6;
+                float x = mBoneTforms[base], y = mBoneTforms[base+1], z = mBoneTforms[base+2];
+                float w = (float)Math.sqrt(1.0f - (x*x + y*y + z*z));
+                mOps += 3 + 1 + 1;                              // sqrt(1.0 - dot(q, q))
+                float[] q = { x, y, z, w };
+                for (int j=0; j<4; j++) {
+                    boneQuat[j] += mWeights[i] * q[j];
+                }
+                for (int j=0; j<3; j++) {
+                    boneTrans[j] += mWeights[i] * mBoneTforms[base+3+j];
+                }
+                mOps += 4 + 3;                                  // boneQuat, boneTrans (+)= w * ...
+            }
+            normalize(boneQuat);
+            float[] pos = quatTransform(boneQuat, POS);
+            for (int j=0; j<3; j++) {
+                result[j] = pos[j] + boneTrans[j];
+            }
+            mOps += 3;                                          // + boneTrans
+            System.arraycopy(quatTransform(boneQuat, NORMAL), 0, result, 3, 3);
+            mOps += 16;                                         // uVTIMMatrix * vec4(..., 0)
+        }
+
+        /// vert_shader_dualquat
+        void dualQuat(float[] result) {
+            float[] real = new float[4];
+            float[] dual = new float[4];
+            for (int i=0; i<mNInfluences; i++) {
+                if (i > 0) {
+                    mOps += 1;                                  // boneWeights.x != 0.0
+                }
+                for (int j=0; j<4; j++) {
+                    real[j] += mWeights[i] * mBoneTforms[BONES[i]*8 + j];
+                    dual[j] += mWeights[i] * mBoneTforms[BONES[i]*8 + 4 + j];
+                }
+                mOps += 8;                                      // realPart, dualPart (+)= w * ...
+            }
+            float realLength = (float)Math.sqrt(real[0]*real[0] + real[1]*real[1] + real[2]*real[2] + real[3]*real[3]);
+            mOps += 4 + 1;                                      // length(realPart)
+            for (int j=0; j<4; j++) {
+                real[j] /= realLength;
+                dual[j] /= realLength;
+            }
+            mOps += 8;
+
+            // dualQuatToMat, as columns
+            float x0 = real[0], y0 = real[1], z0 = real[2], w0 = real[3];
+            float xe = dual[0], ye = dual[1], ze = dual[2], we = dual[3];
+            float t0 = 2.0f * (-we*x0 + xe*w0 - ye*z0 + ze*y0);
+            float t1 = 2.0f * (-we*y0 + xe*z0 + ye*w0 - ze*x0);
+            float t2 = 2.0f * (-we*z0 - xe*y0 + ye*x0 + ze*w0);
+            mOps += 3 * 8;
+            float[] m = {
+                    1.0f - 2.0f*y0*y0 - 2.0f*z0*z0, 2.0f*x0*y0 + 2.0f*w0*z0, 2.0f*x0*z0 - 2.0f*w0*y0, 0,
+                    2.0f*x0*y0 - 2.0f*w0*z0, 1.0f - 2.0f*x0*x0 - 2.0f*z0*z0, 2.0f*y0*z0 + 2.0f*w0*x0, 0,
+                    2.0f*x0*z0 + 2.0f*w0*y0, 2.0f*y0*z0 - 2.0f*w0*x0, 1.0f - 2.0f*x0*x0 - 2.0f*y0*y0, 0,
+                    t0, t1, t2, 1.0f
+            };
+            mOps += 3 * 6 + 6 * 5;                              // diagonal, off-diagonal
+
+            for (int row=0; row<3; row++) {
+                result[row] = m[row] * POS[0] + m[4+row] * POS[1] + m[8+row] * POS[2] + m[12+row];
+                result[3+row] = m[row] * NORMAL[0] + m[4+row] * NORMAL[1] + m[8+row] * NORMAL[2];
+            }
+            mOps += 16;                                         // quatMat * vec4(aPosition, 1.0)
+            // uVTIMMatrix * quatMat * vec4(aNormal, 0) is (uVTIMMatrix * quatMat) * vec4(...)
+            mOps += 64 + 16;
+        }
+
+        private void normalize(float[] v) {
+            float length = (float)Math.sqrt(v[0]*v[0] + v[1]*v[1] + v[2]*v[2] + v[3]*v[3]);
+            for (int j=0; j<4; j++) {
+                v[j] /= length;
+            }
+            mOps += 4 + 1 + 4;
+        }
+
+        /// quatTransform in vert_shader_quat: quatmult(quatmult(quat, point), quatconj(quat))
+        private float[] quatTransform(float[] quat, float[] point) {
+            float[] conj = { -quat[0], -quat[1], -quat[2], quat[3] };
+            return quatMult(quatMult(quat, new float[] { point[0], point[1], point[2], 0.0f }), conj);
+        }
+
+        private float[] quatMult(float[] q1, float[] q2) {
+            mOps += 4 * 7;                                      // 4 multiplies and 3 adds per component
+            return new float[] {
+                    q1[3]*q2[0] + q1[0]*q2[3] + q1[1]*q2[2] - q1[2]*q2[1],
+                    q1[3]*q2[1] + q1[1]*q2[3] + q1[2]*q2[0] - q1[0]*q2[2],
+                    q1[3]*q2[2] + q1[2]*q2[3] + q1[0]*q2[1] - q1[1]*q2[0],
+                    q1[3]*q2[3] - q1[0]*q2[0] - q1[1]*q2[1] - q1[2]*q2[2]
+            };
+        }
+    }
+}
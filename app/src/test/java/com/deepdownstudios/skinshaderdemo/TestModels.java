@@ -0,0 +1,206 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.rules.ExternalResource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.deepdownstudios.skinshaderdemo.BasicModel.*;
+
+/**
+ * Synthetic models and do-nothing collaborators for driving the rendering code in tests.
+ */
+public final class TestModels {
+    public static final float[] IDENTITY = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1
+    };
+
+    /**
+     * @return  nMeshes skinned triangles (two bones each) cycling through nTextures textures.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static ByteBufferModel createByteBufferModel(int nMeshes, int nTextures) {
+        Skeleton skeleton = new Skeleton();
+        Bone bone = new Bone();
+        bone.name = "root";
+        bone.parentIdx = -1;
+        bone.transform = new RigidTransform();
+        skeleton.bones.add(bone);
+        bone = bone.copy();
+        bone.name = "child";
+        bone.parentIdx = 0;
+        skeleton.bones.add(bone);
+        skeleton.invBindPose = Bones.calculateInvBindPose(skeleton.bones);
+
+        // An animation without keyframes holds the bind pose.
+        Animation animation = new Animation();
+        animation.name = "still";
+        animation.duration = 1.0;
+        animation.keyframes = new ArrayList[skeleton.bones.size()];
+        skeleton.animations.add(animation);
+
+        List<Mesh> meshes = new ArrayList<>();
+        for (int i=0; i<nMeshes; i++) {
+            Mesh mesh = new Mesh();
+            mesh.verts = new Vertex[3];
+            for (int j=0; j<3; j++) {
+                Vertex vert = new Vertex();
+                vert.pos[0] = i;
+                vert.pos[1] = j;
+                vert.bones.add(0);
+                vert.boneWeights.add(0.5);
+                vert.bones.add(1);
+                vert.boneWeights.add(0.5);
+                mesh.verts[j] = vert;
+            }
+            mesh.faces = new short[][] { {0, 1, 2} };
+            RenderPass pass = new RenderPass();
+            pass.material = new Material();
+            pass.material.textureResourceId = 100 + (i % nTextures);
+            mesh.mRenderPasses.add(pass);
+            meshes.add(mesh);
+        }
+        return new ByteBufferModel(meshes, skeleton);
+    }
+
+    /**
+     * @return  A VBOModel of createByteBufferModel(nMeshes, nTextures).  Requires a GLES
+     *          stand-in in GLESContext.
+     */
+    public static VBOModel createVBOModel(int nMeshes, int nTextures, boolean mergeMeshes) {
+        return new VBOModel(null, new TextureCache(), new ShaderProgramRegistry(null),
+                createByteBufferModel(nMeshes, nTextures), mergeMeshes);
+    }
+
+    /**
+     * @return  A (dummy) program for every ShaderProgramRegistry variant, for VBOModel.draw.
+     *          Requires a GLES stand-in in GLESContext.
+     */
+    public static ShaderProgram[] createPrograms() {
+        ShaderProgramRegistry registry = new ShaderProgramRegistry(null);
+        ShaderProgram[] programs = new ShaderProgram[ShaderProgramRegistry.VARIANT_COUNT];
+        for (int variant=0; variant<programs.length; variant++) {
+            boolean skinned = (variant != ShaderProgramRegistry.RIGID_VARIANT);
+            programs[variant] = registry.get("// variant " + variant, "", skinned);
+        }
+        return programs;
+    }
+
+    /**
+     * @return  A registry whose shader sources are just the resource IDs, so it can compile
+     *          every program without Resources.  Requires a GLES stand-in in GLESContext.
+     */
+    public static ShaderProgramRegistry createRegistry() {
+        return new ShaderProgramRegistry(null) {
+            @Override
+            protected String readRawResource(int resourceId) {
+                return "// resource " + resourceId + "\n";
+            }
+        };
+    }
+
+    /**
+     * @return  An animated instance of model, playing its first animation.
+     */
+    public static SkinnedVBOAnimModel createAnimModel(VBOModel model, ShaderProgramRegistry registry,
+                                                      Animator animator) {
+        Animation animation = model.getSkeleton().animations.get(0);
+        return new SkinnedVBOAnimModel(model, registry, animation, 0.0, animator);
+    }
+
+    public static void draw(VBOModel model, ShaderProgram[] programs) {
+        model.draw(IDENTITY, IDENTITY, IDENTITY, new float[3], new NullBones(), programs);
+    }
+
+    /// Column-major perspective projection, like Matrix.perspectiveM.
+    public static float[] perspective(float fovy, float aspect, float near, float far) {
+        float f = 1.0f / (float)Math.tan(Math.toRadians(fovy) / 2.0);
+        float[] m = new float[16];
+        m[0] = f / aspect;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1.0f;
+        m[14] = 2.0f * far * near / (near - far);
+        return m;
+    }
+
+    /**
+     * Acquire an item and release it straight away, so nothing stays pinned.  What the old,
+     * handle-less Cache.fetch did.
+     * @return  The item or null if it failed to load
+     */
+    public static <V> V fetch(Cache<V> cache, String name, Source<V> source) {
+        Cache.Handle<V> handle = cache.acquire(name, source);
+        if (handle == null) {
+            return null;
+        }
+        V item = handle.get();
+        handle.release();
+        return item;
+    }
+
+    /**
+     * Puts a GLES stand-in in GLESContext for each test and, after it, puts back whatever was
+     * there before.  Tests can install another stand-in part way through; it is undone too.
+     */
+    public static class GLESRule extends ExternalResource {
+        /// A GLStateTracker in front of a new RecordingGLES.
+        public GLESRule() {
+            this(new GLStateTracker(new RecordingGLES()), false);
+        }
+
+        /**
+         * @param gl            Installed as is, so wrap it in a GLStateTracker to have one.
+         * @param newContext    If true, also call GLESContext.onContextCreated() so that
+         *                      nothing left over from earlier tests is tracked or released.
+         */
+        public GLESRule(GLES gl, boolean newContext) {
+            mGL = gl;
+            mNewContext = newContext;
+        }
+
+        @Override
+        protected void before() {
+            mPrevious = GLESContext.gl();
+            GLESContext.setGL(mGL);
+            if (mNewContext) {
+                GLESContext.onContextCreated();
+            }
+        }
+
+        @Override
+        protected void after() {
+            GLESContext.setGL(mPrevious);
+        }
+
+        private final GLES mGL;
+        private final boolean mNewContext;
+        private GLES mPrevious;
+    }
+
+    /// Hands out textures without loading anything.  The texture name is the resource ID.
+    public static class TextureCache extends Cache<GLESTexture> {
+        @Override
+        public Handle<GLESTexture> acquire(String name, Source<GLESTexture> itemSource) {
+            return new Handle<>(new GLESTexture(Integer.parseInt(name)));
+        }
+    }
+
+    public static class NullBones implements Bones.GLSLBones {
+        @Override
+        public void postToGLSLUniform(int boneArrayId) {
+        }
+
+        @Override
+        public void getBoneMatrix(int boneIdx, float[] result, int offset) {
+            System.arraycopy(IDENTITY, 0, result, offset, 16);
+        }
+
+        @Override
+        public void lerp(Bones.GLSLBones a, Bones.GLSLBones b, float t) {
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import android.opengl.GLES20;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * An UploadQueue never uploads more than its cap in a frame, and a model that uploads through
+ * one is only drawn once all of it is there.
+ */
+public class UploadQueueTest {
+    private static final int MAX_BYTES_PER_FRAME = 256;
+
+    /// Counts the bytes that buffer uploads send.
+    private static class ByteCountingGLES extends RecordingGLES {
+        long mBytes = 0;
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage) {
+            super.glBufferData(target, size, data, usage);
+            mBytes += (data != null) ? size : 0;
+        }
+
+        @Override
+        public void glBufferSubData(int target, int offset, int size, Buffer data) {
+            super.glBufferSubData(target, offset, size, data);
+            assertTrue(data.remaining() >= size);
+            mBytes += size;
+        }
+    }
+
+    private final ByteCountingGLES mGL = new ByteCountingGLES();
+    private final UploadQueue mQueue = new UploadQueue(MAX_BYTES_PER_FRAME);
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(new GLStateTracker(mGL), true);
+
+    @Test
+    public void modelsUploadWithinTheCapAndDrawOnceResident() {
+        ByteBufferModel bbModel = TestModels.createByteBufferModel(20, 2);
+        long modelBytes = bbModel.getByteCount();
+        VBOModel model = new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null),
+                bbModel, true, mQueue);
+        bbModel.release();          // the queue keeps what it needs
+        assertEquals(0, mGL.mBytes);
+        assertEquals(modelBytes, mQueue.getQueuedBytes());
+        assertEquals(modelBytes, model.getNativeBytes());
+        assertFalse(model.isResident());
+
+        ShaderProgram[] programs = TestModels.createPrograms();
+        int frames = 0;
+        while (!model.isResident()) {
+            TestModels.draw(model, programs);
+            assertEquals(0, mGL.count("glDrawElements"));
+            mGL.mBytes = 0;
+            long frameBytes = mQueue.runFrame();
+            assertEquals(frameBytes, mGL.mBytes);
+            assertTrue(frameBytes > 0 && frameBytes <= MAX_BYTES_PER_FRAME);
+            // A buffer is let go of once all of it is uploaded.
+            assertTrue(model.getNativeBytes() >= mQueue.getQueuedBytes());
+            frames++;
+        }
+        assertEquals((modelBytes + MAX_BYTES_PER_FRAME - 1) / MAX_BYTES_PER_FRAME, frames);
+        assertFalse(mQueue.isPending());
+        assertEquals(0, mQueue.getQueuedBytes());
+        assertEquals(0, model.getNativeBytes());
+
+        TestModels.draw(model, programs);
+        assertEquals(model.getDrawCount(), mGL.count("glDrawElements"));
+    }
+
+    @Test
+    public void callbacksComeWithTheLastByte() {
+        final int[] done = new int[2];
+        mQueue.enqueueBuffer(GLES20.GL_ARRAY_BUFFER, 1, 0, ByteBuffer.allocateDirect(600), new Runnable() {
+            @Override
+            public void run() {
+                done[0]++;
+            }
+        });
+        mQueue.enqueueBuffer(GLES20.GL_ARRAY_BUFFER, 2, 0, ByteBuffer.allocateDirect(0), new Runnable() {
+            @Override
+            public void run() {
+                done[1]++;
+            }
+        });
+        assertEquals(256, mQueue.runFrame());
+        assertEquals(256, mQueue.runFrame());
+        assertEquals(0, done[0]);
+        assertEquals(88, mQueue.runFrame());
+        assertEquals(1, done[0]);
+        assertEquals(1, done[1]);           // nothing to upload, but it waited its turn
+        assertEquals(0, mQueue.runFrame());
+        assertEquals(3, mGL.count("glBufferSubData"));
+    }
+
+    @Test
+    public void releasedModelsStopUploading() {
+        VBOModel model = new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null),
+                TestModels.createByteBufferModel(20, 2), true, mQueue);
+        mQueue.runFrame();
+        assertTrue(model.getNativeBytes() > 0);
+        model.release();
+        assertEquals(0, model.getNativeBytes());
+        assertEquals(0, mQueue.runFrame());
+        assertFalse(mQueue.isPending());
+        assertEquals(0, mQueue.getQueuedBytes());
+    }
+
+    @Test
+    public void uploadsFromALostContextAreDropped() {
+        new VBOModel(null, new TestModels.TextureCache(), new ShaderProgramRegistry(null),
+                TestModels.createByteBufferModel(20, 2), true, mQueue);
+        GLESContext.onContextCreated();
+        assertEquals(0, mQueue.runFrame());
+        assertFalse(mQueue.isPending());
+    }
+}
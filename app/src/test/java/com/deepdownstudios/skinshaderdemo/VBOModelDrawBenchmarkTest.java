@@ -0,0 +1,105 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * The CPU cost of VBOModel.draw, through the GLStateTracker, against a GLES stand-in, so the
+ * numbers are our own overhead and not the driver's: GL calls, bytes allocated and (by hand,
+ * see drawTime) nanoseconds per draw call.
+ */
+public class VBOModelDrawBenchmarkTest {
+    private static final int N_MESHES = 32;
+    private static final int WARMUP_FRAMES = 5000;
+    private static final int FRAMES = 50000;
+    private static final int ALLOCATION_FRAMES = 2000;
+    /// draw() allocates nothing: what is measured (about 0.01 bytes per draw) is the MXBean.
+    /// One float[16] a frame would be 2.5.
+    private static final double MAX_BYTES_PER_DRAW = 0.5;
+
+    private final RecordingGLES mGL = new RecordingGLES();
+    private final GLStateTracker mTracker = new GLStateTracker(mGL);
+    private VBOModel mModel;
+    private ShaderProgram[] mPrograms;
+    private TestModels.NullBones mBones;
+    private float[] mLightPos;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(mTracker, false);
+
+    @Before
+    public void setUp() {
+        // Unmerged, one texture per mesh -- the worst case for per-draw overhead.
+        mModel = TestModels.createVBOModel(N_MESHES, N_MESHES, false);
+        mPrograms = TestModels.createPrograms();
+        mBones = new TestModels.NullBones();
+        mLightPos = new float[3];
+    }
+
+    @Test
+    public void steadyStateFrame() {
+        int nDraws = mModel.getDrawCount();
+        assertEquals(N_MESHES, nDraws);
+
+        // Count the calls of a steady-state frame, not the first one.
+        drawFrames(1);
+        mGL.reset();
+        mTracker.resetCounts();
+        drawFrames(1);
+        assertEquals(nDraws, mGL.count("glDrawElements"));
+        assertEquals(0, mGL.count("glGetError"));       // no validation on the draw path by default
+        // Per draw, a texture bind and the draw.  Per frame, the instance's uniforms and the
+        // attribute pointers.  Everything else is elided as already set.
+        assertEquals(nDraws, mGL.count("glBindTexture"));
+        assertEquals(3, mGL.count("glUniformMatrix4fv"));
+        assertEquals(5, mGL.count("glVertexAttribPointer"));
+        assertEquals(0, mGL.count("glUseProgram"));
+        assertEquals(0, mGL.count("glBindBuffer"));
+        assertEquals(74, mGL.totalCount());             // 2.3 per draw
+        assertEquals(42, mTracker.getElidedCount());    // 1.3 per draw
+
+        mGL.setRecording(false);
+        drawFrames(WARMUP_FRAMES);
+        long startBytes = allocatedBytes();
+        drawFrames(ALLOCATION_FRAMES);
+        long bytes = allocatedBytes() - startBytes;
+        if (startBytes >= 0) {
+            double bytesPerDraw = (double)bytes / (ALLOCATION_FRAMES * nDraws);
+            assertTrue(bytesPerDraw + " bytes allocated per draw", bytesPerDraw < MAX_BYTES_PER_DRAW);
+        }
+    }
+
+    /// Nanoseconds per draw call.  Too slow for the unit tests, and only a number: run by hand.
+    @Ignore("benchmark")
+    @Test
+    public void drawTime() {
+        mGL.setRecording(false);
+        drawFrames(WARMUP_FRAMES);
+        long start = System.nanoTime();
+        drawFrames(FRAMES);
+        long elapsed = System.nanoTime() - start;
+        System.out.println("VBOModel.draw per draw call : " + (double)elapsed / (FRAMES * mModel.getDrawCount()) + " ns");
+    }
+
+    private void drawFrames(int nFrames) {
+        for (int i=0; i<nFrames; i++) {
+            mModel.draw(TestModels.IDENTITY, TestModels.IDENTITY, TestModels.IDENTITY, mLightPos, mBones, mPrograms);
+        }
+    }
+
+    /// @return Bytes allocated by this thread so far, or -1 if the JVM can't tell us.
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,74 @@
+package com.deepdownstudios.skinshaderdemo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Draws a synthetic model through RecordingGLES and checks that merging same-material
+ * meshes cuts down the draw calls and texture binds.  Buffer binds are already one VBO and
+ * one IBO per draw(), merged or not, since the meshes share an arena.
+ */
+public class VBOModelMergeTest {
+    private static final int N_MESHES = 6;
+    private static final int N_TEXTURES = 2;
+
+    private final RecordingGLES mGL = new RecordingGLES();
+    private ShaderProgram[] mPrograms;
+
+    @Rule
+    public final TestModels.GLESRule mGLESRule = new TestModels.GLESRule(mGL, false);
+
+    @Before
+    public void setUp() {
+        mPrograms = TestModels.createPrograms();
+    }
+
+
+    @Test
+    public void mergingReducesDrawsAndBinds() {
+        VBOModel unmerged = createModel(false);
+        VBOModel merged = createModel(true);
+        assertEquals(N_MESHES, unmerged.getDrawCount());
+        assertEquals(N_TEXTURES, merged.getDrawCount());
+
+        mGL.reset();
+        draw(unmerged);
+        int unmergedDraws = mGL.count("glDrawElements");
+        int unmergedBufferBinds = mGL.count("glBindBuffer");
+        int unmergedTextureBinds = mGL.count("glBindTexture");
+
+        mGL.reset();
+        draw(merged);
+        int mergedDraws = mGL.count("glDrawElements");
+        int mergedBufferBinds = mGL.count("glBindBuffer");
+        int mergedTextureBinds = mGL.count("glBindTexture");
+
+        assertEquals(N_MESHES, unmergedDraws);
+        assertEquals(N_TEXTURES, mergedDraws);
+        assertEquals(2, unmergedBufferBinds);
+        assertEquals(2, mergedBufferBinds);
+        // No GLStateTracker here, so every mesh binds its texture.
+        assertEquals(N_MESHES, unmergedTextureBinds);
+        assertEquals(N_TEXTURES, mergedTextureBinds);
+    }
+
+    @Test
+    public void arenaBindsBuffersOncePerDraw() {
+        VBOModel model = createModel(false);
+        mGL.reset();
+        draw(model);
+        // Bind VBO + IBO.  Independent of the number of meshes.
+        assertEquals(2, mGL.count("glBindBuffer"));
+    }
+
+    private static VBOModel createModel(boolean mergeMeshes) {
+        return TestModels.createVBOModel(N_MESHES, N_TEXTURES, mergeMeshes);
+    }
+
+    private void draw(VBOModel model) {
+        TestModels.draw(model, mPrograms);
+    }
+}